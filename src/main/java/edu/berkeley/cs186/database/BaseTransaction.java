@@ -2,9 +2,14 @@ package edu.berkeley.cs186.database;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.index.IndexPredicate;
+import edu.berkeley.cs186.database.index.IndexStats;
+import edu.berkeley.cs186.database.index.IndexType;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator.PageIterator;
 import edu.berkeley.cs186.database.query.QueryPlan;
@@ -38,6 +43,56 @@ public abstract class BaseTransaction implements AutoCloseable {
     public abstract void createTableWithIndices(Schema s, String tableName,
             List<String> indexColumns) throws DatabaseException;
 
+    /**
+     * Create a new table in this database with an index on each of the given column names,
+     * where the index on a column c is a covering index that also stores the values of the
+     * columns includedColumns.get(c).
+     * @param s the table schema
+     * @param tableName the name of the table
+     * @param indexColumns the list of unique columnNames on the maintain an index on
+     * @param includedColumns a map from index column names to the columns to include in their indices
+     * @throws DatabaseException
+     */
+    public abstract void createTableWithIndices(Schema s, String tableName, List<String> indexColumns,
+            Map<String, List<String>> includedColumns) throws DatabaseException;
+
+    /**
+     * Create a new table in this database with an index of the given kind on each of the given
+     * column names. Columns without an entry in indexTypes get a B+ tree index.
+     *
+     * @param s the table schema
+     * @param tableName the name of the table
+     * @param indexColumns the list of unique columnNames on the maintain an index on
+     * @param includedColumns a map from index column names to the columns to include in their indices
+     * @param indexTypes a map from index column names to the kind of their indices
+     * @throws DatabaseException
+     */
+    public abstract void createTableWithIndices(Schema s, String tableName, List<String> indexColumns,
+            Map<String, List<String>> includedColumns,
+            Map<String, IndexType> indexTypes) throws DatabaseException;
+
+    /**
+     * Create a B+ tree index on a column of an existing table. The index is built from a
+     * scan of the table while other transactions keep writing to it.
+     *
+     * @param tableName the name of the table
+     * @param columnName the column to index
+     * @throws DatabaseException
+     */
+    public abstract void createIndex(String tableName, String columnName) throws DatabaseException;
+
+    /**
+     * Create an index of the given kind on a column of an existing table. Only B+ tree and
+     * hash indices can be built this way.
+     *
+     * @param tableName the name of the table
+     * @param columnName the column to index
+     * @param indexType the kind of the index
+     * @throws DatabaseException
+     */
+    public abstract void createIndex(String tableName, String columnName,
+                                     IndexType indexType) throws DatabaseException;
+
     /**
      * Delete a table in this database.
      *
@@ -97,12 +152,59 @@ public abstract class BaseTransaction implements AutoCloseable {
      */
     public abstract boolean indexExists(String tableName, String columnName);
 
+    /**
+     * Checks if a bitmap index exists on a column of a table.
+     *
+     * @param tableName the name of the table
+     * @param columnName the name of the column
+     * @return boolean if the bitmap index exists
+     */
+    public abstract boolean bitmapIndexExists(String tableName, String columnName);
+
+    /**
+     * Returns the records of a table whose column c equals one of the values predicates.get(c)
+     * for every bitmap-indexed column c in predicates.
+     *
+     * @param tableName the name of the table
+     * @param predicates a map from bitmap-indexed column names to their accepted values
+     * @return an iterator over the matching records
+     * @throws DatabaseException
+     */
+    public abstract Iterator<Record> bitmapScan(String tableName,
+            Map<String, List<DataBox>> predicates) throws DatabaseException;
+
+    /**
+     * Returns the columns of every composite (multi-column) index on this table.
+     *
+     * @param tableName the name of the table
+     * @return a list of the key columns of each composite index, in key order
+     */
+    public abstract List<List<String>> getCompositeIndices(String tableName);
+
     public abstract Iterator<Record> sortedScan(String tableName,
             String columnName) throws DatabaseException;
 
     public abstract Iterator<Record> sortedScanFrom(String tableName, String columnName,
             DataBox startValue) throws DatabaseException;
 
+    public abstract Iterator<Record> sortedScanDescending(String tableName,
+            String columnName) throws DatabaseException;
+
+    public abstract Iterator<Record> sortedScanDescendingFrom(String tableName, String columnName,
+            DataBox startValue) throws DatabaseException;
+
+    public abstract Iterator<Record> sortedScanRange(String tableName, String columnName,
+            DataBox lo, boolean loInclusive, DataBox hi, boolean hiInclusive) throws DatabaseException;
+
+    public abstract int countRange(String tableName, String columnName,
+            DataBox lo, boolean loInclusive, DataBox hi, boolean hiInclusive) throws DatabaseException;
+
+    public abstract Schema getIndexIncludedSchema(String tableName,
+            String columnName) throws DatabaseException;
+
+    public abstract Iterator<Record> coveringScanRange(String tableName, String columnName,
+            DataBox lo, boolean loInclusive, DataBox hi, boolean hiInclusive) throws DatabaseException;
+
     public abstract Iterator<Record> lookupKey(String tableName, String columnName,
             DataBox key) throws DatabaseException;
 
@@ -152,8 +254,15 @@ public abstract class BaseTransaction implements AutoCloseable {
 
     public abstract long getNumRecords(String tableName) throws DatabaseException;
 
+    public abstract IndexType getIndexType(String tableName, String columnName) throws DatabaseException;
+
     public abstract int getNumIndexPages(String tableName, String columnName) throws DatabaseException;
 
+    public abstract IndexStats getIndexStats(String tableName, String columnName) throws DatabaseException;
+
+    public abstract Optional<IndexPredicate> getIndexPredicate(String tableName,
+            String columnName) throws DatabaseException;
+
     public abstract Schema getSchema(String tableName) throws DatabaseException;
 
     public abstract Schema getFullyQualifiedSchema(String tableName) throws DatabaseException;
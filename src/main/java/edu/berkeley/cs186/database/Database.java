@@ -7,14 +7,27 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
+import edu.berkeley.cs186.database.common.Bits;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.concurrency.*;
+import edu.berkeley.cs186.database.databox.CompositeDataBox;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.index.BPlusTree;
-import edu.berkeley.cs186.database.index.BPlusTreeException;
+import edu.berkeley.cs186.database.index.BitmapIndex;
+import edu.berkeley.cs186.database.index.HashIndex;
+import edu.berkeley.cs186.database.index.Index;
+import edu.berkeley.cs186.database.index.IndexException;
+import edu.berkeley.cs186.database.index.IndexPredicate;
+import edu.berkeley.cs186.database.index.IndexStats;
+import edu.berkeley.cs186.database.index.IndexType;
+import edu.berkeley.cs186.database.index.LSMIndex;
+import edu.berkeley.cs186.database.index.LearnedIndex;
+import edu.berkeley.cs186.database.index.OrderedIndex;
+import edu.berkeley.cs186.database.index.RoaringBitmap;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.query.QueryPlanException;
@@ -31,14 +44,28 @@ import javax.xml.crypto.Data;
 
 public class Database {
     private Map<String, Table> tableLookup;
-    private Map<String, BPlusTree> indexLookup;
+    private Map<String, Index> indexLookup;
+    private Map<String, BitmapIndex> bitmapIndexLookup;
     private Map<String, List<String>> tableIndices;
+    private Map<String, IndexBuild> indexBuilds;
     private Map<Long, Transaction> activeTransactions;
     private long numTransactions;
     private String fileDir;
     private LockManager lockManager;
     private int numMemoryPages;
 
+    // Held (shared) by writers while they maintain the indices of a table, and (exclusively)
+    // by createIndex while it publishes a new index. See createIndex.
+    private ReentrantReadWriteLock indexMaintenanceLock = new ReentrantReadWriteLock();
+
+    // The fill factor of the leaves of B+ trees built by createIndex, leaving room for the
+    // writes that happened during the build.
+    private static final float INDEX_BUILD_FILL_FACTOR = 0.75f;
+
+    // The number of changes that createIndex lets pile up in the side log of a build before
+    // it stops writers to apply the rest.
+    private static final int INDEX_BUILD_CATCH_UP_THRESHOLD = 64;
+
     /**
      * Creates a new database with locking disabled.
      *
@@ -75,7 +102,9 @@ public class Database {
         numTransactions = 0;
         tableLookup = new ConcurrentHashMap<>();
         indexLookup = new ConcurrentHashMap<>();
+        bitmapIndexLookup = new ConcurrentHashMap<>();
         tableIndices = new ConcurrentHashMap<>();
+        indexBuilds = new ConcurrentHashMap<>();
         activeTransactions = new ConcurrentHashMap<>();
 
         File dir = new File(fileDir);
@@ -100,12 +129,26 @@ public class Database {
                     if (!tableIndices.containsKey(tableName)) {
                         tableIndices.put(tableName, new ArrayList<>());
                     }
-                } else if (fName.endsWith(BPlusTree.FILENAME_EXTENSION)) {
-                    int lastIndex = fName.lastIndexOf(BPlusTree.FILENAME_EXTENSION);
-                    String indexName = fName.substring(0, lastIndex);
+                } else if (fName.endsWith(BPlusTree.FILENAME_EXTENSION)
+                           || fName.endsWith(HashIndex.FILENAME_EXTENSION)
+                           || fName.endsWith(LSMIndex.FILENAME_EXTENSION)
+                           || fName.endsWith(LearnedIndex.FILENAME_EXTENSION)
+                           || fName.endsWith(BitmapIndex.FILENAME_EXTENSION)) {
+                    String indexName = fName.substring(0, fName.lastIndexOf('.'));
                     String tableName = indexName.split(",", 2)[0];
-                    indexLookup.put(indexName, new BPlusTree(f.toString(), getIndexContext(indexName),
-                                    initTransaction));
+                    LockContext indexContext = getIndexContext(indexName);
+                    if (fName.endsWith(BitmapIndex.FILENAME_EXTENSION)) {
+                        bitmapIndexLookup.put(indexName, new BitmapIndex(f.toString(), indexContext,
+                                              initTransaction));
+                    } else if (fName.endsWith(HashIndex.FILENAME_EXTENSION)) {
+                        indexLookup.put(indexName, new HashIndex(f.toString(), indexContext, initTransaction));
+                    } else if (fName.endsWith(LSMIndex.FILENAME_EXTENSION)) {
+                        indexLookup.put(indexName, new LSMIndex(f.toString(), indexContext, initTransaction));
+                    } else if (fName.endsWith(LearnedIndex.FILENAME_EXTENSION)) {
+                        indexLookup.put(indexName, new LearnedIndex(f.toString(), indexContext, initTransaction));
+                    } else {
+                        indexLookup.put(indexName, new BPlusTree(f.toString(), indexContext, initTransaction));
+                    }
                     if (!tableIndices.containsKey(tableName)) {
                         tableIndices.put(tableName, new ArrayList<>());
                     }
@@ -126,12 +169,17 @@ public class Database {
                 t.close();
             }
 
-            for (BPlusTree t : this.indexLookup.values()) {
+            for (Index t : this.indexLookup.values()) {
+                t.close();
+            }
+
+            for (BitmapIndex t : this.bitmapIndexLookup.values()) {
                 t.close();
             }
 
             this.tableLookup.clear();
             this.indexLookup.clear();
+            this.bitmapIndexLookup.clear();
             this.tableIndices.clear();
         }
     }
@@ -148,6 +196,21 @@ public class Database {
         return lockManager.databaseContext().childContext("index-" + index);
     }
 
+    private static String indexFileExtension(IndexType indexType) {
+        switch (indexType) {
+        case HASH:
+            return HashIndex.FILENAME_EXTENSION;
+        case BITMAP:
+            return BitmapIndex.FILENAME_EXTENSION;
+        case LSM:
+            return LSMIndex.FILENAME_EXTENSION;
+        case LEARNED:
+            return LearnedIndex.FILENAME_EXTENSION;
+        default:
+            return BPlusTree.FILENAME_EXTENSION;
+        }
+    }
+
     /**
      * Start a new transaction.
      *
@@ -171,7 +234,8 @@ public class Database {
         long transNum;
         boolean active;
         boolean blocked;
-        HashMap<String, Table> tempTables;
+        // concurrent, since the worker threads of a sort create temporary tables of their own
+        Map<String, Table> tempTables;
         HashMap<String, String> aliasMaps;
         long tempTableCounter;
 
@@ -182,7 +246,7 @@ public class Database {
             this.transNum = tNum;
             this.active = true;
             this.blocked = false;
-            this.tempTables = new HashMap<String, Table>();
+            this.tempTables = new ConcurrentHashMap<String, Table>();
             this.aliasMaps = new HashMap<String, String>();
             this.tempTableCounter = 0;
         }
@@ -237,6 +301,8 @@ public class Database {
 
         /**
          * Create a new table in this database with an index on each of the given column names.
+         * An entry of indexColumns may also name several comma-separated columns, e.g.
+         * "course_id,student_id", to create a composite index keyed on those columns in order.
          * @param s the table schema
          * @param tableName the name of the table
          * @param indexColumns the list of unique columnNames on the maintain an index on
@@ -244,6 +310,46 @@ public class Database {
          */
         public void createTableWithIndices(Schema s, String tableName,
                                            List<String> indexColumns) throws DatabaseException {
+            createTableWithIndices(s, tableName, indexColumns, new HashMap<>());
+        }
+
+        /**
+         * Create a new table in this database with an index on each of the given column names.
+         * The index on a column c also stores the values of the columns includedColumns.get(c)
+         * (if any) alongside each key, making it a covering index for queries that only read c
+         * and those columns.
+         *
+         * @param s the table schema
+         * @param tableName the name of the table
+         * @param indexColumns the list of unique columnNames on the maintain an index on
+         * @param includedColumns a map from index column names to the columns to include in
+         *                        their indices
+         * @throws DatabaseException
+         */
+        public void createTableWithIndices(Schema s, String tableName, List<String> indexColumns,
+                                           Map<String, List<String>> includedColumns)
+        throws DatabaseException {
+            createTableWithIndices(s, tableName, indexColumns, includedColumns, new HashMap<>());
+        }
+
+        /**
+         * Create a new table in this database with an index on each of the given column names.
+         * The index on a column c is of kind indexTypes.get(c), or a B+ tree if c has no entry.
+         * Hash indices only answer equality lookups, and cannot be composite or have included
+         * columns.
+         *
+         * @param s the table schema
+         * @param tableName the name of the table
+         * @param indexColumns the list of unique columnNames on the maintain an index on
+         * @param includedColumns a map from index column names to the columns to include in
+         *                        their indices
+         * @param indexTypes a map from index column names to the kind of their indices
+         * @throws DatabaseException
+         */
+        public void createTableWithIndices(Schema s, String tableName, List<String> indexColumns,
+                                           Map<String, List<String>> includedColumns,
+                                           Map<String, IndexType> indexTypes)
+        throws DatabaseException {
             // TODO(hw5_part2): add locking
 
             LockContext tableContext = getTableContext(tableName);
@@ -253,17 +359,47 @@ public class Database {
             List<Type> schemaColType = s.getFieldTypes();
 
             HashSet<String> seenColNames = new HashSet<String>();
-            List<Integer> schemaColIndex = new ArrayList<Integer>();
             for (int i = 0; i < indexColumns.size(); i++) {
                 String col = indexColumns.get(i);
-                if (!schemaColNames.contains(col)) {
-                    throw new DatabaseException("Column desired for index does not exist");
+                for (String keyCol : col.split(",")) {
+                    if (!schemaColNames.contains(keyCol)) {
+                        throw new DatabaseException("Column desired for index does not exist");
+                    }
                 }
                 if (seenColNames.contains(col)) {
                     throw new DatabaseException("Column desired for index has been duplicated");
                 }
                 seenColNames.add(col);
-                schemaColIndex.add(schemaColNames.indexOf(col));
+            }
+
+            for (Map.Entry<String, List<String>> entry : includedColumns.entrySet()) {
+                if (!seenColNames.contains(entry.getKey())) {
+                    throw new DatabaseException("Included columns given for a column without an index");
+                }
+                List<String> keyCols = Arrays.asList(entry.getKey().split(","));
+                for (String col : entry.getValue()) {
+                    if (!schemaColNames.contains(col)) {
+                        throw new DatabaseException("Column desired for inclusion in index does not exist");
+                    }
+                    if (keyCols.contains(col)) {
+                        throw new DatabaseException("Index column cannot be included in its own index");
+                    }
+                }
+            }
+
+            for (Map.Entry<String, IndexType> entry : indexTypes.entrySet()) {
+                if (!seenColNames.contains(entry.getKey())) {
+                    throw new DatabaseException("Index kind given for a column without an index");
+                }
+                if (entry.getValue() != IndexType.BPLUS_TREE && (entry.getKey().contains(",")
+                        || !includedColumns.getOrDefault(entry.getKey(), new ArrayList<>()).isEmpty())) {
+                    throw new DatabaseException("Hash, LSM, bitmap, and learned indices must be on a single "
+                                                + "column without included columns");
+                }
+                if (entry.getValue() == IndexType.LEARNED
+                        && !schemaColType.get(schemaColNames.indexOf(entry.getKey())).equals(Type.intType())) {
+                    throw new DatabaseException("Learned indices must be on an int column");
+                }
             }
 
             if (Database.this.tableLookup.containsKey(tableName)) {
@@ -274,22 +410,282 @@ public class Database {
             Database.this.tableLookup.put(tableName, newTable(tableName, s, path.toString(), tableContext,
                                           this));
             Database.this.tableIndices.put(tableName, new ArrayList<>());
-            for (int i : schemaColIndex) {
-                String colName = schemaColNames.get(i);
-                Type colType = schemaColType.get(i);
+            for (String colName : indexColumns) {
+                // an index on several comma-separated columns is keyed on a composite of their values
+                List<Type> keyTypes = new ArrayList<>();
+                for (String keyCol : colName.split(",")) {
+                    keyTypes.add(schemaColType.get(schemaColNames.indexOf(keyCol)));
+                }
+                Type colType = keyTypes.size() == 1 ? keyTypes.get(0) : Type.compositeType(keyTypes);
                 String indexName = tableName + "," + colName;
-                Path p = Paths.get(Database.this.fileDir, indexName + BPlusTree.FILENAME_EXTENSION);
+                IndexType indexType = indexTypes.getOrDefault(colName, IndexType.BPLUS_TREE);
+                Path p = Paths.get(Database.this.fileDir, indexName + indexFileExtension(indexType));
                 LockContext indexContext = getIndexContext(indexName);
+
+                if (indexType == IndexType.HASH) {
+                    try {
+                        Database.this.indexLookup.put(indexName, new HashIndex(p.toString(), colType,
+                                                      indexContext, this));
+                        Database.this.tableIndices.get(tableName).add(indexName);
+                    } catch (IndexException e) {
+                        throw new DatabaseException(e.getMessage());
+                    }
+                    continue;
+                }
+
+                if (indexType == IndexType.LSM) {
+                    Database.this.indexLookup.put(indexName, new LSMIndex(p.toString(), colType, indexContext,
+                                                  this));
+                    Database.this.tableIndices.get(tableName).add(indexName);
+                    continue;
+                }
+
+                if (indexType == IndexType.LEARNED) {
+                    Database.this.indexLookup.put(indexName, new LearnedIndex(p.toString(), colType,
+                                                  indexContext, this));
+                    Database.this.tableIndices.get(tableName).add(indexName);
+                    continue;
+                }
+
+                if (indexType == IndexType.BITMAP) {
+                    int recordsPerPage = Database.this.tableLookup.get(tableName).getNumRecordsPerPage();
+                    Database.this.bitmapIndexLookup.put(indexName, new BitmapIndex(p.toString(), colType,
+                                                        recordsPerPage, indexContext, this));
+                    Database.this.tableIndices.get(tableName).add(indexName);
+                    continue;
+                }
+
+                List<String> includedNames = includedColumns.getOrDefault(colName, new ArrayList<>());
+                List<Type> includedTypes = new ArrayList<>();
+                for (String includedName : includedNames) {
+                    includedTypes.add(schemaColType.get(schemaColNames.indexOf(includedName)));
+                }
+                Schema includedSchema = new Schema(new ArrayList<>(includedNames), includedTypes);
+
                 try {
+                    // trees are counted so that QueryPlan can answer counts over ranges from them
                     Database.this.indexLookup.put(indexName, new BPlusTree(p.toString(), colType,
-                                                  BPlusTree.maxOrder(Page.pageSize, colType), indexContext, this));
+                                                  includedSchema,
+                                                  BPlusTree.maxOrder(Page.pageSize, colType, includedSchema, true),
+                                                  true, indexContext, this));
                     Database.this.tableIndices.get(tableName).add(indexName);
-                } catch (BPlusTreeException e) {
+                } catch (IndexException e) {
                     throw new DatabaseException(e.getMessage());
                 }
             }
         }
 
+        /**
+         * Create a B+ tree index on a column of an existing table. See
+         * createIndex(tableName, columnName, indexType).
+         *
+         * @param tableName the name of the table
+         * @param columnName the column to index
+         * @throws DatabaseException
+         */
+        public void createIndex(String tableName, String columnName) throws DatabaseException {
+            createIndex(tableName, columnName, IndexType.BPLUS_TREE);
+        }
+
+        /**
+         * Create an index on a column of an existing table without blocking writes to the table.
+         *
+         * The index is loaded from a scan of the table that only locks one page at a time (B+
+         * trees are bulk loaded in parallel from the sorted entries, and learned indices are
+         * trained on them). Writes to the table that happen in the meantime are captured in a
+         * side log of the build, which is applied to the index once the scan is done. Writers are
+         * only stopped to apply the last few changes, after which the index is published and
+         * maintained like any other index.
+         *
+         * @param tableName the name of the table
+         * @param columnName the column to index
+         * @param indexType the kind of the index; bitmap indices cannot be built
+         * @throws DatabaseException
+         */
+        public void createIndex(String tableName, String columnName,
+                                IndexType indexType) throws DatabaseException {
+            createIndex(tableName, columnName, indexType, Optional.empty());
+        }
+
+        /**
+         * Create a partial index on a column of an existing table, which only holds the records
+         * for which `predicateColumn operator value` holds, like a select predicate of a
+         * QueryPlan. Since the index only needs to cover those records, it can be a small
+         * fraction of the size of a full index on the column. A query only uses a partial index
+         * if one of its select predicates implies the predicate of the index (see
+         * IndexPredicate.impliedBy). Otherwise, like createIndex(tableName, columnName,
+         * indexType).
+         *
+         * @param tableName the name of the table
+         * @param columnName the column to index
+         * @param indexType the kind of the index; bitmap indices cannot be built
+         * @param predicateColumn the column of the predicate
+         * @param operator the comparison of the predicate
+         * @param value the value that predicateColumn is compared to
+         * @throws DatabaseException
+         */
+        public void createPartialIndex(String tableName, String columnName, IndexType indexType,
+                                       String predicateColumn, QueryPlan.PredicateOperator operator,
+                                       DataBox value) throws DatabaseException {
+            createIndex(tableName, columnName, indexType,
+                        Optional.of(new IndexPredicate(predicateColumn, operator, value)));
+        }
+
+        private void createIndex(String tableName, String columnName, IndexType indexType,
+                                 Optional<IndexPredicate> predicate) throws DatabaseException {
+            assert(this.active);
+
+            Table tab = getTable(tableName);
+            tableName = tab.getName();
+            if (!Database.this.tableLookup.containsKey(tableName)) {
+                throw new DatabaseException("Temporary tables cannot be indexed");
+            }
+            Schema s = tab.getSchema();
+            int column = s.getFieldNames().indexOf(columnName);
+            if (column == -1) {
+                throw new DatabaseException("Column desired for index does not exist");
+            }
+            if (indexType == IndexType.BITMAP) {
+                throw new DatabaseException("Bitmap indices can only be created along with their table");
+            }
+            if (indexType == IndexType.LEARNED && !s.getFieldTypes().get(column).equals(Type.intType())) {
+                throw new DatabaseException("Learned indices must be on an int column");
+            }
+            if (predicate.isPresent()) {
+                int predicateColumn = s.getFieldNames().indexOf(predicate.get().getColumnName());
+                if (predicateColumn == -1) {
+                    throw new DatabaseException("Column of the index predicate does not exist");
+                }
+                if (!s.getFieldTypes().get(predicateColumn).equals(predicate.get().getValue().type())) {
+                    throw new DatabaseException("Value of the index predicate has the wrong type");
+                }
+            }
+
+            String indexName = tableName + "," + columnName;
+            IndexBuild build = new IndexBuild(tableName, s, column, predicate);
+            if (Database.this.indexBuilds.putIfAbsent(indexName, build) != null) {
+                throw new DatabaseException("Index is already being built");
+            }
+            if (Database.this.tableIndices.get(tableName).contains(indexName)) {
+                Database.this.indexBuilds.remove(indexName);
+                throw new DatabaseException("Index already exists");
+            }
+
+            Type colType = s.getFieldTypes().get(column);
+            Path p = Paths.get(Database.this.fileDir, indexName + indexFileExtension(indexType));
+            LockContext indexContext = getIndexContext(indexName);
+            Index index = null;
+            try {
+                List<Pair<DataBox, RecordId>> entries = scanForIndexBuild(tab, column, predicate);
+                if (indexType == IndexType.HASH || indexType == IndexType.LSM) {
+                    index = indexType == IndexType.HASH
+                            ? new HashIndex(p.toString(), colType, predicate, indexContext, this)
+                            : new LSMIndex(p.toString(), colType, LSMIndex.DEFAULT_MEMTABLE_CAPACITY,
+                                           predicate, indexContext, this);
+                    for (Pair<DataBox, RecordId> entry : entries) {
+                        index.put(this, entry.getFirst(), entry.getSecond());
+                    }
+                } else if (indexType == IndexType.LEARNED) {
+                    LearnedIndex learned = new LearnedIndex(p.toString(), colType, LearnedIndex.DEFAULT_MAX_ERROR,
+                                                            predicate, indexContext, this);
+                    index = learned;
+                    entries.sort(Comparator.comparing(Pair::getFirst));
+                    learned.bulkLoad(this, entries.iterator());
+                } else {
+                    Schema noIncluded = new Schema(new ArrayList<>(), new ArrayList<>());
+                    BPlusTree tree = new BPlusTree(p.toString(), colType, noIncluded,
+                                                   BPlusTree.maxOrder(Page.pageSize, colType, noIncluded, true),
+                                                   true, predicate, indexContext, this);
+                    // Load contiguous key ranges of the sorted entries in parallel.
+                    entries.sort(Comparator.comparing(Pair::getFirst));
+                    int numPartitions = Runtime.getRuntime().availableProcessors();
+                    List<Iterator<Pair<DataBox, RecordId>>> partitions = new ArrayList<>();
+                    for (int i = 0; i < numPartitions; ++i) {
+                        partitions.add(entries.subList(i * entries.size() / numPartitions,
+                                                       (i + 1) * entries.size() / numPartitions).iterator());
+                    }
+                    tree.bulkLoad(this, partitions, INDEX_BUILD_FILL_FACTOR);
+                    index = tree;
+                }
+
+                // Catch up with the side log while writers keep going, then stop them for the
+                // last few changes and publish the index.
+                List<Pair<DataBox, RecordId>> changes = build.drain();
+                while (changes.size() > INDEX_BUILD_CATCH_UP_THRESHOLD) {
+                    applyIndexBuildChanges(index, changes);
+                    changes = build.drain();
+                }
+                Database.this.indexMaintenanceLock.writeLock().lock();
+                try {
+                    applyIndexBuildChanges(index, changes);
+                    applyIndexBuildChanges(index, build.drain());
+                    Database.this.indexLookup.put(indexName, index);
+                    Database.this.tableIndices.get(tableName).add(indexName);
+                    Database.this.indexBuilds.remove(indexName);
+                } finally {
+                    Database.this.indexMaintenanceLock.writeLock().unlock();
+                }
+            } catch (IndexException e) {
+                throw new DatabaseException(e.getMessage());
+            } finally {
+                // the build is only still registered if it failed
+                if (Database.this.indexBuilds.remove(indexName, build) && index != null) {
+                    index.close();
+                    p.toFile().delete();
+                }
+            }
+        }
+
+        /**
+         * Returns the (key, record id) pairs of a table for an index on `column`, skipping the
+         * records that do not satisfy the predicate of a partial index. Unlike ridIterator, which
+         * locks the whole table, the scan locks one page at a time and releases the lock once it
+         * is done with the page, so that writers are never blocked on the pages it has already
+         * read.
+         */
+        private List<Pair<DataBox, RecordId>> scanForIndexBuild(Table tab, int column,
+                Optional<IndexPredicate> predicate) throws DatabaseException {
+            LockContext tableContext = getTableContext(tab.getName());
+            List<Pair<DataBox, RecordId>> entries = new ArrayList<>();
+
+            Iterator<Page> pages = tab.getAllocator().iterator(this);
+            pages.next(); // Skip the header page.
+            while (pages.hasNext()) {
+                Page page = pages.next();
+                byte[] bitmap = tab.getBitMap(this, page);
+                for (short i = 0; i < tab.getNumRecordsPerPage(); ++i) {
+                    if (Bits.getBit(bitmap, i) == Bits.Bit.ONE) {
+                        RecordId rid = new RecordId(page.getPageNum(), i);
+                        List<DataBox> values = tab.getRecord(this, rid).getValues();
+                        if (!predicate.isPresent() || predicate.get().matches(tab.getSchema(), values)) {
+                            entries.add(new Pair<>(values.get(column), rid));
+                        }
+                    }
+                }
+
+                LockContext pageContext = tableContext.childContext(page.getPageNum());
+                if (pageContext.getExplicitLockType(this) == LockType.S) {
+                    pageContext.release(this);
+                }
+            }
+            return entries;
+        }
+
+        /**
+         * Applies changes from the side log of an index build to the index. A change (k, r)
+         * maps k to r, and a change (k, null) removes k. Since the scan of the table may or may
+         * not have seen a change, each change replaces whatever the index has for its key.
+         */
+        private void applyIndexBuildChanges(Index index,
+                                            List<Pair<DataBox, RecordId>> changes) throws IndexException {
+            for (Pair<DataBox, RecordId> change : changes) {
+                index.remove(this, change.getFirst());
+                if (change.getSecond() != null) {
+                    index.put(this, change.getFirst(), change.getSecond());
+                }
+            }
+        }
+
         /**
          * Delete a table in this database.
          *
@@ -314,10 +710,16 @@ public class Database {
             while (indices.hasNext()) {
                 String indexName = indices.next();
                 indices.remove();
-                Database.this.indexLookup.get(indexName).close();
-                Database.this.indexLookup.remove(indexName);
+                IndexType indexType = IndexType.BITMAP;
+                if (Database.this.bitmapIndexLookup.containsKey(indexName)) {
+                    Database.this.bitmapIndexLookup.remove(indexName).close();
+                } else {
+                    Index index = Database.this.indexLookup.remove(indexName);
+                    index.close();
+                    indexType = index.getIndexType();
+                }
 
-                File indexFile = new File(fileDir + indexName + BPlusTree.FILENAME_EXTENSION);
+                File indexFile = new File(fileDir + indexName + indexFileExtension(indexType));
                 indexFile.delete();
             }
             Database.this.tableIndices.remove(tableName);
@@ -367,7 +769,7 @@ public class Database {
             }
         }
 
-        public String createTempTable(Schema schema) throws DatabaseException {
+        public synchronized String createTempTable(Schema schema) throws DatabaseException {
             assert(this.active);
             String tempTableName = "tempTable" + tempTableCounter;
             tempTableCounter++;
@@ -408,18 +810,101 @@ public class Database {
             return true;
         }
 
+        public boolean bitmapIndexExists(String tableName, String columnName) {
+            try {
+                resolveBitmapIndexFromName(tableName, columnName);
+            } catch (DatabaseException e) {
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Returns the records of the table that satisfy every entry of `predicates`, where an
+         * entry (c, vs) is satisfied by the records whose column c equals one of the values vs.
+         * Every column c must have a bitmap index. The predicates are evaluated by combining the
+         * bitmaps of the columns (OR within an entry, AND across entries), so only the matching
+         * records are read from the table.
+         */
+        public Iterator<Record> bitmapScan(String tableName,
+                                           Map<String, List<DataBox>> predicates) throws DatabaseException {
+            Table tab = getTable(tableName);
+            LockContext lc = Database.this.getTableContext((tableName));
+            LockUtil.ensureSufficientLockHeld(this, lc, LockType.S);
+
+            RoaringBitmap positions = bitmapPositions(tableName, predicates);
+            BitmapIndex index = resolveBitmapIndexFromName(tableName, predicates.keySet().iterator().next());
+            return new RecordIterator(this, tab, index.toRecordIds(positions));
+        }
+
+        /**
+         * Returns the number of distinct pages that bitmapScan(tableName, predicates) reads. The
+         * bitmaps are held in memory, so counting the pages does not read any page.
+         */
+        public int bitmapScanNumPages(String tableName,
+                                      Map<String, List<DataBox>> predicates) throws DatabaseException {
+            LockContext lc = Database.this.getTableContext((tableName));
+            LockUtil.ensureSufficientLockHeld(this, lc, LockType.S);
+
+            int recordsPerPage = getNumEntriesPerPage(tableName);
+            int numPages = 0;
+            int lastPage = -1;
+            for (int position : bitmapPositions(tableName, predicates)) {
+                if (position / recordsPerPage != lastPage) {
+                    lastPage = position / recordsPerPage;
+                    numPages++;
+                }
+            }
+            return numPages;
+        }
+
+        /** Returns the positions of the records that satisfy predicates (see bitmapScan). */
+        private RoaringBitmap bitmapPositions(String tableName, Map<String, List<DataBox>> predicates)
+        throws DatabaseException {
+            RoaringBitmap positions = null;
+            for (Map.Entry<String, List<DataBox>> predicate : predicates.entrySet()) {
+                BitmapIndex index = resolveBitmapIndexFromName(tableName, predicate.getKey());
+                RoaringBitmap matches = new RoaringBitmap();
+                for (DataBox value : predicate.getValue()) {
+                    matches = RoaringBitmap.or(matches, index.lookup(this, value));
+                }
+                positions = positions == null ? matches : RoaringBitmap.and(positions, matches);
+            }
+            if (positions == null) {
+                throw new DatabaseException("A bitmap scan needs at least one predicate");
+            }
+            return positions;
+        }
+
+        /**
+         * Returns the columns of every composite (multi-column) index on the table, each in
+         * the order of the index's key.
+         */
+        public List<List<String>> getCompositeIndices(String tableName) {
+            while (aliasMaps.containsKey(tableName)) {
+                tableName = aliasMaps.get(tableName);
+            }
+            List<List<String>> indices = new ArrayList<>();
+            for (String indexName : Database.this.tableIndices.getOrDefault(tableName, new ArrayList<>())) {
+                String[] parts = indexName.split(",");
+                if (parts.length > 2) {
+                    indices.add(Arrays.asList(parts).subList(1, parts.length));
+                }
+            }
+            return indices;
+        }
+
         public Iterator<Record> sortedScan(String tableName, String columnName) throws DatabaseException {
             Table tab = getTable(tableName);
             LockContext lc = Database.this.getTableContext((tableName));
             LockUtil.ensureSufficientLockHeld(this, lc, LockType.S);
             try {
-                Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnName);
+                Pair<String, OrderedIndex> index = resolveOrderedIndexFromName(tableName, columnName);
                 return new RecordIterator(this, tab, index.getSecond().scanAll(this));
             } catch (DatabaseException e1) {
                 int offset = getTable(tableName).getSchema().getFieldNames().indexOf(columnName);
                 try {
-                    return new SortOperator(this, tableName,
-                                            Comparator.comparing((Record r) -> r.getValues().get(offset))).iterator();
+                    return new SortOperator(this, tableName, new int[] {offset}, true).iterator();
                 } catch (QueryPlanException e2) {
                     throw new DatabaseException(e2);
                 }
@@ -429,7 +914,7 @@ public class Database {
         public Iterator<Record> sortedScanFrom(String tableName, String columnName,
                                                DataBox startValue) throws DatabaseException {
             Table tab = getTable(tableName);
-            Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnName);
+            Pair<String, OrderedIndex> index = resolveOrderedIndexFromName(tableName, columnName);
 
             LockContext lc = Database.this.getTableContext((tableName));
             LockUtil.ensureSufficientLockHeld(this, lc, LockType.S);
@@ -438,15 +923,98 @@ public class Database {
             return new RecordIterator(this, tab, index.getSecond().scanGreaterEqual(this, startValue));
         }
 
+        public Iterator<Record> sortedScanDescending(String tableName,
+                                                     String columnName) throws DatabaseException {
+            Table tab = getTable(tableName);
+            Pair<String, OrderedIndex> index = resolveOrderedIndexFromName(tableName, columnName);
+
+            LockContext lc = Database.this.getTableContext((tableName));
+            LockUtil.ensureSufficientLockHeld(this, lc, LockType.S);
+
+            return new RecordIterator(this, tab, index.getSecond().scanAllDescending(this));
+        }
+
+        public Iterator<Record> sortedScanDescendingFrom(String tableName, String columnName,
+                                                         DataBox startValue) throws DatabaseException {
+            Table tab = getTable(tableName);
+            Pair<String, OrderedIndex> index = resolveOrderedIndexFromName(tableName, columnName);
+
+            LockContext lc = Database.this.getTableContext((tableName));
+            LockUtil.ensureSufficientLockHeld(this, lc, LockType.S);
+
+            return new RecordIterator(this, tab, index.getSecond().scanLessEqual(this, startValue));
+        }
+
+        public Iterator<Record> sortedScanRange(String tableName, String columnName,
+                                                DataBox lo, boolean loInclusive,
+                                                DataBox hi, boolean hiInclusive) throws DatabaseException {
+            Table tab = getTable(tableName);
+            Pair<String, OrderedIndex> index = resolveOrderedIndexFromName(tableName, columnName);
+
+            LockContext lc = Database.this.getTableContext((tableName));
+            LockUtil.ensureSufficientLockHeld(this, lc, LockType.S);
+
+            return new RecordIterator(this, tab,
+                                      index.getSecond().scanRange(this, lo, loInclusive, hi, hiInclusive));
+        }
+
+        /**
+         * Returns the number of records whose value of columnName lies between lo and hi, with the
+         * same bounds as sortedScanRange, without fetching any records. A B+ tree index built by
+         * the database answers this with at most two root-to-leaf traversals.
+         */
+        public int countRange(String tableName, String columnName,
+                              DataBox lo, boolean loInclusive,
+                              DataBox hi, boolean hiInclusive) throws DatabaseException {
+            Pair<String, OrderedIndex> index = resolveOrderedIndexFromName(tableName, columnName);
+
+            LockContext lc = Database.this.getTableContext((tableName));
+            LockUtil.ensureSufficientLockHeld(this, lc, LockType.S);
+
+            return index.getSecond().count(this, lo, loInclusive, hi, hiInclusive);
+        }
+
+        /**
+         * Returns the schema of the columns included in the index on (tableName, columnName).
+         * The schema has no fields unless the index is a covering index.
+         */
+        public Schema getIndexIncludedSchema(String tableName,
+                                             String columnName) throws DatabaseException {
+            return resolveIndexFromName(tableName, columnName).getSecond().getIncludedSchema();
+        }
+
+        public Iterator<Record> coveringScanRange(String tableName, String columnName,
+                                                  DataBox lo, boolean loInclusive,
+                                                  DataBox hi, boolean hiInclusive) throws DatabaseException {
+            Pair<String, BPlusTree> index = resolveTreeFromName(tableName, columnName);
+
+            LockContext lc = Database.this.getTableContext((tableName));
+            LockUtil.ensureSufficientLockHeld(this, lc, LockType.S);
+
+            Iterator<List<DataBox>> entries = index.getSecond().scanRangeCovering(this, lo, loInclusive,
+                                              hi, hiInclusive);
+            return new Iterator<Record>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public Record next() {
+                    return new Record(entries.next());
+                }
+            };
+        }
+
         public Iterator<Record> lookupKey(String tableName, String columnName,
                                           DataBox key) throws DatabaseException {
             Table tab = getTable(tableName);
-            Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnName);
+            Pair<String, Index> index = resolveIndexFromName(tableName, columnName);
             return new RecordIterator(this, tab, index.getSecond().scanEqual(this, key));
         }
 
         public boolean contains(String tableName, String columnName, DataBox key) throws DatabaseException {
-            Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnName);
+            Pair<String, Index> index = resolveIndexFromName(tableName, columnName);
             return index.getSecond().get(this, key).isPresent();
         }
 
@@ -458,19 +1026,56 @@ public class Database {
             Schema s = tab.getSchema();
             List<String> colNames = s.getFieldNames();
 
-            for (int i = 0; i < colNames.size(); i++) {
-                String col = colNames.get(i);
-                if (indexExists(tableName, col)) {
+            Database.this.indexMaintenanceLock.readLock().lock();
+            try {
+                for (int i = 0; i < colNames.size(); i++) {
+                    String col = colNames.get(i);
+                    if (indexExists(tableName, col)) {
+                        Index index = resolveIndexFromName(tableName, col).getSecond();
+                        if (!holdsRecord(index, s, values)) {
+                            continue;
+                        }
+                        try {
+                            putIntoIndex(index, s, values, values.get(i), rid);
+                        } catch (IndexException e) {
+                            throw new DatabaseException(e.getMessage());
+                        }
+                    }
+                }
+                for (List<String> keyCols : getCompositeIndices(tableName)) {
+                    Index index = resolveIndexFromName(tableName, String.join(",", keyCols)).getSecond();
                     try {
-                        resolveIndexFromName(tableName, col).getSecond().put(this, values.get(i), rid);
-                    } catch (BPlusTreeException e) {
+                        putIntoIndex(index, s, values, compositeKey(s, values, keyCols), rid);
+                    } catch (IndexException e) {
                         throw new DatabaseException(e.getMessage());
                     }
                 }
+                updateBitmapIndices(tableName, s, null, values, rid);
+                logIndexBuilds(tab.getName(), null, values, rid);
+            } finally {
+                Database.this.indexMaintenanceLock.readLock().unlock();
             }
             return rid;
         }
 
+        /**
+         * Adds records to a temporary table a page at a time, without looking for a free
+         * slot for each of them (see Table.addRecords). Records of any other table are added
+         * one at a time with addRecord, which keeps the indices of the table up to date.
+         */
+        public void addRecords(String tableName, List<List<DataBox>> values) throws DatabaseException {
+            assert(this.active);
+
+            Table tab = this.tempTables.get(tableName);
+            if (tab == null) {
+                for (List<DataBox> recordValues : values) {
+                    this.addRecord(tableName, recordValues);
+                }
+                return;
+            }
+            tab.addRecords(this, values);
+        }
+
         public int getNumMemoryPages() throws DatabaseException {
             assert(this.active);
             return Database.this.numMemoryPages;
@@ -485,11 +1090,26 @@ public class Database {
             Record rec = tab.deleteRecord(this, rid);
             List<DataBox> values = rec.getValues();
             List<String> colNames = s.getFieldNames();
-            for (int i = 0; i < colNames.size(); i++) {
-                String col = colNames.get(i);
-                if (indexExists(tableName, col)) {
-                    resolveIndexFromName(tableName, col).getSecond().remove(this, values.get(i));
+
+            Database.this.indexMaintenanceLock.readLock().lock();
+            try {
+                for (int i = 0; i < colNames.size(); i++) {
+                    String col = colNames.get(i);
+                    if (indexExists(tableName, col)) {
+                        Index index = resolveIndexFromName(tableName, col).getSecond();
+                        if (holdsRecord(index, s, values)) {
+                            index.remove(this, values.get(i));
+                        }
+                    }
+                }
+                for (List<String> keyCols : getCompositeIndices(tableName)) {
+                    Index index = resolveIndexFromName(tableName, String.join(",", keyCols)).getSecond();
+                    index.remove(this, compositeKey(s, values, keyCols));
                 }
+                updateBitmapIndices(tableName, s, values, null, rid);
+                logIndexBuilds(tab.getName(), values, null, rid);
+            } finally {
+                Database.this.indexMaintenanceLock.readLock().unlock();
             }
 
             return rid;
@@ -566,22 +1186,127 @@ public class Database {
             List<DataBox> oldValues = rec.getValues();
             List<String> colNames = s.getFieldNames();
 
-            for (int i = 0; i < colNames.size(); i++) {
-                String col = colNames.get(i);
-                if (indexExists(tableName, col)) {
-                    BPlusTree tree = resolveIndexFromName(tableName, col).getSecond();
-                    tree.remove(this, oldValues.get(i));
+            Database.this.indexMaintenanceLock.readLock().lock();
+            try {
+                for (int i = 0; i < colNames.size(); i++) {
+                    String col = colNames.get(i);
+                    if (indexExists(tableName, col)) {
+                        Index index = resolveIndexFromName(tableName, col).getSecond();
+                        if (holdsRecord(index, s, oldValues)) {
+                            index.remove(this, oldValues.get(i));
+                        }
+                        if (!holdsRecord(index, s, values)) {
+                            continue;
+                        }
+                        try {
+                            putIntoIndex(index, s, values, values.get(i), rid);
+                        } catch (IndexException e) {
+                            throw new DatabaseException(e.getMessage());
+                        }
+                    }
+                }
+                for (List<String> keyCols : getCompositeIndices(tableName)) {
+                    Index index = resolveIndexFromName(tableName, String.join(",", keyCols)).getSecond();
+                    index.remove(this, compositeKey(s, oldValues, keyCols));
                     try {
-                        tree.put(this, values.get(i), rid);
-                    } catch (BPlusTreeException e) {
+                        putIntoIndex(index, s, values, compositeKey(s, values, keyCols), rid);
+                    } catch (IndexException e) {
                         throw new DatabaseException(e.getMessage());
                     }
                 }
+                updateBitmapIndices(tableName, s, oldValues, values, rid);
+                logIndexBuilds(tab.getName(), oldValues, values, rid);
+            } finally {
+                Database.this.indexMaintenanceLock.readLock().unlock();
             }
 
             return rid;
         }
 
+        /**
+         * Moves the record with id `rid` from `oldValues` to `newValues` in the bitmap indices of
+         * the table. oldValues is null for a new record and newValues is null for a deleted one.
+         */
+        private void updateBitmapIndices(String tableName, Schema s, List<DataBox> oldValues,
+                                         List<DataBox> newValues, RecordId rid) throws DatabaseException {
+            List<String> colNames = s.getFieldNames();
+            for (int i = 0; i < colNames.size(); i++) {
+                if (!bitmapIndexExists(tableName, colNames.get(i))) {
+                    continue;
+                }
+                if (oldValues != null && newValues != null && oldValues.get(i).equals(newValues.get(i))) {
+                    continue;
+                }
+                BitmapIndex index = resolveBitmapIndexFromName(tableName, colNames.get(i));
+                if (oldValues != null) {
+                    index.remove(this, oldValues.get(i), rid);
+                }
+                if (newValues != null) {
+                    try {
+                        index.add(this, newValues.get(i), rid);
+                    } catch (IndexException e) {
+                        throw new DatabaseException(e.getMessage());
+                    }
+                }
+            }
+        }
+
+        /**
+         * Captures a change to the record with id `rid` in the side logs of the indices being
+         * built on the table by createIndex. oldValues is null for a new record and newValues is
+         * null for a deleted one.
+         */
+        private void logIndexBuilds(String tableName, List<DataBox> oldValues,
+                                    List<DataBox> newValues, RecordId rid) {
+            for (IndexBuild build : Database.this.indexBuilds.values()) {
+                if (build.tableName.equals(tableName)) {
+                    build.log(oldValues, newValues, rid);
+                }
+            }
+        }
+
+        /**
+         * Returns true if the record `values` of a table with schema `s` belongs in `index`: every
+         * record belongs in a full index, but only those that satisfy its predicate belong in a
+         * partial index.
+         */
+        private boolean holdsRecord(Index index, Schema s, List<DataBox> values) {
+            Optional<IndexPredicate> predicate = index.getPredicate();
+            return !predicate.isPresent() || predicate.get().matches(s, values);
+        }
+
+        /**
+         * Inserts the record `values` with id `rid` into `index` under `key`, along with the values
+         * of any columns included in the index. `s` is the schema of the table.
+         */
+        private void putIntoIndex(Index index, Schema s, List<DataBox> values, DataBox key,
+                                  RecordId rid) throws IndexException {
+            List<String> includedNames = index.getIncludedSchema().getFieldNames();
+            if (includedNames.isEmpty()) {
+                index.put(this, key, rid);
+                return;
+            }
+
+            // only B+ trees have included columns; see createTableWithIndices
+            List<DataBox> included = new ArrayList<>();
+            for (String includedName : includedNames) {
+                included.add(values.get(s.getFieldNames().indexOf(includedName)));
+            }
+            ((BPlusTree) index).put(this, key, rid, included);
+        }
+
+        /**
+         * Returns the key of the record `values` in the composite index on the columns `keyCols`
+         * of a table with schema `s`.
+         */
+        private DataBox compositeKey(Schema s, List<DataBox> values, List<String> keyCols) {
+            List<DataBox> key = new ArrayList<>();
+            for (String col : keyCols) {
+                key.add(values.get(s.getFieldNames().indexOf(col)));
+            }
+            return new CompositeDataBox(key);
+        }
+
         public TableStats getStats(String tableName) throws DatabaseException {
             assert(this.active);
             return getTable(tableName).getStats();
@@ -617,11 +1342,34 @@ public class Database {
             return getTable(tableName).getNumRecords();
         }
 
+        public IndexType getIndexType(String tableName, String columnName) throws DatabaseException {
+            return resolveIndexFromName(tableName, columnName).getSecond().getIndexType();
+        }
+
         public int getNumIndexPages(String tableName, String columnName) throws DatabaseException {
             assert(this.active);
             return this.resolveIndexFromName(tableName, columnName).getSecond().getNumPages();
         }
 
+        /**
+         * Returns the statistics of the index on tableName.columnName (see IndexStats), which
+         * the index keeps up to date on its own as records are added and removed.
+         */
+        public IndexStats getIndexStats(String tableName, String columnName) throws DatabaseException {
+            assert(this.active);
+            return this.resolveIndexFromName(tableName, columnName).getSecond().getStats();
+        }
+
+        /**
+         * Returns the predicate of the index on tableName.columnName if it is a partial index, or
+         * Optional.empty() if it holds every record of the table.
+         */
+        public Optional<IndexPredicate> getIndexPredicate(String tableName,
+                String columnName) throws DatabaseException {
+            assert(this.active);
+            return this.resolveIndexFromName(tableName, columnName).getSecond().getPredicate();
+        }
+
         public Schema getSchema(String tableName) throws DatabaseException {
             assert(this.active);
             return getTable(tableName).getSchema();
@@ -639,8 +1387,52 @@ public class Database {
             return new Schema(newColumnNames, schema.getFieldTypes());
         }
 
-        private Pair<String, BPlusTree> resolveIndexFromName(String tableName,
+        /**
+         * Like resolveIndexFromName, but for scans that need the index's keys in order, so the
+         * index must be an OrderedIndex.
+         */
+        private Pair<String, OrderedIndex> resolveOrderedIndexFromName(String tableName,
+                String columnName) throws DatabaseException {
+            Pair<String, Index> index = resolveIndexFromName(tableName, columnName);
+            if (!(index.getSecond() instanceof OrderedIndex)) {
+                throw new DatabaseException("Index " + index.getFirst() + " does not support ordered scans");
+            }
+            return new Pair<>(index.getFirst(), (OrderedIndex) index.getSecond());
+        }
+
+        /**
+         * Like resolveOrderedIndexFromName, but for scans that need the columns included in
+         * the index's entries, so the index must be a B+ tree.
+         */
+        private Pair<String, BPlusTree> resolveTreeFromName(String tableName,
                 String columnName) throws DatabaseException {
+            Pair<String, Index> index = resolveIndexFromName(tableName, columnName);
+            if (!(index.getSecond() instanceof BPlusTree)) {
+                throw new DatabaseException("Index " + index.getFirst() + " does not support ordered scans");
+            }
+            return new Pair<>(index.getFirst(), (BPlusTree) index.getSecond());
+        }
+
+        private Pair<String, Index> resolveIndexFromName(String tableName,
+                String columnName) throws DatabaseException {
+            String indexName = resolveIndexName(tableName, columnName);
+            if (Database.this.indexLookup.containsKey(indexName)) {
+                return new Pair<>(indexName, Database.this.indexLookup.get(indexName));
+            }
+            throw new DatabaseException("Index does not exist");
+        }
+
+        private BitmapIndex resolveBitmapIndexFromName(String tableName,
+                String columnName) throws DatabaseException {
+            String indexName = resolveIndexName(tableName, columnName);
+            if (Database.this.bitmapIndexLookup.containsKey(indexName)) {
+                return Database.this.bitmapIndexLookup.get(indexName);
+            }
+            throw new DatabaseException("Bitmap index does not exist");
+        }
+
+        /** Returns the name of the index on (tableName, columnName), resolving aliases. */
+        private String resolveIndexName(String tableName, String columnName) throws DatabaseException {
             while (aliasMaps.containsKey(tableName)) {
                 tableName = aliasMaps.get(tableName);
             }
@@ -654,11 +1446,7 @@ public class Database {
                 }
                 columnName = columnName.split("\\.")[1];
             }
-            String indexName = tableName + "," + columnName;
-            if (Database.this.indexLookup.containsKey(indexName)) {
-                return new Pair<>(indexName, Database.this.indexLookup.get(indexName));
-            }
-            throw new DatabaseException("Index does not exist");
+            return tableName + "," + columnName;
         }
 
         private Table getTable(String tableName) throws DatabaseException {
@@ -684,15 +1472,16 @@ public class Database {
                 return;
             }
 
-            this.tempTables.get(tempTableName).close();
+            this.tempTables.remove(tempTableName).close();
             Database.this.tableLookup.remove(tempTableName);
 
-            File f = new File(Database.this.fileDir + "temp/" + tempTableName + Table.FILENAME_EXTENSION);
-            f.delete();
+            Path path = Paths.get(Database.this.fileDir, "temp", tempTableName + Table.FILENAME_EXTENSION);
+            path.toFile().delete();
         }
 
         private void deleteAllTempTables() {
-            Set<String> keys = tempTables.keySet();
+            // deleting a temp table removes it from tempTables
+            Set<String> keys = new HashSet<>(tempTables.keySet());
 
             for (String tableName : keys) {
                 deleteTempTable(tableName);
@@ -726,6 +1515,54 @@ public class Database {
         }
     }
 
+    /**
+     * An index being built by createIndex on the column at position `column` of a table, along
+     * with the side log of the changes made to the table since the build started.
+     */
+    private static class IndexBuild {
+        private final String tableName;
+        private final Schema schema;
+        private final int column;
+        private final Optional<IndexPredicate> predicate;
+        private List<Pair<DataBox, RecordId>> changes = new ArrayList<>();
+
+        IndexBuild(String tableName, Schema schema, int column, Optional<IndexPredicate> predicate) {
+            this.tableName = tableName;
+            this.schema = schema;
+            this.column = column;
+            this.predicate = predicate;
+        }
+
+        /**
+         * Captures the change of the record with id `rid` from oldValues to newValues. For a
+         * partial index, a record that does not satisfy the predicate is treated as absent.
+         */
+        synchronized void log(List<DataBox> oldValues, List<DataBox> newValues, RecordId rid) {
+            DataBox oldKey = indexed(oldValues) ? oldValues.get(column) : null;
+            DataBox newKey = indexed(newValues) ? newValues.get(column) : null;
+            if (oldKey != null && oldKey.equals(newKey)) {
+                return;
+            }
+            if (oldKey != null) {
+                changes.add(new Pair<>(oldKey, null));
+            }
+            if (newKey != null) {
+                changes.add(new Pair<>(newKey, rid));
+            }
+        }
+
+        private boolean indexed(List<DataBox> values) {
+            return values != null && (!predicate.isPresent() || predicate.get().matches(schema, values));
+        }
+
+        /** Returns and clears the changes captured so far. */
+        synchronized List<Pair<DataBox, RecordId>> drain() {
+            List<Pair<DataBox, RecordId>> drained = changes;
+            changes = new ArrayList<>();
+            return drained;
+        }
+    }
+
     /* ******************************************************************************** */
     /* Every that follows is solely for the purpose of testing certain homeworks without
        requiring that previous homeworks be properly implemented. You should not change anything
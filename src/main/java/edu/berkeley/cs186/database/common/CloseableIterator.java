@@ -0,0 +1,27 @@
+package edu.berkeley.cs186.database.common;
+
+import java.util.Iterator;
+
+/**
+ * An iterator that can be closed before it is exhausted, e.g. by a consumer
+ * that only wants the first few values of a query. Closing an iterator stops
+ * it and everything it reads from, and releases what it holds, like temporary
+ * tables, right away instead of when the transaction ends.
+ *
+ * A closed iterator has no more values. Closing an iterator more than once,
+ * or closing one that is exhausted, does nothing.
+ */
+public interface CloseableIterator<T> extends Iterator<T>, AutoCloseable {
+    @Override
+    void close();
+
+    /**
+     * Closes iterator if it is a CloseableIterator, which lets an iterator
+     * close its source without knowing what kind of iterator it is.
+     */
+    static void close(Iterator<?> iterator) {
+        if (iterator instanceof CloseableIterator) {
+            ((CloseableIterator<?>) iterator).close();
+        }
+    }
+}
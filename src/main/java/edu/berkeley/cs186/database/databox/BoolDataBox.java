@@ -25,6 +25,11 @@ public class BoolDataBox extends DataBox {
         return ByteBuffer.allocate(1).put(val).array();
     }
 
+    @Override
+    public byte[] toNormalizedKey() {
+        return toBytes();
+    }
+
     @Override
     public String toString() {
         return new Boolean(b).toString();
@@ -0,0 +1,165 @@
+package edu.berkeley.cs186.database.databox;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The key of an index on multiple columns. A CompositeDataBox is a list of
+ * primitive DataBoxes, one per column, that is ordered lexicographically: first
+ * by its first component, then by its second, and so on.
+ *
+ *   DataBox k = new CompositeDataBox(Arrays.asList(new IntDataBox(186),
+ *                                                  new IntDataBox(42)));
+ *
+ * To find every key that starts with some values, e.g. every key of an index on
+ * (course_id, student_id) with course_id 186, scan the index from
+ * CompositeDataBox.prefixLowerBound(vs) to CompositeDataBox.prefixUpperBound(vs).
+ * A prefix lower bound sorts before, and a prefix upper bound after, every full
+ * key that starts with its values.
+ */
+public class CompositeDataBox extends DataBox {
+    private List<DataBox> values;
+
+    // 0 for a full key. -1 for a prefix lower bound and 1 for a prefix upper
+    // bound; see compareTo.
+    private int prefixBias;
+
+    public CompositeDataBox(List<DataBox> values) {
+        this(values, 0);
+    }
+
+    private CompositeDataBox(List<DataBox> values, int prefixBias) {
+        if (values.isEmpty()) {
+            throw new DataBoxException("Composite keys must have at least one component.");
+        }
+        this.values = Collections.unmodifiableList(new ArrayList<>(values));
+        this.prefixBias = prefixBias;
+    }
+
+    /**
+     * Returns a key that sorts before every composite key whose first
+     * values.size() components are `values`, and after every other key that
+     * sorts before them.
+     */
+    public static CompositeDataBox prefixLowerBound(List<DataBox> values) {
+        return new CompositeDataBox(values, -1);
+    }
+
+    /**
+     * Returns a key that sorts after every composite key whose first
+     * values.size() components are `values`, and before every other key that
+     * sorts after them.
+     */
+    public static CompositeDataBox prefixUpperBound(List<DataBox> values) {
+        return new CompositeDataBox(values, 1);
+    }
+
+    public List<DataBox> getValues() {
+        return values;
+    }
+
+    /** Returns true if this is a prefix bound rather than a full key. */
+    public boolean isPrefix() {
+        return prefixBias != 0;
+    }
+
+    /**
+     * Returns true if the components of this key have the same types as the
+     * first components of keys of type `t`.
+     */
+    public boolean isPrefixOf(Type t) {
+        List<Type> componentTypes = t.getComponentTypes();
+        if (t.getTypeId() != TypeId.COMPOSITE || values.size() > componentTypes.size()) {
+            return false;
+        }
+        for (int i = 0; i < values.size(); ++i) {
+            if (!values.get(i).type().equals(componentTypes.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Type type() {
+        List<Type> types = new ArrayList<>();
+        for (DataBox d : values) {
+            types.add(d.type());
+        }
+        return Type.compositeType(types);
+    }
+
+    @Override
+    public byte[] toBytes() {
+        ByteBuffer buf = ByteBuffer.allocate(type().getSizeInBytes());
+        for (DataBox d : values) {
+            buf.put(d.toBytes());
+        }
+        return buf.array();
+    }
+
+    @Override
+    public byte[] toNormalizedKey() {
+        if (prefixBias != 0) {
+            throw new DataBoxException("Prefix bounds have no normalized key.");
+        }
+        ByteBuffer buf = ByteBuffer.allocate(type().getSizeInBytes());
+        for (DataBox d : values) {
+            buf.put(d.toNormalizedKey());
+        }
+        return buf.array();
+    }
+
+    @Override
+    public String toString() {
+        List<String> ss = new ArrayList<>();
+        for (DataBox d : values) {
+            ss.add(d.toString());
+        }
+        return String.format("(%s)", String.join(", ", ss));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof CompositeDataBox)) {
+            return false;
+        }
+        CompositeDataBox c = (CompositeDataBox) o;
+        return values.equals(c.values) && prefixBias == c.prefixBias;
+    }
+
+    @Override
+    public int hashCode() {
+        return values.hashCode() + prefixBias;
+    }
+
+    @Override
+    public int compareTo(DataBox d) {
+        if (!(d instanceof CompositeDataBox)) {
+            String err = String.format("Invalid comparison between %s and %s.",
+                                       toString(), d.toString());
+            throw new DataBoxException(err);
+        }
+        CompositeDataBox c = (CompositeDataBox) d;
+        int n = Math.min(values.size(), c.values.size());
+        for (int i = 0; i < n; ++i) {
+            int cmp = values.get(i).compareTo(c.values.get(i));
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+
+        // The shared components are equal, so the order is decided by prefix
+        // bounds: a lower bound sorts before everything it is a prefix of and
+        // an upper bound sorts after.
+        if (values.size() == c.values.size()) {
+            return Integer.compare(prefixBias, c.prefixBias);
+        }
+        return values.size() < c.values.size() ? prefixBias : -c.prefixBias;
+    }
+}
@@ -3,6 +3,8 @@ package edu.berkeley.cs186.database.databox;
 import edu.berkeley.cs186.database.common.Buffer;
 
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A DataBox is an element of one of the primitive types specified in
@@ -10,8 +12,9 @@ import java.nio.charset.Charset;
  *
  *   - booleans with new BoolDataBox(b),
  *   - integers with new IntDataBox(i),
- *   - floats with new FloatDataBox(f), and
- *   - strings with new StringDataBox(s, n).
+ *   - floats with new FloatDataBox(f),
+ *   - strings with new StringDataBox(s, n), and
+ *   - composite index keys with new CompositeDataBox(values).
  *
  * You can unwrap a databox by first pattern matching on its type and then
  * using one of getBool, getInt, getFloat, and getString:
@@ -51,12 +54,32 @@ public abstract class DataBox implements Comparable<DataBox> {
     //     values (e.g. using ByteBuffer::putInt or ByteBuffer::putFloat).
     //   - The first byte of a serialized m-byte StringDataBox is the 4-byte
     //     number m. Then come the m bytes of the string.
+    //   - A CompositeDataBox is serialized as the concatenation of its
+    //     components' serializations.
     //
     // Note that when DataBoxes are serialized, they do not serialize their type.
     // That is, serialized DataBoxes are not self-descriptive; you need the type
     // of a Databox in order to parse it.
     public abstract byte[] toBytes();
 
+    // Databoxes also have an order-preserving binary encoding, their normalized
+    // key: comparing the normalized keys of two DataBoxes of the same type byte
+    // by byte, as unsigned values, orders them the same way compareTo does.
+    //
+    //   - A BoolDataBox is the byte 0 or 1, as in toBytes.
+    //   - An IntDataBox is its 4 bytes in big-endian order with the sign bit
+    //     flipped, so that negative numbers sort before positive ones.
+    //   - A FloatDataBox is its 4 IEEE 754 bytes in big-endian order, with the
+    //     sign bit flipped for positive numbers and every bit flipped for
+    //     negative ones, which orders them as Float.compare does.
+    //   - A StringDataBox is its bytes, as in toBytes: strings are padded with
+    //     spaces to their length and only hold characters in ascending ASCII
+    //     order.
+    //   - A CompositeDataBox is the concatenation of its components' keys.
+    //
+    // See NormalizedKey, which compares the keys of records.
+    public abstract byte[] toNormalizedKey();
+
     public static DataBox fromBytes(Buffer buf, Type type) {
         switch (type.getTypeId()) {
         case BOOL: {
@@ -76,6 +99,13 @@ public abstract class DataBox implements Comparable<DataBox> {
             String s = new String(bytes, Charset.forName("UTF-8"));
             return new StringDataBox(s, type.getSizeInBytes());
         }
+        case COMPOSITE: {
+            List<DataBox> values = new ArrayList<>();
+            for (Type t : type.getComponentTypes()) {
+                values.add(DataBox.fromBytes(buf, t));
+            }
+            return new CompositeDataBox(values);
+        }
         default: {
             String err = String.format("Unhandled TypeId %s.",
                                        type.getTypeId().toString());
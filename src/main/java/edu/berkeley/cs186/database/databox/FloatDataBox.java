@@ -23,6 +23,14 @@ public class FloatDataBox extends DataBox {
         return ByteBuffer.allocate(Float.BYTES).putFloat(f).array();
     }
 
+    @Override
+    public byte[] toNormalizedKey() {
+        // floatToIntBits maps every NaN to the same bits, which sort after infinity
+        int bits = Float.floatToIntBits(f);
+        bits ^= (bits >> 31) | Integer.MIN_VALUE;
+        return ByteBuffer.allocate(Integer.BYTES).putInt(bits).array();
+    }
+
     @Override
     public String toString() {
         return new Float(f).toString();
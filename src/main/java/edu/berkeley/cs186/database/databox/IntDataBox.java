@@ -23,6 +23,11 @@ public class IntDataBox extends DataBox {
         return ByteBuffer.allocate(Integer.BYTES).putInt(i).array();
     }
 
+    @Override
+    public byte[] toNormalizedKey() {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(i ^ Integer.MIN_VALUE).array();
+    }
+
     @Override
     public String toString() {
         return new Integer(i).toString();
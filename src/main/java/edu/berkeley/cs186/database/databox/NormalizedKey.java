@@ -0,0 +1,87 @@
+package edu.berkeley.cs186.database.databox;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The normalized keys (see DataBox.toNormalizedKey) of some columns of a
+ * record, concatenated, which order records on those columns in turn.
+ *
+ * Comparing two DataBoxes goes through a virtual compareTo call and a type
+ * check for every comparison, whereas a NormalizedKey is encoded once and then
+ * compared as bytes. The first 8 bytes are also kept as an unsigned long, so
+ * keys that differ in them, which includes every key on a single int or float
+ * column, compare with a single long comparison.
+ *
+ * Keys are only comparable with keys on columns of the same types. A key in
+ * descending order has every byte flipped, which reverses its order.
+ */
+public final class NormalizedKey implements Comparable<NormalizedKey> {
+    private final byte[] bytes;
+    // The first 8 bytes, big-endian and padded with zeros.
+    private final long prefix;
+
+    private NormalizedKey(byte[] bytes) {
+        this.bytes = bytes;
+        long prefix = 0;
+        for (int i = 0; i < Long.BYTES; ++i) {
+            prefix = (prefix << 8) | (i < bytes.length ? bytes[i] & 0xFF : 0);
+        }
+        this.prefix = prefix;
+    }
+
+    /**
+     * Returns the key of the columns of values at indices, in ascending or descending order.
+     */
+    public static NormalizedKey of(List<DataBox> values, int[] indices, boolean ascending) {
+        byte[][] keys = new byte[indices.length][];
+        int length = 0;
+        for (int i = 0; i < indices.length; ++i) {
+            keys[i] = values.get(indices[i]).toNormalizedKey();
+            length += keys[i].length;
+        }
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        for (byte[] key : keys) {
+            System.arraycopy(key, 0, bytes, offset, key.length);
+            offset += key.length;
+        }
+        if (!ascending) {
+            for (int i = 0; i < bytes.length; ++i) {
+                bytes[i] = (byte) ~bytes[i];
+            }
+        }
+        return new NormalizedKey(bytes);
+    }
+
+    @Override
+    public int compareTo(NormalizedKey k) {
+        int cmp = Long.compareUnsigned(this.prefix, k.prefix);
+        if (cmp != 0) {
+            return cmp;
+        }
+        int n = Math.min(this.bytes.length, k.bytes.length);
+        for (int i = Long.BYTES; i < n; ++i) {
+            if (this.bytes[i] != k.bytes[i]) {
+                return Integer.compare(this.bytes[i] & 0xFF, k.bytes[i] & 0xFF);
+            }
+        }
+        return Integer.compare(this.bytes.length, k.bytes.length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof NormalizedKey)) {
+            return false;
+        }
+        return Arrays.equals(this.bytes, ((NormalizedKey) o).bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.bytes);
+    }
+}
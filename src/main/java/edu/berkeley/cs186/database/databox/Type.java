@@ -3,6 +3,9 @@ package edu.berkeley.cs186.database.databox;
 import edu.berkeley.cs186.database.common.Buffer;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -15,6 +18,10 @@ import java.util.Objects;
  *
  * Note that n-byte strings and m-byte strings are considered different types
  * when n != m.
+ *
+ * Index keys that span multiple columns have a composite type
+ * (Type.compositeType(ts)) whose elements are lists of values of the
+ * primitive types ts; see CompositeDataBox.
  */
 public class Type {
     // The type of this type.
@@ -23,9 +30,18 @@ public class Type {
     // The size (in bytes) of an element of this type.
     private int sizeInBytes;
 
+    // The types of the components of a composite type. Empty for all other
+    // types.
+    private List<Type> componentTypes;
+
     private Type(TypeId typeId, int sizeInBytes) {
+        this(typeId, sizeInBytes, Collections.emptyList());
+    }
+
+    private Type(TypeId typeId, int sizeInBytes, List<Type> componentTypes) {
         this.typeId = typeId;
         this.sizeInBytes = sizeInBytes;
+        this.componentTypes = componentTypes;
     }
 
     public static Type boolType() {
@@ -55,6 +71,20 @@ public class Type {
         return new Type(TypeId.STRING, n);
     }
 
+    public static Type compositeType(List<Type> componentTypes) {
+        if (componentTypes.isEmpty()) {
+            throw new DataBoxException("Composite types must have at least one component.");
+        }
+        int sizeInBytes = 0;
+        for (Type t : componentTypes) {
+            if (t.getTypeId() == TypeId.COMPOSITE) {
+                throw new DataBoxException("Composite types cannot be nested.");
+            }
+            sizeInBytes += t.getSizeInBytes();
+        }
+        return new Type(TypeId.COMPOSITE, sizeInBytes, new ArrayList<>(componentTypes));
+    }
+
     public TypeId getTypeId() {
         return typeId;
     }
@@ -63,6 +93,10 @@ public class Type {
         return sizeInBytes;
     }
 
+    public List<Type> getComponentTypes() {
+        return componentTypes;
+    }
+
     public byte[] toBytes() {
         // A Type is uniquely identified by its typeId `t` and the size (in bytes)
         // of an element of the type `s`. A Type is serialized as two integers. The
@@ -71,9 +105,28 @@ public class Type {
         // For example, the type "42-byte string" would serialized as the bytes [3,
         // 42] because 3 is the ordinal of the STRING TypeId and 42 is the number
         // of bytes in a 42-byte string (duh).
-        ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES * 2);
+        //
+        // A composite type is followed by the number of its components and then
+        // the serializations of the component types themselves.
+        List<byte[]> components = new ArrayList<>();
+        int size = Integer.BYTES * 2;
+        if (typeId == TypeId.COMPOSITE) {
+            size += Integer.BYTES;
+            for (Type t : componentTypes) {
+                byte[] component = t.toBytes();
+                components.add(component);
+                size += component.length;
+            }
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
         buf.putInt(typeId.ordinal());
         buf.putInt(sizeInBytes);
+        if (typeId == TypeId.COMPOSITE) {
+            buf.putInt(components.size());
+            for (byte[] component : components) {
+                buf.put(component);
+            }
+        }
         return buf.array();
     }
 
@@ -91,6 +144,15 @@ public class Type {
             return Type.floatType();
         } else if (ordinal == TypeId.STRING.ordinal()) {
             return Type.stringType(sizeInBytes);
+        } else if (ordinal == TypeId.COMPOSITE.ordinal()) {
+            int n = buf.getInt();
+            List<Type> componentTypes = new ArrayList<>();
+            for (int i = 0; i < n; ++i) {
+                componentTypes.add(Type.fromBytes(buf));
+            }
+            Type t = Type.compositeType(componentTypes);
+            assert(sizeInBytes == t.getSizeInBytes());
+            return t;
         } else {
             String err = String.format("Unknown TypeId ordinal %d.", ordinal);
             throw new IllegalArgumentException(err);
@@ -99,6 +161,9 @@ public class Type {
 
     @Override
     public String toString() {
+        if (typeId == TypeId.COMPOSITE) {
+            return String.format("(%s, %d, %s)", typeId.toString(), sizeInBytes, componentTypes);
+        }
         return String.format("(%s, %d)", typeId.toString(), sizeInBytes);
     }
 
@@ -111,11 +176,12 @@ public class Type {
             return false;
         }
         Type t = (Type) o;
-        return typeId.equals(t.typeId) && sizeInBytes == t.sizeInBytes;
+        return typeId.equals(t.typeId) && sizeInBytes == t.sizeInBytes &&
+               componentTypes.equals(t.componentTypes);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(typeId, sizeInBytes);
+        return Objects.hash(typeId, sizeInBytes, componentTypes);
     }
 }
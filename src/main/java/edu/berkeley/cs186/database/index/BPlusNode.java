@@ -1,7 +1,10 @@
 package edu.berkeley.cs186.database.index;
 
+import java.nio.ByteBuffer;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.BiConsumer;
 
 import edu.berkeley.cs186.database.BaseTransaction;
 import edu.berkeley.cs186.database.common.Buffer;
@@ -51,6 +54,69 @@ abstract class BPlusNode {
      */
     public abstract LeafNode getLeftmostLeaf(BaseTransaction transaction);
 
+    /**
+     * n.getRightmostLeaf() returns the rightmost leaf in the subtree rooted by
+     * n. In the example above, inner.getRightmostLeaf() would return leaf2, and
+     * leaf1.getRightmostLeaf() would return leaf1.
+     */
+    public abstract LeafNode getRightmostLeaf(BaseTransaction transaction);
+
+    /**
+     * n.getAll(keys, rids) looks up every key of `keys`, which must be sorted
+     * in ascending order, in the subtree rooted by n, and sets rids.get(i) to
+     * the record id of keys.get(i) (or Optional.empty() if there is none).
+     * Keys that fall under the same child of an inner node are looked up with
+     * a single visit to that child, so every node of the subtree is read at
+     * most once. In the example above, inner.getAll([2, 4, 12, 13]) visits
+     * leaf0 once for 2 and 4 and leaf1 once for 12 and 13, and never visits
+     * leaf2.
+     */
+    public abstract void getAll(BaseTransaction transaction, List<DataBox> keys,
+                                List<Optional<RecordId>> rids);
+
+    /**
+     * n.collectStats(stats) adds every leaf of the subtree rooted by n, and
+     * every entry of those leaves, to `stats` in key order, and returns the
+     * height of the subtree. In the example above, inner.collectStats(stats)
+     * would add the three leaves and their nine entries and return 2.
+     */
+    abstract int collectStats(BaseTransaction transaction, IndexStats.Builder stats);
+
+    // Order Statistics ////////////////////////////////////////////////////////
+    // The following methods may only be called on the inner nodes of a counted
+    // tree (see BPlusTreeMetadata.isCounted), whose entry counts let them skip
+    // whole subtrees. In the example above, inner stores the counts [3, 3, 3].
+
+    /**
+     * n.numEntries() returns the number of entries in the subtree rooted by n.
+     * In the example above, inner.numEntries() would return 9.
+     */
+    abstract int numEntries();
+
+    /**
+     * n.rank(k, inclusive) returns the number of keys in the subtree rooted by
+     * n that are less than k, or less than or equal to k if `inclusive` is
+     * true. In the example above, inner.rank(12, false) would return 4 after
+     * reading only leaf1.
+     */
+    abstract int rank(BaseTransaction transaction, DataBox key, boolean inclusive);
+
+    /**
+     * n.select(i) returns the entry with the i-th smallest key (counting from
+     * 0) in the subtree rooted by n, or Optional.empty() if there are no more
+     * than i entries. In the example above, inner.select(4) would return the
+     * entry with key 12 after reading only leaf1.
+     */
+    abstract Optional<Pair<DataBox, RecordId>> select(BaseTransaction transaction, int i);
+
+    /**
+     * n.refreshCounts(k) recounts the entries along the path from n to the
+     * leaf on which k may reside after an entry with key k was inserted or
+     * removed, syncs every node on the path whose counts changed, and returns
+     * n.numEntries().
+     */
+    abstract int refreshCounts(BaseTransaction transaction, DataBox key);
+
     /**
      * n.put(k, r) inserts the pair (k, r) into the subtree rooted by n. There
      * are two cases to consider:
@@ -91,6 +157,11 @@ abstract class BPlusNode {
      *   +----+----+----+----+  +----+----+----+----+
      *   leaf0                  leaf3
      *
+     * Leaves are doubly linked, so when leaf0 splits, leaf3's left sibling is
+     * leaf0 and its right sibling is leaf0's old right sibling (leaf1), whose
+     * left sibling must in turn be updated to leaf3 (see
+     * LeafNode.setLeftSibling).
+     *
      * When a leaf splits, it returns the first entry in the right node as the
      * split key. In this example, 3 is the split key. After leaf0 splits, inner
      * inserts the new key and child pointer into itself and hits case 0 (i.e. it
@@ -132,11 +203,25 @@ abstract class BPlusNode {
      * Our B+ trees do not support duplicate entries with the same key. If a
      * duplicate key is inserted, the tree is left unchanged and an exception is
      * raised.
+     *
+     * A node whose keys, record ids, or children change (here or in bulkLoad
+     * and remove) writes itself back to its page by calling its sync.
      */
     public abstract Optional<Pair<DataBox, Integer>> put(BaseTransaction transaction, DataBox key,
             RecordId rid)
     throws BPlusTreeException;
 
+    /**
+     * n.put(k, r, included) is n.put(k, r) for a covering tree (see
+     * BPlusTreeMetadata.getIncludedSchema). The leaf that (k, r) is inserted
+     * into stores `included`, the values of the tree's included columns for
+     * the record with id r, along with the pair, in the same insert and the
+     * same sync; when the leaf splits, they move with the pair.
+     */
+    public abstract Optional<Pair<DataBox, Integer>> put(BaseTransaction transaction, DataBox key,
+            RecordId rid, List<DataBox> included)
+    throws BPlusTreeException;
+
     /**
      * n.bulkLoad(data, fillFactor) bulk loads pairs of (k, r) from data into
      * the tree with the given fill factor.
@@ -267,4 +352,66 @@ abstract class BPlusNode {
             throw new IllegalArgumentException(msg);
         }
     }
+
+    // Write Back ////////////////////////////////////////////////////////////////
+    // Whether this node has changed since it was last written to its page and,
+    // if so, the range [dirtyFrom, dirtyTo) of offsets into its serialization
+    // that the changes cover. A node's sync marks the whole node dirty and
+    // writes it, so put, remove, and bulkLoad can mutate a node's lists and
+    // then sync it. Mutators that change only a few fields (e.g. one that sets
+    // a sibling pointer or updates a count) instead mark the bytes they change
+    // with markDirty and call writeBack, which writes only those bytes, so two
+    // node objects for the same page do not overwrite each other's changes to
+    // different fields with stale bytes.
+    private boolean dirty = false;
+    private int dirtyFrom;
+    private int dirtyTo;
+
+    /** n.markDirty(from, to) records that bytes [from, to) of n have changed. */
+    void markDirty(int from, int to) {
+        dirtyFrom = dirty ? Math.min(dirtyFrom, from) : from;
+        dirtyTo = dirty ? Math.max(dirtyTo, to) : to;
+        dirty = true;
+    }
+
+    /**
+     * n.writeBack(t) writes the bytes of n marked by markDirty to n's page, if
+     * there are any, and marks n clean.
+     */
+    void writeBack(BaseTransaction transaction) {
+        if (dirty) {
+            writeRange(transaction, dirtyFrom, dirtyTo);
+            dirty = false;
+        }
+    }
+
+    /**
+     * n.writeRange(t, from, to) writes every field of n's serialization that
+     * overlaps bytes [from, to) to n's page. `to` may lie past the end of the
+     * serialization.
+     */
+    abstract void writeRange(BaseTransaction transaction, int from, int to);
+
+    /**
+     * writeSection(page, t, from, to, offset, fieldSize, numFields, put) is a
+     * helper for writeRange. It writes to `page` the fields of a section of a
+     * node's serialization that overlap bytes [from, to). The section starts
+     * at `offset` and holds `numFields` fields of `fieldSize` bytes each, and
+     * put(buf, i) serializes the i-th of them into buf.
+     */
+    static void writeSection(Page page, BaseTransaction transaction, int from, int to, int offset,
+                             int fieldSize, int numFields, BiConsumer<ByteBuffer, Integer> put) {
+        int first = Math.max(0, (from - offset) / fieldSize);
+        int end = Math.min(to - offset, numFields * fieldSize);
+        int last = end <= 0 ? 0 : (end + fieldSize - 1) / fieldSize;
+        if (first >= last) {
+            return;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate((last - first) * fieldSize);
+        for (int i = first; i < last; ++i) {
+            put.accept(buf, i);
+        }
+        page.getBuffer(transaction).position(offset + first * fieldSize).put(buf.array());
+    }
 }
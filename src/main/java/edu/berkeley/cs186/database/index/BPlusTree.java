@@ -1,10 +1,13 @@
 package edu.berkeley.cs186.database.index;
 
-import java.io.Closeable;
 import java.io.IOException;
 import java.io.FileWriter;
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import edu.berkeley.cs186.database.BaseTransaction;
 import edu.berkeley.cs186.database.common.Buffer;
@@ -12,11 +15,13 @@ import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.concurrency.LockType;
 import edu.berkeley.cs186.database.concurrency.LockUtil;
+import edu.berkeley.cs186.database.databox.CompositeDataBox;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator;
 import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
 
 /**
  * A persistent B+ tree.
@@ -53,7 +58,7 @@ import edu.berkeley.cs186.database.table.RecordId;
  *   fromDisk.get(new IntDataBox(1)); // Optional.of(RecordId(1, 1))
  *   fromDisk.get(new IntDataBox(2)); // Optional.of(RecordId(2, 2))
  */
-public class BPlusTree implements Closeable {
+public class BPlusTree implements OrderedIndex {
     public static final String FILENAME_PREFIX = "db";
     public static final String FILENAME_EXTENSION = ".index";
 
@@ -63,6 +68,14 @@ public class BPlusTree implements Closeable {
     private BPlusNode root;
     private LockContext lockContext;
 
+    // The statistics of the tree (see IndexStats), and the number of puts and
+    // removes since they were last built.
+    private IndexStats stats;
+    private int modifications;
+
+    // The predicate of a partial tree (see IndexPredicate).
+    private Optional<IndexPredicate> predicate;
+
     // Constructors ////////////////////////////////////////////////////////////
     /**
      * Construct a new B+ tree which is serialized into the file `filename`,
@@ -80,14 +93,62 @@ public class BPlusTree implements Closeable {
      * page which contains:
      *
      *   - the key schema of the tree,
-     *   - the order of the tree, and
-     *   - the page number of the root of the tree.
+     *   - the order of the tree,
+     *   - the page number of the root of the tree,
+     *   - the schema of the included columns of the tree (see below),
+     *   - whether the tree is counted (see below),
+     *   - the statistics of the tree (see IndexStats), and
+     *   - the predicate of a partial tree, if any (see IndexPredicate).
      *
      * All other pages are serializations of inner and leaf nodes. See
      * writeHeader for details.
      */
     public BPlusTree(String filename, Type keySchema, int order, LockContext lockContext,
                      BaseTransaction transaction)
+    throws BPlusTreeException {
+        this(filename, keySchema, new Schema(new ArrayList<>(), new ArrayList<>()), order,
+             lockContext, transaction);
+    }
+
+    /**
+     * Construct a new covering B+ tree. Alongside every (key, rid) pair, the
+     * leaves of the tree store the values of the columns in `includedSchema`
+     * for the record with id rid (see put), so that scanRangeCovering can
+     * answer queries over those columns without fetching any records. Use
+     * BPlusTree.maxOrder(pageSize, keySchema, includedSchema) to get the
+     * largest order that fits on a page.
+     */
+    public BPlusTree(String filename, Type keySchema, Schema includedSchema, int order,
+                     LockContext lockContext, BaseTransaction transaction)
+    throws BPlusTreeException {
+        this(filename, keySchema, includedSchema, order, false, lockContext, transaction);
+    }
+
+    /**
+     * Construct a new B+ tree which, if `counted` is true, stores in every
+     * inner node the number of entries under each child. A counted tree
+     * answers count, rank, and select with a single root-to-leaf traversal
+     * instead of a scan of the leaves, at the cost of a smaller maximum order
+     * and of recounting the path to the leaf on every put and remove. Use
+     * BPlusTree.maxOrder(pageSize, keySchema, includedSchema, counted) to get
+     * the largest order that fits on a page.
+     */
+    public BPlusTree(String filename, Type keySchema, Schema includedSchema, int order,
+                     boolean counted, LockContext lockContext, BaseTransaction transaction)
+    throws BPlusTreeException {
+        this(filename, keySchema, includedSchema, order, counted, Optional.empty(), lockContext,
+             transaction);
+    }
+
+    /**
+     * Construct a new B+ tree which, if `predicate` is present, is a partial
+     * index that only holds the records that satisfy the predicate. The tree
+     * itself does not check the predicate: whoever puts entries into the tree
+     * must only put those of matching records.
+     */
+    public BPlusTree(String filename, Type keySchema, Schema includedSchema, int order,
+                     boolean counted, Optional<IndexPredicate> predicate, LockContext lockContext,
+                     BaseTransaction transaction)
     throws BPlusTreeException {
         // TODO(hw5_part2): B+ tree locking
         lockContext.disableChildLocks();
@@ -100,7 +161,7 @@ public class BPlusTree implements Closeable {
             throw new BPlusTreeException(msg);
         }
 
-        int maxOrder = BPlusTree.maxOrder(Page.pageSize, keySchema);
+        int maxOrder = BPlusTree.maxOrder(Page.pageSize, keySchema, includedSchema, counted);
         if (order > maxOrder) {
             String msg = String.format(
                              "You cannot construct a B+ tree with order %d greater than the " +
@@ -113,7 +174,8 @@ public class BPlusTree implements Closeable {
 
         // Initialize the page allocator.
         this.allocator = new PageAllocator(this.lockContext, filename, true, transaction);
-        this.metadata = new BPlusTreeMetadata(allocator, keySchema, order);
+        this.metadata = new BPlusTreeMetadata(allocator, keySchema, order, includedSchema, counted);
+        this.predicate = predicate;
 
         // Allocate the header page.
         int headerPageNum = allocator.allocPage(transaction);
@@ -125,6 +187,7 @@ public class BPlusTree implements Closeable {
         List<RecordId> rids = new ArrayList<>();
         Optional<Integer> rightSibling = Optional.empty();
         this.root = new LeafNode(this.metadata, keys, rids, rightSibling, transaction);
+        this.stats = IndexStats.empty();
 
         // Initialize the header page.
         writeHeader(transaction, headerPage);
@@ -146,9 +209,13 @@ public class BPlusTree implements Closeable {
         Type keySchema = Type.fromBytes(buf);
         int order = buf.getInt();
         int rootPageNum = buf.getInt();
+        Schema includedSchema = Schema.fromBytes(buf);
+        boolean counted = buf.get() == (byte) 1;
+        this.stats = IndexStats.fromBytes(buf);
+        this.predicate = IndexPredicate.fromBytes(buf);
 
         // Initialize members.
-        this.metadata = new BPlusTreeMetadata(allocator, keySchema, order);
+        this.metadata = new BPlusTreeMetadata(allocator, keySchema, order, includedSchema, counted);
         this.headerPage = allocator.fetchPage(transaction, 0);
         this.root = BPlusNode.fromBytes(transaction, this.metadata, rootPageNum);
     }
@@ -178,6 +245,55 @@ public class BPlusTree implements Closeable {
         return Optional.empty();
     }
 
+    /**
+     * Looks up every key of `keys` at once and returns the (key, result of
+     * get(key)) pairs. The keys are sorted and looked up with a single
+     * traversal of the tree (see BPlusNode.getAll), so keys that land on the
+     * same leaf share the descent to it and every node is read at most once.
+     *
+     *   tree.getAll(t, Arrays.asList(k3, k1, k2).iterator(), false);
+     *   // [(k3, get(k3)), (k1, get(k1)), (k2, get(k2))]
+     *   tree.getAll(t, Arrays.asList(k3, k1, k2).iterator(), true);
+     *   // [(k1, get(k1)), (k2, get(k2)), (k3, get(k3))]
+     *
+     * If `keyOrder` is true, the pairs are returned in ascending order of
+     * their keys; otherwise, they are returned in the order of `keys`.
+     */
+    public Iterator<Pair<DataBox, Optional<RecordId>>> getAll(BaseTransaction transaction,
+            Iterator<DataBox> keys, boolean keyOrder) {
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.S);
+        List<DataBox> probes = new ArrayList<>();
+        while (keys.hasNext()) {
+            DataBox key = keys.next();
+            typecheck(key);
+            probes.add(key);
+        }
+
+        // order[i] is the position in probes of the i-th smallest key
+        Integer[] order = new Integer[probes.size()];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(probes::get));
+        List<DataBox> sortedKeys = new ArrayList<>();
+        List<Optional<RecordId>> rids = new ArrayList<>();
+        for (int i : order) {
+            sortedKeys.add(probes.get(i));
+            rids.add(Optional.empty());
+        }
+        if (!sortedKeys.isEmpty()) {
+            root.getAll(transaction, sortedKeys, rids);
+        }
+
+        List<Pair<DataBox, Optional<RecordId>>> results = new ArrayList<>(
+            Collections.nCopies(probes.size(), null));
+        for (int i = 0; i < order.length; ++i) {
+            int position = keyOrder ? i : order[i];
+            results.set(position, new Pair<>(sortedKeys.get(i), rids.get(i)));
+        }
+        return results.iterator();
+    }
+
     /**
      * scanEqual(k) is equivalent to get(k) except that it returns an iterator
      * instead of an Optional. That is, if get(k) returns Optional.empty(),
@@ -261,6 +377,104 @@ public class BPlusTree implements Closeable {
         return Collections.<RecordId>emptyIterator();
     }
 
+    /**
+     * Returns an iterator over all the RecordIds stored in the B+ tree whose
+     * keys lie between `lo` and `hi`. Each bound is inclusive or exclusive
+     * depending on `loInclusive` and `hiInclusive`. A null `lo` starts the scan
+     * at the leftmost leaf and a null `hi` runs it to the rightmost leaf.
+     * RecordIds are returned in ascending order of their corresponding keys.
+     *
+     *   // Create a B+ tree and insert some values into it.
+     *   BPlusTree tree = new BPlusTree("t.txt", Type.intType(), 4);
+     *   tree.put(new IntDataBox(2), new RecordId(2, (short) 2));
+     *   tree.put(new IntDataBox(5), new RecordId(5, (short) 5));
+     *   tree.put(new IntDataBox(4), new RecordId(4, (short) 4));
+     *   tree.put(new IntDataBox(1), new RecordId(1, (short) 1));
+     *   tree.put(new IntDataBox(3), new RecordId(3, (short) 3));
+     *
+     *   Iterator<RecordId> iter = tree.scanRange(new IntDataBox(2), false,
+     *                                            new IntDataBox(4), true);
+     *   iter.next(); // RecordId(3, 3)
+     *   iter.next(); // RecordId(4, 4)
+     *   iter.next(); // NoSuchElementException
+     *
+     * Like scanGreaterEqual, the iterator lazily scans over the leaves of the
+     * B+ tree. It stops at the first leaf that holds a key past `hi`, so the
+     * leaves to the right of the range are never read.
+     */
+    public Iterator<RecordId> scanRange(BaseTransaction transaction, DataBox lo, boolean loInclusive,
+                                        DataBox hi, boolean hiInclusive) {
+        if (lo != null) {
+            typecheck(lo);
+        }
+        if (hi != null) {
+            typecheck(hi);
+        }
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.S);
+        LeafNode leaf = lo == null ? root.getLeftmostLeaf(transaction) : root.get(transaction, lo);
+        return new BPlusTreeRangeIterator<RecordId>(transaction, leaf, lo, loInclusive, hi, hiInclusive) {
+            @Override
+            Iterator<RecordId> scanLeaf(LeafNode leaf, DataBox lo, boolean loInclusive) {
+                return leaf.scanRange(lo, loInclusive, hi, hiInclusive);
+            }
+        };
+    }
+
+    /**
+     * Returns an iterator over all the RecordIds stored in the B+ tree in
+     * descending order of their corresponding keys.
+     *
+     *   // Create a B+ tree and insert some values into it.
+     *   BPlusTree tree = new BPlusTree("t.txt", Type.intType(), 4);
+     *   tree.put(new IntDataBox(2), new RecordId(2, (short) 2));
+     *   tree.put(new IntDataBox(1), new RecordId(1, (short) 1));
+     *   tree.put(new IntDataBox(3), new RecordId(3, (short) 3));
+     *
+     *   Iterator<RecordId> iter = tree.scanAllDescending();
+     *   iter.next(); // RecordId(3, 3)
+     *   iter.next(); // RecordId(2, 2)
+     *   iter.next(); // RecordId(1, 1)
+     *   iter.next(); // NoSuchElementException
+     *
+     * The iterator starts at the rightmost leaf and lazily follows left
+     * sibling pointers, so reading the N largest keys only touches the leaves
+     * that hold them.
+     */
+    public Iterator<RecordId> scanAllDescending(BaseTransaction transaction) {
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.S);
+        LeafNode leaf = root.getRightmostLeaf(transaction);
+        return new BPlusTreeDescendingIterator(transaction, leaf, leaf.scanAllDescending());
+    }
+
+    /**
+     * Returns an iterator over all the RecordIds stored in the B+ tree that
+     * are less than or equal to `key`. RecordIds are returned in descending
+     * order of their corresponding keys.
+     *
+     *   // Create a B+ tree and insert some values into it.
+     *   BPlusTree tree = new BPlusTree("t.txt", Type.intType(), 4);
+     *   tree.put(new IntDataBox(2), new RecordId(2, (short) 2));
+     *   tree.put(new IntDataBox(5), new RecordId(5, (short) 5));
+     *   tree.put(new IntDataBox(4), new RecordId(4, (short) 4));
+     *   tree.put(new IntDataBox(1), new RecordId(1, (short) 1));
+     *   tree.put(new IntDataBox(3), new RecordId(3, (short) 3));
+     *
+     *   Iterator<RecordId> iter = tree.scanLessEqual(new IntDataBox(3));
+     *   iter.next(); // RecordId(3, 3)
+     *   iter.next(); // RecordId(2, 2)
+     *   iter.next(); // RecordId(1, 1)
+     *   iter.next(); // NoSuchElementException
+     *
+     * Like scanAllDescending, the iterator lazily follows left sibling
+     * pointers starting from the leaf on which `key` may reside.
+     */
+    public Iterator<RecordId> scanLessEqual(BaseTransaction transaction, DataBox key) {
+        typecheck(key);
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.S);
+        LeafNode leaf = root.get(transaction, key);
+        return new BPlusTreeDescendingIterator(transaction, leaf, leaf.scanLessEqual(key));
+    }
+
     /**
      * Inserts a (key, rid) pair into a B+ tree. If the key already exists in
      * the B+ tree, then the pair is not inserted and an exception is raised.
@@ -275,7 +489,81 @@ public class BPlusTree implements Closeable {
         typecheck(key);
         // TODO(hw5_part2): B+ tree locking
         LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.X);
-        return;
+
+        updateCounts(transaction, key);
+        updateStats(transaction);
+    }
+
+    /**
+     * Inserts a (key, rid) pair into a covering B+ tree, along with `included`,
+     * the values of the tree's included columns for the record with id rid.
+     * If the key already exists in the B+ tree, then the pair is not inserted
+     * and an exception is raised.
+     *
+     *   Schema includedSchema = new Schema(Arrays.asList("name"),
+     *                                      Arrays.asList(Type.stringType(8)));
+     *   BPlusTree tree = new BPlusTree("t.txt", Type.intType(), includedSchema, 4);
+     *   tree.put(new IntDataBox(42), new RecordId(42, (short) 42),
+     *            Arrays.asList(new StringDataBox("alice", 8)));
+     */
+    public void put(BaseTransaction transaction, DataBox key, RecordId rid,
+                    List<DataBox> included) throws BPlusTreeException {
+        List<Type> includedTypes = metadata.getIncludedSchema().getFieldTypes();
+        if (included.size() != includedTypes.size()) {
+            String msg = String.format("Expected %d included values, but got %d.",
+                                       includedTypes.size(), included.size());
+            throw new IllegalArgumentException(msg);
+        }
+        for (int i = 0; i < included.size(); ++i) {
+            if (!included.get(i).type().equals(includedTypes.get(i))) {
+                String msg = String.format("DataBox %s is not of type %s", included.get(i),
+                                           includedTypes.get(i));
+                throw new IllegalArgumentException(msg);
+            }
+        }
+
+        typecheck(key);
+        // TODO(hw5_part2): B+ tree locking
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.X);
+
+        // A single descent inserts the pair along with its included values.
+        Optional<Pair<DataBox, Integer>> split = root.put(transaction, key, rid, included);
+        if (split.isPresent()) {
+            List<DataBox> keys = new ArrayList<>(Collections.singletonList(split.get().getFirst()));
+            List<Integer> children = new ArrayList<>(Arrays.asList(root.getPage().getPageNum(),
+                                                 split.get().getSecond()));
+            root = new InnerNode(metadata, keys, children, transaction);
+            writeHeader(transaction, headerPage);
+        }
+        updateCounts(transaction, key);
+        updateStats(transaction);
+    }
+
+    /**
+     * Like scanRange, but instead of RecordIds, returns for every key in range
+     * the list of the key followed by the values of the tree's included
+     * columns, in ascending order of the keys. For a covering index, this
+     * answers a query over the key and included columns from the index alone,
+     * without a random read of the record for every match.
+     */
+    public Iterator<List<DataBox>> scanRangeCovering(BaseTransaction transaction,
+                                                     DataBox lo, boolean loInclusive,
+                                                     DataBox hi, boolean hiInclusive) {
+        if (lo != null) {
+            typecheck(lo);
+        }
+        if (hi != null) {
+            typecheck(hi);
+        }
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.S);
+        LeafNode leaf = lo == null ? root.getLeftmostLeaf(transaction) : root.get(transaction, lo);
+        return new BPlusTreeRangeIterator<List<DataBox>>(transaction, leaf, lo, loInclusive,
+                hi, hiInclusive) {
+            @Override
+            Iterator<List<DataBox>> scanLeaf(LeafNode leaf, DataBox lo, boolean loInclusive) {
+                return leaf.scanRangeCovering(lo, loInclusive, hi, hiInclusive);
+            }
+        };
     }
 
     /**
@@ -297,7 +585,168 @@ public class BPlusTree implements Closeable {
                          float fillFactor) throws BPlusTreeException {
         // TODO(hw5_part2): B+ tree locking
         LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.X);
-        return;
+
+        if (metadata.isCounted()) {
+            // Only the nodes along the rightmost path can have missed entries.
+            List<DataBox> lastKeys = root.getRightmostLeaf(transaction).getKeys();
+            if (!lastKeys.isEmpty()) {
+                updateCounts(transaction, lastKeys.get(lastKeys.size() - 1));
+            }
+        }
+        buildStatistics(transaction);
+    }
+
+    /**
+     * Bulk loads several sorted partitions of data into the B+ tree, building
+     * the leaves of every partition on a separate thread. As with bulkLoad,
+     * the tree should be empty and every partition should be sorted and free
+     * of duplicates. In addition, every key of partitions.get(i) must be
+     * smaller than every key of partitions.get(i + 1), as is the case for the
+     * key ranges of a range-partitioned sort.
+     *
+     * Once all the leaves are built, the last leaf of every partition is
+     * linked up with the first leaf of the next, and the inner nodes are built
+     * bottom-up from the first keys of the level below, filled up to full.
+     * fillFactor specifies the fill factor for leaves only.
+     */
+    public void bulkLoad(BaseTransaction transaction, List<Iterator<Pair<DataBox, RecordId>>> partitions,
+                         float fillFactor) throws BPlusTreeException {
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.X);
+        if (!(root instanceof LeafNode) || !((LeafNode) root).getKeys().isEmpty()) {
+            throw new BPlusTreeException("You cannot bulk load into a non-empty B+ tree.");
+        }
+        if (metadata.getOrder() == 0) {
+            throw new BPlusTreeException("You cannot bulk load into a B+ tree of order 0.");
+        }
+
+        int leafSize = Math.max(1, (int) Math.ceil(2 * metadata.getOrder() * fillFactor));
+        int numThreads = Math.min(partitions.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, numThreads));
+        List<LeafChain> chains = new ArrayList<>();
+        try {
+            List<Future<LeafChain>> futures = new ArrayList<>();
+            for (Iterator<Pair<DataBox, RecordId>> partition : partitions) {
+                futures.add(pool.submit(() -> bulkLoadLeaves(transaction, partition, leafSize)));
+            }
+            for (Future<LeafChain> future : futures) {
+                chains.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BPlusTreeException("Bulk load was interrupted.");
+        } catch (ExecutionException e) {
+            throw new BPlusTreeException("Bulk load failed: " + e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        // Stitch the leaves of consecutive partitions together.
+        List<Pair<DataBox, Integer>> level = new ArrayList<>();
+        List<Integer> levelCounts = new ArrayList<>();
+        IndexStats.Builder builder = new IndexStats.Builder();
+        LeafChain prev = null;
+        for (LeafChain chain : chains) {
+            if (chain.leaves.isEmpty()) {
+                continue;
+            }
+            if (prev != null) {
+                prev.last.setRightSibling(transaction, Optional.of(chain.first.getPage().getPageNum()));
+                chain.first.setLeftSibling(transaction, Optional.of(prev.last.getPage().getPageNum()));
+            }
+            level.addAll(chain.leaves);
+            levelCounts.addAll(chain.counts);
+            builder.addAll(chain.stats);
+            prev = chain;
+        }
+        if (prev == null) {
+            return;
+        }
+        BPlusNode newRoot = prev.first;
+
+        // Build the inner levels, each entry of a level being the smallest key
+        // under a node along with the node's page number (and, in levelCounts,
+        // the number of entries under the node).
+        int fanout = 2 * metadata.getOrder() + 1;
+        int height = 1;
+        while (level.size() > 1) {
+            List<Pair<DataBox, Integer>> parents = new ArrayList<>();
+            List<Integer> parentCounts = new ArrayList<>();
+            for (int i = 0; i < level.size(); ) {
+                int end = Math.min(i + fanout, level.size());
+                if (level.size() - end == 1) {
+                    // don't leave a single child for the last node
+                    end--;
+                }
+                List<DataBox> keys = new ArrayList<>();
+                List<Integer> children = new ArrayList<>();
+                for (int j = i; j < end; ++j) {
+                    if (j > i) {
+                        keys.add(level.get(j).getFirst());
+                    }
+                    children.add(level.get(j).getSecond());
+                }
+                List<Integer> counts = new ArrayList<>(levelCounts.subList(i, end));
+                InnerNode inner = new InnerNode(metadata, keys, children, counts, transaction);
+                parents.add(new Pair<>(level.get(i).getFirst(), inner.getPage().getPageNum()));
+                int count = 0;
+                for (int c : counts) {
+                    count += c;
+                }
+                parentCounts.add(count);
+                newRoot = inner;
+                i = end;
+            }
+            level = parents;
+            levelCounts = parentCounts;
+            height++;
+        }
+
+        metadata.getAllocator().freePage(transaction, root.getPage());
+        root = newRoot;
+        // Every entry went through the leaf chains, so there is no need to
+        // read the tree back to build its statistics.
+        stats = builder.build(height);
+        modifications = 0;
+        writeHeader(transaction, headerPage);
+    }
+
+    /**
+     * Builds a chain of leaves holding the sorted entries of `data`, with
+     * `leafSize` entries per leaf (except for the last).
+     */
+    private LeafChain bulkLoadLeaves(BaseTransaction transaction,
+                                     Iterator<Pair<DataBox, RecordId>> data, int leafSize) {
+        LeafChain chain = new LeafChain();
+        LeafNode prev = null;
+        while (data.hasNext()) {
+            List<DataBox> keys = new ArrayList<>();
+            List<RecordId> rids = new ArrayList<>();
+            while (keys.size() < leafSize && data.hasNext()) {
+                Pair<DataBox, RecordId> entry = data.next();
+                typecheck(entry.getFirst());
+                keys.add(entry.getFirst());
+                rids.add(entry.getSecond());
+            }
+
+            Optional<Integer> leftSibling = prev == null ? Optional.empty()
+                                            : Optional.of(prev.getPage().getPageNum());
+            LeafNode leaf = new LeafNode(metadata, keys, rids, leftSibling, Optional.empty(), transaction);
+            if (prev != null) {
+                prev.setRightSibling(transaction, Optional.of(leaf.getPage().getPageNum()));
+            }
+            chain.leaves.add(new Pair<>(keys.get(0), leaf.getPage().getPageNum()));
+            chain.counts.add(keys.size());
+            chain.stats.addLeaf();
+            for (RecordId rid : rids) {
+                chain.stats.addEntry(rid);
+            }
+            if (prev == null) {
+                chain.first = leaf;
+            }
+            chain.last = leaf;
+            prev = leaf;
+        }
+        return chain;
     }
 
     /**
@@ -316,7 +765,102 @@ public class BPlusTree implements Closeable {
         typecheck(key);
         LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.X);
         // TODO(hw5_part2): B+ tree locking
-        return;
+
+        updateCounts(transaction, key);
+        updateStats(transaction);
+    }
+
+    // Order Statistics ////////////////////////////////////////////////////////
+    /**
+     * Returns the number of entries in the B+ tree. A counted tree (see the
+     * constructor) reads no pages at all; any other tree scans its leaves.
+     */
+    public int count(BaseTransaction transaction) {
+        return count(transaction, null, false, null, false);
+    }
+
+    /**
+     * Returns the number of keys between `lo` and `hi`, with the same bounds
+     * as scanRange. For example, with the keys 1 through 5 in the tree,
+     *
+     *   tree.count(t, new IntDataBox(2), false, new IntDataBox(4), true); // 2
+     *
+     * A counted tree takes the difference of the ranks of the two bounds, so
+     * it reads at most two root-to-leaf paths no matter how many keys are in
+     * range; any other tree scans the leaves in range.
+     */
+    public int count(BaseTransaction transaction, DataBox lo, boolean loInclusive,
+                     DataBox hi, boolean hiInclusive) {
+        if (!metadata.isCounted()) {
+            int n = 0;
+            for (Iterator<RecordId> iter = scanRange(transaction, lo, loInclusive, hi, hiInclusive);
+                    iter.hasNext(); iter.next()) {
+                ++n;
+            }
+            return n;
+        }
+        if (lo != null) {
+            typecheck(lo);
+        }
+        if (hi != null) {
+            typecheck(hi);
+        }
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.S);
+        int below = lo == null ? 0 : root.rank(transaction, lo, !loInclusive);
+        int upTo = hi == null ? root.numEntries() : root.rank(transaction, hi, hiInclusive);
+        return Math.max(0, upTo - below);
+    }
+
+    /**
+     * Returns the number of keys in the B+ tree that are less than `key`. In a
+     * counted tree this reads a single root-to-leaf path.
+     */
+    public int rank(BaseTransaction transaction, DataBox key) {
+        return count(transaction, null, false, key, false);
+    }
+
+    /**
+     * Returns the (key, rid) pair with the i-th smallest key in the B+ tree,
+     * counting from 0, or Optional.empty() if the tree has no more than i
+     * entries. For example, select(t, 0) returns the entry with the smallest
+     * key. In a counted tree this reads a single root-to-leaf path.
+     */
+    public Optional<Pair<DataBox, RecordId>> select(BaseTransaction transaction, int i) {
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.S);
+        if (i < 0) {
+            return Optional.empty();
+        }
+        if (metadata.isCounted()) {
+            return root.select(transaction, i);
+        }
+        Iterator<List<DataBox>> entries = scanRangeCovering(transaction, null, false, null, false);
+        for (int j = 0; j < i && entries.hasNext(); ++j) {
+            entries.next();
+        }
+        if (!entries.hasNext()) {
+            return Optional.empty();
+        }
+        DataBox key = entries.next().get(0);
+        return get(transaction, key).map(rid -> new Pair<>(key, rid));
+    }
+
+    // Statistics //////////////////////////////////////////////////////////////
+    public IndexStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Recomputes the statistics of the tree by reading all of its nodes, and
+     * writes them to the header page.
+     */
+    public IndexStats buildStatistics(BaseTransaction transaction) {
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.X);
+        IndexStats.Builder builder = new IndexStats.Builder();
+        int height = root.collectStats(transaction, builder);
+        stats = builder.build(height);
+        modifications = 0;
+        writeHeader(transaction, headerPage);
+        return stats;
     }
 
     // Helpers /////////////////////////////////////////////////////////////////
@@ -392,11 +936,52 @@ public class BPlusTree implements Closeable {
         return Math.min(leafOrder, innerOrder);
     }
 
+    /**
+     * Like maxOrder(pageSizeInBytes, keySchema), but for a covering B+ tree
+     * whose leaves also store the values of the columns in `includedSchema`.
+     */
+    public static int maxOrder(int pageSizeInBytes, Type keySchema, Schema includedSchema) {
+        return maxOrder(pageSizeInBytes, keySchema, includedSchema, false);
+    }
+
+    /**
+     * Like maxOrder(pageSizeInBytes, keySchema, includedSchema), but if
+     * `counted` is true, for a counted B+ tree, whose inner nodes also store
+     * the number of entries under each child.
+     */
+    public static int maxOrder(int pageSizeInBytes, Type keySchema, Schema includedSchema,
+                               boolean counted) {
+        int leafOrder = LeafNode.maxOrder(pageSizeInBytes, keySchema, includedSchema.getSizeInBytes());
+        int innerOrder = InnerNode.maxOrder(pageSizeInBytes, keySchema, counted);
+        return Math.min(leafOrder, innerOrder);
+    }
+
+    /** Returns true if this tree is counted (see the constructor). */
+    public boolean isCounted() {
+        return metadata.isCounted();
+    }
+
+    /**
+     * Returns the schema of the columns included in the leaves of this tree.
+     * The schema has no fields unless this tree is a covering index.
+     */
+    public Schema getIncludedSchema() {
+        return metadata.getIncludedSchema();
+    }
+
     /** Returns the number of pages used to serialize the tree. */
     public int getNumPages() {
         return metadata.getAllocator().getNumPages();
     }
 
+    public IndexType getIndexType() {
+        return IndexType.BPLUS_TREE;
+    }
+
+    public Optional<IndexPredicate> getPredicate() {
+        return predicate;
+    }
+
     /** Serializes the header page to page. */
     private void writeHeader(BaseTransaction transaction, Page page) {
         byte[] keySchema = metadata.getKeySchema().toBytes();
@@ -404,16 +989,61 @@ public class BPlusTree implements Closeable {
         buf.put(keySchema);
         buf.putInt(metadata.getOrder());
         buf.putInt(root.getPage().getPageNum());
+        buf.put(metadata.getIncludedSchema().toBytes());
+        buf.put((byte) (metadata.isCounted() ? 1 : 0));
+        buf.put(stats.toBytes());
+        buf.put(IndexPredicate.toBytes(predicate));
+    }
+
+    /**
+     * In a counted tree, brings the entry counts along the path to `key` up to
+     * date after an entry with key `key` was inserted or removed.
+     */
+    private void updateCounts(BaseTransaction transaction, DataBox key) {
+        if (metadata.isCounted()) {
+            root.refreshCounts(transaction, key);
+        }
+    }
+
+    /**
+     * Rebuilds the statistics of the tree after a put or remove if they have
+     * gone stale (see IndexStats.isStale).
+     */
+    private void updateStats(BaseTransaction transaction) {
+        if (stats.isStale(++modifications)) {
+            buildStatistics(transaction);
+        }
     }
 
     private void typecheck(DataBox key) {
         Type t = metadata.getKeySchema();
+        if (key instanceof CompositeDataBox && ((CompositeDataBox) key).isPrefix()) {
+            // Prefix bounds of composite keys may be used as scan bounds.
+            if (!((CompositeDataBox) key).isPrefixOf(t)) {
+                String msg = String.format("DataBox %s is not a prefix of type %s", key, t);
+                throw new IllegalArgumentException(msg);
+            }
+            return;
+        }
         if (!key.type().equals(t)) {
             String msg = String.format("DataBox %s is not of type %s", key, t);
             throw new IllegalArgumentException(msg);
         }
     }
 
+    /**
+     * A chain of leaves built by bulkLoadLeaves: the first key and page number
+     * of every leaf, the number of entries of every leaf, the statistics of
+     * the leaves, and the first and last leaf (if any).
+     */
+    private static class LeafChain {
+        List<Pair<DataBox, Integer>> leaves = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        IndexStats.Builder stats = new IndexStats.Builder();
+        LeafNode first;
+        LeafNode last;
+    }
+
     // Iterator ////////////////////////////////////////////////////////////////
     private class BPlusTreeIterator implements Iterator<RecordId> {
         @Override
@@ -426,4 +1056,102 @@ public class BPlusTree implements Closeable {
             throw new NoSuchElementException();
         }
     }
+
+    /**
+     * Iterates over record ids in descending order of their keys, starting with
+     * `leafIter` over `leaf` and then following left sibling pointers.
+     */
+    private class BPlusTreeDescendingIterator implements Iterator<RecordId> {
+        private BaseTransaction transaction;
+        private LeafNode leaf;
+        private Iterator<RecordId> leafIter;
+
+        BPlusTreeDescendingIterator(BaseTransaction transaction, LeafNode leaf,
+                                    Iterator<RecordId> leafIter) {
+            this.transaction = transaction;
+            this.leaf = leaf;
+            this.leafIter = leafIter;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!leafIter.hasNext()) {
+                Optional<LeafNode> sibling = leaf.getLeftSibling(transaction);
+                if (!sibling.isPresent()) {
+                    return false;
+                }
+                leaf = sibling.get();
+                leafIter = leaf.scanAllDescending();
+            }
+            return true;
+        }
+
+        @Override
+        public RecordId next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return leafIter.next();
+        }
+    }
+
+    /**
+     * Iterates over the entries of a bounded range of keys, starting at `leaf`
+     * and following right sibling pointers until a leaf holding a key past the
+     * upper bound is reached. Subclasses choose what is returned for each entry
+     * of a leaf by implementing scanLeaf.
+     */
+    private abstract class BPlusTreeRangeIterator<T> implements Iterator<T> {
+        private BaseTransaction transaction;
+        private LeafNode leaf;
+        private Iterator<T> leafIter;
+        private DataBox lo;
+        private boolean loInclusive;
+        protected DataBox hi;
+        protected boolean hiInclusive;
+
+        BPlusTreeRangeIterator(BaseTransaction transaction, LeafNode leaf, DataBox lo,
+                               boolean loInclusive, DataBox hi, boolean hiInclusive) {
+            this.transaction = transaction;
+            this.leaf = leaf;
+            this.leafIter = null;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+        }
+
+        /**
+         * Returns an iterator over the entries of `leaf` whose keys lie above
+         * `lo` (if it is not null) and below this iterator's upper bound.
+         */
+        abstract Iterator<T> scanLeaf(LeafNode leaf, DataBox lo, boolean loInclusive);
+
+        @Override
+        public boolean hasNext() {
+            if (leafIter == null) {
+                leafIter = scanLeaf(leaf, lo, loInclusive);
+            }
+            while (!leafIter.hasNext()) {
+                if (leaf.exceedsUpperBound(hi, hiInclusive)) {
+                    return false;
+                }
+                Optional<LeafNode> sibling = leaf.getRightSibling(transaction);
+                if (!sibling.isPresent()) {
+                    return false;
+                }
+                leaf = sibling.get();
+                leafIter = scanLeaf(leaf, null, false);
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return leafIter.next();
+        }
+    }
 }
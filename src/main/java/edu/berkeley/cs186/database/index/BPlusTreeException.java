@@ -1,6 +1,6 @@
 package edu.berkeley.cs186.database.index;
 
-public class BPlusTreeException extends Exception {
+public class BPlusTreeException extends IndexException {
     public BPlusTreeException() {
         super();
     }
@@ -2,6 +2,9 @@ package edu.berkeley.cs186.database.index;
 
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.table.Schema;
+
+import java.util.ArrayList;
 
 /** Metadata about a B+ tree. */
 class BPlusTreeMetadata {
@@ -20,10 +23,35 @@ class BPlusTreeMetadata {
     // may contain fewer than d entries.
     private final int order;
 
+    // A covering index stores the values of some extra columns of each record
+    // alongside its (key, record id) pair, so that queries that only read
+    // those columns never have to fetch the record itself. This is the schema
+    // of those included columns; it has no fields if the tree includes no
+    // columns.
+    private final Schema includedSchema;
+
+    // The inner nodes of a counted tree store, for every child, the number of
+    // entries in the subtree rooted by the child, so that the tree can count
+    // the keys in a range or find the i-th smallest key without reading the
+    // leaves in between.
+    private final boolean counted;
+
     public BPlusTreeMetadata(PageAllocator allocator, Type keySchema, int order) {
+        this(allocator, keySchema, order, new Schema(new ArrayList<>(), new ArrayList<>()));
+    }
+
+    public BPlusTreeMetadata(PageAllocator allocator, Type keySchema, int order,
+                             Schema includedSchema) {
+        this(allocator, keySchema, order, includedSchema, false);
+    }
+
+    public BPlusTreeMetadata(PageAllocator allocator, Type keySchema, int order,
+                             Schema includedSchema, boolean counted) {
         this.allocator = allocator;
         this.keySchema = keySchema;
         this.order = order;
+        this.includedSchema = includedSchema;
+        this.counted = counted;
     }
 
     public PageAllocator getAllocator() {
@@ -37,4 +65,16 @@ class BPlusTreeMetadata {
     public int getOrder() {
         return order;
     }
+
+    public Schema getIncludedSchema() {
+        return includedSchema;
+    }
+
+    public boolean hasIncludedColumns() {
+        return !includedSchema.getFieldNames().isEmpty();
+    }
+
+    public boolean isCounted() {
+        return counted;
+    }
 }
@@ -0,0 +1,369 @@
+package edu.berkeley.cs186.database.index;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import edu.berkeley.cs186.database.BaseTransaction;
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.concurrency.LockContext;
+import edu.berkeley.cs186.database.concurrency.LockType;
+import edu.berkeley.cs186.database.concurrency.LockUtil;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.table.RecordId;
+
+/**
+ * A persistent bitmap index for a column with few distinct values. For every
+ * distinct value of the column, the index stores a RoaringBitmap of the
+ * positions of the records with that value, where the record with id
+ * (pageNum, entryNum) is at position pageNum * recordsPerPage + entryNum.
+ * Unlike an Index, many records may share a key.
+ *
+ * Predicates on several bitmap-indexed columns are answered by combining the
+ * columns' bitmaps, e.g. RoaringBitmap.and(index1.lookup(t, v1),
+ * index2.lookup(t, v2)), and only then fetching the matching records.
+ *
+ * The first page of the file (page 0) is a header page which contains:
+ *
+ *   - the key schema of the index,
+ *   - the number of records per page of the indexed table, and
+ *   - the number of distinct keys n, followed by n (key, page number) pairs.
+ *
+ * The page number of a key starts a chain of pages holding the key's
+ * directory: the number of non-empty containers of the key's bitmap,
+ * followed by the upper 16 bits, the kind (1 for a bitmap container, 0 for an
+ * array container), and the page number of each container. Each container is
+ * serialized (see RoaringBitmap.chunkToBytes) to its own chain of pages
+ * starting at that page number. Every page of a chain contains the page number
+ * of the next page (or -1), the number of bytes on the page, and the bytes.
+ *
+ * Adding or removing a record only rewrites the bytes of its container that
+ * changed: one word of a bitmap container, or the values of an array container
+ * from the record's position on. The directory is only rewritten when a
+ * container is created, emptied, or changes kind. The bitmaps are also kept
+ * in memory, so lookups do not read any pages.
+ */
+public class BitmapIndex implements Closeable {
+    public static final String FILENAME_EXTENSION = ".bitmap";
+
+    // The next page number and the number of bytes on the page.
+    private static final int CHAIN_HEADER_SIZE = 2 * Integer.BYTES;
+    // The upper bits, kind, and page number of a container in a directory.
+    private static final int DIRECTORY_ENTRY_SIZE = 3 * Integer.BYTES;
+
+    private PageAllocator allocator;
+    private Type keySchema;
+    private int recordsPerPage;
+    private Page headerPage;
+    private LockContext lockContext;
+
+    private Map<DataBox, RoaringBitmap> bitmaps = new LinkedHashMap<>();
+    private Map<DataBox, Integer> chains = new LinkedHashMap<>();
+    // For every key, the first page of the chain of each of its containers.
+    private Map<DataBox, TreeMap<Integer, Integer>> chunkChains = new LinkedHashMap<>();
+
+    // Constructors ////////////////////////////////////////////////////////////
+    /**
+     * Construct a new, empty bitmap index which is serialized into the file
+     * `filename`, stores keys of type `keySchema`, and indexes a table with
+     * `recordsPerPage` records per page.
+     */
+    public BitmapIndex(String filename, Type keySchema, int recordsPerPage,
+                       LockContext lockContext, BaseTransaction transaction) {
+        lockContext.disableChildLocks();
+
+        this.lockContext = lockContext;
+        this.keySchema = keySchema;
+        this.recordsPerPage = recordsPerPage;
+        this.allocator = new PageAllocator(this.lockContext, filename, true, transaction);
+
+        int headerPageNum = allocator.allocPage(transaction);
+        assert(headerPageNum == 0);
+        this.headerPage = allocator.fetchPage(transaction, headerPageNum);
+        writeHeader(transaction);
+    }
+
+    /** Read a bitmap index that was previously serialized to filename. */
+    public BitmapIndex(String filename, LockContext lockContext, BaseTransaction transaction) {
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.X);
+        this.lockContext = lockContext;
+
+        this.allocator = new PageAllocator(this.lockContext, filename, false, transaction);
+        this.headerPage = allocator.fetchPage(transaction, 0);
+        Buffer buf = headerPage.getBuffer(transaction);
+
+        // See writeHeader for the layout of the header page.
+        this.keySchema = Type.fromBytes(buf);
+        this.recordsPerPage = buf.getInt();
+        int n = buf.getInt();
+        for (int i = 0; i < n; ++i) {
+            DataBox key = DataBox.fromBytes(buf, keySchema);
+            int pageNum = buf.getInt();
+            chains.put(key, pageNum);
+            bitmaps.put(key, new RoaringBitmap());
+            chunkChains.put(key, new TreeMap<>());
+
+            // See writeDirectory for the layout of a directory.
+            Buffer directory = ByteBuffer.wrap(readChain(transaction, pageNum));
+            int numChunks = directory.getInt();
+            for (int j = 0; j < numChunks; ++j) {
+                int chunk = directory.getInt();
+                boolean isBitmap = directory.getInt() == 1;
+                int chunkPageNum = directory.getInt();
+                bitmaps.get(key).putChunk(chunk, isBitmap, readChain(transaction, chunkPageNum));
+                chunkChains.get(key).put(chunk, chunkPageNum);
+            }
+        }
+    }
+
+    public void close() {
+        this.allocator.close();
+    }
+
+    // Core API ////////////////////////////////////////////////////////////////
+    /**
+     * Returns the positions of the records whose key is `key`. The returned
+     * bitmap is a copy, so the caller may freely combine or modify it.
+     */
+    public RoaringBitmap lookup(BaseTransaction transaction, DataBox key) {
+        typecheck(key);
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.S);
+        return RoaringBitmap.or(bitmaps.getOrDefault(key, new RoaringBitmap()), new RoaringBitmap());
+    }
+
+    /**
+     * Adds the record with id `rid` and key `key` to the index. Since every
+     * distinct key takes up space on the header page, an exception is raised
+     * if the header page has no room for a new key.
+     */
+    public void add(BaseTransaction transaction, DataBox key, RecordId rid) throws IndexException {
+        typecheck(key);
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.X);
+
+        if (!bitmaps.containsKey(key)) {
+            if (chains.size() == maxKeys()) {
+                String msg = String.format(
+                                 "A bitmap index on %s holds at most %d distinct values.",
+                                 keySchema, maxKeys());
+                throw new IndexException(msg);
+            }
+            bitmaps.put(key, new RoaringBitmap());
+            chunkChains.put(key, new TreeMap<>());
+            chains.put(key, allocChainPage(transaction));
+            writeDirectory(transaction, key);
+            writeHeader(transaction);
+        }
+        RoaringBitmap bitmap = bitmaps.get(key);
+        int position = toPosition(rid);
+        if (!bitmap.contains(position)) {
+            boolean wasBitmap = bitmap.isBitmapChunk(RoaringBitmap.chunkOf(position));
+            bitmap.add(position);
+            writeChunk(transaction, key, position, wasBitmap);
+        }
+    }
+
+    /** Removes the record with id `rid` and key `key` from the index. */
+    public void remove(BaseTransaction transaction, DataBox key, RecordId rid) {
+        typecheck(key);
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.X);
+
+        RoaringBitmap bitmap = bitmaps.get(key);
+        int position = toPosition(rid);
+        if (bitmap != null && bitmap.contains(position)) {
+            boolean wasBitmap = bitmap.isBitmapChunk(RoaringBitmap.chunkOf(position));
+            bitmap.remove(position);
+            writeChunk(transaction, key, position, wasBitmap);
+        }
+    }
+
+    /**
+     * Returns an iterator over the ids of the records at the positions in
+     * `positions`, in ascending order.
+     */
+    public Iterator<RecordId> toRecordIds(RoaringBitmap positions) {
+        Iterator<Integer> iter = positions.iterator();
+        return new Iterator<RecordId>() {
+            @Override
+            public boolean hasNext() {
+                return iter.hasNext();
+            }
+
+            @Override
+            public RecordId next() {
+                int position = iter.next();
+                return new RecordId(position / recordsPerPage, (short) (position % recordsPerPage));
+            }
+        };
+    }
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    public Type getKeySchema() {
+        return keySchema;
+    }
+
+    /** Returns the number of pages used to serialize the index. */
+    public int getNumPages() {
+        return allocator.getNumPages();
+    }
+
+    private int toPosition(RecordId rid) {
+        return rid.getPageNum() * recordsPerPage + rid.getEntryNum();
+    }
+
+    /** Returns the number of distinct keys that fit on the header page. */
+    private int maxKeys() {
+        int headerSize = keySchema.toBytes().length + 2 * Integer.BYTES;
+        return (Page.pageSize - headerSize) / (keySchema.getSizeInBytes() + Integer.BYTES);
+    }
+
+    /** Serializes the header page. */
+    private void writeHeader(BaseTransaction transaction) {
+        Buffer buf = headerPage.getBuffer(transaction);
+        buf.put(keySchema.toBytes());
+        buf.putInt(recordsPerPage);
+        buf.putInt(chains.size());
+        for (Map.Entry<DataBox, Integer> e : chains.entrySet()) {
+            buf.put(e.getKey().toBytes());
+            buf.putInt(e.getValue());
+        }
+    }
+
+    /**
+     * Writes back the container of `key`'s bitmap that holds `position` after
+     * `position` was added or removed. `wasBitmap` is true if the container was
+     * a bitmap container before the change.
+     */
+    private void writeChunk(BaseTransaction transaction, DataBox key, int position, boolean wasBitmap) {
+        RoaringBitmap bitmap = bitmaps.get(key);
+        TreeMap<Integer, Integer> pages = chunkChains.get(key);
+        int chunk = RoaringBitmap.chunkOf(position);
+        byte[] bytes = bitmap.chunkToBytes(chunk);
+        boolean isBitmap = bitmap.isBitmapChunk(chunk);
+
+        if (bytes == null) {
+            // the container is empty
+            freeChain(transaction, pages.remove(chunk));
+            writeDirectory(transaction, key);
+        } else if (!pages.containsKey(chunk)) {
+            pages.put(chunk, allocChainPage(transaction));
+            writeChain(transaction, pages.get(chunk), bytes);
+            writeDirectory(transaction, key);
+        } else if (isBitmap != wasBitmap) {
+            writeChain(transaction, pages.get(chunk), bytes);
+            writeDirectory(transaction, key);
+        } else {
+            int from = bitmap.chunkOffset(position);
+            int to = isBitmap ? from + Long.BYTES : bytes.length;
+            writeChain(transaction, pages.get(chunk), bytes, from, to);
+        }
+    }
+
+    /** Serializes the directory of `key`'s containers to the key's chain. */
+    private void writeDirectory(BaseTransaction transaction, DataBox key) {
+        RoaringBitmap bitmap = bitmaps.get(key);
+        TreeMap<Integer, Integer> pages = chunkChains.get(key);
+        byte[] bytes = new byte[Integer.BYTES + pages.size() * DIRECTORY_ENTRY_SIZE];
+        Buffer buf = ByteBuffer.wrap(bytes);
+        buf.putInt(pages.size());
+        for (Map.Entry<Integer, Integer> e : pages.entrySet()) {
+            buf.putInt(e.getKey());
+            buf.putInt(bitmap.isBitmapChunk(e.getKey()) ? 1 : 0);
+            buf.putInt(e.getValue());
+        }
+        writeChain(transaction, chains.get(key), bytes);
+    }
+
+    /** Allocates an empty page at the end of a chain. */
+    private int allocChainPage(BaseTransaction transaction) {
+        int pageNum = allocator.allocPage(transaction);
+        allocator.fetchPage(transaction, pageNum).getBuffer(transaction).putInt(-1).putInt(0);
+        return pageNum;
+    }
+
+    private byte[] readChain(BaseTransaction transaction, int pageNum) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        while (pageNum != -1) {
+            Buffer buf = allocator.fetchPage(transaction, pageNum).getBuffer(transaction);
+            pageNum = buf.getInt();
+            byte[] chunk = new byte[buf.getInt()];
+            buf.get(chunk);
+            bytes.write(chunk, 0, chunk.length);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Frees the chain of pages starting at `pageNum` (if it is not -1). */
+    private void freeChain(BaseTransaction transaction, int pageNum) {
+        while (pageNum != -1) {
+            Page unused = allocator.fetchPage(transaction, pageNum);
+            pageNum = unused.getBuffer(transaction).getInt();
+            allocator.freePage(transaction, unused);
+        }
+    }
+
+    /**
+     * Writes `bytes` to the chain of pages starting at `pageNum`, extending the
+     * chain with new pages or freeing the pages it no longer needs.
+     */
+    private void writeChain(BaseTransaction transaction, int pageNum, byte[] bytes) {
+        writeChain(transaction, pageNum, bytes, 0, bytes.length);
+    }
+
+    /**
+     * Like writeChain(transaction, pageNum, bytes), but for a chain that held
+     * `bytes` already, except for bytes [from, to) and the length of `bytes`.
+     * Only those bytes, and the headers of pages whose length or next page
+     * changed, are written.
+     */
+    private void writeChain(BaseTransaction transaction, int pageNum, byte[] bytes, int from, int to) {
+        int chunkSize = Page.pageSize - CHAIN_HEADER_SIZE;
+        int offset = 0;
+        while (true) {
+            Page page = allocator.fetchPage(transaction, pageNum);
+            Buffer header = page.getBuffer(transaction);
+            int next = header.getInt();
+            int oldLength = header.getInt();
+            int length = Math.min(chunkSize, bytes.length - offset);
+            boolean last = offset + length == bytes.length;
+
+            int newNext = next;
+            if (last) {
+                // free the rest of the old chain
+                freeChain(transaction, next);
+                newNext = -1;
+            } else if (next == -1) {
+                newNext = allocChainPage(transaction);
+            }
+
+            if (newNext != next || length != oldLength) {
+                page.getBuffer(transaction).putInt(newNext).putInt(length);
+            }
+            int start = Math.max(from, offset);
+            int end = Math.min(to, offset + length);
+            if (start < end) {
+                Buffer buf = page.getBuffer(transaction).position(CHAIN_HEADER_SIZE + start - offset);
+                buf.put(Arrays.copyOfRange(bytes, start, end));
+            }
+            if (last) {
+                return;
+            }
+            offset += length;
+            pageNum = newNext;
+        }
+    }
+
+    private void typecheck(DataBox key) {
+        if (!key.type().equals(keySchema)) {
+            String msg = String.format("DataBox %s is not of type %s", key, keySchema);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+}
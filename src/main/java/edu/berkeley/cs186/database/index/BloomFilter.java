@@ -0,0 +1,56 @@
+package edu.berkeley.cs186.database.index;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+
+/**
+ * An in-memory Bloom filter over keys. mightContain(k) is always true if k
+ * was added to the filter, and is false for most keys that were not, so a
+ * false answer lets a lookup skip whatever the filter summarizes.
+ *
+ * With 10 bits per expected key and 7 hash functions, about 1% of the keys
+ * that were never added are reported as possibly present.
+ */
+class BloomFilter {
+    private static final int BITS_PER_KEY = 10;
+    private static final int NUM_HASHES = 7;
+
+    private final long[] bits;
+    private final int numBits;
+
+    /** Construct an empty filter sized for `expectedKeys` keys. */
+    BloomFilter(int expectedKeys) {
+        this.numBits = Math.max(Long.SIZE, expectedKeys * BITS_PER_KEY);
+        this.bits = new long[(numBits + Long.SIZE - 1) / Long.SIZE];
+    }
+
+    void add(DataBox key) {
+        int h1 = hash(key.hashCode());
+        int h2 = hash(h1) | 1;
+        for (int i = 0; i < NUM_HASHES; ++i) {
+            int bit = Math.floorMod(h1 + i * h2, numBits);
+            bits[bit / Long.SIZE] |= 1L << (bit % Long.SIZE);
+        }
+    }
+
+    boolean mightContain(DataBox key) {
+        int h1 = hash(key.hashCode());
+        int h2 = hash(h1) | 1;
+        for (int i = 0; i < NUM_HASHES; ++i) {
+            int bit = Math.floorMod(h1 + i * h2, numBits);
+            if ((bits[bit / Long.SIZE] & (1L << (bit % Long.SIZE))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Scrambles the bits of h, since hashCode of an IntDataBox is the int itself. */
+    private static int hash(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
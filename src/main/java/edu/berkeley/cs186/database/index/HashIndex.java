@@ -0,0 +1,443 @@
+package edu.berkeley.cs186.database.index;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import edu.berkeley.cs186.database.BaseTransaction;
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.concurrency.LockContext;
+import edu.berkeley.cs186.database.concurrency.LockType;
+import edu.berkeley.cs186.database.concurrency.LockUtil;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
+
+/**
+ * A persistent extendible hash index. Unlike a BPlusTree, a hash index does
+ * not keep its keys in order, so it cannot answer range or sorted scans. In
+ * exchange, a lookup reads a single bucket page instead of a root-to-leaf path.
+ *
+ *   // Create an integer-valued hash index that is persisted in index.txt.
+ *   HashIndex index = new HashIndex("index.txt", Type.intType(), lockContext, transaction);
+ *
+ *   index.put(transaction, new IntDataBox(0), new RecordId(0, (short) 0));
+ *   index.get(transaction, new IntDataBox(0)); // Optional.of(RecordId(0, 0))
+ *   index.get(transaction, new IntDataBox(1)); // Optional.empty()
+ *
+ * The first page of the file (page 0) is a header page which contains:
+ *
+ *   - the key schema of the index,
+ *   - the statistics of the index (see IndexStats),
+ *   - the predicate of a partial index, if any (see IndexPredicate),
+ *   - the global depth d of the directory, and
+ *   - the directory: 2^d page numbers of buckets.
+ *
+ * A key whose hash has lowest d bits equal to i is stored in the bucket
+ * directory[i]. Every other page is a bucket page which contains:
+ *
+ *   - the local depth of the bucket (see put),
+ *   - the page number of the bucket's next overflow page, or -1, and
+ *   - the number n of entries, followed by n (key, rid) pairs.
+ *
+ * The directory is kept in memory, so a lookup reads exactly one bucket page
+ * unless the bucket has overflowed, which only happens once the directory has
+ * grown to fill the header page.
+ */
+public class HashIndex implements Index {
+    public static final String FILENAME_EXTENSION = ".hash";
+
+    // The local depth, overflow page number, and number of entries.
+    private static final int BUCKET_HEADER_SIZE = 3 * Integer.BYTES;
+
+    private PageAllocator allocator;
+    private Type keySchema;
+    private Page headerPage;
+    private LockContext lockContext;
+
+    // The number of entries that fit on a single bucket page.
+    private int bucketCapacity;
+
+    // The largest global depth whose directory fits on the header page.
+    private int maxGlobalDepth;
+
+    private int globalDepth;
+    private int[] directory;
+
+    // The statistics of the index, and the number of puts and removes since
+    // they were last built.
+    private IndexStats stats = IndexStats.empty();
+    private int modifications;
+
+    // The predicate of a partial index (see IndexPredicate).
+    private Optional<IndexPredicate> predicate;
+
+    // Constructors ////////////////////////////////////////////////////////////
+    /**
+     * Construct a new, empty hash index which is serialized into the file
+     * `filename` and stores keys of type `keySchema`.
+     */
+    public HashIndex(String filename, Type keySchema, LockContext lockContext,
+                     BaseTransaction transaction) throws IndexException {
+        this(filename, keySchema, Optional.empty(), lockContext, transaction);
+    }
+
+    /**
+     * Construct a new, empty hash index which, if `predicate` is present, is a
+     * partial index that only holds the records that satisfy the predicate.
+     */
+    public HashIndex(String filename, Type keySchema, Optional<IndexPredicate> predicate,
+                     LockContext lockContext, BaseTransaction transaction) throws IndexException {
+        lockContext.disableChildLocks();
+
+        if (bucketCapacity(keySchema) < 1) {
+            String msg = String.format("Keys of type %s do not fit on a page.", keySchema);
+            throw new IndexException(msg);
+        }
+
+        this.lockContext = lockContext;
+        this.allocator = new PageAllocator(this.lockContext, filename, true, transaction);
+        initialize(keySchema, predicate);
+
+        int headerPageNum = allocator.allocPage(transaction);
+        assert(headerPageNum == 0);
+        this.headerPage = allocator.fetchPage(transaction, headerPageNum);
+
+        Bucket bucket = new Bucket(allocator.allocPage(transaction), 0);
+        writeBucket(transaction, bucket);
+
+        this.globalDepth = 0;
+        this.directory = new int[] {bucket.pageNum};
+        writeHeader(transaction);
+    }
+
+    /** Read a hash index that was previously serialized to filename. */
+    public HashIndex(String filename, LockContext lockContext, BaseTransaction transaction) {
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.X);
+        this.lockContext = lockContext;
+
+        this.allocator = new PageAllocator(this.lockContext, filename, false, transaction);
+        this.headerPage = allocator.fetchPage(transaction, 0);
+        Buffer buf = headerPage.getBuffer(transaction);
+
+        // See writeHeader for the layout of the header page.
+        Type keySchema = Type.fromBytes(buf);
+        this.stats = IndexStats.fromBytes(buf);
+        initialize(keySchema, IndexPredicate.fromBytes(buf));
+        this.globalDepth = buf.getInt();
+        this.directory = new int[1 << globalDepth];
+        for (int i = 0; i < directory.length; ++i) {
+            directory[i] = buf.getInt();
+        }
+    }
+
+    private void initialize(Type keySchema, Optional<IndexPredicate> predicate) {
+        this.keySchema = keySchema;
+        this.predicate = predicate;
+        this.bucketCapacity = bucketCapacity(keySchema);
+
+        int directorySlots = (Page.pageSize - keySchema.toBytes().length - IndexStats.SIZE_IN_BYTES -
+                              IndexPredicate.toBytes(predicate).length - Integer.BYTES) / Integer.BYTES;
+        this.maxGlobalDepth = 31 - Integer.numberOfLeadingZeros(directorySlots);
+    }
+
+    public void close() {
+        this.allocator.close();
+    }
+
+    // Core API ////////////////////////////////////////////////////////////////
+    public Optional<RecordId> get(BaseTransaction transaction, DataBox key) {
+        typecheck(key);
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.S);
+
+        int pageNum = directory[slot(key)];
+        while (pageNum != -1) {
+            Bucket bucket = readBucket(transaction, pageNum);
+            int i = bucket.keys.indexOf(key);
+            if (i != -1) {
+                return Optional.of(bucket.rids.get(i));
+            }
+            pageNum = bucket.nextPageNum;
+        }
+        return Optional.empty();
+    }
+
+    public Iterator<RecordId> scanEqual(BaseTransaction transaction, DataBox key) {
+        Optional<RecordId> rid = get(transaction, key);
+        if (rid.isPresent()) {
+            return Collections.singletonList(rid.get()).iterator();
+        }
+        return Collections.<RecordId>emptyIterator();
+    }
+
+    /**
+     * Inserts a (key, rid) pair into the index. If the key already exists in
+     * the index, then the pair is not inserted and an exception is raised.
+     *
+     * If the key's bucket is full, the bucket is split in two on one more bit
+     * of the hash (its local depth), doubling the directory first if the
+     * bucket already uses all d bits of the directory. Once the directory can
+     * no longer grow, full buckets are extended with overflow pages instead.
+     */
+    public void put(BaseTransaction transaction, DataBox key, RecordId rid) throws IndexException {
+        typecheck(key);
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.X);
+
+        while (true) {
+            Bucket bucket = readBucket(transaction, directory[slot(key)]);
+            Bucket last = bucket;
+            Bucket free = null;
+            for (Bucket b = bucket; b != null; b = next(transaction, b)) {
+                if (b.keys.contains(key)) {
+                    String msg = String.format("Key %s already exists in the index.", key);
+                    throw new IndexException(msg);
+                }
+                if (free == null && b.keys.size() < bucketCapacity) {
+                    free = b;
+                }
+                last = b;
+            }
+
+            if (free != null) {
+                free.keys.add(key);
+                free.rids.add(rid);
+                writeBucket(transaction, free);
+                updateStats(transaction);
+                return;
+            }
+
+            if (bucket.localDepth < maxGlobalDepth) {
+                split(transaction, bucket);
+                continue;
+            }
+
+            Bucket overflow = new Bucket(allocator.allocPage(transaction), last.localDepth);
+            overflow.keys.add(key);
+            overflow.rids.add(rid);
+            writeBucket(transaction, overflow);
+            last.nextPageNum = overflow.pageNum;
+            writeBucket(transaction, last);
+            updateStats(transaction);
+            return;
+        }
+    }
+
+    /**
+     * Deletes a (key, rid) pair from the index. Buckets are never merged, so
+     * the index does not shrink when keys are removed.
+     */
+    public void remove(BaseTransaction transaction, DataBox key) {
+        typecheck(key);
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.X);
+
+        for (Bucket b = readBucket(transaction, directory[slot(key)]); b != null;
+                b = next(transaction, b)) {
+            int i = b.keys.indexOf(key);
+            if (i != -1) {
+                b.keys.remove(i);
+                b.rids.remove(i);
+                writeBucket(transaction, b);
+                updateStats(transaction);
+                return;
+            }
+        }
+    }
+
+    // Statistics //////////////////////////////////////////////////////////////
+    public IndexStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Recomputes the statistics of the index by reading every bucket page,
+     * and writes them to the header page. A hash index has no order, so its
+     * entries are visited bucket by bucket, which is also the order of a scan
+     * of the index.
+     */
+    public IndexStats buildStatistics(BaseTransaction transaction) {
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.X);
+        IndexStats.Builder builder = new IndexStats.Builder();
+        Set<Integer> visited = new HashSet<>();
+        for (int pageNum : directory) {
+            if (!visited.add(pageNum)) {
+                continue;
+            }
+            for (Bucket b = readBucket(transaction, pageNum); b != null; b = next(transaction, b)) {
+                builder.addLeaf();
+                for (RecordId rid : b.rids) {
+                    builder.addEntry(rid);
+                }
+            }
+        }
+        stats = builder.build(1);
+        modifications = 0;
+        writeHeader(transaction);
+        return stats;
+    }
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    /** A hash index has no included columns. */
+    public Schema getIncludedSchema() {
+        return new Schema(new ArrayList<>(), new ArrayList<>());
+    }
+
+    /** Returns the number of pages used to serialize the index. */
+    public int getNumPages() {
+        return allocator.getNumPages();
+    }
+
+    public IndexType getIndexType() {
+        return IndexType.HASH;
+    }
+
+    public Optional<IndexPredicate> getPredicate() {
+        return predicate;
+    }
+
+    /** Returns the global depth of the directory. */
+    int getGlobalDepth() {
+        return globalDepth;
+    }
+
+    /**
+     * Returns the number of (key, rid) pairs that fit on a single bucket page
+     * for keys of type `keySchema`.
+     */
+    static int bucketCapacity(Type keySchema) {
+        int entrySize = keySchema.getSizeInBytes() + RecordId.getSizeInBytes();
+        return (Page.pageSize - BUCKET_HEADER_SIZE) / entrySize;
+    }
+
+    /**
+     * Splits the (non-overflowed) bucket `bucket` on the bit of the hash after
+     * its local depth, moving the keys with that bit set to a new bucket.
+     */
+    private void split(BaseTransaction transaction, Bucket bucket) {
+        if (bucket.localDepth == globalDepth) {
+            int[] doubled = Arrays.copyOf(directory, 2 * directory.length);
+            System.arraycopy(directory, 0, doubled, directory.length, directory.length);
+            directory = doubled;
+            globalDepth++;
+        }
+
+        int bit = 1 << bucket.localDepth;
+        bucket.localDepth++;
+        Bucket sibling = new Bucket(allocator.allocPage(transaction), bucket.localDepth);
+
+        List<DataBox> keys = bucket.keys;
+        List<RecordId> rids = bucket.rids;
+        bucket.keys = new ArrayList<>();
+        bucket.rids = new ArrayList<>();
+        for (int i = 0; i < keys.size(); ++i) {
+            Bucket b = (hash(keys.get(i)) & bit) == 0 ? bucket : sibling;
+            b.keys.add(keys.get(i));
+            b.rids.add(rids.get(i));
+        }
+
+        for (int i = 0; i < directory.length; ++i) {
+            if (directory[i] == bucket.pageNum && (i & bit) != 0) {
+                directory[i] = sibling.pageNum;
+            }
+        }
+
+        writeBucket(transaction, bucket);
+        writeBucket(transaction, sibling);
+        writeHeader(transaction);
+    }
+
+    /**
+     * Returns a hash of `key`. DataBox hash codes are often the values
+     * themselves (e.g. for integers), so the bits are mixed before the low
+     * bits are used to pick a bucket.
+     */
+    private static int hash(DataBox key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int slot(DataBox key) {
+        return hash(key) & ((1 << globalDepth) - 1);
+    }
+
+    /** Serializes the header page. */
+    private void writeHeader(BaseTransaction transaction) {
+        Buffer buf = headerPage.getBuffer(transaction);
+        buf.put(keySchema.toBytes());
+        buf.put(stats.toBytes());
+        buf.put(IndexPredicate.toBytes(predicate));
+        buf.putInt(globalDepth);
+        for (int pageNum : directory) {
+            buf.putInt(pageNum);
+        }
+    }
+
+    /**
+     * Rebuilds the statistics of the index after a put or remove if they have
+     * gone stale (see IndexStats.isStale).
+     */
+    private void updateStats(BaseTransaction transaction) {
+        if (stats.isStale(++modifications)) {
+            buildStatistics(transaction);
+        }
+    }
+
+    private Bucket next(BaseTransaction transaction, Bucket bucket) {
+        return bucket.nextPageNum == -1 ? null : readBucket(transaction, bucket.nextPageNum);
+    }
+
+    private Bucket readBucket(BaseTransaction transaction, int pageNum) {
+        Page page = allocator.fetchPage(transaction, pageNum);
+        Buffer buf = page.getBuffer(transaction);
+        Bucket bucket = new Bucket(pageNum, buf.getInt());
+        bucket.nextPageNum = buf.getInt();
+        int n = buf.getInt();
+        for (int i = 0; i < n; ++i) {
+            bucket.keys.add(DataBox.fromBytes(buf, keySchema));
+            bucket.rids.add(RecordId.fromBytes(buf));
+        }
+        return bucket;
+    }
+
+    private void writeBucket(BaseTransaction transaction, Bucket bucket) {
+        int entrySize = keySchema.getSizeInBytes() + RecordId.getSizeInBytes();
+        ByteBuffer buf = ByteBuffer.allocate(BUCKET_HEADER_SIZE + bucket.keys.size() * entrySize);
+        buf.putInt(bucket.localDepth);
+        buf.putInt(bucket.nextPageNum);
+        buf.putInt(bucket.keys.size());
+        for (int i = 0; i < bucket.keys.size(); ++i) {
+            buf.put(bucket.keys.get(i).toBytes());
+            buf.put(bucket.rids.get(i).toBytes());
+        }
+        allocator.fetchPage(transaction, bucket.pageNum).getBuffer(transaction).put(buf.array());
+    }
+
+    private void typecheck(DataBox key) {
+        if (!key.type().equals(keySchema)) {
+            String msg = String.format("DataBox %s is not of type %s", key, keySchema);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    /** The deserialized contents of a bucket page. */
+    private static class Bucket {
+        private int pageNum;
+        private int localDepth;
+        private int nextPageNum = -1;
+        private List<DataBox> keys = new ArrayList<>();
+        private List<RecordId> rids = new ArrayList<>();
+
+        private Bucket(int pageNum, int localDepth) {
+            this.pageNum = pageNum;
+            this.localDepth = localDepth;
+        }
+    }
+}
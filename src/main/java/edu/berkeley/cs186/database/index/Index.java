@@ -0,0 +1,70 @@
+package edu.berkeley.cs186.database.index;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.Optional;
+
+import edu.berkeley.cs186.database.BaseTransaction;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
+
+/**
+ * A persistent index that maps unique keys to record ids. Every index supports
+ * equality lookups and updates; an OrderedIndex, such as a BPlusTree or an
+ * LSMIndex, additionally supports ordered scans.
+ * See IndexType for the kinds of index.
+ */
+public interface Index extends Closeable {
+    /** Returns the record id associated with `key`, if any. */
+    Optional<RecordId> get(BaseTransaction transaction, DataBox key);
+
+    /**
+     * Like get, but returns an iterator over the record id associated with
+     * `key`, or an empty iterator if there is none.
+     */
+    Iterator<RecordId> scanEqual(BaseTransaction transaction, DataBox key);
+
+    /**
+     * Inserts a (key, rid) pair into the index. If the key already exists in
+     * the index, then the pair is not inserted and an exception is raised.
+     */
+    void put(BaseTransaction transaction, DataBox key, RecordId rid) throws IndexException;
+
+    /** Deletes a (key, rid) pair from the index. */
+    void remove(BaseTransaction transaction, DataBox key);
+
+    /**
+     * Returns the schema of the columns stored alongside the keys of the
+     * index. The schema has no fields unless the index is a covering index.
+     */
+    Schema getIncludedSchema();
+
+    /** Returns the number of pages used to serialize the index. */
+    int getNumPages();
+
+    IndexType getIndexType();
+
+    /**
+     * Returns the predicate of a partial index, which only holds the records
+     * that satisfy it, or Optional.empty() if the index holds every record of
+     * its table. See IndexPredicate.
+     */
+    Optional<IndexPredicate> getPredicate();
+
+    /**
+     * Returns the statistics of the index as of the last time they were built.
+     * Every index rebuilds its statistics on its own once more than a tenth of
+     * its entries have been put or removed since, so they are never far off.
+     */
+    IndexStats getStats();
+
+    /**
+     * Recomputes the statistics of the index from its pages and persists them
+     * in its header page. Running it multiple times refreshes the statistics.
+     */
+    IndexStats buildStatistics(BaseTransaction transaction);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,11 @@
+package edu.berkeley.cs186.database.index;
+
+public class IndexException extends Exception {
+    public IndexException() {
+        super();
+    }
+
+    public IndexException(String message) {
+        super(message);
+    }
+}
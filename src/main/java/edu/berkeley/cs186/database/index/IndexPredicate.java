@@ -0,0 +1,155 @@
+package edu.berkeley.cs186.database.index;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.query.QueryPlan.PredicateOperator;
+import edu.berkeley.cs186.database.table.Schema;
+
+/**
+ * The predicate of a partial index, which only holds the records of its table
+ * that satisfy the predicate. A predicate compares a column of the table to a
+ * value, just like a QueryPlan select: for example, a partial index on `id`
+ * with the predicate `status = 1` only holds the ids of the active records.
+ *
+ * An index persists its predicate (if any) in its header page. A predicate is
+ * serialized as a single byte that is 1 if there is a predicate, followed by
+ * a schema with the column and the type of the value, the ordinal of the
+ * operator, and the value.
+ */
+public class IndexPredicate {
+    private String columnName;
+    private PredicateOperator operator;
+    private DataBox value;
+
+    public IndexPredicate(String columnName, PredicateOperator operator, DataBox value) {
+        this.columnName = columnName;
+        this.operator = operator;
+        this.value = value;
+    }
+
+    public String getColumnName() {
+        return columnName;
+    }
+
+    public PredicateOperator getOperator() {
+        return operator;
+    }
+
+    public DataBox getValue() {
+        return value;
+    }
+
+    /** Returns true if `x`, a value of the predicate's column, satisfies the predicate. */
+    public boolean matches(DataBox x) {
+        int cmp = x.compareTo(value);
+        switch (operator) {
+        case EQUALS:
+            return cmp == 0;
+        case NOT_EQUALS:
+            return cmp != 0;
+        case LESS_THAN:
+            return cmp < 0;
+        case LESS_THAN_EQUALS:
+            return cmp <= 0;
+        case GREATER_THAN:
+            return cmp > 0;
+        default:
+            return cmp >= 0;
+        }
+    }
+
+    /** Returns true if the record `values` of a table with schema `s` satisfies the predicate. */
+    public boolean matches(Schema s, List<DataBox> values) {
+        return matches(values.get(s.getFieldNames().indexOf(columnName)));
+    }
+
+    /**
+     * Returns true if every value x of the predicate's column for which `x op
+     * v` holds also satisfies the predicate. For example, `status = 1` is
+     * implied by `status = 1`, and `age >= 18` is implied by `age > 20`, but
+     * not by `age < 20`.
+     */
+    public boolean impliedBy(PredicateOperator op, DataBox v) {
+        if (!v.type().equals(value.type())) {
+            return false;
+        }
+        int cmp = v.compareTo(value);
+        boolean below = operator == PredicateOperator.LESS_THAN
+                        || operator == PredicateOperator.LESS_THAN_EQUALS;
+        boolean above = operator == PredicateOperator.GREATER_THAN
+                        || operator == PredicateOperator.GREATER_THAN_EQUALS;
+        boolean notEquals = operator == PredicateOperator.NOT_EQUALS;
+        switch (op) {
+        case EQUALS:
+            return matches(v);
+        case NOT_EQUALS:
+            return notEquals && cmp == 0;
+        case LESS_THAN:
+            // every x < v also satisfies x < c, x <= c, and x != c as long as v <= c
+            return (below || notEquals) && cmp <= 0;
+        case LESS_THAN_EQUALS:
+            return operator == PredicateOperator.LESS_THAN_EQUALS ? cmp <= 0
+                   : (below || notEquals) && cmp < 0;
+        case GREATER_THAN:
+            return (above || notEquals) && cmp >= 0;
+        default:
+            return operator == PredicateOperator.GREATER_THAN_EQUALS ? cmp >= 0
+                   : (above || notEquals) && cmp > 0;
+        }
+    }
+
+    /** Serializes an optional predicate; see the class comment for the format. */
+    public static byte[] toBytes(Optional<IndexPredicate> predicate) {
+        if (!predicate.isPresent()) {
+            return new byte[] {(byte) 0};
+        }
+        IndexPredicate p = predicate.get();
+        byte[] column = new Schema(Collections.singletonList(p.columnName),
+                                   Collections.singletonList(p.value.type())).toBytes();
+        byte[] value = p.value.toBytes();
+        return ByteBuffer.allocate(1 + column.length + Integer.BYTES + value.length)
+               .put((byte) 1)
+               .put(column)
+               .putInt(p.operator.ordinal())
+               .put(value)
+               .array();
+    }
+
+    public static Optional<IndexPredicate> fromBytes(Buffer buf) {
+        if (buf.get() == (byte) 0) {
+            return Optional.empty();
+        }
+        Schema column = Schema.fromBytes(buf);
+        PredicateOperator operator = PredicateOperator.values()[buf.getInt()];
+        DataBox value = DataBox.fromBytes(buf, column.getFieldTypes().get(0));
+        return Optional.of(new IndexPredicate(column.getFieldNames().get(0), operator, value));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s %s", columnName, operator, value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof IndexPredicate)) {
+            return false;
+        }
+        IndexPredicate p = (IndexPredicate) o;
+        return columnName.equals(p.columnName) && operator == p.operator && value.equals(p.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(columnName, operator, value);
+    }
+}
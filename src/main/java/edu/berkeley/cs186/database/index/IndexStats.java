@@ -0,0 +1,166 @@
+package edu.berkeley.cs186.database.index;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.table.RecordId;
+
+/**
+ * The statistics of an index that the optimizer uses to estimate the cost of
+ * an index scan:
+ *
+ *   - the height: the number of pages a lookup reads to reach the page that
+ *     holds a key (the number of levels of a B+ tree, 1 for a hash index,
+ *     and the number of runs of an LSM index),
+ *   - the number of leaves: the number of pages that hold entries,
+ *   - the number of distinct keys, and
+ *   - the clustering factor: the number of times that two consecutive
+ *     entries of the index point to records on different pages of the table.
+ *
+ * The clustering factor is the number of page reads needed to fetch the
+ * records of every entry in index order while keeping only the last page in
+ * memory. It ranges from the number of pages of the table, if the index is in
+ * the same order as the table, up to the number of entries, if the order of
+ * the index is unrelated to that of the table.
+ *
+ * Every index persists its statistics in its header page and rebuilds them
+ * once more than a tenth of its entries have changed (see isStale).
+ */
+public class IndexStats {
+    public static final int SIZE_IN_BYTES = 4 * Integer.BYTES;
+
+    private int height;
+    private int numLeaves;
+    private int numKeys;
+    private int clusteringFactor;
+
+    public IndexStats(int height, int numLeaves, int numKeys, int clusteringFactor) {
+        this.height = height;
+        this.numLeaves = numLeaves;
+        this.numKeys = numKeys;
+        this.clusteringFactor = clusteringFactor;
+    }
+
+    /** The statistics of an empty index with a single (empty) leaf. */
+    public static IndexStats empty() {
+        return new IndexStats(1, 1, 0, 0);
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getNumLeaves() {
+        return numLeaves;
+    }
+
+    public int getNumKeys() {
+        return numKeys;
+    }
+
+    public int getClusteringFactor() {
+        return clusteringFactor;
+    }
+
+    /**
+     * Returns true if these statistics should be rebuilt after `modifications`
+     * puts and removes, i.e. if more than a tenth of the keys have changed.
+     */
+    boolean isStale(int modifications) {
+        return modifications > numKeys / 10;
+    }
+
+    public byte[] toBytes() {
+        return ByteBuffer.allocate(SIZE_IN_BYTES)
+               .putInt(height)
+               .putInt(numLeaves)
+               .putInt(numKeys)
+               .putInt(clusteringFactor)
+               .array();
+    }
+
+    public static IndexStats fromBytes(Buffer buf) {
+        return new IndexStats(buf.getInt(), buf.getInt(), buf.getInt(), buf.getInt());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("IndexStats(height=%d, numLeaves=%d, numKeys=%d, clusteringFactor=%d)",
+                             height, numLeaves, numKeys, clusteringFactor);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof IndexStats)) {
+            return false;
+        }
+        IndexStats s = (IndexStats) o;
+        return height == s.height && numLeaves == s.numLeaves && numKeys == s.numKeys &&
+               clusteringFactor == s.clusteringFactor;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(height, numLeaves, numKeys, clusteringFactor);
+    }
+
+    /**
+     * Accumulates the statistics of an index from its leaves and entries,
+     * which must be visited in index order.
+     */
+    static class Builder {
+        private int numLeaves = 0;
+        private int numKeys = 0;
+        private int clusteringFactor = 0;
+        private int firstPageNum = -1;
+        private int lastPageNum = -1;
+
+        void addLeaf() {
+            ++numLeaves;
+        }
+
+        void addLeaves(int n) {
+            numLeaves += n;
+        }
+
+        /** Adds an entry; keys are unique, so every entry is a distinct key. */
+        void addEntry(RecordId rid) {
+            ++numKeys;
+            if (numKeys == 1) {
+                firstPageNum = rid.getPageNum();
+            }
+            if (rid.getPageNum() != lastPageNum) {
+                ++clusteringFactor;
+                lastPageNum = rid.getPageNum();
+            }
+        }
+
+        /**
+         * Adds the leaves and entries of `other`, all of which come after the
+         * ones already added.
+         */
+        void addAll(Builder other) {
+            if (numKeys == 0) {
+                firstPageNum = other.firstPageNum;
+            }
+            numLeaves += other.numLeaves;
+            numKeys += other.numKeys;
+            clusteringFactor += other.clusteringFactor;
+            if (other.firstPageNum != -1 && other.firstPageNum == lastPageNum) {
+                // the first entry of other does not start a new page after all
+                --clusteringFactor;
+            }
+            if (other.lastPageNum != -1) {
+                lastPageNum = other.lastPageNum;
+            }
+        }
+
+        IndexStats build(int height) {
+            return new IndexStats(Math.max(1, height), Math.max(1, numLeaves), numKeys, clusteringFactor);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package edu.berkeley.cs186.database.index;
+
+/**
+ * The kinds of index a table can have on a column.
+ *
+ *   - A BPLUS_TREE index keeps its keys sorted, so it answers equality
+ *     lookups, range scans, and sorted scans.
+ *   - A HASH index only answers equality lookups, but answers each one in
+ *     one or two page reads no matter how many keys it holds.
+ *   - An LSM index (see LSMIndex) answers the same lookups and scans as a
+ *     BPLUS_TREE index, but buffers writes in memory and writes them out in
+ *     sorted runs, so it suits write-heavy columns.
+ *   - A BITMAP index (see BitmapIndex) is for columns with few distinct
+ *     values. Unlike the other kinds, its keys need not be unique.
+ *   - A LEARNED index (see LearnedIndex) answers the same lookups and scans
+ *     as a BPLUS_TREE index on an int column from a small model of where
+ *     every key is, instead of inner nodes. It is built from the rows a table
+ *     has when the index is created, after which keys can only be appended
+ *     in ascending order, so it suits static or append-only tables.
+ */
+public enum IndexType {
+    BPLUS_TREE,
+    HASH,
+    LSM,
+    BITMAP,
+    LEARNED
+}
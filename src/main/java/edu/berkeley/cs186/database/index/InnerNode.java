@@ -38,6 +38,20 @@ class InnerNode extends BPlusNode {
     private List<DataBox> keys;
     private List<Integer> children;
 
+    // If the tree is counted (see BPlusTreeMetadata.isCounted), then
+    // counts.get(i) is the number of entries under children.get(i), and
+    // countedChildren is the list of children that counts was computed for.
+    // put and remove only need to change keys and children: when this node is
+    // synced with different children, the counts of the new children and of
+    // their left neighbors (which are what a split leaves behind) are
+    // recomputed. Otherwise, both are null.
+    private List<Integer> counts;
+    private List<Integer> countedChildren;
+
+    // The number of bytes of the fields that precede the keys in the
+    // serialization of an inner node; see toBytes.
+    private static final int HEADER_SIZE = 5;
+
     // Constructors //////////////////////////////////////////////////////////////
     /**
      * Construct a brand new inner node. The inner node will be persisted on a
@@ -45,23 +59,40 @@ class InnerNode extends BPlusNode {
      */
     public InnerNode(BPlusTreeMetadata metadata, List<DataBox> keys,
                      List<Integer> children, BaseTransaction transaction) {
-        this(metadata, metadata.getAllocator().allocPage(transaction), keys, children, transaction);
+        this(metadata, keys, children, null, transaction);
+    }
+
+    /**
+     * Construct a brand new inner node of a counted tree whose i-th child has
+     * counts.get(i) entries under it. If counts is null, the children are read
+     * to count their entries.
+     */
+    InnerNode(BPlusTreeMetadata metadata, List<DataBox> keys, List<Integer> children,
+              List<Integer> counts, BaseTransaction transaction) {
+        this(metadata, metadata.getAllocator().allocPage(transaction), keys, children, counts,
+             transaction);
+        sync(transaction);
     }
 
     /**
      * Construct an inner node that is persisted to page `pageNum` allocated by
-     * metadata.getAllocator().
+     * metadata.getAllocator(). The node starts out clean, i.e. as it is
+     * already serialized on that page.
      */
     private InnerNode(BPlusTreeMetadata metadata, int pageNum, List<DataBox> keys,
-                      List<Integer> children, BaseTransaction transaction) {
+                      List<Integer> children, List<Integer> counts, BaseTransaction transaction) {
         assert(keys.size() <= 2 * metadata.getOrder());
         assert(keys.size() + 1 == children.size());
+        assert(counts == null || counts.size() == children.size());
 
         this.metadata = metadata;
         this.page = metadata.getAllocator().fetchPage(transaction, pageNum);
         this.keys = keys;
         this.children = children;
-        sync(transaction);
+        if (metadata.isCounted()) {
+            this.counts = counts == null ? new ArrayList<>() : counts;
+            this.countedChildren = counts == null ? new ArrayList<>() : new ArrayList<>(children);
+        }
     }
 
     // Core API //////////////////////////////////////////////////////////////////
@@ -77,6 +108,85 @@ class InnerNode extends BPlusNode {
         return null;
     }
 
+    // See BPlusNode.getRightmostLeaf.
+    @Override
+    public LeafNode getRightmostLeaf(BaseTransaction transaction) {
+        return getChild(transaction, children.size() - 1).getRightmostLeaf(transaction);
+    }
+
+    // See BPlusNode.getAll.
+    @Override
+    public void getAll(BaseTransaction transaction, List<DataBox> keys,
+                       List<Optional<RecordId>> rids) {
+        int start = 0;
+        while (start < keys.size()) {
+            int child = numLessThanEqual(keys.get(start), this.keys);
+            int end = start + 1;
+            while (end < keys.size() && numLessThanEqual(keys.get(end), this.keys) == child) {
+                ++end;
+            }
+            getChild(transaction, child).getAll(transaction, keys.subList(start, end),
+                                                rids.subList(start, end));
+            start = end;
+        }
+    }
+
+    // See BPlusNode.collectStats.
+    @Override
+    int collectStats(BaseTransaction transaction, IndexStats.Builder stats) {
+        int height = 0;
+        for (int i = 0; i < children.size(); ++i) {
+            height = Math.max(height, getChild(transaction, i).collectStats(transaction, stats));
+        }
+        return height + 1;
+    }
+
+    // See BPlusNode.numEntries.
+    @Override
+    int numEntries() {
+        int n = 0;
+        for (int count : counts) {
+            n += count;
+        }
+        return n;
+    }
+
+    // See BPlusNode.rank.
+    @Override
+    int rank(BaseTransaction transaction, DataBox key, boolean inclusive) {
+        int child = numLessThanEqual(key, keys);
+        int n = 0;
+        for (int i = 0; i < child; ++i) {
+            n += counts.get(i);
+        }
+        return n + getChild(transaction, child).rank(transaction, key, inclusive);
+    }
+
+    // See BPlusNode.select.
+    @Override
+    Optional<Pair<DataBox, RecordId>> select(BaseTransaction transaction, int i) {
+        for (int child = 0; child < children.size(); ++child) {
+            if (i < counts.get(child)) {
+                return getChild(transaction, child).select(transaction, i);
+            }
+            i -= counts.get(child);
+        }
+        return Optional.empty();
+    }
+
+    // See BPlusNode.refreshCounts.
+    @Override
+    int refreshCounts(BaseTransaction transaction, DataBox key) {
+        int child = numLessThanEqual(key, keys);
+        int count = getChild(transaction, child).refreshCounts(transaction, key);
+        if (counts.get(child) != count) {
+            counts.set(child, count);
+            markDirty(countOffset(child), countOffset(child + 1));
+            writeBack(transaction);
+        }
+        return numEntries();
+    }
+
     // See BPlusNode.put.
     @Override
     public Optional<Pair<DataBox, Integer>> put(BaseTransaction transaction, DataBox key, RecordId rid)
@@ -84,6 +194,14 @@ class InnerNode extends BPlusNode {
         return Optional.empty();
     }
 
+    // See BPlusNode.put.
+    @Override
+    public Optional<Pair<DataBox, Integer>> put(BaseTransaction transaction, DataBox key, RecordId rid,
+            List<DataBox> included)
+    throws BPlusTreeException {
+        return Optional.empty();
+    }
+
     // See BPlusNode.bulkLoad.
     @Override
     public Optional<Pair<DataBox, Integer>> bulkLoad(BaseTransaction transaction,
@@ -110,14 +228,65 @@ class InnerNode extends BPlusNode {
         return BPlusNode.fromBytes(transaction, metadata, pageNum);
     }
 
-    private void sync(BaseTransaction transaction) {
-        Buffer b = page.getBuffer(transaction);
-        byte[] newBytes = toBytes();
-        byte[] bytes = new byte[newBytes.length];
-        b.get(bytes);
-        if (!Arrays.equals(bytes, newBytes)) {
-            page.getBuffer(transaction).put(toBytes());
+    /** Serializes this node to its page. */
+    void sync(BaseTransaction transaction) {
+        if (metadata.isCounted() && !children.equals(countedChildren)) {
+            recount(transaction);
+        }
+        markDirty(0, Integer.MAX_VALUE);
+        writeBack(transaction);
+    }
+
+    // See BPlusNode.writeRange.
+    @Override
+    void writeRange(BaseTransaction transaction, int from, int to) {
+        int keySize = metadata.getKeySchema().getSizeInBytes();
+        int childrenOffset = HEADER_SIZE + keySize * keys.size();
+        BPlusNode.writeSection(page, transaction, from, to, 0, HEADER_SIZE, 1, (buf, i) -> {
+            buf.put((byte) 0);
+            buf.putInt(keys.size());
+        });
+        BPlusNode.writeSection(page, transaction, from, to, HEADER_SIZE, keySize, keys.size(),
+                               (buf, i) -> buf.put(keys.get(i).toBytes()));
+        BPlusNode.writeSection(page, transaction, from, to, childrenOffset, Integer.BYTES,
+                               children.size(), (buf, i) -> buf.putInt(children.get(i)));
+        if (metadata.isCounted()) {
+            BPlusNode.writeSection(page, transaction, from, to, countOffset(0), Integer.BYTES,
+                                   counts.size(), (buf, i) -> buf.putInt(counts.get(i)));
+        }
+    }
+
+    /**
+     * Returns the offset of the entry count of the i-th child in the
+     * serialization of this node, which must be part of a counted tree.
+     */
+    private int countOffset(int i) {
+        int keySize = metadata.getKeySchema().getSizeInBytes();
+        return HEADER_SIZE + keySize * keys.size() + Integer.BYTES * (children.size() + i);
+    }
+
+    /**
+     * Brings counts up to date with children after put, remove, or bulkLoad
+     * changed them. A child keeps its count unless it is new or its right
+     * neighbor is new, since a split only moves entries from a child to its
+     * new right sibling.
+     */
+    private void recount(BaseTransaction transaction) {
+        Map<Integer, Integer> oldCounts = new HashMap<>();
+        for (int i = 0; i < countedChildren.size(); ++i) {
+            oldCounts.put(countedChildren.get(i), counts.get(i));
+        }
+        List<Integer> newCounts = new ArrayList<>();
+        for (int i = 0; i < children.size(); ++i) {
+            boolean splitOff = i + 1 < children.size() && !oldCounts.containsKey(children.get(i + 1));
+            if (oldCounts.containsKey(children.get(i)) && !splitOff) {
+                newCounts.add(oldCounts.get(children.get(i)));
+            } else {
+                newCounts.add(getChild(transaction, i).numEntries());
+            }
         }
+        counts = newCounts;
+        countedChildren = new ArrayList<>(children);
     }
 
     // Just for testing.
@@ -130,11 +299,25 @@ class InnerNode extends BPlusNode {
         return children;
     }
 
+    // Just for testing.
+    List<Integer> getCounts() {
+        return counts;
+    }
+
     /**
      * Returns the largest number d such that the serialization of an InnerNode
      * with 2d keys will fit on a single page of size `pageSizeInBytes`.
      */
     public static int maxOrder(int pageSizeInBytes, Type keySchema) {
+        return maxOrder(pageSizeInBytes, keySchema, false);
+    }
+
+    /**
+     * Like maxOrder(pageSizeInBytes, keySchema), but if `counted` is true, for
+     * an inner node of a counted tree, which also stores 4 bytes of entry
+     * count for each of its children.
+     */
+    public static int maxOrder(int pageSizeInBytes, Type keySchema, boolean counted) {
         // A leaf node with n entries takes up the following number of bytes:
         //
         //   1 + 4 + (n * keySize) + ((n + 1) * 4)
@@ -156,8 +339,11 @@ class InnerNode extends BPlusNode {
         //   n = (pageSizeInBytes - 9) / (keySize + 4)
         //
         // The order d is half of n.
+        //
+        // A counted inner node stores (n + 1) * 4 more bytes of counts, so for
+        // it, n = (pageSizeInBytes - 13) / (keySize + 8).
         int keySize = keySchema.getSizeInBytes();
-        int n = (pageSizeInBytes - 9) / (keySize + 4);
+        int n = counted ? (pageSizeInBytes - 13) / (keySize + 8) : (pageSizeInBytes - 9) / (keySize + 4);
         return n / 2;
     }
 
@@ -279,8 +465,9 @@ class InnerNode extends BPlusNode {
         //      a leaf node,
         //   b. the number n (4 bytes) of keys this inner node contains (which is
         //      one fewer than the number of children pointers),
-        //   c. the n keys, and
-        //   d. the n+1 children pointers.
+        //   c. the n keys,
+        //   d. the n+1 children pointers, and
+        //   e. if the tree is counted, the n+1 entry counts of the children.
         //
         // For example, the following bytes:
         //
@@ -298,7 +485,8 @@ class InnerNode extends BPlusNode {
         int numKeysSize = Integer.BYTES;
         int keysSize = metadata.getKeySchema().getSizeInBytes() * keys.size();
         int childrenSize = Integer.BYTES * children.size();
-        int size = isLeafSize + numKeysSize + keysSize + childrenSize;
+        int countsSize = metadata.isCounted() ? Integer.BYTES * counts.size() : 0;
+        int size = isLeafSize + numKeysSize + keysSize + childrenSize + countsSize;
 
         ByteBuffer buf = ByteBuffer.allocate(size);
         buf.put((byte) 0);
@@ -309,6 +497,11 @@ class InnerNode extends BPlusNode {
         for (Integer child : children) {
             buf.putInt(child);
         }
+        if (metadata.isCounted()) {
+            for (Integer count : counts) {
+                buf.putInt(count);
+            }
+        }
         return buf.array();
     }
 
@@ -332,7 +525,14 @@ class InnerNode extends BPlusNode {
         for (int i = 0; i < n + 1; ++i) {
             children.add(buf.getInt());
         }
-        return new InnerNode(metadata, pageNum, keys, children, transaction);
+        List<Integer> counts = null;
+        if (metadata.isCounted()) {
+            counts = new ArrayList<>();
+            for (int i = 0; i < n + 1; ++i) {
+                counts.add(buf.getInt());
+            }
+        }
+        return new InnerNode(metadata, pageNum, keys, children, counts, transaction);
     }
 
     // Builtins //////////////////////////////////////////////////////////////////
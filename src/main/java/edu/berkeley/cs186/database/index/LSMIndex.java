@@ -0,0 +1,698 @@
+package edu.berkeley.cs186.database.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import edu.berkeley.cs186.database.BaseTransaction;
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.concurrency.LockContext;
+import edu.berkeley.cs186.database.concurrency.LockType;
+import edu.berkeley.cs186.database.concurrency.LockUtil;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
+
+/**
+ * A persistent, write-optimized log-structured merge (LSM) tree index. Like a
+ * BPlusTree, it keeps its keys sorted and answers range and sorted scans, but
+ * instead of updating leaves in place, it buffers puts and removes in a sorted
+ * in-memory memtable. Once the memtable holds memtableCapacity entries, it is
+ * written out sequentially as a new immutable sorted run. A remove is recorded
+ * as a tombstone entry that hides the key in older runs.
+ *
+ *   LSMIndex index = new LSMIndex("index.txt", Type.intType(), lockContext, transaction);
+ *   index.put(transaction, new IntDataBox(0), new RecordId(0, (short) 0));
+ *   index.get(transaction, new IntDataBox(0)); // Optional.of(RecordId(0, 0))
+ *   index.scanAll(transaction);                // [(0, 0)]
+ *
+ * A lookup checks the memtable, then the runs from newest to oldest, skipping
+ * every run whose Bloom filter rules the key out. Scans merge the memtable and
+ * all the runs, with newer entries shadowing older ones. To keep the number of
+ * runs logarithmic, the two newest runs are merged whenever the older one is
+ * no larger than the newer one, and tombstones are dropped once they are
+ * merged into the oldest run.
+ *
+ * The first page of the file (page 0) is a header page which contains:
+ *
+ *   - the key schema of the index,
+ *   - the memtable capacity,
+ *   - the number of runs n, followed by n (first page number, number of
+ *     entries) pairs, newest run first,
+ *   - the statistics of the index (see IndexStats), and
+ *   - the predicate of a partial index, if any (see IndexPredicate).
+ *
+ * The pages of a run are chained together. Every page of a run contains the
+ * page number of the next page (or -1) and the number of entries on the page,
+ * followed by the (key, rid, tombstone) entries themselves. The page numbers,
+ * the first key of every page, and the Bloom filter of each run are kept in
+ * memory, and rebuilt from the run pages when the index is read from disk. The
+ * memtable is only written out when it fills up or when the index is closed.
+ */
+public class LSMIndex implements OrderedIndex {
+    public static final String FILENAME_EXTENSION = ".lsm";
+
+    // The number of entries buffered in the memtable of a new index by default.
+    public static final int DEFAULT_MEMTABLE_CAPACITY = 4096;
+
+    // The next page number and the number of entries on the page.
+    private static final int RUN_PAGE_HEADER_SIZE = 2 * Integer.BYTES;
+
+    private PageAllocator allocator;
+    private Type keySchema;
+    private int memtableCapacity;
+    private Page headerPage;
+    private LockContext lockContext;
+
+    // The number of entries that fit on a single run page.
+    private int runPageCapacity;
+
+    // The buffered entries, where a key that was removed maps to null.
+    private TreeMap<DataBox, RecordId> memtable = new TreeMap<>();
+
+    // The sorted runs, newest first.
+    private List<Run> runs = new ArrayList<>();
+
+    // The statistics of the index, and the number of puts and removes since
+    // they were last built.
+    private IndexStats stats = IndexStats.empty();
+    private int modifications;
+
+    // The predicate of a partial index (see IndexPredicate).
+    private Optional<IndexPredicate> predicate;
+
+    // Constructors ////////////////////////////////////////////////////////////
+    /**
+     * Construct a new, empty LSM index which is serialized into the file
+     * `filename` and stores keys of type `keySchema`.
+     */
+    public LSMIndex(String filename, Type keySchema, LockContext lockContext,
+                    BaseTransaction transaction) {
+        this(filename, keySchema, DEFAULT_MEMTABLE_CAPACITY, lockContext, transaction);
+    }
+
+    /**
+     * Construct a new, empty LSM index which buffers up to `memtableCapacity`
+     * entries in memory before writing them out as a run.
+     */
+    public LSMIndex(String filename, Type keySchema, int memtableCapacity, LockContext lockContext,
+                    BaseTransaction transaction) {
+        this(filename, keySchema, memtableCapacity, Optional.empty(), lockContext, transaction);
+    }
+
+    /**
+     * Construct a new, empty LSM index which, if `predicate` is present, is a
+     * partial index that only holds the records that satisfy the predicate.
+     */
+    public LSMIndex(String filename, Type keySchema, int memtableCapacity,
+                    Optional<IndexPredicate> predicate, LockContext lockContext,
+                    BaseTransaction transaction) {
+        lockContext.disableChildLocks();
+        if (memtableCapacity < 1) {
+            throw new IllegalArgumentException("The memtable of an LSM index must hold an entry.");
+        }
+
+        this.lockContext = lockContext;
+        this.keySchema = keySchema;
+        this.memtableCapacity = memtableCapacity;
+        this.predicate = predicate;
+        this.runPageCapacity = runPageCapacity(keySchema);
+        this.allocator = new PageAllocator(this.lockContext, filename, true, transaction);
+
+        int headerPageNum = allocator.allocPage(transaction);
+        assert(headerPageNum == 0);
+        this.headerPage = allocator.fetchPage(transaction, headerPageNum);
+        writeHeader(transaction);
+    }
+
+    /** Read an LSM index that was previously serialized to filename. */
+    public LSMIndex(String filename, LockContext lockContext, BaseTransaction transaction) {
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.X);
+        this.lockContext = lockContext;
+
+        this.allocator = new PageAllocator(this.lockContext, filename, false, transaction);
+        this.headerPage = allocator.fetchPage(transaction, 0);
+        Buffer buf = headerPage.getBuffer(transaction);
+
+        // See writeHeader for the layout of the header page.
+        this.keySchema = Type.fromBytes(buf);
+        this.memtableCapacity = buf.getInt();
+        this.runPageCapacity = runPageCapacity(keySchema);
+        int n = buf.getInt();
+        for (int i = 0; i < n; ++i) {
+            int pageNum = buf.getInt();
+            int numEntries = buf.getInt();
+            Run run = new Run(numEntries);
+            while (pageNum != -1) {
+                Buffer page = allocator.fetchPage(transaction, pageNum).getBuffer(transaction);
+                int next = page.getInt();
+                List<Pair<DataBox, RecordId>> entries = readRunPage(transaction, pageNum);
+                run.addPage(pageNum, entries);
+                pageNum = next;
+            }
+            runs.add(run);
+        }
+        this.stats = IndexStats.fromBytes(buf);
+        this.predicate = IndexPredicate.fromBytes(buf);
+    }
+
+    /** Writes out the memtable and closes the file of the index. */
+    public void close() {
+        flush(null);
+        this.allocator.close();
+    }
+
+    // Core API ////////////////////////////////////////////////////////////////
+    public Optional<RecordId> get(BaseTransaction transaction, DataBox key) {
+        typecheck(key);
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.S);
+
+        if (memtable.containsKey(key)) {
+            return Optional.ofNullable(memtable.get(key));
+        }
+        for (Run run : runs) {
+            if (!run.bloomFilter.mightContain(key)) {
+                continue;
+            }
+            for (Pair<DataBox, RecordId> entry : readRunPage(transaction, run.pageNums.get(run.pageOf(key)))) {
+                if (entry.getFirst().equals(key)) {
+                    return Optional.ofNullable(entry.getSecond());
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    public Iterator<RecordId> scanEqual(BaseTransaction transaction, DataBox key) {
+        Optional<RecordId> rid = get(transaction, key);
+        return rid.isPresent() ? Collections.singletonList(rid.get()).iterator()
+               : Collections.emptyIterator();
+    }
+
+    public Iterator<RecordId> scanAll(BaseTransaction transaction) {
+        return scanRange(transaction, null, true, null, true);
+    }
+
+    public Iterator<RecordId> scanGreaterEqual(BaseTransaction transaction, DataBox key) {
+        return scanRange(transaction, key, true, null, true);
+    }
+
+    public Iterator<RecordId> scanRange(BaseTransaction transaction, DataBox lo, boolean loInclusive,
+                                        DataBox hi, boolean hiInclusive) {
+        return scan(transaction, lo, loInclusive, hi, hiInclusive, false);
+    }
+
+    public Iterator<RecordId> scanAllDescending(BaseTransaction transaction) {
+        return scan(transaction, null, true, null, true, true);
+    }
+
+    public Iterator<RecordId> scanLessEqual(BaseTransaction transaction, DataBox key) {
+        return scan(transaction, null, true, key, true, true);
+    }
+
+    /**
+     * Returns the number of keys between `lo` and `hi`. Since a key may be
+     * shadowed by a newer entry in any run, the entries in range are merged
+     * and counted.
+     */
+    public int count(BaseTransaction transaction, DataBox lo, boolean loInclusive,
+                     DataBox hi, boolean hiInclusive) {
+        int n = 0;
+        for (Iterator<RecordId> iter = scanRange(transaction, lo, loInclusive, hi, hiInclusive);
+                iter.hasNext(); iter.next()) {
+            ++n;
+        }
+        return n;
+    }
+
+    /**
+     * Inserts a (key, rid) pair into the memtable, writing the memtable out as
+     * a new run if it is full. Since keys are unique, the runs are checked for
+     * the key first, but their Bloom filters usually spare any page reads.
+     */
+    public void put(BaseTransaction transaction, DataBox key, RecordId rid) throws IndexException {
+        typecheck(key);
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.X);
+
+        if (get(transaction, key).isPresent()) {
+            String msg = String.format("Cannot insert duplicate key %s into an LSM index.", key);
+            throw new IndexException(msg);
+        }
+        memtable.put(key, rid);
+        if (memtable.size() >= memtableCapacity) {
+            flush(transaction);
+        }
+        updateStats(transaction);
+    }
+
+    /** Records a tombstone for `key` in the memtable. */
+    public void remove(BaseTransaction transaction, DataBox key) {
+        typecheck(key);
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.X);
+
+        memtable.put(key, null);
+        if (memtable.size() >= memtableCapacity) {
+            flush(transaction);
+        }
+        updateStats(transaction);
+    }
+
+    // Statistics //////////////////////////////////////////////////////////////
+    public IndexStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Recomputes the statistics of the index by merging all of its runs, and
+     * writes them to the header page. A lookup may read a page of every run,
+     * so the height of the index is its number of runs, and its leaves are
+     * the pages of its runs. Entries still in the memtable are counted, but
+     * take up no pages.
+     */
+    public IndexStats buildStatistics(BaseTransaction transaction) {
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.X);
+        IndexStats.Builder builder = new IndexStats.Builder();
+        for (Run run : runs) {
+            builder.addLeaves(run.pageNums.size());
+        }
+        for (Iterator<RecordId> iter = scanAll(transaction); iter.hasNext(); ) {
+            builder.addEntry(iter.next());
+        }
+        stats = builder.build(runs.size());
+        modifications = 0;
+        writeHeader(transaction);
+        return stats;
+    }
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    public Schema getIncludedSchema() {
+        return new Schema(new ArrayList<>(), new ArrayList<>());
+    }
+
+    /** Returns the number of pages used to serialize the index. */
+    public int getNumPages() {
+        return allocator.getNumPages();
+    }
+
+    public IndexType getIndexType() {
+        return IndexType.LSM;
+    }
+
+    public Optional<IndexPredicate> getPredicate() {
+        return predicate;
+    }
+
+    public Type getKeySchema() {
+        return keySchema;
+    }
+
+    // For testing only.
+    int getNumRuns() {
+        return runs.size();
+    }
+
+    /** Returns the number of entries that fit on a single run page. */
+    static int runPageCapacity(Type keySchema) {
+        int entrySize = keySchema.getSizeInBytes() + RecordId.getSizeInBytes() + 1;
+        return (Page.pageSize - RUN_PAGE_HEADER_SIZE) / entrySize;
+    }
+
+    /**
+     * Returns an iterator over the record ids of the keys between lo and hi,
+     * in ascending or descending order of their keys.
+     */
+    private Iterator<RecordId> scan(BaseTransaction transaction, DataBox lo, boolean loInclusive,
+                                    DataBox hi, boolean hiInclusive, boolean descending) {
+        if (lo != null) {
+            typecheck(lo);
+        }
+        if (hi != null) {
+            typecheck(hi);
+        }
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.S);
+
+        Iterator<Pair<DataBox, RecordId>> entries = merge(transaction, lo, loInclusive, hi, hiInclusive,
+                descending, runs.size());
+        return new Iterator<RecordId>() {
+            private RecordId next = advance();
+
+            private RecordId advance() {
+                while (entries.hasNext()) {
+                    RecordId rid = entries.next().getSecond();
+                    if (rid != null) {
+                        return rid;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public RecordId next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                RecordId rid = next;
+                next = advance();
+                return rid;
+            }
+        };
+    }
+
+    /**
+     * Returns the merged entries (tombstones included) of the memtable and the
+     * `numRuns` newest runs between lo and hi, with the entry of the newest
+     * source winning for every key.
+     */
+    private Iterator<Pair<DataBox, RecordId>> merge(BaseTransaction transaction,
+            DataBox lo, boolean loInclusive,
+            DataBox hi, boolean hiInclusive,
+            boolean descending, int numRuns) {
+        NavigableMap<DataBox, RecordId> buffered = memtable;
+        if (lo != null) {
+            buffered = buffered.tailMap(lo, loInclusive);
+        }
+        if (hi != null) {
+            buffered = buffered.headMap(hi, hiInclusive);
+        }
+        if (descending) {
+            buffered = buffered.descendingMap();
+        }
+        List<Pair<DataBox, RecordId>> snapshot = new ArrayList<>();
+        for (Map.Entry<DataBox, RecordId> e : buffered.entrySet()) {
+            snapshot.add(new Pair<>(e.getKey(), e.getValue()));
+        }
+
+        List<Iterator<Pair<DataBox, RecordId>>> sources = new ArrayList<>();
+        sources.add(snapshot.iterator());
+        for (int i = 0; i < numRuns; ++i) {
+            sources.add(new RunIterator(transaction, runs.get(i), lo, loInclusive, hi, hiInclusive,
+                                        descending));
+        }
+        return new MergeIterator(sources, descending);
+    }
+
+    /**
+     * Writes the memtable out as a new run, and then merges runs until every
+     * run is larger than the one after it.
+     */
+    private void flush(BaseTransaction transaction) {
+        if (memtable.isEmpty()) {
+            return;
+        }
+        List<Pair<DataBox, RecordId>> entries = new ArrayList<>();
+        for (Map.Entry<DataBox, RecordId> e : memtable.entrySet()) {
+            entries.add(new Pair<>(e.getKey(), e.getValue()));
+        }
+        Optional<Run> run = writeRun(transaction, entries.iterator(), entries.size(), runs.isEmpty());
+        memtable.clear();
+        run.ifPresent(r -> runs.add(0, r));
+
+        while (runs.size() >= 2 && runs.get(1).numEntries <= runs.get(0).numEntries) {
+            List<Iterator<Pair<DataBox, RecordId>>> sources = new ArrayList<>();
+            sources.add(new RunIterator(transaction, runs.get(0), null, true, null, true, false));
+            sources.add(new RunIterator(transaction, runs.get(1), null, true, null, true, false));
+            Optional<Run> merged = writeRun(transaction, new MergeIterator(sources, false),
+                                            runs.get(0).numEntries + runs.get(1).numEntries,
+                                            runs.size() == 2);
+            freeRun(transaction, runs.remove(0));
+            freeRun(transaction, runs.remove(0));
+            merged.ifPresent(r -> runs.add(0, r));
+        }
+        writeHeader(transaction);
+    }
+
+    /**
+     * Writes the sorted entries of `entries` to a new chain of pages, dropping
+     * tombstones if `dropTombstones` is true. `expectedEntries` is an upper
+     * bound on the number of entries, used to size the run's Bloom filter.
+     * Returns the run, or nothing if no entries were written.
+     */
+    private Optional<Run> writeRun(BaseTransaction transaction, Iterator<Pair<DataBox, RecordId>> entries,
+                                   int expectedEntries, boolean dropTombstones) {
+        Run run = new Run(expectedEntries);
+        List<Pair<DataBox, RecordId>> page = new ArrayList<>();
+        int prevPageNum = -1;
+        while (entries.hasNext() || !page.isEmpty()) {
+            Pair<DataBox, RecordId> entry = entries.hasNext() ? entries.next() : null;
+            if (entry != null && (entry.getSecond() != null || !dropTombstones)) {
+                page.add(entry);
+            }
+            if (page.isEmpty() || (page.size() < runPageCapacity && entries.hasNext())) {
+                continue;
+            }
+
+            int pageNum = allocator.allocPage(transaction);
+            Buffer buf = allocator.fetchPage(transaction, pageNum).getBuffer(transaction);
+            buf.putInt(-1).putInt(page.size());
+            for (Pair<DataBox, RecordId> e : page) {
+                buf.put(e.getFirst().toBytes());
+                buf.put(e.getSecond() == null ? new byte[RecordId.getSizeInBytes()] : e.getSecond().toBytes());
+                buf.put((byte) (e.getSecond() == null ? 1 : 0));
+            }
+            if (prevPageNum != -1) {
+                allocator.fetchPage(transaction, prevPageNum).getBuffer(transaction).putInt(pageNum);
+            }
+            run.addPage(pageNum, page);
+            prevPageNum = pageNum;
+            page = new ArrayList<>();
+        }
+        return run.pageNums.isEmpty() ? Optional.empty() : Optional.of(run);
+    }
+
+    private void freeRun(BaseTransaction transaction, Run run) {
+        for (int pageNum : run.pageNums) {
+            allocator.freePage(transaction, pageNum);
+        }
+    }
+
+    /** Reads the entries of a run page, where tombstones have a null rid. */
+    private List<Pair<DataBox, RecordId>> readRunPage(BaseTransaction transaction, int pageNum) {
+        Buffer buf = allocator.fetchPage(transaction, pageNum).getBuffer(transaction);
+        buf.getInt();
+        int n = buf.getInt();
+        List<Pair<DataBox, RecordId>> entries = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            DataBox key = DataBox.fromBytes(buf, keySchema);
+            RecordId rid = RecordId.fromBytes(buf);
+            boolean tombstone = buf.get() == 1;
+            entries.add(new Pair<>(key, tombstone ? null : rid));
+        }
+        return entries;
+    }
+
+    /** Serializes the header page. */
+    private void writeHeader(BaseTransaction transaction) {
+        Buffer buf = headerPage.getBuffer(transaction);
+        buf.put(keySchema.toBytes());
+        buf.putInt(memtableCapacity);
+        buf.putInt(runs.size());
+        for (Run run : runs) {
+            buf.putInt(run.pageNums.get(0));
+            buf.putInt(run.numEntries);
+        }
+        buf.put(stats.toBytes());
+        buf.put(IndexPredicate.toBytes(predicate));
+    }
+
+    /**
+     * Rebuilds the statistics of the index after a put or remove if they have
+     * gone stale (see IndexStats.isStale).
+     */
+    private void updateStats(BaseTransaction transaction) {
+        if (stats.isStale(++modifications)) {
+            buildStatistics(transaction);
+        }
+    }
+
+    private void typecheck(DataBox key) {
+        if (!key.type().equals(keySchema)) {
+            String msg = String.format("DataBox %s is not of type %s", key, keySchema);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    // Runs ////////////////////////////////////////////////////////////////////
+    /** The in-memory summary of a sorted run. */
+    private static class Run {
+        private List<Integer> pageNums = new ArrayList<>();
+        // firstKeys.get(i) is the smallest key on page pageNums.get(i).
+        private List<DataBox> firstKeys = new ArrayList<>();
+        private int numEntries = 0;
+        private BloomFilter bloomFilter;
+
+        Run(int expectedEntries) {
+            this.bloomFilter = new BloomFilter(expectedEntries);
+        }
+
+        void addPage(int pageNum, List<Pair<DataBox, RecordId>> entries) {
+            pageNums.add(pageNum);
+            firstKeys.add(entries.get(0).getFirst());
+            numEntries += entries.size();
+            for (Pair<DataBox, RecordId> entry : entries) {
+                bloomFilter.add(entry.getFirst());
+            }
+        }
+
+        /** Returns the index of the page on which `key` would be. */
+        int pageOf(DataBox key) {
+            int i = Collections.binarySearch(firstKeys, key);
+            return i >= 0 ? i : Math.max(0, -i - 2);
+        }
+    }
+
+    /**
+     * An iterator over the entries of a run between lo and hi, in ascending or
+     * descending order of their keys, which reads one page at a time.
+     */
+    private class RunIterator implements Iterator<Pair<DataBox, RecordId>> {
+        private BaseTransaction transaction;
+        private Run run;
+        private DataBox lo;
+        private boolean loInclusive;
+        private DataBox hi;
+        private boolean hiInclusive;
+        private boolean descending;
+
+        private int pageIndex;
+        private List<Pair<DataBox, RecordId>> page = new ArrayList<>();
+        private int position = 0;
+        private Pair<DataBox, RecordId> next;
+
+        RunIterator(BaseTransaction transaction, Run run, DataBox lo, boolean loInclusive,
+                    DataBox hi, boolean hiInclusive, boolean descending) {
+            this.transaction = transaction;
+            this.run = run;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+            if (descending) {
+                this.pageIndex = hi == null ? run.pageNums.size() - 1 : run.pageOf(hi);
+            } else {
+                this.pageIndex = lo == null ? 0 : run.pageOf(lo);
+            }
+            this.next = advance();
+        }
+
+        private boolean belowLo(DataBox key) {
+            return lo != null && (loInclusive ? key.compareTo(lo) < 0 : key.compareTo(lo) <= 0);
+        }
+
+        private boolean aboveHi(DataBox key) {
+            return hi != null && (hiInclusive ? key.compareTo(hi) > 0 : key.compareTo(hi) >= 0);
+        }
+
+        private Pair<DataBox, RecordId> advance() {
+            while (true) {
+                if (position == page.size()) {
+                    if (pageIndex < 0 || pageIndex >= run.pageNums.size()) {
+                        return null;
+                    }
+                    page = readRunPage(transaction, run.pageNums.get(pageIndex));
+                    if (descending) {
+                        Collections.reverse(page);
+                    }
+                    position = 0;
+                    pageIndex += descending ? -1 : 1;
+                    continue;
+                }
+
+                Pair<DataBox, RecordId> entry = page.get(position++);
+                DataBox key = entry.getFirst();
+                if (descending ? belowLo(key) : aboveHi(key)) {
+                    // every later entry is out of range too
+                    page = new ArrayList<>();
+                    position = 0;
+                    pageIndex = -1;
+                    return null;
+                }
+                if (!(descending ? aboveHi(key) : belowLo(key))) {
+                    return entry;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Pair<DataBox, RecordId> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Pair<DataBox, RecordId> entry = next;
+            next = advance();
+            return entry;
+        }
+    }
+
+    /**
+     * Merges sorted iterators of entries into one, where sources.get(0) is the
+     * newest source. If several sources have an entry for the same key, only
+     * the entry of the newest one is returned.
+     */
+    private static class MergeIterator implements Iterator<Pair<DataBox, RecordId>> {
+        private List<Iterator<Pair<DataBox, RecordId>>> sources;
+        // (entry, source index) pairs of the next entry of every nonempty source.
+        private PriorityQueue<Pair<Pair<DataBox, RecordId>, Integer>> heads;
+
+        MergeIterator(List<Iterator<Pair<DataBox, RecordId>>> sources, boolean descending) {
+            Comparator<Pair<Pair<DataBox, RecordId>, Integer>> byKey =
+                Comparator.comparing(head -> head.getFirst().getFirst());
+            if (descending) {
+                byKey = byKey.reversed();
+            }
+            this.sources = sources;
+            this.heads = new PriorityQueue<>(Math.max(1, sources.size()),
+                                             byKey.thenComparing(Pair::getSecond));
+            for (int i = 0; i < sources.size(); ++i) {
+                pull(i);
+            }
+        }
+
+        private void pull(int source) {
+            if (sources.get(source).hasNext()) {
+                heads.add(new Pair<>(sources.get(source).next(), source));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Pair<DataBox, RecordId> next() {
+            if (heads.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Pair<Pair<DataBox, RecordId>, Integer> newest = heads.poll();
+            DataBox key = newest.getFirst().getFirst();
+            while (!heads.isEmpty() && heads.peek().getFirst().getFirst().equals(key)) {
+                pull(heads.poll().getSecond());
+            }
+            pull(newest.getSecond());
+            return newest.getFirst();
+        }
+    }
+}
@@ -4,7 +4,6 @@ import java.nio.ByteBuffer;
 import java.util.*;
 
 import edu.berkeley.cs186.database.BaseTransaction;
-import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
@@ -13,15 +12,15 @@ import edu.berkeley.cs186.database.table.RecordId;
 
 /**
  * A leaf of a B+ tree. Every leaf in a B+ tree of order d stores between d and
- * 2d (key, record id) pairs and a pointer to its right sibling (i.e. the page
- * number of its right sibling). Moreover, every leaf node is serialized and
- * persisted on a single page; see toBytes and fromBytes for details on how a
- * leaf is serialized. For example, here is an illustration of two order 2
+ * 2d (key, record id) pairs and pointers to its left and right siblings (i.e.
+ * the page numbers of its siblings). Moreover, every leaf node is serialized
+ * and persisted on a single page; see toBytes and fromBytes for details on how
+ * a leaf is serialized. For example, here is an illustration of two order 2
  * leafs connected together:
  *
  *   leaf 1 (stored on some page)          leaf 2 (stored on some other page)
  *   +-------+-------+-------+-------+     +-------+-------+-------+-------+
- *   | k0:r0 | k1:r1 | k2:r2 |       | --> | k3:r3 | k4:r4 |       |       |
+ *   | k0:r0 | k1:r1 | k2:r2 |       | <-> | k3:r3 | k4:r4 |       |       |
  *   +-------+-------+-------+-------+     +-------+-------+-------+-------+
  */
 class LeafNode extends BPlusNode {
@@ -94,11 +93,27 @@ class LeafNode extends BPlusNode {
     private List<DataBox> keys;
     private List<RecordId> rids;
 
+    // If the tree is a covering index (see BPlusTreeMetadata.getIncludedSchema),
+    // then included.get(i) holds the values of the included columns of the
+    // record with id rids.get(i), and put, bulkLoad, remove, and splits must
+    // keep included in step with rids. Otherwise, included is empty.
+    private List<List<DataBox>> included;
+
     // If this leaf is the rightmost leaf, then rightSibling is Optional.empty().
     // Otherwise, rightSibling is Optional.of(n) where n is the page number of
     // this leaf's right sibling.
     private Optional<Integer> rightSibling;
 
+    // If this leaf is the leftmost leaf, then leftSibling is Optional.empty().
+    // Otherwise, leftSibling is Optional.of(n) where n is the page number of
+    // this leaf's left sibling. Left siblings let the leaves be scanned in
+    // descending order.
+    private Optional<Integer> leftSibling;
+
+    // The number of bytes of the fields that precede the entries in the
+    // serialization of a leaf; see toBytes.
+    private static final int HEADER_SIZE = 13;
+
     // Constructors //////////////////////////////////////////////////////////////
     /**
      * Construct a brand new leaf node. The leaf will be persisted on a brand new
@@ -106,24 +121,53 @@ class LeafNode extends BPlusNode {
      */
     public LeafNode(BPlusTreeMetadata metadata, List<DataBox> keys,
                     List<RecordId> rids, Optional<Integer> rightSibling, BaseTransaction transaction) {
-        this(metadata, metadata.getAllocator().allocPage(transaction), keys, rids,
-             rightSibling, transaction);
+        this(metadata, keys, rids, Optional.empty(), rightSibling, transaction);
     }
 
     /**
-     * Construct a leaf node that is persisted to page `pageNum` allocated by
+     * Construct a brand new leaf node with both sibling pointers. The leaf will
+     * be persisted on a brand new page allocated by metadata.getAllocator().
+     */
+    public LeafNode(BPlusTreeMetadata metadata, List<DataBox> keys,
+                    List<RecordId> rids, Optional<Integer> leftSibling,
+                    Optional<Integer> rightSibling, BaseTransaction transaction) {
+        this(metadata, keys, rids, new ArrayList<>(), leftSibling, rightSibling, transaction);
+    }
+
+    /**
+     * Construct a brand new leaf node of a covering index, where included.get(i)
+     * holds the included column values of the record with id rids.get(i). The
+     * leaf will be persisted on a brand new page allocated by
      * metadata.getAllocator().
      */
+    public LeafNode(BPlusTreeMetadata metadata, List<DataBox> keys,
+                    List<RecordId> rids, List<List<DataBox>> included,
+                    Optional<Integer> leftSibling, Optional<Integer> rightSibling,
+                    BaseTransaction transaction) {
+        this(metadata, metadata.getAllocator().allocPage(transaction), keys, rids, included,
+             leftSibling, rightSibling, transaction);
+        sync(transaction);
+    }
+
+    /**
+     * Construct a leaf node that is persisted to page `pageNum` allocated by
+     * metadata.getAllocator(). The leaf starts out clean, i.e. as it is
+     * already serialized on that page.
+     */
     private LeafNode(BPlusTreeMetadata metadata, int pageNum, List<DataBox> keys,
-                     List<RecordId> rids, Optional<Integer> rightSibling, BaseTransaction transaction) {
+                     List<RecordId> rids, List<List<DataBox>> included,
+                     Optional<Integer> leftSibling, Optional<Integer> rightSibling,
+                     BaseTransaction transaction) {
         assert(keys.size() == rids.size());
+        assert(included.isEmpty() || included.size() == rids.size());
 
         this.metadata = metadata;
         this.page = metadata.getAllocator().fetchPage(transaction, pageNum);
         this.keys = keys;
         this.rids = rids;
+        this.included = included;
+        this.leftSibling = leftSibling;
         this.rightSibling = rightSibling;
-        sync(transaction);
     }
 
     // Core API //////////////////////////////////////////////////////////////////
@@ -139,6 +183,61 @@ class LeafNode extends BPlusNode {
         return null;
     }
 
+    // See BPlusNode.getRightmostLeaf.
+    @Override
+    public LeafNode getRightmostLeaf(BaseTransaction transaction) {
+        return this;
+    }
+
+    // See BPlusNode.getAll.
+    @Override
+    public void getAll(BaseTransaction transaction, List<DataBox> keys,
+                       List<Optional<RecordId>> rids) {
+        // Both keys and this.keys are sorted, so a single pass over each will do.
+        int j = 0;
+        for (int i = 0; i < keys.size(); ++i) {
+            while (j < this.keys.size() && this.keys.get(j).compareTo(keys.get(i)) < 0) {
+                ++j;
+            }
+            boolean found = j < this.keys.size() && this.keys.get(j).equals(keys.get(i));
+            rids.set(i, found ? Optional.of(this.rids.get(j)) : Optional.empty());
+        }
+    }
+
+    // See BPlusNode.collectStats.
+    @Override
+    int collectStats(BaseTransaction transaction, IndexStats.Builder stats) {
+        stats.addLeaf();
+        for (RecordId rid : rids) {
+            stats.addEntry(rid);
+        }
+        return 1;
+    }
+
+    // See BPlusNode.numEntries.
+    @Override
+    int numEntries() {
+        return keys.size();
+    }
+
+    // See BPlusNode.rank.
+    @Override
+    int rank(BaseTransaction transaction, DataBox key, boolean inclusive) {
+        return inclusive ? InnerNode.numLessThanEqual(key, keys) : InnerNode.numLessThan(key, keys);
+    }
+
+    // See BPlusNode.select.
+    @Override
+    Optional<Pair<DataBox, RecordId>> select(BaseTransaction transaction, int i) {
+        return i < keys.size() ? Optional.of(new Pair<>(keys.get(i), rids.get(i))) : Optional.empty();
+    }
+
+    // See BPlusNode.refreshCounts.
+    @Override
+    int refreshCounts(BaseTransaction transaction, DataBox key) {
+        return keys.size();
+    }
+
     // See BPlusNode.put.
     @Override
     public Optional<Pair<DataBox, Integer>> put(BaseTransaction transaction, DataBox key, RecordId rid)
@@ -146,6 +245,14 @@ class LeafNode extends BPlusNode {
         return Optional.empty();
     }
 
+    // See BPlusNode.put.
+    @Override
+    public Optional<Pair<DataBox, Integer>> put(BaseTransaction transaction, DataBox key, RecordId rid,
+            List<DataBox> included)
+    throws BPlusTreeException {
+        return Optional.empty();
+    }
+
     // See BPlusNode.bulkLoad.
     @Override
     public Optional<Pair<DataBox, Integer>> bulkLoad(BaseTransaction transaction,
@@ -186,12 +293,118 @@ class LeafNode extends BPlusNode {
         return rids.subList(index, rids.size()).iterator();
     }
 
+    /**
+     * Returns an iterator over the record ids of this leaf in descending order
+     * of their corresponding keys.
+     */
+    public Iterator<RecordId> scanAllDescending() {
+        return descending(rids);
+    }
+
+    /**
+     * Returns an iterator over the record ids of this leaf that have a
+     * corresponding key less than or equal to `key`. The record ids are
+     * returned in descending order of their corresponding keys.
+     */
+    public Iterator<RecordId> scanLessEqual(DataBox key) {
+        int index = InnerNode.numLessThanEqual(key, keys);
+        return descending(rids.subList(0, index));
+    }
+
+    /**
+     * Returns an iterator over the record ids of this leaf whose corresponding
+     * keys lie between `lo` and `hi`. Each bound is inclusive or exclusive
+     * depending on `loInclusive` and `hiInclusive`, and a null bound leaves that
+     * end of the range open. The record ids are returned in ascending order of
+     * their corresponding keys.
+     */
+    public Iterator<RecordId> scanRange(DataBox lo, boolean loInclusive,
+                                        DataBox hi, boolean hiInclusive) {
+        int from = lowerIndex(lo, loInclusive);
+        int to = upperIndex(hi, hiInclusive);
+        return rids.subList(from, Math.max(from, to)).iterator();
+    }
+
+    /**
+     * Like scanRange, but instead of record ids, returns for every entry in
+     * range the list of its key followed by its included column values. This
+     * lets a covering index answer a query without fetching any records.
+     */
+    public Iterator<List<DataBox>> scanRangeCovering(DataBox lo, boolean loInclusive,
+                                                     DataBox hi, boolean hiInclusive) {
+        int from = lowerIndex(lo, loInclusive);
+        int to = upperIndex(hi, hiInclusive);
+        List<List<DataBox>> entries = new ArrayList<>();
+        for (int i = from; i < to; ++i) {
+            List<DataBox> entry = new ArrayList<>();
+            entry.add(keys.get(i));
+            if (!included.isEmpty()) {
+                entry.addAll(included.get(i));
+            }
+            entries.add(entry);
+        }
+        return entries.iterator();
+    }
+
+    /**
+     * Returns true if this leaf contains a key beyond the upper bound `hi` (or
+     * equal to it, if the bound is exclusive). When that is the case, no leaf
+     * to the right of this one can contain a key in range, so a range scan can
+     * stop without reading the right sibling.
+     */
+    public boolean exceedsUpperBound(DataBox hi, boolean hiInclusive) {
+        if (hi == null || keys.isEmpty()) {
+            return false;
+        }
+        int cmp = keys.get(keys.size() - 1).compareTo(hi);
+        return hiInclusive ? cmp > 0 : cmp >= 0;
+    }
+
     // Helpers ///////////////////////////////////////////////////////////////////
     @Override
     public Page getPage() {
         return page;
     }
 
+    /**
+     * Returns the index of the first key that lies above the lower bound `lo`,
+     * or 0 if `lo` is null.
+     */
+    private int lowerIndex(DataBox lo, boolean loInclusive) {
+        if (lo == null) {
+            return 0;
+        }
+        return loInclusive ? InnerNode.numLessThan(lo, keys) : InnerNode.numLessThanEqual(lo, keys);
+    }
+
+    /**
+     * Returns one past the index of the last key that lies below the upper
+     * bound `hi`, or the number of keys if `hi` is null.
+     */
+    private int upperIndex(DataBox hi, boolean hiInclusive) {
+        if (hi == null) {
+            return keys.size();
+        }
+        return hiInclusive ? InnerNode.numLessThanEqual(hi, keys) : InnerNode.numLessThan(hi, keys);
+    }
+
+    /**
+     * Sets the included column values of the entry with key `key` and syncs
+     * the change to disk. Does nothing if this leaf does not contain `key`.
+     */
+    void setIncluded(BaseTransaction transaction, DataBox key, List<DataBox> values) {
+        int index = keys.indexOf(key);
+        if (index == -1) {
+            return;
+        }
+        while (included.size() < keys.size()) {
+            included.add(null);
+        }
+        included.set(index, values);
+        markDirty(entryOffset(index), entryOffset(index + 1));
+        writeBack(transaction);
+    }
+
     /** Returns the right sibling of this leaf, if it has one. */
     public Optional<LeafNode> getRightSibling(BaseTransaction transaction) {
         if (!rightSibling.isPresent()) {
@@ -202,15 +415,82 @@ class LeafNode extends BPlusNode {
         return Optional.of(LeafNode.fromBytes(transaction, metadata, pageNum));
     }
 
-    /** Serializes this leaf to its page. */
-    private void sync(BaseTransaction transaction) {
-        Buffer b = page.getBuffer(transaction);
-        byte[] newBytes = toBytes();
-        byte[] bytes = new byte[newBytes.length];
-        b.get(bytes);
-        if (!Arrays.equals(bytes, newBytes)) {
-            page.getBuffer(transaction).put(toBytes());
+    /** Returns the left sibling of this leaf, if it has one. */
+    public Optional<LeafNode> getLeftSibling(BaseTransaction transaction) {
+        if (!leftSibling.isPresent()) {
+            return Optional.empty();
         }
+
+        int pageNum = leftSibling.get();
+        return Optional.of(LeafNode.fromBytes(transaction, metadata, pageNum));
+    }
+
+    /**
+     * Points this leaf's left sibling at page `pageNum` and syncs the change to
+     * disk. When a leaf splits, the new right leaf becomes the left sibling of
+     * the split leaf's old right sibling, so the old right sibling has to be
+     * updated with this method.
+     */
+    void setLeftSibling(BaseTransaction transaction, Optional<Integer> pageNum) {
+        this.leftSibling = pageNum;
+        // The left sibling pointer follows isLeaf and the right sibling pointer.
+        markDirty(1 + Integer.BYTES, 1 + 2 * Integer.BYTES);
+        writeBack(transaction);
+    }
+
+    /**
+     * Points this leaf's right sibling at page `pageNum` and syncs the change to
+     * disk. Used to link up leaves that are built one after another.
+     */
+    void setRightSibling(BaseTransaction transaction, Optional<Integer> pageNum) {
+        this.rightSibling = pageNum;
+        // The right sibling pointer follows isLeaf.
+        markDirty(1, 1 + Integer.BYTES);
+        writeBack(transaction);
+    }
+
+    /** Returns an iterator over `xs` from the last element to the first. */
+    private static <T> Iterator<T> descending(List<T> xs) {
+        ListIterator<T> iter = xs.listIterator(xs.size());
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return iter.hasPrevious();
+            }
+
+            @Override
+            public T next() {
+                return iter.previous();
+            }
+        };
+    }
+
+    /** Serializes this leaf to its page. */
+    void sync(BaseTransaction transaction) {
+        markDirty(0, Integer.MAX_VALUE);
+        writeBack(transaction);
+    }
+
+    // See BPlusNode.writeRange.
+    @Override
+    void writeRange(BaseTransaction transaction, int from, int to) {
+        BPlusNode.writeSection(page, transaction, from, to, 0, HEADER_SIZE, 1,
+                               (buf, i) -> putHeader(buf));
+        BPlusNode.writeSection(page, transaction, from, to, HEADER_SIZE, entrySize(), keys.size(),
+                               this::putEntry);
+    }
+
+    /** Returns the offset of the i-th entry in the serialization of this leaf. */
+    private int entryOffset(int i) {
+        return HEADER_SIZE + i * entrySize();
+    }
+
+    /** Returns the number of bytes of an entry in the serialization of a leaf. */
+    private int entrySize() {
+        int keySize = metadata.getKeySchema().getSizeInBytes();
+        int ridSize = RecordId.getSizeInBytes();
+        int includedSize = metadata.getIncludedSchema().getSizeInBytes();
+        return keySize + ridSize + includedSize;
     }
 
     /**
@@ -218,31 +498,44 @@ class LeafNode extends BPlusNode {
      * with 2d entries will fit on a single page of size `pageSizeInBytes`.
      */
     public static int maxOrder(int pageSizeInBytes, Type keySchema) {
+        return maxOrder(pageSizeInBytes, keySchema, 0);
+    }
+
+    /**
+     * Returns the largest number d such that the serialization of a LeafNode
+     * with 2d entries, each of which also stores `includedSize` bytes of
+     * included column values, will fit on a single page of size
+     * `pageSizeInBytes`.
+     */
+    public static int maxOrder(int pageSizeInBytes, Type keySchema, int includedSize) {
         // A leaf node with n entries takes up the following number of bytes:
         //
-        //   1 + 4 + 4 + n * (keySize + ridSize)
+        //   1 + 4 + 4 + 4 + n * (keySize + ridSize + includedSize)
         //
         // where
         //
         //   - 1 is the number of bytes used to store isLeaf,
-        //   - 4 is the number of bytes used to store a sibling pointer,
+        //   - 4 is the number of bytes used to store the right sibling pointer,
+        //   - 4 is the number of bytes used to store the left sibling pointer,
         //   - 4 is the number of bytes used to store n,
         //   - keySize is the number of bytes used to store a DataBox of type
         //     keySchema, and
-        //   - ridSize is the number of bytes of a RecordId.
+        //   - ridSize is the number of bytes of a RecordId, and
+        //   - includedSize is the number of bytes of the included column values
+        //     of an entry (0 unless the tree is a covering index).
         //
         // Solving the following equation
         //
-        //   n * (keySize + ridSize) + 9 <= pageSizeInBytes
+        //   n * (keySize + ridSize + includedSize) + 13 <= pageSizeInBytes
         //
         // we get
         //
-        //   n = (pageSizeInBytes - 9) / (keySize + ridSize)
+        //   n = (pageSizeInBytes - 13) / (keySize + ridSize + includedSize)
         //
         // The order d is half of n.
         int keySize = keySchema.getSizeInBytes();
         int ridSize = RecordId.getSizeInBytes();
-        int n = (pageSizeInBytes - 9) / (keySize + ridSize);
+        int n = (pageSizeInBytes - 13) / (keySize + ridSize + includedSize);
         return n / 2;
     }
 
@@ -300,39 +593,55 @@ class LeafNode extends BPlusNode {
         //      leaf node,
         //   b. the page id (4 bytes) of our right sibling (or -1 if we don't have
         //      a right sibling),
-        //   c. the number (4 bytes) of (key, rid) pairs this leaf node contains,
+        //   c. the page id (4 bytes) of our left sibling (or -1 if we don't have
+        //      a left sibling),
+        //   d. the number (4 bytes) of (key, rid) pairs this leaf node contains,
         //      and
-        //   d. the (key, rid) pairs themselves.
+        //   e. the (key, rid) pairs themselves, each followed by the values of
+        //      its included columns if the tree is a covering index.
         //
         // For example, the following bytes:
         //
-        //   +----+-------------+-------------+----+-------------------+
-        //   | 01 | 00 00 00 04 | 00 00 00 01 | 03 | 00 00 00 03 00 01 |
-        //   +----+-------------+-------------+----+-------------------+
-        //    \__/ \___________/ \___________/ \______________________/
-        //     a    b             c             d
+        //   +----+-------------+-------------+-------------+----+-------------------+
+        //   | 01 | 00 00 00 04 | ff ff ff ff | 00 00 00 01 | 03 | 00 00 00 03 00 01 |
+        //   +----+-------------+-------------+-------------+----+-------------------+
+        //    \__/ \___________/ \___________/ \___________/ \______________________/
+        //     a    b             c             d             e
         //
-        // represent a leaf node with sibling on page 4 and a single (key, rid)
-        // pair with key 3 and page id (3, 1).
+        // represent a leaf node with right sibling on page 4, no left sibling,
+        // and a single (key, rid) pair with key 3 and page id (3, 1).
 
-        // All sizes are in bytes.
-        int isLeafSize = 1;
-        int siblingSize = Integer.BYTES;
-        int lenSize = Integer.BYTES;
-        int keySize = metadata.getKeySchema().getSizeInBytes();
-        int ridSize = RecordId.getSizeInBytes();
-        int entriesSize = (keySize + ridSize) * keys.size();
-        int size = isLeafSize + siblingSize + lenSize + entriesSize;
+        // a through d take up HEADER_SIZE bytes.
+        ByteBuffer buf = ByteBuffer.allocate(entryOffset(keys.size()));
+        putHeader(buf);
+        for (int i = 0; i < keys.size(); ++i) {
+            putEntry(buf, i);
+        }
+        return buf.array();
+    }
 
-        ByteBuffer buf = ByteBuffer.allocate(size);
+    /** Serializes a through d of toBytes into buf. */
+    private void putHeader(ByteBuffer buf) {
         buf.put((byte) 1);
         buf.putInt(rightSibling.orElse(-1));
+        buf.putInt(leftSibling.orElse(-1));
         buf.putInt(keys.size());
-        for (int i = 0; i < keys.size(); ++i) {
-            buf.put(keys.get(i).toBytes());
-            buf.put(rids.get(i).toBytes());
+    }
+
+    /** Serializes the i-th entry (e of toBytes) into buf. */
+    private void putEntry(ByteBuffer buf, int i) {
+        buf.put(keys.get(i).toBytes());
+        buf.put(rids.get(i).toBytes());
+        if (metadata.hasIncludedColumns()) {
+            if (i < included.size() && included.get(i) != null) {
+                for (DataBox value : included.get(i)) {
+                    buf.put(value.toBytes());
+                }
+            } else {
+                int includedSize = metadata.getIncludedSchema().getSizeInBytes();
+                buf.position(buf.position() + includedSize);
+            }
         }
-        return buf.array();
     }
 
     /**
@@ -358,11 +667,13 @@ class LeafNode extends BPlusNode {
         return page.getPageNum() == n.page.getPageNum() &&
                keys.equals(n.keys) &&
                rids.equals(n.rids) &&
-               rightSibling.equals(n.rightSibling);
+               included.equals(n.included) &&
+               rightSibling.equals(n.rightSibling) &&
+               leftSibling.equals(n.leftSibling);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(page.getPageNum(), keys, rids, rightSibling);
+        return Objects.hash(page.getPageNum(), keys, rids, included, rightSibling, leftSibling);
     }
 }
@@ -0,0 +1,769 @@
+package edu.berkeley.cs186.database.index;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+import edu.berkeley.cs186.database.BaseTransaction;
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.concurrency.LockContext;
+import edu.berkeley.cs186.database.concurrency.LockType;
+import edu.berkeley.cs186.database.concurrency.LockUtil;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
+
+/**
+ * A persistent, read-optimized learned index on int keys, meant for static or
+ * append-only tables. Its entries are stored in key order, packed into data
+ * pages, so that every entry has a position: the number of entries before it.
+ * Instead of the inner nodes of a B+ tree, the index keeps a small model in
+ * memory that predicts the position of a key.
+ *
+ *   LearnedIndex index = new LearnedIndex("index.txt", Type.intType(), lockContext, transaction);
+ *   index.bulkLoad(transaction, sortedEntries);
+ *   index.get(transaction, new IntDataBox(0)); // Optional.of(RecordId(0, 0))
+ *   index.scanAll(transaction);                // [(0, 0), ...]
+ *
+ * The model is piecewise linear: it is a list of segments, each of which
+ * covers the keys from its first key up to the first key of the next segment
+ * and predicts their positions with a line. The segments are trained on the
+ * sorted entries with the greedy "shrinking cone" algorithm so that every
+ * prediction is off by at most maxError positions. A lookup evaluates the
+ * segment of its key, and then binary searches the window of maxError
+ * positions around the prediction, which spans one data page (or two, if it
+ * straddles a page boundary). With the default maxError, a model with a few
+ * hundred segments, i.e. a few KB, covers millions of regularly spaced keys.
+ *
+ * The index is static, except that:
+ *
+ *   - a key larger than every other key can be put, and is appended to the
+ *     last data page. If the last segment predicts its position well enough
+ *     it is added to that segment, and otherwise it starts a new one;
+ *   - a key can be removed, which marks its entry as a tombstone but keeps
+ *     its position; and
+ *   - a removed key can be put back.
+ *
+ * Putting any other key raises an IndexException.
+ *
+ * The first page of the file (page 0) is a header page which contains:
+ *
+ *   - the key schema of the index,
+ *   - the maximum error of the model,
+ *   - the number of entries (tombstones included),
+ *   - the page number of the first model page, or -1 if there is none,
+ *   - the statistics of the index (see IndexStats), and
+ *   - the predicate of a partial index, if any (see IndexPredicate).
+ *
+ * The model is written to a chain of model pages, every one of which contains
+ * the page number of the next model page (or -1) and the number of bytes of
+ * the model on the page, followed by those bytes. The model is the number of
+ * segments, the (first key, first position, slope) of every segment, the
+ * number of data pages, and the page numbers of the data pages. A data page
+ * holds the (key, rid, tombstone) entries at consecutive positions, with no
+ * header.
+ */
+public class LearnedIndex implements OrderedIndex {
+    public static final String FILENAME_EXTENSION = ".learned";
+
+    // The maximum error of the model of a new index by default, in positions.
+    public static final int DEFAULT_MAX_ERROR = 64;
+
+    // The key, the rid, and the tombstone byte.
+    private static final int ENTRY_SIZE = Integer.BYTES + RecordId.getSizeInBytes() + 1;
+
+    // The number of entries that fit on a single data page.
+    static final int DATA_PAGE_CAPACITY = Page.pageSize / ENTRY_SIZE;
+
+    // The next page number and the number of bytes of the model on the page.
+    private static final int MODEL_PAGE_HEADER_SIZE = 2 * Integer.BYTES;
+
+    // The first key, the first position, and the slope.
+    private static final int SEGMENT_SIZE = 2 * Integer.BYTES + Double.BYTES;
+
+    private PageAllocator allocator;
+    private Type keySchema;
+    private int maxError;
+    private Page headerPage;
+    private LockContext lockContext;
+
+    // The number of entries, tombstones included.
+    private int numEntries;
+
+    // The segments of the model, in ascending order of their first keys.
+    private List<Segment> segments = new ArrayList<>();
+
+    // The page numbers of the data pages, in order of position.
+    private List<Integer> dataPageNums = new ArrayList<>();
+
+    // The page numbers of the chain of model pages.
+    private List<Integer> modelPageNums = new ArrayList<>();
+
+    // The statistics of the index, and the number of puts and removes since
+    // they were last built.
+    private IndexStats stats = IndexStats.empty();
+    private int modifications;
+
+    // The predicate of a partial index (see IndexPredicate).
+    private Optional<IndexPredicate> predicate;
+
+    // Constructors ////////////////////////////////////////////////////////////
+    /**
+     * Construct a new, empty learned index which is serialized into the file
+     * `filename` and stores keys of type `keySchema`, which must be an int.
+     */
+    public LearnedIndex(String filename, Type keySchema, LockContext lockContext,
+                        BaseTransaction transaction) {
+        this(filename, keySchema, DEFAULT_MAX_ERROR, Optional.empty(), lockContext, transaction);
+    }
+
+    /**
+     * Construct a new, empty learned index whose model predicts the position
+     * of every key to within `maxError` positions and which, if `predicate` is
+     * present, is a partial index that only holds the records that satisfy
+     * the predicate.
+     */
+    public LearnedIndex(String filename, Type keySchema, int maxError,
+                        Optional<IndexPredicate> predicate, LockContext lockContext,
+                        BaseTransaction transaction) {
+        lockContext.disableChildLocks();
+        if (!keySchema.equals(Type.intType())) {
+            throw new IllegalArgumentException("A learned index must have int keys.");
+        }
+        if (maxError < 0) {
+            throw new IllegalArgumentException("The maximum error of a learned index cannot be negative.");
+        }
+
+        this.lockContext = lockContext;
+        this.keySchema = keySchema;
+        this.maxError = maxError;
+        this.predicate = predicate;
+        this.allocator = new PageAllocator(this.lockContext, filename, true, transaction);
+
+        int headerPageNum = allocator.allocPage(transaction);
+        assert(headerPageNum == 0);
+        this.headerPage = allocator.fetchPage(transaction, headerPageNum);
+        writeHeader(transaction);
+    }
+
+    /** Read a learned index that was previously serialized to filename. */
+    public LearnedIndex(String filename, LockContext lockContext, BaseTransaction transaction) {
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.X);
+        this.lockContext = lockContext;
+
+        this.allocator = new PageAllocator(this.lockContext, filename, false, transaction);
+        this.headerPage = allocator.fetchPage(transaction, 0);
+        Buffer buf = headerPage.getBuffer(transaction);
+
+        // See writeHeader for the layout of the header page.
+        this.keySchema = Type.fromBytes(buf);
+        this.maxError = buf.getInt();
+        this.numEntries = buf.getInt();
+        int modelPageNum = buf.getInt();
+        this.stats = IndexStats.fromBytes(buf);
+        this.predicate = IndexPredicate.fromBytes(buf);
+        readModel(transaction, modelPageNum);
+    }
+
+    public void close() {
+        this.allocator.close();
+    }
+
+    // Core API ////////////////////////////////////////////////////////////////
+    public Optional<RecordId> get(BaseTransaction transaction, DataBox key) {
+        typecheck(key);
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.S);
+
+        Pair<DataBox, RecordId> entry = lowerBound(transaction, key.getInt()).entry;
+        if (entry == null) {
+            return Optional.empty();
+        }
+        return entry.getFirst().equals(key) ? Optional.ofNullable(entry.getSecond()) : Optional.empty();
+    }
+
+    public Iterator<RecordId> scanEqual(BaseTransaction transaction, DataBox key) {
+        Optional<RecordId> rid = get(transaction, key);
+        return rid.isPresent() ? Collections.singletonList(rid.get()).iterator()
+               : Collections.emptyIterator();
+    }
+
+    public Iterator<RecordId> scanAll(BaseTransaction transaction) {
+        return scanRange(transaction, null, true, null, true);
+    }
+
+    public Iterator<RecordId> scanGreaterEqual(BaseTransaction transaction, DataBox key) {
+        return scanRange(transaction, key, true, null, true);
+    }
+
+    public Iterator<RecordId> scanRange(BaseTransaction transaction, DataBox lo, boolean loInclusive,
+                                        DataBox hi, boolean hiInclusive) {
+        return scan(transaction, lo, loInclusive, hi, hiInclusive, false);
+    }
+
+    public Iterator<RecordId> scanAllDescending(BaseTransaction transaction) {
+        return scan(transaction, null, true, null, true, true);
+    }
+
+    public Iterator<RecordId> scanLessEqual(BaseTransaction transaction, DataBox key) {
+        return scan(transaction, null, true, key, true, true);
+    }
+
+    /**
+     * Returns the number of keys between `lo` and `hi`. The positions of the
+     * bounds give the number of entries in range, but the tombstones among
+     * them have to be skipped, so the entries in range are counted.
+     */
+    public int count(BaseTransaction transaction, DataBox lo, boolean loInclusive,
+                     DataBox hi, boolean hiInclusive) {
+        int n = 0;
+        for (Iterator<RecordId> iter = scanRange(transaction, lo, loInclusive, hi, hiInclusive);
+                iter.hasNext(); iter.next()) {
+            ++n;
+        }
+        return n;
+    }
+
+    /**
+     * Inserts a (key, rid) pair into the index. The key must either be larger
+     * than every key of the index, in which case it is appended, or have been
+     * removed, in which case its tombstone is replaced.
+     */
+    public void put(BaseTransaction transaction, DataBox key, RecordId rid) throws IndexException {
+        typecheck(key);
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.X);
+
+        Bound bound = lowerBound(transaction, key.getInt());
+        if (bound.entry == null) {
+            append(transaction, key.getInt(), rid);
+        } else if (bound.entry.getFirst().equals(key)) {
+            if (bound.entry.getSecond() != null) {
+                String msg = String.format("Cannot insert duplicate key %s into a learned index.", key);
+                throw new IndexException(msg);
+            }
+            writeEntry(transaction, bound.pos, key.getInt(), rid);
+        } else {
+            String msg = String.format("Cannot insert key %s into a learned index: only keys larger " +
+                                       "than every key of the index can be added.", key);
+            throw new IndexException(msg);
+        }
+        updateStats(transaction);
+    }
+
+    /** Marks the entry of `key`, if any, as a tombstone. */
+    public void remove(BaseTransaction transaction, DataBox key) {
+        typecheck(key);
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.X);
+
+        Bound bound = lowerBound(transaction, key.getInt());
+        if (bound.entry != null && bound.entry.getFirst().equals(key) && bound.entry.getSecond() != null) {
+            writeEntry(transaction, bound.pos, key.getInt(), null);
+            updateStats(transaction);
+        }
+    }
+
+    /**
+     * Bulk loads data into the index and trains its model. The index should
+     * be empty, and the data iterator should be in ascending order of keys and
+     * contain no duplicates; otherwise, an IndexException is raised.
+     */
+    public void bulkLoad(BaseTransaction transaction,
+                         Iterator<Pair<DataBox, RecordId>> data) throws IndexException {
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.X);
+        if (numEntries != 0) {
+            throw new IndexException("You cannot bulk load into a non-empty learned index.");
+        }
+
+        SegmentBuilder segmentBuilder = new SegmentBuilder(maxError);
+        IndexStats.Builder statsBuilder = new IndexStats.Builder();
+        Buffer page = null;
+        while (data.hasNext()) {
+            Pair<DataBox, RecordId> entry = data.next();
+            typecheck(entry.getFirst());
+            int key = entry.getFirst().getInt();
+            if (numEntries > 0 && key <= segmentBuilder.lastKey) {
+                throw new IndexException("You can only bulk load keys in ascending order.");
+            }
+
+            if (numEntries % DATA_PAGE_CAPACITY == 0) {
+                int pageNum = allocator.allocPage(transaction);
+                dataPageNums.add(pageNum);
+                page = allocator.fetchPage(transaction, pageNum).getBuffer(transaction);
+                statsBuilder.addLeaf();
+            }
+            page.put(entry.getFirst().toBytes()).put(entry.getSecond().toBytes()).put((byte) 0);
+            statsBuilder.addEntry(entry.getSecond());
+            segmentBuilder.add(key, numEntries).ifPresent(segments::add);
+            ++numEntries;
+        }
+        segmentBuilder.finish().ifPresent(segments::add);
+
+        stats = statsBuilder.build(1);
+        modifications = 0;
+        writeModel(transaction);
+        writeHeader(transaction);
+    }
+
+    // Statistics //////////////////////////////////////////////////////////////
+    public IndexStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Recomputes the statistics of the index from its data pages, and writes
+     * them to the header page. The model is kept in memory, so a lookup only
+     * reads a data page and the height of the index is 1.
+     */
+    public IndexStats buildStatistics(BaseTransaction transaction) {
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.X);
+        IndexStats.Builder builder = new IndexStats.Builder();
+        builder.addLeaves(dataPageNums.size());
+        for (Iterator<RecordId> iter = scanAll(transaction); iter.hasNext(); ) {
+            builder.addEntry(iter.next());
+        }
+        stats = builder.build(1);
+        modifications = 0;
+        writeHeader(transaction);
+        return stats;
+    }
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    public Schema getIncludedSchema() {
+        return new Schema(new ArrayList<>(), new ArrayList<>());
+    }
+
+    /** Returns the number of pages used to serialize the index. */
+    public int getNumPages() {
+        return allocator.getNumPages();
+    }
+
+    public IndexType getIndexType() {
+        return IndexType.LEARNED;
+    }
+
+    public Optional<IndexPredicate> getPredicate() {
+        return predicate;
+    }
+
+    public Type getKeySchema() {
+        return keySchema;
+    }
+
+    // For testing only.
+    int getNumSegments() {
+        return segments.size();
+    }
+
+    /**
+     * Returns the position of the first entry whose key is greater than or
+     * equal to `key` along with the entry, or the number of entries and no
+     * entry if there is none. The model predicts the position of every key of
+     * its segment to within maxError, and so the position of any other key
+     * (which lies between two keys of the segment, or past its last key) to
+     * within maxError + 1.
+     */
+    private Bound lowerBound(BaseTransaction transaction, int key) {
+        int s = segmentOf(key);
+        if (s == -1) {
+            return new Bound(0, numEntries == 0 ? null : entryAt(transaction, 0));
+        }
+        Segment segment = segments.get(s);
+        int end = s + 1 < segments.size() ? segments.get(s + 1).firstPos : numEntries;
+        double predicted = segment.predict(key);
+        int hi = (int) Math.min(end, Math.ceil(predicted) + maxError + 1);
+        int lo = (int) Math.min(hi, Math.max(segment.firstPos, Math.floor(predicted) - maxError - 1));
+
+        // binary search the window [lo, hi) for the first key >= key, reading
+        // only the probed entries, and keeping the last one with a key >= key
+        Pair<DataBox, RecordId> found = null;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            Pair<DataBox, RecordId> entry = entryAt(transaction, mid);
+            if (entry.getFirst().getInt() < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+                found = entry;
+            }
+        }
+        if (found == null && lo < numEntries) {
+            // every probed key was smaller, so the entry at lo was not read
+            found = entryAt(transaction, lo);
+        }
+        return new Bound(lo, found);
+    }
+
+    /** Returns the index of the last segment whose first key is <= key, or -1. */
+    private int segmentOf(int key) {
+        int lo = 0;
+        int hi = segments.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (segments.get(mid).firstKey <= key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo - 1;
+    }
+
+    /**
+     * Appends an entry at the last position, and adds it to the last segment
+     * if the segment predicts its position to within maxError. Otherwise, it
+     * starts a new segment whose slope is the density of keys of the last
+     * one, which is a good guess for the keys appended after it.
+     */
+    private void append(BaseTransaction transaction, int key, RecordId rid) {
+        boolean modelChanged = false;
+        if (numEntries % DATA_PAGE_CAPACITY == 0) {
+            dataPageNums.add(allocator.allocPage(transaction));
+            modelChanged = true;
+        }
+        writeEntry(transaction, numEntries, key, rid);
+
+        Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (last == null || Math.abs(last.predict(key) - numEntries) > maxError) {
+            double slope = last == null ? 0.0
+                           : (double) (numEntries - last.firstPos) / ((long) key - last.firstKey);
+            segments.add(new Segment(key, numEntries, slope));
+            modelChanged = true;
+        }
+        ++numEntries;
+        if (modelChanged) {
+            writeModel(transaction);
+        }
+        writeHeader(transaction);
+    }
+
+    /**
+     * Returns an iterator over the record ids of the keys between lo and hi,
+     * in ascending or descending order of their keys.
+     */
+    private Iterator<RecordId> scan(BaseTransaction transaction, DataBox lo, boolean loInclusive,
+                                    DataBox hi, boolean hiInclusive, boolean descending) {
+        if (lo != null) {
+            typecheck(lo);
+        }
+        if (hi != null) {
+            typecheck(hi);
+        }
+        LockUtil.ensureSufficientLockHeld(transaction, lockContext, LockType.S);
+
+        int start;
+        if (descending) {
+            start = hi == null ? numEntries - 1
+                    : Math.min(lowerBound(transaction, hi.getInt()).pos, numEntries - 1);
+        } else {
+            start = lo == null ? 0 : lowerBound(transaction, lo.getInt()).pos;
+        }
+        return new ScanIterator(transaction, start, lo, loInclusive, hi, hiInclusive, descending);
+    }
+
+    /**
+     * Reads the entry at position `pos` in place, without decoding the rest of
+     * its data page. A tombstone has a null rid.
+     */
+    private Pair<DataBox, RecordId> entryAt(BaseTransaction transaction, int pos) {
+        int pageNum = dataPageNums.get(pos / DATA_PAGE_CAPACITY);
+        Buffer buf = allocator.fetchPage(transaction, pageNum).getBuffer(transaction);
+        buf.position((pos % DATA_PAGE_CAPACITY) * ENTRY_SIZE);
+        DataBox key = DataBox.fromBytes(buf, keySchema);
+        RecordId rid = RecordId.fromBytes(buf);
+        boolean tombstone = buf.get() == 1;
+        return new Pair<>(key, tombstone ? null : rid);
+    }
+
+    /** Reads the entries of a data page, where tombstones have a null rid. */
+    private List<Pair<DataBox, RecordId>> readDataPage(BaseTransaction transaction, int pageIndex) {
+        Buffer buf = allocator.fetchPage(transaction, dataPageNums.get(pageIndex)).getBuffer(transaction);
+        int n = Math.min(DATA_PAGE_CAPACITY, numEntries - pageIndex * DATA_PAGE_CAPACITY);
+        List<Pair<DataBox, RecordId>> entries = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            DataBox key = DataBox.fromBytes(buf, keySchema);
+            RecordId rid = RecordId.fromBytes(buf);
+            boolean tombstone = buf.get() == 1;
+            entries.add(new Pair<>(key, tombstone ? null : rid));
+        }
+        return entries;
+    }
+
+    /** Writes the entry at position `pos`, where a null rid is a tombstone. */
+    private void writeEntry(BaseTransaction transaction, int pos, int key, RecordId rid) {
+        int pageNum = dataPageNums.get(pos / DATA_PAGE_CAPACITY);
+        Buffer buf = allocator.fetchPage(transaction, pageNum).getBuffer(transaction);
+        buf.position((pos % DATA_PAGE_CAPACITY) * ENTRY_SIZE);
+        buf.put(new IntDataBox(key).toBytes());
+        buf.put(rid == null ? new byte[RecordId.getSizeInBytes()] : rid.toBytes());
+        buf.put((byte) (rid == null ? 1 : 0));
+    }
+
+    /** Serializes the header page. */
+    private void writeHeader(BaseTransaction transaction) {
+        Buffer buf = headerPage.getBuffer(transaction);
+        buf.put(keySchema.toBytes());
+        buf.putInt(maxError);
+        buf.putInt(numEntries);
+        buf.putInt(modelPageNums.isEmpty() ? -1 : modelPageNums.get(0));
+        buf.put(stats.toBytes());
+        buf.put(IndexPredicate.toBytes(predicate));
+    }
+
+    /**
+     * Serializes the model to the chain of model pages, allocating or freeing
+     * model pages as its size changes.
+     */
+    private void writeModel(BaseTransaction transaction) {
+        ByteBuffer model = ByteBuffer.allocate(2 * Integer.BYTES + segments.size() * SEGMENT_SIZE +
+                                               dataPageNums.size() * Integer.BYTES);
+        model.putInt(segments.size());
+        for (Segment segment : segments) {
+            model.putInt(segment.firstKey).putInt(segment.firstPos).putDouble(segment.slope);
+        }
+        model.putInt(dataPageNums.size());
+        for (int pageNum : dataPageNums) {
+            model.putInt(pageNum);
+        }
+        byte[] bytes = model.array();
+
+        int bytesPerPage = Page.pageSize - MODEL_PAGE_HEADER_SIZE;
+        int numPages = (bytes.length + bytesPerPage - 1) / bytesPerPage;
+        while (modelPageNums.size() < numPages) {
+            modelPageNums.add(allocator.allocPage(transaction));
+        }
+        while (modelPageNums.size() > numPages) {
+            allocator.freePage(transaction, modelPageNums.remove(modelPageNums.size() - 1));
+        }
+        for (int i = 0; i < numPages; ++i) {
+            int offset = i * bytesPerPage;
+            int length = Math.min(bytesPerPage, bytes.length - offset);
+            Buffer buf = allocator.fetchPage(transaction, modelPageNums.get(i)).getBuffer(transaction);
+            buf.putInt(i + 1 < numPages ? modelPageNums.get(i + 1) : -1);
+            buf.putInt(length);
+            buf.put(Arrays.copyOfRange(bytes, offset, offset + length));
+        }
+    }
+
+    /** Reads the model from the chain of model pages starting at pageNum. */
+    private void readModel(BaseTransaction transaction, int pageNum) {
+        List<byte[]> chunks = new ArrayList<>();
+        int size = 0;
+        while (pageNum != -1) {
+            modelPageNums.add(pageNum);
+            Buffer buf = allocator.fetchPage(transaction, pageNum).getBuffer(transaction);
+            pageNum = buf.getInt();
+            byte[] chunk = new byte[buf.getInt()];
+            buf.get(chunk);
+            chunks.add(chunk);
+            size += chunk.length;
+        }
+        if (chunks.isEmpty()) {
+            return;
+        }
+
+        ByteBuffer model = ByteBuffer.allocate(size);
+        for (byte[] chunk : chunks) {
+            model.put(chunk);
+        }
+        model.flip();
+        int n = model.getInt();
+        for (int i = 0; i < n; ++i) {
+            segments.add(new Segment(model.getInt(), model.getInt(), model.getDouble()));
+        }
+        int d = model.getInt();
+        for (int i = 0; i < d; ++i) {
+            dataPageNums.add(model.getInt());
+        }
+    }
+
+    /**
+     * Rebuilds the statistics of the index after a put or remove if they have
+     * gone stale (see IndexStats.isStale).
+     */
+    private void updateStats(BaseTransaction transaction) {
+        if (stats.isStale(++modifications)) {
+            buildStatistics(transaction);
+        }
+    }
+
+    private void typecheck(DataBox key) {
+        if (!key.type().equals(keySchema)) {
+            String msg = String.format("DataBox %s is not of type %s", key, keySchema);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    // Model ///////////////////////////////////////////////////////////////////
+    /**
+     * A segment of the model, which predicts that key k is at position
+     * firstPos + slope * (k - firstKey).
+     */
+    private static class Segment {
+        private int firstKey;
+        private int firstPos;
+        private double slope;
+
+        Segment(int firstKey, int firstPos, double slope) {
+            this.firstKey = firstKey;
+            this.firstPos = firstPos;
+            this.slope = slope;
+        }
+
+        double predict(int key) {
+            return firstPos + slope * ((long) key - firstKey);
+        }
+    }
+
+    /**
+     * Trains the segments of a model on (key, position) points in ascending
+     * order of keys with the shrinking cone algorithm. A segment starts at its
+     * first point, and every later point narrows the range of slopes of lines
+     * through the first point that predict it to within maxError. Once a
+     * point leaves no slope, the segment ends with the slope in the middle of
+     * the range, and the point starts the next segment.
+     */
+    private static class SegmentBuilder {
+        private int maxError;
+        private int firstKey;
+        private int firstPos = -1;
+        private double minSlope;
+        private double maxSlope;
+        private int lastKey;
+
+        SegmentBuilder(int maxError) {
+            this.maxError = maxError;
+        }
+
+        /** Adds a point, and returns the segment it ended, if any. */
+        Optional<Segment> add(int key, int pos) {
+            lastKey = key;
+            if (firstPos == -1) {
+                start(key, pos);
+                return Optional.empty();
+            }
+            double dk = (double) key - firstKey;
+            double lo = Math.max(minSlope, (pos - maxError - firstPos) / dk);
+            double hi = Math.min(maxSlope, (pos + maxError - firstPos) / dk);
+            if (lo <= hi) {
+                minSlope = lo;
+                maxSlope = hi;
+                return Optional.empty();
+            }
+            Optional<Segment> segment = finish();
+            start(key, pos);
+            return segment;
+        }
+
+        /** Returns the segment in progress, if any. */
+        Optional<Segment> finish() {
+            if (firstPos == -1) {
+                return Optional.empty();
+            }
+            double slope = maxSlope == Double.POSITIVE_INFINITY ? 0.0 : (minSlope + maxSlope) / 2;
+            return Optional.of(new Segment(firstKey, firstPos, slope));
+        }
+
+        private void start(int key, int pos) {
+            firstKey = key;
+            firstPos = pos;
+            minSlope = 0.0;
+            maxSlope = Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * An iterator over the record ids of the entries between lo and hi from
+     * position `start`, in ascending or descending order of their keys, which
+     * reads one data page at a time and skips tombstones.
+     */
+    /** A position found by lowerBound, and the entry at it (or null past the last entry). */
+    private static class Bound {
+        private int pos;
+        private Pair<DataBox, RecordId> entry;
+
+        Bound(int pos, Pair<DataBox, RecordId> entry) {
+            this.pos = pos;
+            this.entry = entry;
+        }
+    }
+
+    private class ScanIterator implements Iterator<RecordId> {
+        private BaseTransaction transaction;
+        private DataBox lo;
+        private boolean loInclusive;
+        private DataBox hi;
+        private boolean hiInclusive;
+        private boolean descending;
+
+        private int position;
+        private int pageIndex = -1;
+        private List<Pair<DataBox, RecordId>> page;
+        private RecordId next;
+
+        ScanIterator(BaseTransaction transaction, int start, DataBox lo, boolean loInclusive,
+                     DataBox hi, boolean hiInclusive, boolean descending) {
+            this.transaction = transaction;
+            this.position = start;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+            this.next = advance();
+        }
+
+        private boolean belowLo(DataBox key) {
+            return lo != null && (loInclusive ? key.compareTo(lo) < 0 : key.compareTo(lo) <= 0);
+        }
+
+        private boolean aboveHi(DataBox key) {
+            return hi != null && (hiInclusive ? key.compareTo(hi) > 0 : key.compareTo(hi) >= 0);
+        }
+
+        private RecordId advance() {
+            while (position >= 0 && position < numEntries) {
+                if (position / DATA_PAGE_CAPACITY != pageIndex) {
+                    pageIndex = position / DATA_PAGE_CAPACITY;
+                    page = readDataPage(transaction, pageIndex);
+                }
+                Pair<DataBox, RecordId> entry = page.get(position % DATA_PAGE_CAPACITY);
+                position += descending ? -1 : 1;
+
+                DataBox key = entry.getFirst();
+                if (descending ? belowLo(key) : aboveHi(key)) {
+                    // every later entry is out of range too
+                    position = -1;
+                    return null;
+                }
+                if (entry.getSecond() != null && !(descending ? aboveHi(key) : belowLo(key))) {
+                    return entry.getSecond();
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public RecordId next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            RecordId rid = next;
+            next = advance();
+            return rid;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package edu.berkeley.cs186.database.index;
+
+import java.util.Iterator;
+
+import edu.berkeley.cs186.database.BaseTransaction;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.table.RecordId;
+
+/**
+ * An index that keeps its keys sorted, so that besides equality lookups it
+ * answers range scans and sorted scans in either direction. See BPlusTree for
+ * examples of every scan.
+ */
+public interface OrderedIndex extends Index {
+    /**
+     * Returns an iterator over all the record ids in the index, in ascending
+     * order of their keys.
+     */
+    Iterator<RecordId> scanAll(BaseTransaction transaction);
+
+    /**
+     * Returns an iterator over the record ids whose keys are greater than or
+     * equal to `key`, in ascending order of their keys.
+     */
+    Iterator<RecordId> scanGreaterEqual(BaseTransaction transaction, DataBox key);
+
+    /**
+     * Returns an iterator over the record ids whose keys lie between `lo` and
+     * `hi`, in ascending order of their keys. Each bound is inclusive or
+     * exclusive as specified, and a null bound leaves that end open.
+     */
+    Iterator<RecordId> scanRange(BaseTransaction transaction, DataBox lo, boolean loInclusive,
+                                 DataBox hi, boolean hiInclusive);
+
+    /**
+     * Returns an iterator over all the record ids in the index, in descending
+     * order of their keys.
+     */
+    Iterator<RecordId> scanAllDescending(BaseTransaction transaction);
+
+    /**
+     * Returns an iterator over the record ids whose keys are less than or
+     * equal to `key`, in descending order of their keys.
+     */
+    Iterator<RecordId> scanLessEqual(BaseTransaction transaction, DataBox key);
+
+    /**
+     * Returns the number of keys between `lo` and `hi`, with the same bounds
+     * as scanRange.
+     */
+    int count(BaseTransaction transaction, DataBox lo, boolean loInclusive,
+              DataBox hi, boolean hiInclusive);
+}
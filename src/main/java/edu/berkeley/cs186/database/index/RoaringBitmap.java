@@ -0,0 +1,529 @@
+package edu.berkeley.cs186.database.index;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import edu.berkeley.cs186.database.common.Buffer;
+
+/**
+ * A compressed set of non-negative integers, in the style of Roaring bitmaps.
+ * The integers are split into chunks by their upper 16 bits, and the lower 16
+ * bits of the integers in each chunk are stored in a container: a sorted array
+ * if the chunk holds at most ARRAY_MAX integers, and a 2^16-bit bitmap
+ * otherwise. Sparse chunks then take two bytes per integer, and dense chunks
+ * at most 8KB.
+ *
+ *   RoaringBitmap a = new RoaringBitmap();
+ *   a.add(1); a.add(2); a.add(100000);
+ *   RoaringBitmap b = new RoaringBitmap();
+ *   b.add(2); b.add(3);
+ *
+ *   RoaringBitmap.and(a, b); // {2}
+ *   RoaringBitmap.or(a, b);  // {1, 2, 3, 100000}
+ */
+public class RoaringBitmap implements Iterable<Integer> {
+    // The largest number of integers stored in an array container. An array
+    // container of ARRAY_MAX chars is as large as a bitmap container.
+    static final int ARRAY_MAX = 4096;
+
+    private static final int BITMAP_WORDS = (1 << 16) / Long.SIZE;
+
+    private TreeMap<Integer, Container> containers = new TreeMap<>();
+
+    public void add(int x) {
+        checkNonNegative(x);
+        Container c = containers.getOrDefault(high(x), new ArrayContainer());
+        containers.put(high(x), c.add(low(x)));
+    }
+
+    public void remove(int x) {
+        checkNonNegative(x);
+        Container c = containers.get(high(x));
+        if (c == null) {
+            return;
+        }
+        c = c.remove(low(x));
+        if (c.cardinality() == 0) {
+            containers.remove(high(x));
+        } else {
+            containers.put(high(x), c);
+        }
+    }
+
+    public boolean contains(int x) {
+        Container c = containers.get(high(x));
+        return x >= 0 && c != null && c.contains(low(x));
+    }
+
+    /** Returns the number of integers in the set. */
+    public int getCardinality() {
+        int n = 0;
+        for (Container c : containers.values()) {
+            n += c.cardinality();
+        }
+        return n;
+    }
+
+    public boolean isEmpty() {
+        return containers.isEmpty();
+    }
+
+    /** Returns the intersection of `a` and `b`. */
+    public static RoaringBitmap and(RoaringBitmap a, RoaringBitmap b) {
+        RoaringBitmap result = new RoaringBitmap();
+        for (Map.Entry<Integer, Container> e : a.containers.entrySet()) {
+            Container other = b.containers.get(e.getKey());
+            if (other != null) {
+                Container c = e.getValue().and(other);
+                if (c.cardinality() > 0) {
+                    result.containers.put(e.getKey(), c);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the union of `a` and `b`. */
+    public static RoaringBitmap or(RoaringBitmap a, RoaringBitmap b) {
+        RoaringBitmap result = new RoaringBitmap();
+        for (Map.Entry<Integer, Container> e : a.containers.entrySet()) {
+            Container other = b.containers.get(e.getKey());
+            result.containers.put(e.getKey(), other == null ? e.getValue().copy()
+                                  : e.getValue().or(other));
+        }
+        for (Map.Entry<Integer, Container> e : b.containers.entrySet()) {
+            if (!a.containers.containsKey(e.getKey())) {
+                result.containers.put(e.getKey(), e.getValue().copy());
+            }
+        }
+        return result;
+    }
+
+    /** Returns an iterator over the integers in the set in ascending order. */
+    @Override
+    public Iterator<Integer> iterator() {
+        Iterator<Map.Entry<Integer, Container>> chunks = containers.entrySet().iterator();
+        return new Iterator<Integer>() {
+            private int high;
+            private char[] lows = new char[0];
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (i == lows.length && chunks.hasNext()) {
+                    Map.Entry<Integer, Container> e = chunks.next();
+                    high = e.getKey();
+                    lows = e.getValue().toArray();
+                    i = 0;
+                }
+                return i < lows.length;
+            }
+
+            @Override
+            public Integer next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return (high << 16) | lows[i++];
+            }
+        };
+    }
+
+    /**
+     * Serializes the set. A bitmap is serialized as its number of containers
+     * followed by each container: its upper 16 bits, its cardinality n, and
+     * either n chars (if n <= ARRAY_MAX) or 2^16 bits.
+     */
+    public byte[] toBytes() {
+        int size = Integer.BYTES;
+        for (Container c : containers.values()) {
+            size += 2 * Integer.BYTES + c.getSizeInBytes();
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.putInt(containers.size());
+        for (Map.Entry<Integer, Container> e : containers.entrySet()) {
+            buf.putInt(e.getKey());
+            buf.putInt(e.getValue().cardinality());
+            e.getValue().serialize(buf);
+        }
+        return buf.array();
+    }
+
+    public static RoaringBitmap fromBytes(Buffer buf) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        int n = buf.getInt();
+        for (int i = 0; i < n; ++i) {
+            int high = buf.getInt();
+            int cardinality = buf.getInt();
+            Container c;
+            if (cardinality <= ARRAY_MAX) {
+                char[] values = new char[cardinality];
+                for (int j = 0; j < cardinality; ++j) {
+                    values[j] = buf.getChar();
+                }
+                c = new ArrayContainer(values, cardinality);
+            } else {
+                long[] words = new long[BITMAP_WORDS];
+                for (int j = 0; j < BITMAP_WORDS; ++j) {
+                    words[j] = buf.getLong();
+                }
+                c = new BitmapContainer(words, cardinality);
+            }
+            bitmap.containers.put(high, c);
+        }
+        return bitmap;
+    }
+
+    // Single containers ///////////////////////////////////////////////////////
+    // BitmapIndex persists every container on its own, so that adding or
+    // removing an integer only rewrites the bytes of its container that changed.
+
+    /** Returns the upper 16 bits of x, which pick the container of x. */
+    static int chunkOf(int x) {
+        return high(x);
+    }
+
+    /** Returns true if the container of chunk `high` is a bitmap container. */
+    boolean isBitmapChunk(int high) {
+        return containers.get(high) instanceof BitmapContainer;
+    }
+
+    /**
+     * Serializes the container of chunk `high` (as in toBytes, but without
+     * its upper bits and cardinality), or returns null if the chunk is empty.
+     */
+    byte[] chunkToBytes(int high) {
+        Container c = containers.get(high);
+        if (c == null) {
+            return null;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(c.getSizeInBytes());
+        c.serialize(buf);
+        return buf.array();
+    }
+
+    /**
+     * Returns the offset in chunkToBytes(chunkOf(x)) of the bytes that hold x:
+     * the word of x's bit in a bitmap container, or the position at which x is
+     * (or would be) stored in an array container. Adding or removing x changes
+     * only that word of a bitmap container, but shifts every later value of an
+     * array container.
+     */
+    int chunkOffset(int x) {
+        Container c = containers.get(high(x));
+        if (c instanceof BitmapContainer) {
+            return (low(x) >>> 6) * Long.BYTES;
+        }
+        if (c == null) {
+            return 0;
+        }
+        ArrayContainer a = (ArrayContainer) c;
+        int i = Arrays.binarySearch(a.values, 0, a.size, low(x));
+        return (i >= 0 ? i : -i - 1) * Character.BYTES;
+    }
+
+    /** Sets the container of chunk `high` to one serialized by chunkToBytes. */
+    void putChunk(int high, boolean isBitmap, byte[] bytes) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        if (isBitmap) {
+            long[] words = new long[BITMAP_WORDS];
+            int cardinality = 0;
+            for (int j = 0; j < BITMAP_WORDS; ++j) {
+                words[j] = buf.getLong();
+                cardinality += Long.bitCount(words[j]);
+            }
+            containers.put(high, new BitmapContainer(words, cardinality));
+        } else {
+            char[] values = new char[bytes.length / Character.BYTES];
+            for (int j = 0; j < values.length; ++j) {
+                values[j] = buf.getChar();
+            }
+            containers.put(high, new ArrayContainer(values, values.length));
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof RoaringBitmap)) {
+            return false;
+        }
+        RoaringBitmap b = (RoaringBitmap) o;
+        if (!containers.keySet().equals(b.containers.keySet())) {
+            return false;
+        }
+        for (Map.Entry<Integer, Container> e : containers.entrySet()) {
+            if (!Arrays.equals(e.getValue().toArray(), b.containers.get(e.getKey()).toArray())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (int x : this) {
+            h = 31 * h + x;
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int x : this) {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(x);
+        }
+        return sb.append("}").toString();
+    }
+
+    private static int high(int x) {
+        return x >>> 16;
+    }
+
+    private static char low(int x) {
+        return (char) x;
+    }
+
+    private static void checkNonNegative(int x) {
+        if (x < 0) {
+            throw new IllegalArgumentException("RoaringBitmaps hold non-negative integers, not " + x);
+        }
+    }
+
+    // Containers //////////////////////////////////////////////////////////////
+    /**
+     * The lower 16 bits of the integers in a chunk. Operations that change a
+     * container return the container to use from then on, which may be of
+     * the other kind.
+     */
+    private abstract static class Container {
+        abstract Container add(char x);
+        abstract Container remove(char x);
+        abstract boolean contains(char x);
+        abstract int cardinality();
+        abstract Container and(Container c);
+        abstract Container or(Container c);
+        abstract Container copy();
+        abstract char[] toArray();
+        abstract int getSizeInBytes();
+        abstract void serialize(ByteBuffer buf);
+
+        BitmapContainer toBitmap() {
+            BitmapContainer b = new BitmapContainer(new long[BITMAP_WORDS], 0);
+            for (char x : toArray()) {
+                b.add(x);
+            }
+            return b;
+        }
+    }
+
+    private static class ArrayContainer extends Container {
+        private char[] values;
+        private int size;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        Container add(char x) {
+            int i = Arrays.binarySearch(values, 0, size, x);
+            if (i >= 0) {
+                return this;
+            }
+            if (size == ARRAY_MAX) {
+                return toBitmap().add(x);
+            }
+            i = -i - 1;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.min(Math.max(4, 2 * size), ARRAY_MAX));
+            }
+            System.arraycopy(values, i, values, i + 1, size - i);
+            values[i] = x;
+            size++;
+            return this;
+        }
+
+        Container remove(char x) {
+            int i = Arrays.binarySearch(values, 0, size, x);
+            if (i >= 0) {
+                System.arraycopy(values, i + 1, values, i, size - i - 1);
+                size--;
+            }
+            return this;
+        }
+
+        boolean contains(char x) {
+            return Arrays.binarySearch(values, 0, size, x) >= 0;
+        }
+
+        int cardinality() {
+            return size;
+        }
+
+        Container and(Container c) {
+            char[] result = new char[size];
+            int n = 0;
+            for (int i = 0; i < size; ++i) {
+                if (c.contains(values[i])) {
+                    result[n++] = values[i];
+                }
+            }
+            return new ArrayContainer(result, n);
+        }
+
+        Container or(Container c) {
+            if (c instanceof BitmapContainer) {
+                return c.or(this);
+            }
+            ArrayContainer a = (ArrayContainer) c;
+            char[] merged = new char[size + a.size];
+            int i = 0, j = 0, n = 0;
+            while (i < size || j < a.size) {
+                if (j == a.size || (i < size && values[i] < a.values[j])) {
+                    merged[n++] = values[i++];
+                } else if (i == size || a.values[j] < values[i]) {
+                    merged[n++] = a.values[j++];
+                } else {
+                    merged[n++] = values[i++];
+                    j++;
+                }
+            }
+            ArrayContainer result = new ArrayContainer(merged, n);
+            return n <= ARRAY_MAX ? result : result.toBitmap();
+        }
+
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, size), size);
+        }
+
+        char[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        int getSizeInBytes() {
+            return size * Character.BYTES;
+        }
+
+        void serialize(ByteBuffer buf) {
+            for (int i = 0; i < size; ++i) {
+                buf.putChar(values[i]);
+            }
+        }
+    }
+
+    private static class BitmapContainer extends Container {
+        private long[] words;
+        private int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        Container add(char x) {
+            long bit = 1L << x;
+            if ((words[x >>> 6] & bit) == 0) {
+                words[x >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        Container remove(char x) {
+            long bit = 1L << x;
+            if ((words[x >>> 6] & bit) != 0) {
+                words[x >>> 6] &= ~bit;
+                cardinality--;
+            }
+            return cardinality <= ARRAY_MAX ? toArrayContainer() : this;
+        }
+
+        boolean contains(char x) {
+            return (words[x >>> 6] & (1L << x)) != 0;
+        }
+
+        int cardinality() {
+            return cardinality;
+        }
+
+        Container and(Container c) {
+            if (c instanceof ArrayContainer) {
+                return c.and(this);
+            }
+            long[] other = ((BitmapContainer) c).words;
+            long[] result = new long[BITMAP_WORDS];
+            int n = 0;
+            for (int i = 0; i < BITMAP_WORDS; ++i) {
+                result[i] = words[i] & other[i];
+                n += Long.bitCount(result[i]);
+            }
+            BitmapContainer b = new BitmapContainer(result, n);
+            return n <= ARRAY_MAX ? b.toArrayContainer() : b;
+        }
+
+        Container or(Container c) {
+            BitmapContainer b = (BitmapContainer) copy();
+            if (c instanceof ArrayContainer) {
+                for (char x : c.toArray()) {
+                    b.add(x);
+                }
+                return b;
+            }
+            long[] other = ((BitmapContainer) c).words;
+            b.cardinality = 0;
+            for (int i = 0; i < BITMAP_WORDS; ++i) {
+                b.words[i] |= other[i];
+                b.cardinality += Long.bitCount(b.words[i]);
+            }
+            return b;
+        }
+
+        Container copy() {
+            return new BitmapContainer(Arrays.copyOf(words, BITMAP_WORDS), cardinality);
+        }
+
+        char[] toArray() {
+            char[] values = new char[cardinality];
+            int n = 0;
+            for (int i = 0; i < BITMAP_WORDS; ++i) {
+                long word = words[i];
+                while (word != 0) {
+                    values[n++] = (char) (i * Long.SIZE + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return values;
+        }
+
+        int getSizeInBytes() {
+            return BITMAP_WORDS * Long.BYTES;
+        }
+
+        void serialize(ByteBuffer buf) {
+            for (long word : words) {
+                buf.putLong(word);
+            }
+        }
+
+        private ArrayContainer toArrayContainer() {
+            char[] values = toArray();
+            return new ArrayContainer(values, values.length);
+        }
+    }
+}
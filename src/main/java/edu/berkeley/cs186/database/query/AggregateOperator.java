@@ -0,0 +1,616 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.common.CloseableIterator;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.query.QueryPlan.AggregateFunction;
+import edu.berkeley.cs186.database.table.ColumnVector;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+/**
+ * Computes any number of aggregates, optionally per group of a group by column, in a single pass
+ * over the batches of its source. Every group has one slot per aggregate in each of a few primitive arrays, which
+ * is updated in place as the records of the group go by, so no group is ever materialized.
+ *
+ * The output has one record per group: the group by column, if it is projected, followed by the
+ * aggregates in the order they were given. Without a group by column, the output is one record
+ * with the aggregates over the whole source, even if it is empty, unless there is a MIN or a MAX,
+ * which have no value for no records.
+ *
+ * The groups are kept in an in-memory hash table as long as it, and the distinct values of the
+ * COUNT DISTINCTs of its groups, fit in the transaction's memory pages. Once it is full, the
+ * records of groups already in the table are still aggregated in place, but those of any other
+ * group are hashed into one of B - 1 temporary tables, each of which is aggregated the same way
+ * after the groups in memory are output. Since a group cannot be split, the distinct values of
+ * the groups already in the table may still grow past the memory pages.
+ */
+public class AggregateOperator extends QueryOperator {
+    // The number of times the records are partitioned before a partition whose groups do not
+    // fit in memory is aggregated in memory anyway.
+    private static final int MAX_PARTITION_PASSES = 4;
+
+    private Database.Transaction transaction;
+    private String groupByColumn;
+    private int groupByColumnIndex;
+    private boolean projectGroupByColumn;
+    private List<AggregateFunction> functions;
+    private List<String> columns;
+    private int[] columnIndices;
+    private TypeId[] columnTypes;
+
+    /**
+     * Creates a new AggregateOperator that pulls from source and computes the given aggregates.
+     *
+     * @param source the source operator of this operator
+     * @param transaction the transaction containing this operator
+     * @param groupByColumn the column to group on, or null to aggregate the whole source
+     * @param projectColumns the columns to output before the aggregates, which may only be the
+     *                       group by column
+     * @param functions the aggregate functions to compute
+     * @param columns the column of every aggregate function, which is null for COUNT
+     * @throws QueryPlanException
+     */
+    public AggregateOperator(QueryOperator source,
+                             Database.Transaction transaction,
+                             String groupByColumn,
+                             List<String> projectColumns,
+                             List<AggregateFunction> functions,
+                             List<String> columns) throws QueryPlanException {
+        super(OperatorType.AGGREGATE);
+        this.transaction = transaction;
+        this.groupByColumn = groupByColumn;
+        this.projectGroupByColumn = !projectColumns.isEmpty();
+        for (String column : projectColumns) {
+            if (groupByColumn == null || !(this.checkColumnNameEquality(groupByColumn, column)
+                                           || this.checkColumnNameEquality(column, groupByColumn))) {
+                throw new QueryPlanException("Can only project columns specified in the GROUP BY clause.");
+            }
+        }
+        if (functions.size() != columns.size()) {
+            throw new QueryPlanException("Every aggregate function needs a column (or null for COUNT).");
+        }
+        this.functions = new ArrayList<>(functions);
+        this.columns = new ArrayList<>(columns);
+
+        // NOTE: setting the source computes the schema, which resolves the columns
+        this.setSource(source);
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    protected Schema computeSchema() throws QueryPlanException {
+        Schema sourceSchema = this.getSource().getOutputSchema();
+        List<String> sourceColumnNames = sourceSchema.getFieldNames();
+        List<Type> sourceColumnTypes = sourceSchema.getFieldTypes();
+
+        List<String> names = new ArrayList<>();
+        List<Type> types = new ArrayList<>();
+        this.groupByColumnIndex = -1;
+        if (this.groupByColumn != null) {
+            this.groupByColumn = this.checkSchemaForColumn(sourceSchema, this.groupByColumn);
+            this.groupByColumnIndex = sourceColumnNames.indexOf(this.groupByColumn);
+            if (this.projectGroupByColumn) {
+                names.add(this.groupByColumn);
+                types.add(sourceColumnTypes.get(this.groupByColumnIndex));
+            }
+        }
+
+        this.columnIndices = new int[this.functions.size()];
+        this.columnTypes = new TypeId[this.functions.size()];
+        for (int i = 0; i < this.functions.size(); ++i) {
+            AggregateFunction function = this.functions.get(i);
+            Type type = Type.intType();
+            this.columnIndices[i] = -1;
+            if (function != AggregateFunction.COUNT) {
+                String column = this.checkSchemaForColumn(sourceSchema, this.columns.get(i));
+                this.columnIndices[i] = sourceColumnNames.indexOf(column);
+                type = sourceColumnTypes.get(this.columnIndices[i]);
+                this.columnTypes[i] = type.getTypeId();
+                boolean numeric = type.getTypeId() == TypeId.INT || type.getTypeId() == TypeId.FLOAT;
+                if ((function == AggregateFunction.SUM || function == AggregateFunction.AVERAGE) && !numeric) {
+                    throw new QueryPlanException("Cannot compute " + function.toString().toLowerCase() +
+                                                 " over a non-numeric column: " + column + ".");
+                }
+            }
+
+            String name = outputColumnName(function);
+            String uniqueName = name;
+            for (int n = 2; names.contains(uniqueName); ++n) {
+                uniqueName = name + n;
+            }
+            names.add(uniqueName);
+            switch (function) {
+            case COUNT:
+            case COUNT_DISTINCT:
+                types.add(Type.intType());
+                break;
+            case AVERAGE:
+                types.add(Type.floatType());
+                break;
+            default:
+                types.add(type);
+            }
+        }
+        return new Schema(names, types);
+    }
+
+    private static String outputColumnName(AggregateFunction function) {
+        switch (function) {
+        case COUNT:
+            return "countAgg";
+        case COUNT_DISTINCT:
+            return "countDistinctAgg";
+        case SUM:
+            return "sumAgg";
+        case AVERAGE:
+            return "averageAgg";
+        case MIN:
+            return "minAgg";
+        default:
+            return "maxAgg";
+        }
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return new AggregateIterator();
+    }
+
+    public String str() {
+        String r = "type: " + this.getType();
+        if (this.groupByColumn != null) {
+            r += "\ngroup by: " + this.groupByColumn;
+        }
+        return r + "\naggregates: " + this.getOutputSchema().getFieldNames();
+    }
+
+    /**
+     * Estimates the table statistics for the result of executing this query operator.
+     *
+     * @return estimated TableStats
+     */
+    public TableStats estimateStats() throws QueryPlanException {
+        return this.getSource().getStats();
+    }
+
+    public int estimateIOCost() throws QueryPlanException {
+        return this.getSource().getIOCost();
+    }
+
+    /**
+     * The state of the aggregates of a group. Aggregate i keeps its running value in slot i of
+     * longs (integer sums, minimums, and maximums), doubles (float sums, minimums, and maximums,
+     * and the sums of averages), distinct (the values seen by COUNT DISTINCT), or objects (the
+     * minimums and maximums of other types). The counts of COUNT and AVERAGE are the count of the
+     * group.
+     */
+    private class GroupState {
+        private DataBox key;
+        private int count;
+        private long[] longs;
+        private double[] doubles;
+        private DistinctSet[] distinct;
+        private DataBox[] objects;
+
+        GroupState(DataBox key) {
+            int n = AggregateOperator.this.functions.size();
+            this.key = key;
+            this.count = 0;
+            this.longs = new long[n];
+            this.doubles = new double[n];
+            this.distinct = new DistinctSet[n];
+            this.objects = new DataBox[n];
+        }
+
+        /**
+         * Adds the row at position `row` of the column vectors of `batch` to the group, returning
+         * the number of bytes of the values it added to the COUNT DISTINCTs of the group.
+         */
+        int add(RecordBatch batch, int row) {
+            int numBytes = 0;
+            for (int i = 0; i < this.longs.length; ++i) {
+                AggregateFunction function = AggregateOperator.this.functions.get(i);
+                if (function == AggregateFunction.COUNT) {
+                    continue;
+                }
+                ColumnVector column = batch.getColumn(AggregateOperator.this.columnIndices[i]);
+                TypeId type = AggregateOperator.this.columnTypes[i];
+                switch (function) {
+                case COUNT_DISTINCT:
+                    if (this.distinct[i] == null) {
+                        this.distinct[i] = new DistinctSet(type == TypeId.STRING
+                                                           ? column.getType().getSizeInBytes() : 0);
+                    }
+                    if (this.distinct[i].add(column, row)) {
+                        numBytes += column.getType().getSizeInBytes();
+                    }
+                    break;
+                case SUM:
+                case AVERAGE:
+                    if (type == TypeId.INT) {
+                        this.longs[i] += column.getInt(row);
+                    } else {
+                        this.doubles[i] += column.getFloat(row);
+                    }
+                    break;
+                case MIN:
+                case MAX:
+                    boolean first = this.count == 0;
+                    boolean min = function == AggregateFunction.MIN;
+                    if (type == TypeId.INT) {
+                        int v = column.getInt(row);
+                        if (first || (min ? v < this.longs[i] : v > this.longs[i])) {
+                            this.longs[i] = v;
+                        }
+                    } else if (type == TypeId.FLOAT) {
+                        float v = column.getFloat(row);
+                        if (first || (min ? v < this.doubles[i] : v > this.doubles[i])) {
+                            this.doubles[i] = v;
+                        }
+                    } else {
+                        DataBox value = column.get(row);
+                        int c = first ? 0 : value.compareTo(this.objects[i]);
+                        if (first || (min ? c < 0 : c > 0)) {
+                            this.objects[i] = value;
+                        }
+                    }
+                    break;
+                default:
+                    break;
+                }
+            }
+            ++this.count;
+            return numBytes;
+        }
+
+        Record toRecord() {
+            List<DataBox> values = new ArrayList<>();
+            if (AggregateOperator.this.projectGroupByColumn) {
+                values.add(this.key);
+            }
+            for (int i = 0; i < this.longs.length; ++i) {
+                TypeId type = AggregateOperator.this.columnTypes[i];
+                switch (AggregateOperator.this.functions.get(i)) {
+                case COUNT:
+                    values.add(new IntDataBox(this.count));
+                    break;
+                case COUNT_DISTINCT:
+                    values.add(new IntDataBox(this.distinct[i] == null ? 0 : this.distinct[i].size()));
+                    break;
+                case SUM:
+                    if (type == TypeId.INT && this.longs[i] != (int) this.longs[i]) {
+                        String column = AggregateOperator.this.columns.get(i);
+                        throw new IllegalStateException("The sum of " + column + " overflows an int: " +
+                                                        this.longs[i] + ".");
+                    }
+                    values.add(type == TypeId.INT ? new IntDataBox((int) this.longs[i])
+                               : new FloatDataBox((float) this.doubles[i]));
+                    break;
+                case AVERAGE:
+                    double sum = type == TypeId.INT ? this.longs[i] : this.doubles[i];
+                    values.add(new FloatDataBox(this.count == 0 ? 0f : (float) (sum / this.count)));
+                    break;
+                default:
+                    if (type == TypeId.INT) {
+                        values.add(new IntDataBox((int) this.longs[i]));
+                    } else if (type == TypeId.FLOAT) {
+                        values.add(new FloatDataBox((float) this.doubles[i]));
+                    } else {
+                        values.add(this.objects[i]);
+                    }
+                }
+            }
+            return new Record(values);
+        }
+    }
+
+    /**
+     * An open addressing hash set of the distinct values of a column, which keeps ints, floats,
+     * and bools as the bits of a long, and strings of `width` bytes back to back in a byte slab,
+     * so that no value is ever boxed. The slots of the table hold the index of a value plus one,
+     * or zero if they are empty.
+     */
+    private static class DistinctSet {
+        // The width of the strings of the set, or 0 if it holds longs.
+        private int width;
+        private int[] slots;
+        private long[] longs;
+        private byte[] bytes;
+        private int size;
+
+        DistinctSet(int width) {
+            this.width = width;
+            this.slots = new int[16];
+            if (width == 0) {
+                this.longs = new long[8];
+            } else {
+                this.bytes = new byte[8 * width];
+            }
+            this.size = 0;
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        /** Adds the value at `row` of `column`, returning true if it was not in the set. */
+        boolean add(ColumnVector column, int row) {
+            if (this.width > 0) {
+                return this.add(column.getBytes(), row * this.width);
+            }
+            long value;
+            switch (column.getTypeId()) {
+            case INT:
+                value = column.getInt(row);
+                break;
+            case FLOAT:
+                // NOTE: 0.0 and -0.0 are the same value, as they are for FloatDataBox.equals
+                float f = column.getFloat(row);
+                value = f == 0f ? 0 : Float.floatToIntBits(f);
+                break;
+            default:
+                value = column.getBool(row) ? 1 : 0;
+            }
+            int mask = this.slots.length - 1;
+            int slot = hash(value) & mask;
+            for (; this.slots[slot] != 0; slot = (slot + 1) & mask) {
+                if (this.longs[this.slots[slot] - 1] == value) {
+                    return false;
+                }
+            }
+            if (this.size == this.longs.length) {
+                this.longs = Arrays.copyOf(this.longs, 2 * this.size);
+            }
+            this.longs[this.size] = value;
+            this.insert(slot);
+            return true;
+        }
+
+        private boolean add(byte[] src, int offset) {
+            int mask = this.slots.length - 1;
+            int slot = hash(src, offset, this.width) & mask;
+            for (; this.slots[slot] != 0; slot = (slot + 1) & mask) {
+                int other = (this.slots[slot] - 1) * this.width;
+                int j = 0;
+                while (j < this.width && this.bytes[other + j] == src[offset + j]) {
+                    ++j;
+                }
+                if (j == this.width) {
+                    return false;
+                }
+            }
+            if ((this.size + 1) * this.width > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, 2 * this.bytes.length);
+            }
+            System.arraycopy(src, offset, this.bytes, this.size * this.width, this.width);
+            this.insert(slot);
+            return true;
+        }
+
+        /** Points `slot` at the value just appended, and doubles the table if it is half full. */
+        private void insert(int slot) {
+            this.slots[slot] = ++this.size;
+            if (2 * this.size <= this.slots.length) {
+                return;
+            }
+            this.slots = new int[2 * this.slots.length];
+            int mask = this.slots.length - 1;
+            for (int i = 0; i < this.size; ++i) {
+                int h = this.width == 0 ? hash(this.longs[i]) : hash(this.bytes, i * this.width, this.width);
+                int s = h & mask;
+                while (this.slots[s] != 0) {
+                    s = (s + 1) & mask;
+                }
+                this.slots[s] = i + 1;
+            }
+        }
+
+        private static int hash(long value) {
+            long h = value * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        private static int hash(byte[] bytes, int offset, int length) {
+            int h = 1;
+            for (int i = offset; i < offset + length; ++i) {
+                h = 31 * h + bytes[i];
+            }
+            return hash((long) h);
+        }
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator.
+     *
+     * The source is not read until the first call to hasNext. Every partition is deleted as soon
+     * as it has been aggregated, and closing the iterator deletes the partitions still pending.
+     */
+    private class AggregateIterator implements CloseableIterator<Record> {
+        private Schema sourceSchema;
+        private int numPartitions;
+        private int numRecordsPerPage;
+        // The number of bytes of memory of the hash table, of which every group takes up the size of
+        // its output record, and every value of its COUNT DISTINCTs the size of the value.
+        private int capacity;
+        private int groupSize;
+
+        // The partitions that are still to aggregate, with the pass that created them.
+        private Deque<Pair<String, Integer>> pending;
+        private Iterator<GroupState> groupIter;
+
+        public AggregateIterator() throws QueryPlanException, DatabaseException {
+            this.sourceSchema = AggregateOperator.this.getSource().getOutputSchema();
+            int numBuffers = AggregateOperator.this.transaction.getNumMemoryPages();
+            this.numPartitions = Math.max(2, numBuffers - 1);
+            this.numRecordsPerPage = Table.computeNumRecordsPerPage(Page.pageSize, this.sourceSchema);
+            this.capacity = Math.max(1, numBuffers) * Page.pageSize;
+            this.groupSize = AggregateOperator.this.getOutputSchema().getSizeInBytes();
+            this.pending = new ArrayDeque<>();
+            this.groupIter = null;
+        }
+
+        /**
+         * Aggregates the source, returning an iterator over the groups that fit in memory.
+         */
+        private Iterator<GroupState> start() throws QueryPlanException, DatabaseException {
+            Iterator<RecordBatch> source = AggregateOperator.this.getSource().batchIterator();
+            if (AggregateOperator.this.groupByColumn != null) {
+                return this.aggregate(source, 0);
+            }
+            GroupState state = new GroupState(null);
+            while (source.hasNext()) {
+                RecordBatch batch = source.next();
+                for (int i = 0; i < batch.size(); ++i) {
+                    state.add(batch, batch.getRow(i));
+                }
+            }
+            CloseableIterator.close(source);
+            boolean hasValue = state.count > 0
+                               || !(AggregateOperator.this.functions.contains(AggregateFunction.MIN)
+                                    || AggregateOperator.this.functions.contains(AggregateFunction.MAX));
+            return hasValue ? Collections.singletonList(state).iterator()
+                   : Collections.<GroupState>emptyIterator();
+        }
+
+        /**
+         * Aggregates the groups of `records`, which were partitioned `pass` times, returning an
+         * iterator over the groups that fit in memory, and queueing up the partitions of the
+         * records of every other group. The records of a partition are buffered until they fill a
+         * page, which is then written with a single Transaction.addRecords.
+         */
+        private Iterator<GroupState> aggregate(Iterator<RecordBatch> batches,
+                                               int pass) throws DatabaseException {
+            Map<DataBox, GroupState> groups = new LinkedHashMap<>();
+            int numBytes = 0;
+            String[] partitions = new String[this.numPartitions];
+            List<List<List<DataBox>>> pages = new ArrayList<>();
+            for (int i = 0; i < this.numPartitions; ++i) {
+                pages.add(new ArrayList<>());
+            }
+            while (batches.hasNext()) {
+                RecordBatch batch = batches.next();
+                ColumnVector keys = batch.getColumn(AggregateOperator.this.groupByColumnIndex);
+                for (int i = 0; i < batch.size(); ++i) {
+                    int row = batch.getRow(i);
+                    DataBox key = keys.get(row);
+                    GroupState state = groups.get(key);
+                    if (state == null) {
+                        if (!groups.isEmpty() && numBytes + this.groupSize > this.capacity
+                                && pass < MAX_PARTITION_PASSES) {
+                            this.addToPartition(partitions, pages, key, batch.getValues(row), pass);
+                            continue;
+                        }
+                        state = new GroupState(key);
+                        groups.put(key, state);
+                        numBytes += this.groupSize;
+                    }
+                    numBytes += state.add(batch, row);
+                }
+            }
+            CloseableIterator.close(batches);
+            for (int i = 0; i < this.numPartitions; ++i) {
+                if (partitions[i] != null) {
+                    this.flush(partitions[i], pages.get(i));
+                    this.pending.add(new Pair<>(partitions[i], pass + 1));
+                }
+            }
+            return groups.values().iterator();
+        }
+
+        private void addToPartition(String[] partitions, List<List<List<DataBox>>> pages, DataBox key,
+                                    List<DataBox> values, int pass) throws DatabaseException {
+            int i = hashPartition(key, pass, this.numPartitions);
+            if (partitions[i] == null) {
+                partitions[i] = AggregateOperator.this.transaction.createTempTable(this.sourceSchema);
+            }
+            pages.get(i).add(values);
+            if (pages.get(i).size() == this.numRecordsPerPage) {
+                this.flush(partitions[i], pages.get(i));
+            }
+        }
+
+        /** Writes the records buffered in page to the partition, and empties page. */
+        private void flush(String partition, List<List<DataBox>> page) throws DatabaseException {
+            if (!page.isEmpty()) {
+                AggregateOperator.this.transaction.addRecords(partition, page);
+                page.clear();
+            }
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            try {
+                if (this.groupIter == null) {
+                    this.groupIter = this.start();
+                }
+                while (!this.groupIter.hasNext() && !this.pending.isEmpty()) {
+                    Pair<String, Integer> partition = this.pending.poll();
+                    Iterator<Record> records =
+                        AggregateOperator.this.transaction.getRecordIterator(partition.getFirst());
+                    this.groupIter = this.aggregate(RecordBatch.batches(records, this.sourceSchema),
+                                                    partition.getSecond());
+                    AggregateOperator.this.transaction.deleteTempTable(partition.getFirst());
+                }
+            } catch (QueryPlanException | DatabaseException e) {
+                this.close();
+                throw new IllegalStateException(e);
+            }
+            return this.groupIter.hasNext();
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return this.groupIter.next().toRecord();
+        }
+
+        /**
+         * Deletes the partitions that are still pending. The iterator yields no more records
+         * afterwards.
+         */
+        public void close() {
+            for (Pair<String, Integer> partition : this.pending) {
+                AggregateOperator.this.transaction.deleteTempTable(partition.getFirst());
+            }
+            this.pending.clear();
+            this.groupIter = Collections.emptyIterator();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
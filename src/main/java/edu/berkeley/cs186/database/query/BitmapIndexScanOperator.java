@@ -0,0 +1,159 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A scan over the records of a table that match predicates on several
+ * bitmap-indexed columns, e.g. `major = 'CS' AND department IN ('EECS', 'L&S')`.
+ * The bitmaps of the columns are combined before any record is read, so the
+ * scan only reads the matching records.
+ */
+public class BitmapIndexScanOperator extends QueryOperator {
+    private Database.Transaction transaction;
+    private String tableName;
+    private Map<String, List<DataBox>> predicates;
+
+    /**
+     * A bitmap index scan operator.
+     *
+     * @param transaction the transaction containing this operator
+     * @param tableName the table to iterate over
+     * @param predicates a map from bitmap-indexed columns to their accepted values. A record
+     *                   matches if, for every column, it equals one of the column's values.
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public BitmapIndexScanOperator(Database.Transaction transaction,
+                                   String tableName,
+                                   Map<String, List<DataBox>> predicates) throws QueryPlanException,
+        DatabaseException {
+        super(OperatorType.INDEXSCAN);
+        this.tableName = tableName;
+        this.transaction = transaction;
+        this.predicates = new LinkedHashMap<>(predicates);
+        this.setOutputSchema(this.computeSchema());
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public String str() {
+        return "type: " + this.getType() + " (bitmap)" +
+               "\ntable: " + this.tableName +
+               "\npredicates: " + this.predicates;
+    }
+
+    /**
+     * Returns the columns that the scan has predicates on
+     *
+     * @return the bitmap-indexed columns
+     */
+    public List<String> getColumnNames() {
+        return new ArrayList<>(this.predicates.keySet());
+    }
+
+    /**
+     * Estimates the table statistics for the result of executing this query operator.
+     * Only columns with a single accepted value narrow the estimate.
+     *
+     * @return estimated TableStats
+     */
+    public TableStats estimateStats() throws QueryPlanException {
+        TableStats stats;
+
+        try {
+            stats = this.transaction.getStats(this.tableName);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+
+        for (Map.Entry<String, List<DataBox>> predicate : this.predicates.entrySet()) {
+            if (predicate.getValue().size() == 1) {
+                String column = this.checkSchemaForColumn(this.getOutputSchema(), predicate.getKey());
+                stats = stats.copyWithPredicate(this.getOutputSchema().getFieldNames().indexOf(column),
+                                                QueryPlan.PredicateOperator.EQUALS,
+                                                predicate.getValue().get(0));
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Estimates the IO cost of executing this query operator. The bitmaps are
+     * held in memory and the matching records are read in page order, so the
+     * cost is the number of distinct pages holding a matching record.
+     *
+     * @return estimate IO cost
+     * @throws QueryPlanException
+     */
+    public int estimateIOCost() throws QueryPlanException {
+        try {
+            return this.transaction.bitmapScanNumPages(this.tableName, this.predicates);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return new BitmapIndexScanIterator();
+    }
+
+    public Schema computeSchema() throws QueryPlanException {
+        try {
+            return this.transaction.getFullyQualifiedSchema(this.tableName);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator.
+     */
+    private class BitmapIndexScanIterator implements Iterator<Record> {
+        private Iterator<Record> sourceIterator;
+
+        public BitmapIndexScanIterator() throws QueryPlanException, DatabaseException {
+            this.sourceIterator = BitmapIndexScanOperator.this.transaction.bitmapScan(
+                                      BitmapIndexScanOperator.this.tableName,
+                                      BitmapIndexScanOperator.this.predicates);
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            return this.sourceIterator.hasNext();
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (this.hasNext()) {
+                return this.sourceIterator.next();
+            }
+            throw new NoSuchElementException();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.List;
+import java.util.function.DoublePredicate;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.table.ColumnVector;
+import edu.berkeley.cs186.database.table.RecordBatch;
+
+/**
+ * A select predicate (column op value) compiled once, when a SelectOperator
+ * is built, into a test specialized to the type of the column and to the
+ * operator: a predicate on an int column becomes an IntPredicate over the raw
+ * int, e.g. `v -> v < 5`, and likewise for floats, so evaluating it neither
+ * switches on the operator nor calls DataBox.compareTo. Predicates on other
+ * columns, or with a value of another type than the column, are compiled to a
+ * test on the DataBox of the column instead.
+ */
+abstract class CompiledPredicate {
+    protected int columnIndex;
+
+    private CompiledPredicate(int columnIndex) {
+        this.columnIndex = columnIndex;
+    }
+
+    /** Returns whether a record, given by its values, satisfies the predicate. */
+    abstract boolean test(List<DataBox> values);
+
+    /**
+     * Narrows down the first n entries of selection, which are positions of
+     * rows of batch, to those whose rows satisfy the predicate, keeping them in
+     * order at the front of selection, and returns how many are left.
+     */
+    abstract int filter(RecordBatch batch, int[] selection, int n);
+
+    /**
+     * Narrows down the selection vector of batch to the rows that satisfy all of predicates.
+     */
+    static void filter(CompiledPredicate[] predicates, RecordBatch batch) {
+        int n = batch.size();
+        int[] selection = new int[n];
+        for (int i = 0; i < n; ++i) {
+            selection[i] = batch.getRow(i);
+        }
+        // every predicate only looks at the rows that passed the ones before it
+        for (int i = 0; i < predicates.length && n > 0; ++i) {
+            n = predicates[i].filter(batch, selection, n);
+        }
+        batch.select(selection, n);
+    }
+
+    static CompiledPredicate compile(int columnIndex, TypeId columnType, QueryPlan.PredicateOperator operator,
+                                     DataBox value) {
+        TypeId valueType = value.type().getTypeId();
+        if (columnType == TypeId.INT && valueType == TypeId.INT) {
+            return new IntCompiledPredicate(columnIndex, compileInt(operator, value.getInt()));
+        }
+        if (columnType == TypeId.FLOAT && valueType == TypeId.FLOAT) {
+            return new FloatCompiledPredicate(columnIndex, compileFloat(operator, value.getFloat()));
+        }
+        return new BoxedCompiledPredicate(columnIndex, compileBoxed(operator, value));
+    }
+
+    private static IntPredicate compileInt(QueryPlan.PredicateOperator operator, int c) {
+        switch (operator) {
+        case EQUALS:
+            return v -> v == c;
+        case NOT_EQUALS:
+            return v -> v != c;
+        case LESS_THAN:
+            return v -> v < c;
+        case LESS_THAN_EQUALS:
+            return v -> v <= c;
+        case GREATER_THAN:
+            return v -> v > c;
+        default:
+            return v -> v >= c;
+        }
+    }
+
+    // floats are compared like Float.compare, as FloatDataBox.compareTo does
+    private static DoublePredicate compileFloat(QueryPlan.PredicateOperator operator, float c) {
+        switch (operator) {
+        case EQUALS:
+            return v -> Float.compare((float) v, c) == 0;
+        case NOT_EQUALS:
+            return v -> Float.compare((float) v, c) != 0;
+        case LESS_THAN:
+            return v -> Float.compare((float) v, c) < 0;
+        case LESS_THAN_EQUALS:
+            return v -> Float.compare((float) v, c) <= 0;
+        case GREATER_THAN:
+            return v -> Float.compare((float) v, c) > 0;
+        default:
+            return v -> Float.compare((float) v, c) >= 0;
+        }
+    }
+
+    private static Predicate<DataBox> compileBoxed(QueryPlan.PredicateOperator operator, DataBox c) {
+        switch (operator) {
+        case EQUALS:
+            return v -> v.equals(c);
+        case NOT_EQUALS:
+            return v -> !v.equals(c);
+        case LESS_THAN:
+            return v -> v.compareTo(c) < 0;
+        case LESS_THAN_EQUALS:
+            return v -> v.compareTo(c) <= 0;
+        case GREATER_THAN:
+            return v -> v.compareTo(c) > 0;
+        default:
+            return v -> v.compareTo(c) >= 0;
+        }
+    }
+
+    private static class IntCompiledPredicate extends CompiledPredicate {
+        private IntPredicate predicate;
+
+        IntCompiledPredicate(int columnIndex, IntPredicate predicate) {
+            super(columnIndex);
+            this.predicate = predicate;
+        }
+
+        boolean test(List<DataBox> values) {
+            return this.predicate.test(values.get(this.columnIndex).getInt());
+        }
+
+        int filter(RecordBatch batch, int[] selection, int n) {
+            int[] ints = batch.getColumn(this.columnIndex).getInts();
+            int k = 0;
+            for (int i = 0; i < n; ++i) {
+                int row = selection[i];
+                if (this.predicate.test(ints[row])) {
+                    selection[k++] = row;
+                }
+            }
+            return k;
+        }
+    }
+
+    private static class FloatCompiledPredicate extends CompiledPredicate {
+        private DoublePredicate predicate;
+
+        FloatCompiledPredicate(int columnIndex, DoublePredicate predicate) {
+            super(columnIndex);
+            this.predicate = predicate;
+        }
+
+        boolean test(List<DataBox> values) {
+            return this.predicate.test(values.get(this.columnIndex).getFloat());
+        }
+
+        int filter(RecordBatch batch, int[] selection, int n) {
+            float[] floats = batch.getColumn(this.columnIndex).getFloats();
+            int k = 0;
+            for (int i = 0; i < n; ++i) {
+                int row = selection[i];
+                if (this.predicate.test(floats[row])) {
+                    selection[k++] = row;
+                }
+            }
+            return k;
+        }
+    }
+
+    private static class BoxedCompiledPredicate extends CompiledPredicate {
+        private Predicate<DataBox> predicate;
+
+        BoxedCompiledPredicate(int columnIndex, Predicate<DataBox> predicate) {
+            super(columnIndex);
+            this.predicate = predicate;
+        }
+
+        boolean test(List<DataBox> values) {
+            return this.predicate.test(values.get(this.columnIndex));
+        }
+
+        int filter(RecordBatch batch, int[] selection, int n) {
+            ColumnVector column = batch.getColumn(this.columnIndex);
+            int k = 0;
+            for (int i = 0; i < n; ++i) {
+                int row = selection[i];
+                if (this.predicate.test(column.get(row))) {
+                    selection[k++] = row;
+                }
+            }
+            return k;
+        }
+    }
+}
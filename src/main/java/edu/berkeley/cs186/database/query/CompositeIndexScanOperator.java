@@ -0,0 +1,172 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.CompositeDataBox;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An index scan over a composite index on several columns, for queries with an
+ * equality predicate on each of the first few columns of the index, e.g.
+ * `a = 1 AND b = 2` on an index on (a, b, c). The scan reads only the keys of
+ * the index that start with the given values.
+ */
+public class CompositeIndexScanOperator extends QueryOperator {
+    private Database.Transaction transaction;
+    private String tableName;
+    private List<String> indexColumns;
+    private List<DataBox> values;
+
+    // The indices in the output schema of the first values.size() index columns.
+    private List<Integer> columnIndices;
+
+    /**
+     * A composite index scan operator.
+     *
+     * @param transaction the transaction containing this operator
+     * @param tableName the table to iterate over
+     * @param indexColumns the columns of the composite index, in key order
+     * @param values the values that the first values.size() index columns must equal
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public CompositeIndexScanOperator(Database.Transaction transaction,
+                                      String tableName,
+                                      List<String> indexColumns,
+                                      List<DataBox> values) throws QueryPlanException, DatabaseException {
+        super(OperatorType.INDEXSCAN);
+        this.tableName = tableName;
+        this.transaction = transaction;
+        this.indexColumns = new ArrayList<>(indexColumns);
+        this.values = new ArrayList<>(values);
+        this.setOutputSchema(this.computeSchema());
+
+        this.columnIndices = new ArrayList<>();
+        for (int i = 0; i < this.values.size(); i++) {
+            String column = this.checkSchemaForColumn(this.getOutputSchema(), this.indexColumns.get(i));
+            this.columnIndices.add(this.getOutputSchema().getFieldNames().indexOf(column));
+        }
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public String str() {
+        return "type: " + this.getType() + " (composite)" +
+               "\ntable: " + this.tableName +
+               "\ncolumns: " + this.indexColumns +
+               "\nvalues: " + this.values;
+    }
+
+    /**
+     * Returns the columns of the composite index that the scan is on
+     *
+     * @return indexColumns
+     */
+    public List<String> getIndexColumns() {
+        return this.indexColumns;
+    }
+
+    /**
+     * Estimates the table statistics for the result of executing this query operator.
+     *
+     * @return estimated TableStats
+     */
+    public TableStats estimateStats() throws QueryPlanException {
+        TableStats stats;
+
+        try {
+            stats = this.transaction.getStats(this.tableName);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+
+        for (int i = 0; i < this.values.size(); i++) {
+            stats = stats.copyWithPredicate(this.columnIndices.get(i),
+                                            QueryPlan.PredicateOperator.EQUALS,
+                                            this.values.get(i));
+        }
+        return stats;
+    }
+
+    /**
+     * Estimates the IO cost of executing this query operator. Like the single
+     * column index, the composite index is unclustered, so every matching
+     * record costs an IO on top of reading the index.
+     *
+     * @return estimate IO cost
+     * @throws QueryPlanException
+     */
+    public int estimateIOCost() throws QueryPlanException {
+        int numIndexPages;
+        try {
+            numIndexPages = this.transaction.getNumIndexPages(this.tableName,
+                            String.join(",", this.indexColumns));
+        } catch (DatabaseException err) {
+            throw new QueryPlanException(err);
+        }
+        return this.stats.getNumRecords() + numIndexPages;
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return new CompositeIndexScanIterator();
+    }
+
+    public Schema computeSchema() throws QueryPlanException {
+        try {
+            return this.transaction.getFullyQualifiedSchema(this.tableName);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator.
+     */
+    private class CompositeIndexScanIterator implements Iterator<Record> {
+        private Iterator<Record> sourceIterator;
+
+        public CompositeIndexScanIterator() throws QueryPlanException, DatabaseException {
+            List<DataBox> prefix = CompositeIndexScanOperator.this.values;
+            this.sourceIterator = CompositeIndexScanOperator.this.transaction.sortedScanRange(
+                                      CompositeIndexScanOperator.this.tableName,
+                                      String.join(",", CompositeIndexScanOperator.this.indexColumns),
+                                      CompositeDataBox.prefixLowerBound(prefix), true,
+                                      CompositeDataBox.prefixUpperBound(prefix), true);
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            return this.sourceIterator.hasNext();
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (this.hasNext()) {
+                return this.sourceIterator.next();
+            }
+            throw new NoSuchElementException();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.*;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.common.CloseableIterator;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.ColumnVector;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+
+/**
+ * Grace hash join. The smaller input (by its estimated number of pages) is the
+ * build input, and the other is the probe input.
+ *
+ * If the build input fits in the B - 2 buffers left over for a hash table, it
+ * is loaded into an in-memory hash table on the join column, and the probe
+ * input is streamed past it once. Otherwise, both inputs are partitioned on a
+ * hash of the join column into B - 1 temporary tables each, so that matching
+ * records always land in the same pair of partitions, and every pair of
+ * partitions is joined in the same way, partitioning again with a different
+ * hash function if the build partition still does not fit. A build partition
+ * that is still too large after MAX_PARTITION_PASSES passes (e.g. because a
+ * single key has too many records) is joined one memory-sized chunk at a time
+ * instead.
+ *
+ * Unlike the nested loop joins, the inputs are read straight from the batches
+ * of the source operators rather than materialized into temporary tables
+ * first, since the in-memory case reads each of them once, and the
+ * partitioning pass reads each of them once too. The joined records are
+ * output in batches as well, copied column by column from the batches of the
+ * two inputs.
+ *
+ * Every pair of partitions is deleted as soon as it has been joined or
+ * partitioned again, and closing the iterator deletes the rest of them.
+ */
+public class GraceHashOperator extends JoinOperator {
+    // The number of times an input is partitioned before a build partition that
+    // does not fit in memory is joined chunk by chunk instead.
+    private static final int MAX_PARTITION_PASSES = 4;
+
+    private int numBuffers;
+
+    public GraceHashOperator(QueryOperator leftSource,
+                             QueryOperator rightSource,
+                             String leftColumnName,
+                             String rightColumnName,
+                             Database.Transaction transaction) throws QueryPlanException, DatabaseException {
+        super(leftSource, rightSource, leftColumnName, rightColumnName, transaction, JoinType.GRACEHASH);
+
+        this.numBuffers = transaction.getNumMemoryPages();
+
+        // for HW4
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return RecordBatch.records(this.batchIterator());
+    }
+
+    public Iterator<RecordBatch> batchIterator() throws QueryPlanException, DatabaseException {
+        return new GraceHashIterator();
+    }
+
+    /**
+     * Estimates the IO cost of the join of M and N pages. If the smaller input fits in
+     * memory, both inputs are read once, for M + N IOs. Otherwise, every partitioning pass
+     * reads and writes both inputs, and the final pass reads the partitions back, so p
+     * passes cost (2p + 1)(M + N) IOs: 3(M + N) for the usual single pass.
+     */
+    public int estimateIOCost() {
+        int numLeftPages = getLeftSource().getStats().getNumPages();
+        int numRightPages = getRightSource().getStats().getNumPages();
+
+        int passes = 0;
+        int buildPages = Math.min(numLeftPages, numRightPages);
+        while (buildPages > usableBuffers() && passes < MAX_PARTITION_PASSES) {
+            buildPages = (int) Math.ceil((double) buildPages / numPartitions());
+            ++passes;
+        }
+        return (2 * passes + 1) * (numLeftPages + numRightPages);
+    }
+
+    private int usableBuffers() {
+        return Math.max(1, numBuffers - 2);
+    }
+
+    private int numPartitions() {
+        return Math.max(2, numBuffers - 1);
+    }
+
+    /** A source of batches that can be read any number of times, such as a temporary table. */
+    private interface BatchSource {
+        Iterator<RecordBatch> iterator() throws QueryPlanException, DatabaseException;
+    }
+
+    /**
+     * The join of a build input with a probe input. A join whose build input was only loaded
+     * in part (see GraceHashIterator.join) keeps the iterator over the rest of it in build.
+     * tableNames are the temporary tables the inputs are read from, which the join deletes once
+     * it is done with them.
+     */
+    private static class PartitionJoin {
+        private BatchSource buildSource;
+        private Iterator<RecordBatch> build;
+        private BatchSource probeSource;
+        private int pass;
+        private List<String> tableNames;
+
+        PartitionJoin(BatchSource buildSource, Iterator<RecordBatch> build, BatchSource probeSource,
+                      int pass, List<String> tableNames) {
+            this.buildSource = buildSource;
+            this.build = build;
+            this.probeSource = probeSource;
+            this.pass = pass;
+            this.tableNames = tableNames;
+        }
+    }
+
+    /** A record of the build input in the hash table: the row at position row of batch. */
+    private static class BuildRow {
+        private RecordBatch batch;
+        private int row;
+
+        BuildRow(RecordBatch batch, int row) {
+            this.batch = batch;
+            this.row = row;
+        }
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator. The
+     * inputs are not read until the first call to hasNext.
+     */
+    private class GraceHashIterator implements CloseableIterator<RecordBatch> {
+        private boolean buildLeft;
+        private int buildColumnIndex;
+        private int probeColumnIndex;
+        private Schema buildSchema;
+        private Schema probeSchema;
+        // The number of build records that fit in the hash table, give or take a batch.
+        private int capacity;
+
+        // The joins of partitions that are still to do, and the one being probed.
+        private Deque<PartitionJoin> pending = new ArrayDeque<>();
+        private PartitionJoin current;
+        private Map<DataBox, List<BuildRow>> hashTable = new HashMap<>();
+        private Iterator<RecordBatch> probe = Collections.emptyIterator();
+        // The probe batch being joined, and the position of its next row to join.
+        private RecordBatch probeBatch;
+        private int probeIndex;
+        private int probeRow;
+        private Iterator<BuildRow> matches = Collections.emptyIterator();
+        private RecordBatch nextBatch;
+        private boolean done;
+
+        public GraceHashIterator() throws QueryPlanException, DatabaseException {
+            QueryOperator left = GraceHashOperator.this.getLeftSource();
+            QueryOperator right = GraceHashOperator.this.getRightSource();
+            this.buildLeft = left.getStats().getNumPages() <= right.getStats().getNumPages();
+            QueryOperator build = buildLeft ? left : right;
+            QueryOperator probe = buildLeft ? right : left;
+            this.buildColumnIndex = buildLeft ? getLeftColumnIndex() : getRightColumnIndex();
+            this.probeColumnIndex = buildLeft ? getRightColumnIndex() : getLeftColumnIndex();
+            this.buildSchema = build.getOutputSchema();
+            this.probeSchema = probe.getOutputSchema();
+            this.capacity = usableBuffers() * Table.computeNumRecordsPerPage(Page.pageSize, buildSchema);
+
+            this.pending.push(new PartitionJoin(build::batchIterator, null, probe::batchIterator, 0,
+                                                new ArrayList<>()));
+            this.nextBatch = null;
+            this.done = false;
+        }
+
+        /**
+         * Returns the next batch of joined records, or null if there is none, joining the next
+         * pending pair of partitions whenever the probe input of the current one runs out.
+         */
+        private RecordBatch fetchNextBatch() throws QueryPlanException, DatabaseException {
+            RecordBatch output = new RecordBatch(GraceHashOperator.this.getOutputSchema());
+            while (!output.isFull()) {
+                if (matches.hasNext()) {
+                    BuildRow match = matches.next();
+                    if (buildLeft) {
+                        output.appendConcatenation(match.batch, match.row, probeBatch, probeRow);
+                    } else {
+                        output.appendConcatenation(probeBatch, probeRow, match.batch, match.row);
+                    }
+                } else if (probeBatch != null && probeIndex < probeBatch.size()) {
+                    probeRow = probeBatch.getRow(probeIndex++);
+                    DataBox key = probeBatch.getColumn(probeColumnIndex).get(probeRow);
+                    matches = hashTable.getOrDefault(key, Collections.emptyList()).iterator();
+                } else if (probe.hasNext()) {
+                    probeBatch = probe.next();
+                    probeIndex = 0;
+                } else if (!pending.isEmpty()) {
+                    probeBatch = null;
+                    release(current);
+                    join(pending.pop());
+                } else {
+                    release(current);
+                    current = null;
+                    break;
+                }
+            }
+            return output.isEmpty() ? null : output;
+        }
+
+        /**
+         * Starts the join of a pair of partitions: loads the build input into the hash table
+         * and starts probing it if it fits, and partitions both inputs otherwise.
+         */
+        private void join(PartitionJoin partitionJoin) throws QueryPlanException, DatabaseException {
+            Iterator<RecordBatch> build = partitionJoin.build != null ? partitionJoin.build
+                                          : partitionJoin.buildSource.iterator();
+            hashTable = new HashMap<>();
+            for (int n = 0; n < capacity && build.hasNext(); ) {
+                RecordBatch batch = build.next();
+                ColumnVector keys = batch.getColumn(buildColumnIndex);
+                for (int i = 0; i < batch.size(); ++i) {
+                    int row = batch.getRow(i);
+                    hashTable.computeIfAbsent(keys.get(row), k -> new ArrayList<>())
+                    .add(new BuildRow(batch, row));
+                }
+                n += batch.size();
+            }
+
+            if (build.hasNext() && partitionJoin.pass < MAX_PARTITION_PASSES) {
+                partition(build, partitionJoin);
+                hashTable = new HashMap<>();
+                release(partitionJoin);
+                current = null;
+                return;
+            }
+            if (build.hasNext()) {
+                // the partition does not split up: probe it with every chunk of the build input,
+                // and leave its tables to the join of the last chunk
+                pending.push(new PartitionJoin(partitionJoin.buildSource, build, partitionJoin.probeSource,
+                                               partitionJoin.pass, partitionJoin.tableNames));
+                partitionJoin.build = null;
+                partitionJoin.tableNames = new ArrayList<>();
+            } else {
+                CloseableIterator.close(build);
+            }
+            current = partitionJoin;
+            probe = partitionJoin.probeSource.iterator();
+        }
+
+        /**
+         * Deletes the temporary tables of a join that is done with them, and closes the iterator
+         * over its build input.
+         */
+        private void release(PartitionJoin partitionJoin) {
+            if (partitionJoin == null) {
+                return;
+            }
+            CloseableIterator.close(partitionJoin.build);
+            for (String tableName : partitionJoin.tableNames) {
+                getTransaction().deleteTempTable(tableName);
+            }
+            partitionJoin.tableNames.clear();
+        }
+
+        /**
+         * Partitions both inputs of a join whose build input does not fit in memory, of which
+         * the records in the hash table have already been read, and queues up the joins of
+         * every pair of partitions that both have records.
+         */
+        private void partition(Iterator<RecordBatch> build,
+                               PartitionJoin partitionJoin) throws QueryPlanException, DatabaseException {
+            int pass = partitionJoin.pass;
+            Partitions buildPartitions = new Partitions(buildSchema, buildColumnIndex, pass);
+            for (List<BuildRow> rows : hashTable.values()) {
+                for (BuildRow row : rows) {
+                    buildPartitions.add(row.batch, row.row);
+                }
+            }
+            while (build.hasNext()) {
+                RecordBatch batch = build.next();
+                for (int i = 0; i < batch.size(); ++i) {
+                    buildPartitions.add(batch, batch.getRow(i));
+                }
+            }
+            CloseableIterator.close(build);
+            buildPartitions.flush();
+
+            Partitions probePartitions = new Partitions(probeSchema, probeColumnIndex, pass);
+            Iterator<RecordBatch> probe = partitionJoin.probeSource.iterator();
+            while (probe.hasNext()) {
+                RecordBatch batch = probe.next();
+                ColumnVector keys = batch.getColumn(probeColumnIndex);
+                for (int i = 0; i < batch.size(); ++i) {
+                    int row = batch.getRow(i);
+                    // a probe record without a build partition cannot have a match
+                    int partition = hashPartition(keys.get(row), pass, numPartitions());
+                    if (buildPartitions.tableNames[partition] != null) {
+                        probePartitions.add(batch, row);
+                    }
+                }
+            }
+            CloseableIterator.close(probe);
+            probePartitions.flush();
+
+            for (int i = 0; i < numPartitions(); ++i) {
+                List<String> tableNames = new ArrayList<>();
+                String buildTable = buildPartitions.tableNames[i];
+                String probeTable = probePartitions.tableNames[i];
+                for (String tableName : new String[] {buildTable, probeTable}) {
+                    if (tableName != null) {
+                        tableNames.add(tableName);
+                    }
+                }
+                if (buildTable != null && probeTable != null) {
+                    pending.push(new PartitionJoin(
+                                     () -> RecordBatch.batches(getRecordIterator(buildTable), buildSchema), null,
+                                     () -> RecordBatch.batches(getRecordIterator(probeTable), probeSchema),
+                                     pass + 1, tableNames));
+                } else {
+                    // a partition without a match on the other side joins to nothing
+                    for (String tableName : tableNames) {
+                        getTransaction().deleteTempTable(tableName);
+                    }
+                }
+            }
+        }
+
+        /**
+         * The partitions of one input in one partitioning pass, each a temporary table that is
+         * created along with its first record. The records of a partition are buffered until
+         * they fill a page, which is then written with a single Transaction.addRecords, so
+         * partitioning takes one output buffer per partition.
+         */
+        private class Partitions {
+            private Schema schema;
+            private int columnIndex;
+            private int pass;
+            private int numRecordsPerPage;
+            // The table of every partition, or null if the partition is empty.
+            private String[] tableNames = new String[numPartitions()];
+            private List<List<List<DataBox>>> pages = new ArrayList<>();
+
+            Partitions(Schema schema, int columnIndex, int pass) {
+                this.schema = schema;
+                this.columnIndex = columnIndex;
+                this.pass = pass;
+                this.numRecordsPerPage = Table.computeNumRecordsPerPage(Page.pageSize, schema);
+                for (int i = 0; i < numPartitions(); ++i) {
+                    this.pages.add(new ArrayList<>());
+                }
+            }
+
+            /** Adds a row of a batch to its partition. */
+            void add(RecordBatch batch, int row) throws DatabaseException {
+                int i = hashPartition(batch.getColumn(columnIndex).get(row), pass, numPartitions());
+                if (tableNames[i] == null) {
+                    tableNames[i] = createTempTable(schema);
+                }
+                pages.get(i).add(batch.getValues(row));
+                if (pages.get(i).size() == numRecordsPerPage) {
+                    flush(i);
+                }
+            }
+
+            /** Writes the records still buffered to their partitions. */
+            void flush() throws DatabaseException {
+                for (int i = 0; i < numPartitions(); ++i) {
+                    flush(i);
+                }
+            }
+
+            private void flush(int i) throws DatabaseException {
+                if (!pages.get(i).isEmpty()) {
+                    getTransaction().addRecords(tableNames[i], pages.get(i));
+                    pages.set(i, new ArrayList<>());
+                }
+            }
+        }
+
+        /**
+         * Checks if there are more batch(es) to yield
+         *
+         * @return true if this iterator has another batch to yield, otherwise false
+         */
+        public boolean hasNext() {
+            if (this.nextBatch == null && !this.done) {
+                try {
+                    this.nextBatch = fetchNextBatch();
+                } catch (DatabaseException | QueryPlanException e) {
+                    this.close();
+                    throw new IllegalStateException(e);
+                }
+                this.done = this.nextBatch == null;
+            }
+            return this.nextBatch != null;
+        }
+
+        /**
+         * Yields the next batch of this iterator.
+         *
+         * @return the next RecordBatch
+         * @throws NoSuchElementException if there are no more batches to yield
+         */
+        public RecordBatch next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            RecordBatch batch = this.nextBatch;
+            this.nextBatch = null;
+            return batch;
+        }
+
+        /**
+         * Closes the inputs and deletes every partition that is left. The iterator yields no more
+         * batches afterwards.
+         */
+        public void close() {
+            CloseableIterator.close(this.probe);
+            this.probe = Collections.emptyIterator();
+            release(this.current);
+            this.current = null;
+            for (PartitionJoin partitionJoin : this.pending) {
+                release(partitionJoin);
+            }
+            this.pending.clear();
+            this.hashTable = new HashMap<>();
+            this.probeBatch = null;
+            this.matches = Collections.emptyIterator();
+            this.nextBatch = null;
+            this.done = true;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -1,19 +1,32 @@
 package edu.berkeley.cs186.database.query;
 
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 
 import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.common.CloseableIterator;
+import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.table.MarkerRecord;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 public class GroupByOperator extends QueryOperator {
+    // The number of times the records are partitioned before a partition that does not
+    // fit in memory is grouped in memory anyway.
+    private static final int MAX_PARTITION_PASSES = 4;
+
     private int groupByColumnIndex;
     private String groupByColumn;
     private Database.Transaction transaction;
@@ -68,37 +81,133 @@ public class GroupByOperator extends QueryOperator {
 
     /**
      * An implementation of Iterator that provides an iterator interface for this operator.
+     *
+     * The records are grouped in an in-memory hash table on the group by column as long as
+     * they fit in the transaction's memory pages. If they do not, every record is hashed
+     * into one of B - 1 temporary tables instead, and each of those partitions is grouped
+     * the same way in turn, partitioning it again with a different hash function if it still
+     * does not fit. A partition that does not fit after MAX_PARTITION_PASSES passes (e.g.
+     * because a single group is too large) is grouped in memory regardless.
+     *
+     * The source is not read until the first call to hasNext. Every partition is deleted as
+     * soon as it has been read, and closing the iterator deletes the partitions still pending.
      */
-    private class GroupByIterator implements Iterator<Record> {
-        private Iterator<Record> sourceIterator;
+    private class GroupByIterator implements CloseableIterator<Record> {
         private MarkerRecord markerRecord;
-        private Map<String, String> hashGroupTempTables;
-        private int currCount;
-        private Iterator<String> keyIter;
+        private Schema schema;
+        private int numPartitions;
+        // The number of records that fit in the hash table, and on a page.
+        private int capacity;
+        private int numRecordsPerPage;
+
+        // The partitions that are still to group, with the pass that created them.
+        private Deque<Pair<String, Integer>> pending;
+        private Iterator<List<Record>> groupIter;
         private Iterator<Record> rIter;
+        private boolean emittedGroup;
 
         public GroupByIterator() throws QueryPlanException, DatabaseException {
-            this.sourceIterator = GroupByOperator.this.getSource().iterator();
             this.markerRecord = MarkerRecord.getMarker();
-            this.hashGroupTempTables = new HashMap<String, String>();
-            this.currCount = 0;
-            this.rIter = null;
-            while (this.sourceIterator.hasNext()) {
-                Record record = this.sourceIterator.next();
-                DataBox groupByColumn = record.getValues().get(GroupByOperator.this.groupByColumnIndex);
-                String tableName;
-                if (!this.hashGroupTempTables.containsKey(groupByColumn.toString())) {
-                    tableName = "Temp" + GroupByOperator.this.groupByColumn + "GroupBy" +
-                                this.hashGroupTempTables.size();
-                    GroupByOperator.this.transaction.createTempTable(GroupByOperator.this.getSource().getOutputSchema(),
-                            tableName);
-                    this.hashGroupTempTables.put(groupByColumn.toString(), tableName);
-                } else {
-                    tableName = this.hashGroupTempTables.get(groupByColumn.toString());
+            this.schema = GroupByOperator.this.getSource().getOutputSchema();
+            int numBuffers = GroupByOperator.this.transaction.getNumMemoryPages();
+            this.numPartitions = Math.max(2, numBuffers - 1);
+            this.numRecordsPerPage = Table.computeNumRecordsPerPage(Page.pageSize, this.schema);
+            this.capacity = Math.max(1, numBuffers) * this.numRecordsPerPage;
+            this.pending = new ArrayDeque<>();
+            this.groupIter = null;
+            this.rIter = Collections.emptyIterator();
+            this.emittedGroup = false;
+        }
+
+        /**
+         * Groups the records of `records`, which were partitioned `pass` times, returning an
+         * iterator over the groups if they fit in memory, and an empty iterator after queueing
+         * up their partitions otherwise.
+         */
+        private Iterator<List<Record>> group(Iterator<Record> records,
+                                             int pass) throws DatabaseException {
+            Map<DataBox, List<Record>> groups = new LinkedHashMap<>();
+            int numRecords = 0;
+            while (records.hasNext()) {
+                if (numRecords == this.capacity && pass < MAX_PARTITION_PASSES) {
+                    this.partition(groups, records, pass);
+                    return Collections.emptyIterator();
+                }
+                Record record = records.next();
+                DataBox key = record.getValues().get(GroupByOperator.this.groupByColumnIndex);
+                groups.computeIfAbsent(key, k -> new ArrayList<>()).add(record);
+                ++numRecords;
+            }
+            CloseableIterator.close(records);
+            return groups.values().iterator();
+        }
+
+        /**
+         * Hashes the records of `groups` and the rest of `records` into temporary tables, and
+         * queues up every partition that has records. The records of a partition are buffered
+         * until they fill a page, which is then written with a single Transaction.addRecords.
+         */
+        private void partition(Map<DataBox, List<Record>> groups, Iterator<Record> records,
+                               int pass) throws DatabaseException {
+            String[] partitions = new String[this.numPartitions];
+            List<List<List<DataBox>>> pages = new ArrayList<>();
+            for (int i = 0; i < this.numPartitions; ++i) {
+                pages.add(new ArrayList<>());
+            }
+            for (List<Record> group : groups.values()) {
+                for (Record record : group) {
+                    this.addToPartition(partitions, pages, record, pass);
                 }
-                GroupByOperator.this.transaction.addRecord(tableName, record.getValues());
             }
-            this.keyIter = hashGroupTempTables.keySet().iterator();
+            groups.clear();
+            while (records.hasNext()) {
+                this.addToPartition(partitions, pages, records.next(), pass);
+            }
+            CloseableIterator.close(records);
+            for (int i = 0; i < this.numPartitions; ++i) {
+                if (partitions[i] != null) {
+                    this.flush(partitions[i], pages.get(i));
+                    this.pending.add(new Pair<>(partitions[i], pass + 1));
+                }
+            }
+        }
+
+        private void addToPartition(String[] partitions, List<List<List<DataBox>>> pages, Record record,
+                                    int pass) throws DatabaseException {
+            DataBox key = record.getValues().get(GroupByOperator.this.groupByColumnIndex);
+            int i = hashPartition(key, pass, this.numPartitions);
+            if (partitions[i] == null) {
+                partitions[i] = GroupByOperator.this.transaction.createTempTable(this.schema);
+            }
+            pages.get(i).add(record.getValues());
+            if (pages.get(i).size() == this.numRecordsPerPage) {
+                this.flush(partitions[i], pages.get(i));
+            }
+        }
+
+        /** Writes the records buffered in page to the partition, and empties page. */
+        private void flush(String partition, List<List<DataBox>> page) throws DatabaseException {
+            if (!page.isEmpty()) {
+                GroupByOperator.this.transaction.addRecords(partition, page);
+                page.clear();
+            }
+        }
+
+        /**
+         * Advances groupIter to the next partition with a group, if there is one.
+         */
+        private boolean advance() throws QueryPlanException, DatabaseException {
+            if (this.groupIter == null) {
+                this.groupIter = this.group(GroupByOperator.this.getSource().iterator(), 0);
+            }
+            while (!this.groupIter.hasNext() && !this.pending.isEmpty()) {
+                Pair<String, Integer> partition = this.pending.poll();
+                Iterator<Record> records =
+                    GroupByOperator.this.transaction.getRecordIterator(partition.getFirst());
+                this.groupIter = this.group(records, partition.getSecond());
+                GroupByOperator.this.transaction.deleteTempTable(partition.getFirst());
+            }
+            return this.groupIter.hasNext();
         }
 
         /**
@@ -107,34 +216,46 @@ public class GroupByOperator extends QueryOperator {
          * @return true if this iterator has another record to yield, otherwise false
          */
         public boolean hasNext() {
-            return this.keyIter.hasNext() || (this.rIter != null && this.rIter.hasNext());
+            try {
+                return this.rIter.hasNext() || this.advance();
+            } catch (QueryPlanException | DatabaseException e) {
+                this.close();
+                throw new IllegalStateException(e);
+            }
         }
 
         /**
-         * Yields the next record of this iterator.
+         * Yields the next record of this iterator. The groups are separated by MarkerRecords.
          *
          * @return the next Record
          * @throws NoSuchElementException if there are no more Records to yield
          */
         public Record next() {
-            while (this.hasNext()) {
-                if (this.rIter != null && this.rIter.hasNext()) {
-                    return this.rIter.next();
-                } else if (this.keyIter.hasNext()) {
-                    String key = this.keyIter.next();
-                    String tableName = this.hashGroupTempTables.get(key);
-                    Iterator<Record> prevIter = this.rIter;
-                    try {
-                        this.rIter = GroupByOperator.this.transaction.getRecordIterator(tableName);
-                    } catch (DatabaseException de) {
-                        throw new NoSuchElementException();
-                    }
-                    if (prevIter != null && ++this.currCount < this.hashGroupTempTables.size()) {
-                        return markerRecord;
-                    }
-                }
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (this.rIter.hasNext()) {
+                return this.rIter.next();
+            }
+            this.rIter = this.groupIter.next().iterator();
+            if (this.emittedGroup) {
+                return this.markerRecord;
+            }
+            this.emittedGroup = true;
+            return this.rIter.next();
+        }
+
+        /**
+         * Deletes the partitions that are still pending. The iterator yields no more records
+         * afterwards.
+         */
+        public void close() {
+            for (Pair<String, Integer> partition : this.pending) {
+                GroupByOperator.this.transaction.deleteTempTable(partition.getFirst());
             }
-            throw new NoSuchElementException();
+            this.pending.clear();
+            this.groupIter = Collections.emptyIterator();
+            this.rIter = Collections.emptyIterator();
         }
 
         public void remove() {
@@ -0,0 +1,116 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.index.IndexType;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * Counts the records of a table whose indexed column lies in a range, e.g. for
+ * `SELECT COUNT(*) FROM t WHERE lo < column AND column <= hi`, straight from
+ * the index and without fetching any records. Its output is a single record
+ * with the count, under the same countAgg column as a ProjectOperator's count.
+ */
+public class IndexCountOperator extends QueryOperator {
+    private Database.Transaction transaction;
+    private String tableName;
+    private String columnName;
+    private DataBox lo;
+    private boolean loInclusive;
+    private DataBox hi;
+    private boolean hiInclusive;
+
+    /**
+     * An index count operator. A null bound leaves that end of the range open.
+     *
+     * @param transaction the transaction containing this operator
+     * @param tableName the table whose records to count
+     * @param columnName the name of the column the index is on
+     * @param lo the lower bound, or null
+     * @param loInclusive whether the lower bound is inclusive
+     * @param hi the upper bound, or null
+     * @param hiInclusive whether the upper bound is inclusive
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public IndexCountOperator(Database.Transaction transaction,
+                              String tableName,
+                              String columnName,
+                              DataBox lo, boolean loInclusive,
+                              DataBox hi, boolean hiInclusive) throws QueryPlanException, DatabaseException {
+        super(OperatorType.INDEXSCAN);
+        this.transaction = transaction;
+        this.tableName = tableName;
+        this.columnName = columnName;
+        this.lo = lo;
+        this.loInclusive = loInclusive;
+        this.hi = hi;
+        this.hiInclusive = hiInclusive;
+        this.setOutputSchema(this.computeSchema());
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public String str() {
+        return "type: " + this.getType() + " (count)" +
+               "\ntable: " + this.tableName +
+               "\ncolumn: " + this.columnName +
+               "\nrange: " + (this.loInclusive ? "[" : "(") + this.lo + ", " + this.hi +
+               (this.hiInclusive ? "]" : ")");
+    }
+
+    /**
+     * Estimates the table statistics for the result of executing this query operator,
+     * which is always a single record.
+     *
+     * @return estimated TableStats
+     */
+    public TableStats estimateStats() throws QueryPlanException {
+        TableStats stats = new TableStats(this.getOutputSchema());
+        stats.addRecord(new Record(Collections.<DataBox>singletonList(new IntDataBox(0))));
+        return stats;
+    }
+
+    /**
+     * Estimates the IO cost of executing this query operator. A B+ tree reads
+     * two root-to-leaf paths, each of which is no longer than the log of the
+     * number of pages of the index; other ordered indices read the whole
+     * range.
+     *
+     * @return estimate IO cost
+     * @throws QueryPlanException
+     */
+    public int estimateIOCost() throws QueryPlanException {
+        try {
+            int numIndexPages = this.transaction.getNumIndexPages(this.tableName, this.columnName);
+            if (this.transaction.getIndexType(this.tableName, this.columnName) != IndexType.BPLUS_TREE) {
+                return numIndexPages;
+            }
+            int height = 32 - Integer.numberOfLeadingZeros(numIndexPages);
+            return Math.min(numIndexPages, 2 * height);
+        } catch (DatabaseException err) {
+            throw new QueryPlanException(err);
+        }
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        int count = this.transaction.countRange(this.tableName, this.columnName,
+                                                this.lo, this.loInclusive, this.hi, this.hiInclusive);
+        return Collections.singletonList(new Record(
+                Collections.<DataBox>singletonList(new IntDataBox(count)))).iterator();
+    }
+
+    public Schema computeSchema() throws QueryPlanException {
+        return new Schema(Collections.singletonList("countAgg"),
+                          Collections.singletonList(Type.intType()));
+    }
+}
@@ -0,0 +1,249 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An index scan over a covering index. Instead of fetching every matching
+ * record from the table, it reads the indexed column and the columns included
+ * in the index straight out of the leaves of the index. Its output schema is
+ * the indexed column and the included columns, in the order of the table's
+ * schema, so that a query without a projection returns the columns as a scan
+ * of the table would.
+ */
+public class IndexOnlyScanOperator extends QueryOperator {
+    private Database.Transaction transaction;
+    private String tableName;
+    private String columnName;
+    private QueryPlan.PredicateOperator predicate;
+    private DataBox value;
+    private QueryPlan.PredicateOperator upperPredicate;
+    private DataBox upperValue;
+
+    // The indices in the table's schema of the indexed column followed by the
+    // included columns, i.e. of the values of an entry of the index.
+    private List<Integer> tableColumnIndices;
+
+    // Output column i holds the value at entryIndices.get(i) of an entry.
+    private List<Integer> entryIndices;
+
+    /**
+     * An index-only scan operator.
+     *
+     * @param transaction the transaction containing this operator
+     * @param tableName the table whose covering index to iterate over
+     * @param columnName the name of the column the index is on
+     * @param predicate the predicate on the indexed column
+     * @param value the value of the predicate
+     * @param upperPredicate the upper bound predicate (LESS_THAN or LESS_THAN_EQUALS)
+     *                       when `predicate` is a lower bound, or null
+     * @param upperValue the upper bound, or null
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public IndexOnlyScanOperator(Database.Transaction transaction,
+                                 String tableName,
+                                 String columnName,
+                                 QueryPlan.PredicateOperator predicate,
+                                 DataBox value,
+                                 QueryPlan.PredicateOperator upperPredicate,
+                                 DataBox upperValue) throws QueryPlanException, DatabaseException {
+        super(OperatorType.INDEXSCAN);
+        this.tableName = tableName;
+        this.transaction = transaction;
+        this.columnName = columnName;
+        this.predicate = predicate;
+        this.value = value;
+        this.upperPredicate = upperPredicate;
+        this.upperValue = upperValue;
+        this.setOutputSchema(this.computeSchema());
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public String str() {
+        return "type: " + this.getType() + " (index only)" +
+               "\ntable: " + this.tableName +
+               "\ncolumn: " + this.columnName +
+               "\noperator: " + this.predicate +
+               "\nvalue: " + this.value +
+               (this.upperPredicate == null ? "" :
+                "\nupper operator: " + this.upperPredicate +
+                "\nupper value: " + this.upperValue);
+    }
+
+    /**
+     * Returns the column name that the index scan is on
+     *
+     * @return columnName
+     */
+    public String getColumnName() {
+        return this.columnName;
+    }
+
+    /**
+     * Estimates the table statistics for the result of executing this query operator.
+     *
+     * @return estimated TableStats
+     */
+    public TableStats estimateStats() throws QueryPlanException {
+        TableStats stats;
+
+        try {
+            stats = this.transaction.getStats(this.tableName);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+
+        int columnIndex = this.tableColumnIndices.get(0);
+        stats = stats.copyWithPredicate(columnIndex, this.predicate, this.value);
+        if (this.upperPredicate != null) {
+            stats = stats.copyWithPredicate(columnIndex, this.upperPredicate, this.upperValue);
+        }
+        List<Integer> outputIndices = new ArrayList<>();
+        for (int i : this.entryIndices) {
+            outputIndices.add(this.tableColumnIndices.get(i));
+        }
+        return stats.copyWithProjection(outputIndices);
+    }
+
+    /**
+     * Estimates the IO cost of executing this query operator. An index-only
+     * scan never reads the table, so at worst it reads every page of the index.
+     *
+     * @return estimate IO cost
+     * @throws QueryPlanException
+     */
+    public int estimateIOCost() throws QueryPlanException {
+        try {
+            return this.transaction.getNumIndexPages(this.tableName, this.columnName);
+        } catch (DatabaseException err) {
+            throw new QueryPlanException(err);
+        }
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return new IndexOnlyScanIterator();
+    }
+
+    public Schema computeSchema() throws QueryPlanException {
+        try {
+            Schema tableSchema = this.transaction.getFullyQualifiedSchema(this.tableName);
+            Schema includedSchema = this.transaction.getIndexIncludedSchema(this.tableName,
+                                    this.columnName);
+
+            List<String> columns = new ArrayList<>();
+            columns.add(this.checkSchemaForColumn(tableSchema, this.columnName));
+            for (String included : includedSchema.getFieldNames()) {
+                columns.add(this.checkSchemaForColumn(tableSchema, included));
+            }
+
+            this.tableColumnIndices = new ArrayList<>();
+            this.entryIndices = new ArrayList<>();
+            for (String column : columns) {
+                this.entryIndices.add(this.tableColumnIndices.size());
+                this.tableColumnIndices.add(tableSchema.getFieldNames().indexOf(column));
+            }
+            this.entryIndices.sort(Comparator.comparing(this.tableColumnIndices::get));
+
+            List<String> outputColumns = new ArrayList<>();
+            List<Type> types = new ArrayList<>();
+            for (int i : this.entryIndices) {
+                outputColumns.add(columns.get(i));
+                types.add(tableSchema.getFieldTypes().get(this.tableColumnIndices.get(i)));
+            }
+            return new Schema(outputColumns, types);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator.
+     */
+    private class IndexOnlyScanIterator implements Iterator<Record> {
+        private Iterator<Record> sourceIterator;
+
+        public IndexOnlyScanIterator() throws QueryPlanException, DatabaseException {
+            DataBox lo = null;
+            boolean loInclusive = false;
+            DataBox hi = null;
+            boolean hiInclusive = false;
+
+            switch (IndexOnlyScanOperator.this.predicate) {
+            case EQUALS:
+                lo = hi = IndexOnlyScanOperator.this.value;
+                loInclusive = hiInclusive = true;
+                break;
+            case GREATER_THAN:
+            case GREATER_THAN_EQUALS:
+                lo = IndexOnlyScanOperator.this.value;
+                loInclusive = IndexOnlyScanOperator.this.predicate ==
+                              QueryPlan.PredicateOperator.GREATER_THAN_EQUALS;
+                break;
+            case LESS_THAN:
+            case LESS_THAN_EQUALS:
+                hi = IndexOnlyScanOperator.this.value;
+                hiInclusive = IndexOnlyScanOperator.this.predicate ==
+                              QueryPlan.PredicateOperator.LESS_THAN_EQUALS;
+                break;
+            default:
+                throw new QueryPlanException("Index scans do not support " +
+                                             IndexOnlyScanOperator.this.predicate);
+            }
+            if (IndexOnlyScanOperator.this.upperPredicate != null) {
+                hi = IndexOnlyScanOperator.this.upperValue;
+                hiInclusive = IndexOnlyScanOperator.this.upperPredicate ==
+                              QueryPlan.PredicateOperator.LESS_THAN_EQUALS;
+            }
+
+            this.sourceIterator = IndexOnlyScanOperator.this.transaction.coveringScanRange(
+                                      IndexOnlyScanOperator.this.tableName,
+                                      IndexOnlyScanOperator.this.columnName,
+                                      lo, loInclusive, hi, hiInclusive);
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            return this.sourceIterator.hasNext();
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (this.hasNext()) {
+                List<DataBox> entry = this.sourceIterator.next().getValues();
+                List<DataBox> values = new ArrayList<>();
+                for (int i : IndexOnlyScanOperator.this.entryIndices) {
+                    values.add(entry.get(i));
+                }
+                return new Record(values);
+            }
+            throw new NoSuchElementException();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
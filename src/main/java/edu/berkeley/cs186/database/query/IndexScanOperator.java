@@ -5,6 +5,7 @@ import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.concurrency.LockType;
 import edu.berkeley.cs186.database.concurrency.LockUtil;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.index.IndexStats;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
@@ -21,6 +22,9 @@ public class IndexScanOperator extends QueryOperator {
     private String columnName;
     private QueryPlan.PredicateOperator predicate;
     private DataBox value;
+    private QueryPlan.PredicateOperator upperPredicate;
+    private DataBox upperValue;
+    private boolean descending;
 
     private int columnIndex;
 
@@ -38,12 +42,60 @@ public class IndexScanOperator extends QueryOperator {
                              String columnName,
                              QueryPlan.PredicateOperator predicate,
                              DataBox value) throws QueryPlanException, DatabaseException {
+        this(transaction, tableName, columnName, predicate, value, null, null);
+    }
+
+    /**
+     * An index scan operator over every record of the table, in the order of the index, e.g. for
+     * `ORDER BY column`. The scan reads the index lazily, so an operator above it that needs only
+     * the first few records, like a LimitOperator, stops it early.
+     *
+     * @param transaction the transaction containing this operator
+     * @param tableName the table to iterate over
+     * @param columnName the name of the column the index is on
+     * @param descending true to scan from the largest key down instead of from the smallest up
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public IndexScanOperator(Database.Transaction transaction,
+                             String tableName,
+                             String columnName,
+                             boolean descending) throws QueryPlanException, DatabaseException {
+        this(transaction, tableName, columnName, null, null, null, null);
+        this.descending = descending;
+    }
+
+    /**
+     * An index scan operator over a bounded range of keys, e.g. for
+     * `lo < column AND column <= hi`. The scan stops reading the index as soon
+     * as it passes the upper bound.
+     *
+     * @param transaction the transaction containing this operator
+     * @param tableName the table to iterate over
+     * @param columnName the name of the column the index is on
+     * @param predicate the lower bound predicate (GREATER_THAN or GREATER_THAN_EQUALS)
+     * @param value the lower bound
+     * @param upperPredicate the upper bound predicate (LESS_THAN or LESS_THAN_EQUALS),
+     *                       or null if the scan only has one predicate
+     * @param upperValue the upper bound, or null if the scan only has one predicate
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public IndexScanOperator(Database.Transaction transaction,
+                             String tableName,
+                             String columnName,
+                             QueryPlan.PredicateOperator predicate,
+                             DataBox value,
+                             QueryPlan.PredicateOperator upperPredicate,
+                             DataBox upperValue) throws QueryPlanException, DatabaseException {
         super(OperatorType.INDEXSCAN);
         this.tableName = tableName;
         this.transaction = transaction;
         this.columnName = columnName;
         this.predicate = predicate;
         this.value = value;
+        this.upperPredicate = upperPredicate;
+        this.upperValue = upperValue;
         this.setOutputSchema(this.computeSchema());
         columnName = this.checkSchemaForColumn(this.getOutputSchema(), columnName);
         this.columnIndex = this.getOutputSchema().getFieldNames().indexOf(columnName);
@@ -53,11 +105,20 @@ public class IndexScanOperator extends QueryOperator {
     }
 
     public String str() {
+        if (this.predicate == null) {
+            return "type: " + this.getType() +
+                   "\ntable: " + this.tableName +
+                   "\ncolumn: " + this.columnName +
+                   "\norder: " + (this.descending ? "DESC" : "ASC");
+        }
         return "type: " + this.getType() +
                "\ntable: " + this.tableName +
                "\ncolumn: " + this.columnName +
                "\noperator: " + this.predicate +
-               "\nvalue: " + this.value;
+               "\nvalue: " + this.value +
+               (this.upperPredicate == null ? "" :
+                "\nupper operator: " + this.upperPredicate +
+                "\nupper value: " + this.upperValue);
     }
 
     /**
@@ -83,44 +144,59 @@ public class IndexScanOperator extends QueryOperator {
             throw new QueryPlanException(de);
         }
 
-        return stats.copyWithPredicate(this.columnIndex,
-                                       this.predicate,
-                                       this.value);
+        if (this.predicate != null) {
+            stats = stats.copyWithPredicate(this.columnIndex,
+                                            this.predicate,
+                                            this.value);
+        }
+        if (this.upperPredicate != null) {
+            stats = stats.copyWithPredicate(this.columnIndex,
+                                            this.upperPredicate,
+                                            this.upperValue);
+        }
+        return stats;
     }
 
     /**
-     * Estimates the IO cost of executing this query operator.
-     * You should calculate this estimate cost with the formula
-     * taught to you in class. Note that the index you've implemented
-     * in this project is an unclustered index.
-     *
-     * You will find the following instance variables helpful:
-     * this.transaction, this.tableName, this.columnName,
-     * this.columnIndex, this.predicate, and this.value.
+     * Estimates the IO cost of executing this query operator from the
+     * statistics of the index (see IndexStats). The scan reads a root-to-leaf
+     * path once, then the fraction of the leaves that the predicates select,
+     * and fetches the record of every selected entry. A fetch only reads a
+     * page when the previous record was on a different page, so fetching the
+     * records of a fraction f of the entries costs f times the clustering
+     * factor of the index: about f times the number of pages of the table if
+     * the index is in table order, and up to one page per record if not.
      *
-     * You will find the following methods helpful: this.transaction.getStats,
-     * this.transaction.getNumRecords, this.transaction.getNumIndexPages,
-     * and tableStats.getReductionFactor.
+     * An equality predicate selects one distinct key of the index; the
+     * selectivity of a range is estimated from the table's histograms.
      *
      * @return estimate IO cost
      * @throws QueryPlanException
      */
     public int estimateIOCost() throws QueryPlanException {
+        IndexStats indexStats;
         long numRecords;
-        long numIndexPages;
-        TableStats tableStats;
         try {
+            indexStats = this.transaction.getIndexStats(this.tableName, this.columnName);
             numRecords = this.transaction.getNumRecords(this.tableName);
-            numIndexPages = this.transaction.getNumIndexPages(this.tableName, this.columnName);
-            tableStats = this.transaction.getStats(this.tableName);
-
         } catch (DatabaseException err) {
-            throw new QueryPlanException("Can't find the number of records in IndexScanOperator#estimateIOCost().");
+            throw new QueryPlanException(err);
+        }
 
+        double selectivity;
+        if (this.predicate == null) {
+            selectivity = 1.0;
+        } else if (this.predicate == QueryPlan.PredicateOperator.EQUALS) {
+            selectivity = 1.0 / Math.max(1, indexStats.getNumKeys());
+        } else if (numRecords == 0) {
+            selectivity = 0.0;
+        } else {
+            selectivity = Math.min(1.0, (double) this.stats.getNumRecords() / numRecords);
         }
 
-        return (int)(tableStats.getHistograms().get(columnIndex).getCount() +
-                     numIndexPages); //round up and cast to an int
+        double numLeafPages = Math.max(1, Math.ceil(selectivity * indexStats.getNumLeaves()));
+        double numRecordPages = Math.ceil(selectivity * indexStats.getClusteringFactor());
+        return (int) (indexStats.getHeight() - 1 + numLeafPages + numRecordPages);
     }
 
     public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
@@ -144,7 +220,25 @@ public class IndexScanOperator extends QueryOperator {
 
         public IndexScanIterator() throws QueryPlanException, DatabaseException {
             this.nextRecord = null;
-            if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.EQUALS) {
+            if (IndexScanOperator.this.predicate == null) {
+                if (IndexScanOperator.this.descending) {
+                    this.sourceIterator = IndexScanOperator.this.transaction.sortedScanDescending(
+                                              IndexScanOperator.this.tableName,
+                                              IndexScanOperator.this.columnName);
+                } else {
+                    this.sourceIterator = IndexScanOperator.this.transaction.sortedScan(
+                                              IndexScanOperator.this.tableName,
+                                              IndexScanOperator.this.columnName);
+                }
+            } else if (IndexScanOperator.this.upperPredicate != null) {
+                this.sourceIterator = IndexScanOperator.this.transaction.sortedScanRange(
+                                          IndexScanOperator.this.tableName,
+                                          IndexScanOperator.this.columnName,
+                                          IndexScanOperator.this.value,
+                                          IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.GREATER_THAN_EQUALS,
+                                          IndexScanOperator.this.upperValue,
+                                          IndexScanOperator.this.upperPredicate == QueryPlan.PredicateOperator.LESS_THAN_EQUALS);
+            } else if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.EQUALS) {
                 this.sourceIterator = IndexScanOperator.this.transaction.lookupKey(
                                           IndexScanOperator.this.tableName,
                                           IndexScanOperator.this.columnName,
@@ -185,7 +279,8 @@ public class IndexScanOperator extends QueryOperator {
             if (this.nextRecord != null) {
                 return true;
             }
-            if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.LESS_THAN) {
+            if (IndexScanOperator.this.upperPredicate == null &&
+                    IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.LESS_THAN) {
                 if (this.sourceIterator.hasNext()) {
                     Record r = this.sourceIterator.next();
                     if (r.getValues().get(IndexScanOperator.this.columnIndex)
@@ -196,7 +291,8 @@ public class IndexScanOperator extends QueryOperator {
                     return true;
                 }
                 return false;
-            } else if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.LESS_THAN_EQUALS) {
+            } else if (IndexScanOperator.this.upperPredicate == null &&
+                       IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.LESS_THAN_EQUALS) {
                 if (this.sourceIterator.hasNext()) {
                     Record r = this.sourceIterator.next();
                     if (r.getValues().get(IndexScanOperator.this.columnIndex)
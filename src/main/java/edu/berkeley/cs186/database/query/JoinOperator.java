@@ -7,6 +7,7 @@ import java.util.List;
 import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
+import edu.berkeley.cs186.database.common.CloseableIterator;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.Page;
@@ -232,33 +233,41 @@ public abstract class JoinOperator extends QueryOperator {
     /**
      * All iterators for subclasses of JoinOperator should subclass from
      * JoinIterator; JoinIterator handles creating temporary tables out of the left and right
-     * input operators.
+     * input operators. Closing the iterator deletes those temporary tables; subclasses that
+     * prefetch records should override close to drop them as well.
      */
-    protected abstract class JoinIterator implements Iterator<Record> {
+    protected abstract class JoinIterator implements CloseableIterator<Record> {
         private String leftTableName;
         private String rightTableName;
+        private List<String> tempTableNames;
 
         public JoinIterator() throws QueryPlanException, DatabaseException {
-            if (JoinOperator.this.getLeftSource().isSequentialScan()) {
-                this.leftTableName = ((SequentialScanOperator) JoinOperator.this.getLeftSource()).getTableName();
-            } else {
-                this.leftTableName = JoinOperator.this.createTempTable(
-                                         JoinOperator.this.getLeftSource().getOutputSchema());
-                Iterator<Record> leftIter = JoinOperator.this.getLeftSource().iterator();
-                while (leftIter.hasNext()) {
-                    JoinOperator.this.addRecord(this.leftTableName, leftIter.next().getValues());
-                }
+            this.tempTableNames = new ArrayList<>();
+            try {
+                this.leftTableName = this.materialize(JoinOperator.this.getLeftSource());
+                this.rightTableName = this.materialize(JoinOperator.this.getRightSource());
+            } catch (QueryPlanException | DatabaseException e) {
+                this.close();
+                throw e;
             }
-            if (JoinOperator.this.getRightSource().isSequentialScan()) {
-                this.rightTableName = ((SequentialScanOperator) JoinOperator.this.getRightSource()).getTableName();
-            } else {
-                this.rightTableName = JoinOperator.this.createTempTable(
-                                          JoinOperator.this.getRightSource().getOutputSchema());
-                Iterator<Record> rightIter = JoinOperator.this.getRightSource().iterator();
-                while (rightIter.hasNext()) {
-                    JoinOperator.this.addRecord(this.rightTableName, rightIter.next().getValues());
-                }
+        }
+
+        /**
+         * Returns the name of the table of source if it is a sequential scan, and otherwise
+         * writes its records to a new temporary table and returns the name of that.
+         */
+        private String materialize(QueryOperator source) throws QueryPlanException, DatabaseException {
+            if (source.isSequentialScan()) {
+                return ((SequentialScanOperator) source).getTableName();
+            }
+            String tableName = JoinOperator.this.createTempTable(source.getOutputSchema());
+            this.tempTableNames.add(tableName);
+            Iterator<Record> sourceIter = source.iterator();
+            while (sourceIter.hasNext()) {
+                JoinOperator.this.addRecord(tableName, sourceIter.next().getValues());
             }
+            CloseableIterator.close(sourceIter);
+            return tableName;
         }
 
         protected String getLeftTableName() {
@@ -268,5 +277,15 @@ public abstract class JoinOperator extends QueryOperator {
         protected String getRightTableName() {
             return this.rightTableName;
         }
+
+        /**
+         * Deletes the temporary tables the inputs were written to.
+         */
+        public void close() {
+            for (String tableName : this.tempTableNames) {
+                JoinOperator.this.transaction.deleteTempTable(tableName);
+            }
+            this.tempTableNames.clear();
+        }
     }
 }
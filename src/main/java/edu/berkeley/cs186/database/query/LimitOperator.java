@@ -0,0 +1,115 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.common.CloseableIterator;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+public class LimitOperator extends QueryOperator {
+    private int limit;
+
+    /**
+     * Creates a new LimitOperator that outputs the first limit records of source, and closes
+     * the iterator of source as soon as it has, so the source stops working and releases what it
+     * holds before the consumer is done.
+     *
+     * @param source the source of this operator
+     * @param limit the number of records to output
+     * @throws QueryPlanException
+     */
+    public LimitOperator(QueryOperator source, int limit) throws QueryPlanException {
+        super(OperatorType.LIMIT, source);
+        if (limit < 0) {
+            throw new QueryPlanException("Cannot limit a query to a negative number of records.");
+        }
+        this.limit = limit;
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public Schema computeSchema() throws QueryPlanException {
+        return this.getSource().getOutputSchema();
+    }
+
+    public String str() {
+        return "type: " + this.getType() +
+               "\nlimit: " + this.limit;
+    }
+
+    /**
+     * Estimates the table statistics for the result of executing this query operator.
+     *
+     * @return estimated TableStats
+     */
+    public TableStats estimateStats() throws QueryPlanException {
+        return this.getSource().getStats();
+    }
+
+    public int estimateIOCost() throws QueryPlanException {
+        return this.getSource().getIOCost();
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        if (this.limit == 0) {
+            return Collections.emptyIterator();
+        }
+        return new LimitIterator();
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator.
+     */
+    private class LimitIterator implements CloseableIterator<Record> {
+        private Iterator<Record> sourceIterator;
+        private int numOutput;
+
+        public LimitIterator() throws QueryPlanException, DatabaseException {
+            this.sourceIterator = LimitOperator.this.getSource().iterator();
+            this.numOutput = 0;
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            return this.numOutput < LimitOperator.this.limit && this.sourceIterator.hasNext();
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (this.hasNext()) {
+                Record r = this.sourceIterator.next();
+                if (++this.numOutput == LimitOperator.this.limit) {
+                    this.close();
+                }
+                return r;
+            }
+            throw new NoSuchElementException();
+        }
+
+        /**
+         * Closes the source iterator. The iterator yields no more records afterwards.
+         */
+        public void close() {
+            CloseableIterator.close(this.sourceIterator);
+            this.sourceIterator = Collections.emptyIterator();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
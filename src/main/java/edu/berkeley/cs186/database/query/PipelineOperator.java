@@ -0,0 +1,163 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.common.CloseableIterator;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+/**
+ * A pipeline of a sequential scan, the SelectOperators above it, and optionally
+ * a ProjectOperator without aggregates on top, compiled into one operator.
+ *
+ * Instead of every batch going through the batch iterator of each operator in
+ * turn, the pipeline runs a single loop over the batches of the scan that
+ * narrows down the selection vector of each batch with the compiled
+ * predicates of all of the selects, which test the primitive arrays of its
+ * column vectors, and then projects the batch by picking out its column
+ * vectors, without copying any of them. The loop never calls into the
+ * operators it was compiled from, so there is one iterator per query instead
+ * of a chain of virtual hasNext/next calls per batch.
+ *
+ * Use PipelineOperator.compile to fuse what it can of a plan.
+ */
+public class PipelineOperator extends QueryOperator {
+    private QueryOperator scan;
+    private CompiledPredicate[] predicates;
+    // The columns of the scan to output, in order, or null for all of them.
+    private int[] projection;
+    // The operators this pipeline was compiled from.
+    private QueryOperator interpreted;
+
+    private PipelineOperator(QueryOperator scan, List<CompiledPredicate> predicates, int[] projection,
+                             QueryOperator interpreted) throws QueryPlanException {
+        super(OperatorType.PIPELINE);
+        this.scan = scan;
+        this.predicates = predicates.toArray(new CompiledPredicate[predicates.size()]);
+        this.projection = projection;
+        this.interpreted = interpreted;
+        this.setOutputSchema(this.computeSchema());
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    /**
+     * Compiles the pipeline at the top of the plan rooted at root, if there is one: a project
+     * without aggregates and/or selects over a sequential scan. Otherwise, if root is an operator
+     * with a single source, like an aggregate or an order by, the plan below it is compiled
+     * instead. Returns the new root of the plan, which is root itself if there is nothing to fuse
+     * at the top.
+     */
+    public static QueryOperator compile(QueryOperator root) throws QueryPlanException {
+        PipelineOperator pipeline = fuse(root);
+        if (pipeline != null) {
+            return pipeline;
+        }
+        if (!root.isJoin() && root.getSource() != null) {
+            QueryOperator source = compile(root.getSource());
+            // a ProjectOperator adds its aggregate columns again whenever its source is set
+            if (source != root.getSource() && !root.isProject()) {
+                root.setSource(source);
+            }
+        }
+        return root;
+    }
+
+    private static PipelineOperator fuse(QueryOperator root) throws QueryPlanException {
+        QueryOperator operator = root;
+        int[] projection = null;
+        if (operator.isProject()) {
+            projection = ((ProjectOperator) operator).getColumnIndices();
+            if (projection == null) {
+                return null;
+            }
+            operator = operator.getSource();
+        }
+
+        // the selects closest to the scan are evaluated first, as in the interpreter
+        List<CompiledPredicate> predicates = new ArrayList<>();
+        while (operator.isSelect()) {
+            predicates.addAll(0, Arrays.asList(((SelectOperator) operator).getPredicates()));
+            operator = operator.getSource();
+        }
+
+        if (operator.getType() != OperatorType.SEQSCAN || (predicates.isEmpty() && projection == null)) {
+            return null;
+        }
+        return new PipelineOperator(operator, predicates, projection, root);
+    }
+
+    public Schema computeSchema() throws QueryPlanException {
+        return this.interpreted.getOutputSchema();
+    }
+
+    public String str() {
+        return "type: " + this.getType() +
+               "\n" + this.interpreted.toString().replaceAll("(?m)^", "\t");
+    }
+
+    /**
+     * Estimates the table statistics for the result of executing this query operator.
+     *
+     * @return estimated TableStats
+     */
+    public TableStats estimateStats() throws QueryPlanException {
+        return this.interpreted.getStats();
+    }
+
+    public int estimateIOCost() throws QueryPlanException {
+        return this.interpreted.getIOCost();
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return RecordBatch.records(this.batchIterator());
+    }
+
+    /**
+     * Filters and projects the batches of the scan, skipping batches with no row that satisfies
+     * the predicates.
+     */
+    public Iterator<RecordBatch> batchIterator() throws QueryPlanException, DatabaseException {
+        Iterator<RecordBatch> sourceIterator = this.scan.batchIterator();
+        Schema schema = this.getOutputSchema();
+        return new CloseableIterator<RecordBatch>() {
+            private RecordBatch nextBatch = null;
+            private boolean closed = false;
+
+            public boolean hasNext() {
+                while (!this.closed && this.nextBatch == null && sourceIterator.hasNext()) {
+                    RecordBatch batch = sourceIterator.next();
+                    CompiledPredicate.filter(PipelineOperator.this.predicates, batch);
+                    if (!batch.isEmpty()) {
+                        int[] projection = PipelineOperator.this.projection;
+                        this.nextBatch = projection == null ? batch : batch.project(projection, schema);
+                    }
+                }
+                return this.nextBatch != null;
+            }
+
+            public RecordBatch next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                RecordBatch batch = this.nextBatch;
+                this.nextBatch = null;
+                return batch;
+            }
+
+            public void close() {
+                this.closed = true;
+                this.nextBatch = null;
+                CloseableIterator.close(sourceIterator);
+            }
+        };
+    }
+}
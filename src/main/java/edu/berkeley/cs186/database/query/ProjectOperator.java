@@ -1,11 +1,13 @@
 package edu.berkeley.cs186.database.query;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 
 import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.common.CloseableIterator;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.FloatDataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
@@ -13,6 +15,7 @@ import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.databox.TypeId;
 import edu.berkeley.cs186.database.table.MarkerRecord;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -127,6 +130,47 @@ public class ProjectOperator extends QueryOperator {
 
     public Iterator<Record> iterator() throws QueryPlanException, DatabaseException { return new ProjectIterator(); }
 
+    /**
+     * Without aggregates, projects every batch of the source onto the projected columns, which
+     * shares the column vectors of the batch instead of copying any values.
+     */
+    public Iterator<RecordBatch> batchIterator() throws QueryPlanException, DatabaseException {
+        if (this.hasAggregate) {
+            return super.batchIterator();
+        }
+        Iterator<RecordBatch> sourceIterator = this.getSource().batchIterator();
+        int[] indices = this.getColumnIndices();
+        Schema schema = this.getOutputSchema();
+        return new CloseableIterator<RecordBatch>() {
+            public boolean hasNext() {
+                return sourceIterator.hasNext();
+            }
+
+            public RecordBatch next() {
+                return sourceIterator.next().project(indices, schema);
+            }
+
+            public void close() {
+                CloseableIterator.close(sourceIterator);
+            }
+        };
+    }
+
+    /**
+     * Returns the positions in the source schema of the projected columns, or null if the
+     * projection computes aggregates.
+     */
+    int[] getColumnIndices() {
+        if (this.hasAggregate) {
+            return null;
+        }
+        int[] indices = new int[this.indices.size()];
+        for (int i = 0; i < indices.length; ++i) {
+            indices[i] = this.indices.get(i);
+        }
+        return indices;
+    }
+
     private void addToCount() {
         this.countValue++;
     }
@@ -188,7 +232,7 @@ public class ProjectOperator extends QueryOperator {
     /**
      * An implementation of Iterator that provides an iterator interface for this operator.
      */
-    private class ProjectIterator implements Iterator<Record> {
+    private class ProjectIterator implements CloseableIterator<Record> {
         private Iterator<Record> sourceIterator;
         private MarkerRecord markerRecord;
         private Record nextRecord;
@@ -310,6 +354,14 @@ public class ProjectOperator extends QueryOperator {
             throw new NoSuchElementException();
         }
 
+        /**
+         * Closes the source iterator. The iterator yields no more records afterwards.
+         */
+        public void close() {
+            CloseableIterator.close(this.sourceIterator);
+            this.sourceIterator = Collections.emptyIterator();
+        }
+
         public void remove() {
             throw new UnsupportedOperationException();
         }
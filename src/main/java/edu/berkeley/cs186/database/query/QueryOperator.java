@@ -4,7 +4,9 @@ import java.util.Iterator;
 import java.util.List;
 
 import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -21,7 +23,11 @@ public abstract class QueryOperator {
         SELECT,
         GROUPBY,
         SEQSCAN,
-        INDEXSCAN
+        INDEXSCAN,
+        AGGREGATE,
+        PIPELINE,
+        TOPN,
+        LIMIT
     }
 
     private OperatorType type;
@@ -99,8 +105,25 @@ public abstract class QueryOperator {
         return iterator();
     }
 
+    /**
+     * Returns an iterator over the output of this operator. The iterators of operators that read
+     * from other operators, or that hold temporary tables, are CloseableIterators: closing one
+     * closes the iterators it reads from and deletes its temporary tables right away, so a
+     * consumer that stops early can stop the work of the whole plan below it.
+     */
     public abstract Iterator<Record> iterator() throws QueryPlanException, DatabaseException;
 
+    /**
+     * Returns an iterator over the output of this operator in RecordBatches of
+     * up to RecordBatch.DEFAULT_CAPACITY records. Operators that work on whole
+     * column vectors at a time override this; the rest batch up the records of
+     * iterator(). Operators that output MarkerRecords do not support batches. Like iterator(), the
+     * iterator can be closed to stop early.
+     */
+    public Iterator<RecordBatch> batchIterator() throws QueryPlanException, DatabaseException {
+        return RecordBatch.batches(this.iterator(), this.getOutputSchema());
+    }
+
     /**
      * Utility method that checks to see if a column is found in a schema using dot notation.
      *
@@ -184,4 +207,20 @@ public abstract class QueryOperator {
     public int getIOCost() {
         return this.cost;
     }
+
+    /**
+     * Returns which of numPartitions partitions `key` hashes to in the given
+     * partitioning pass of a hash-based operator. The hash code of the key is
+     * mixed with a different seed in every pass, so that the keys of a
+     * partition are spread out again when it is partitioned in the next pass.
+     */
+    protected static int hashPartition(DataBox key, int pass, int numPartitions) {
+        int h = key.hashCode() ^ (pass * 0x9E3779B9);
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, numPartitions);
+    }
 }
@@ -5,7 +5,10 @@ import java.util.*;
 import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.index.IndexPredicate;
+import edu.berkeley.cs186.database.index.IndexType;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 
 /**
@@ -23,6 +26,15 @@ public class QueryPlan {
         GREATER_THAN_EQUALS
     }
 
+    public enum AggregateFunction {
+        COUNT,
+        COUNT_DISTINCT,
+        SUM,
+        AVERAGE,
+        MIN,
+        MAX
+    }
+
     private Database.Transaction transaction;
     private QueryOperator finalOperator;
     private String startTableName;
@@ -35,9 +47,12 @@ public class QueryPlan {
     private List<DataBox> selectDataBoxes;
     private List<String> projectColumns;
     private String groupByColumn;
-    private boolean hasCount;
-    private String averageColumnName;
-    private String sumColumnName;
+    private List<AggregateFunction> aggregateFunctions;
+    private List<String> aggregateColumnNames;
+    private String orderByColumn;
+    private boolean orderByAscending;
+    private int limit;
+    private boolean compilePipelines;
 
     /**
      * Creates a new QueryPlan within transaction. The base table is startTableName.
@@ -58,11 +73,14 @@ public class QueryPlan {
         this.selectOperators = new ArrayList<PredicateOperator>();
         this.selectDataBoxes = new ArrayList<DataBox>();
 
-        this.hasCount = false;
-        this.averageColumnName = null;
-        this.sumColumnName = null;
+        this.aggregateFunctions = new ArrayList<AggregateFunction>();
+        this.aggregateColumnNames = new ArrayList<String>();
 
         this.groupByColumn = null;
+        this.orderByColumn = null;
+        this.orderByAscending = true;
+        this.limit = -1;
+        this.compilePipelines = true;
 
         this.finalOperator = null;
     }
@@ -71,6 +89,16 @@ public class QueryPlan {
         return this.finalOperator;
     }
 
+    /**
+     * Sets whether execute compiles the scan, selects, and projection of a plan into a single
+     * PipelineOperator where it can, or runs every operator on its own. Compiling is on by default.
+     *
+     * @param compilePipelines whether to compile pipelines
+     */
+    public void setCompilePipelines(boolean compilePipelines) {
+        this.compilePipelines = compilePipelines;
+    }
+
     /**
      * Add a project operator to the QueryPlan with a list of column names. Can only specify one set
      * of projections.
@@ -116,13 +144,54 @@ public class QueryPlan {
         this.groupByColumn = column;
     }
 
+    /**
+     * Order the records of this query by column. Without aggregates, column can be any column of
+     * the tables of the query; with them, it must be a column of the output. Can only order by one
+     * column.
+     *
+     * @param column the column to order by
+     * @param ascending true for the smallest values first, false for the largest
+     * @throws QueryPlanException
+     */
+    public void orderBy(String column, boolean ascending) throws QueryPlanException {
+        if (this.orderByColumn != null) {
+            throw new QueryPlanException("Cannot order this query by more than one column.");
+        }
+        this.orderByColumn = column;
+        this.orderByAscending = ascending;
+    }
+
+    /**
+     * Only return the first n records of this query, in the order of its order by column if it
+     * has one.
+     *
+     * @param n the number of records to return
+     * @throws QueryPlanException
+     */
+    public void limit(int n) throws QueryPlanException {
+        if (n < 0) {
+            throw new QueryPlanException("Cannot limit a query to a negative number of records.");
+        }
+        this.limit = n;
+    }
+
     /**
      * Add a count aggregate to this query. Only can specify count(*).
      *
      * @throws QueryPlanException
      */
     public void count() throws QueryPlanException {
-        this.hasCount = true;
+        this.aggregate(AggregateFunction.COUNT, null);
+    }
+
+    /**
+     * Add a count of the distinct values of column.
+     *
+     * @param column the column to count the distinct values of
+     * @throws QueryPlanException
+     */
+    public void countDistinct(String column) throws QueryPlanException {
+        this.aggregate(AggregateFunction.COUNT_DISTINCT, column);
     }
 
     /**
@@ -132,7 +201,7 @@ public class QueryPlan {
      * @throws QueryPlanException
      */
     public void average(String column) throws QueryPlanException {
-        this.averageColumnName = column;
+        this.aggregate(AggregateFunction.AVERAGE, column);
     }
 
     /**
@@ -142,7 +211,43 @@ public class QueryPlan {
      * @throws QueryPlanException
      */
     public void sum(String column) throws QueryPlanException {
-        this.sumColumnName = column;
+        this.aggregate(AggregateFunction.SUM, column);
+    }
+
+    /**
+     * Add a minimum on column.
+     *
+     * @param column the column to take the minimum of
+     * @throws QueryPlanException
+     */
+    public void min(String column) throws QueryPlanException {
+        this.aggregate(AggregateFunction.MIN, column);
+    }
+
+    /**
+     * Add a maximum on column.
+     *
+     * @param column the column to take the maximum of
+     * @throws QueryPlanException
+     */
+    public void max(String column) throws QueryPlanException {
+        this.aggregate(AggregateFunction.MAX, column);
+    }
+
+    /**
+     * Add an aggregate to this query. A query can have any number of aggregates, of any kind, which
+     * are output in the order they were added, after the projected columns.
+     *
+     * @param function the aggregate function
+     * @param column the column to aggregate, which must be null for COUNT
+     * @throws QueryPlanException
+     */
+    public void aggregate(AggregateFunction function, String column) throws QueryPlanException {
+        if ((function == AggregateFunction.COUNT) != (column == null)) {
+            throw new QueryPlanException("COUNT takes no column, and every other aggregate takes one.");
+        }
+        this.aggregateFunctions.add(function);
+        this.aggregateColumnNames.add(column);
     }
 
     /**
@@ -171,16 +276,37 @@ public class QueryPlan {
 
     /**
      * Generates a naive QueryPlan in which all joins are at the bottom of the DAG followed by all select
-     * predicates, an optional group by operator, and a set of projects (in that order).
+     * predicates, and the projects and aggregates (in that order). The order by and limit go below
+     * the projects, or above the aggregates if there are any.
+     *
+     * A caller that stops before the end of the result can close the iterator with
+     * CloseableIterator.close, which stops the plan and deletes its temporary tables right away.
      *
      * @return an iterator of records that is the result of this query
      * @throws DatabaseException
      * @throws QueryPlanException
      */
     public Iterator<Record> execute() throws DatabaseException, QueryPlanException {
-        String indexColumn = this.checkIndexEligible();
+        String countColumn = this.checkIndexCountEligible();
+        if (countColumn != null) {
+            this.generateIndexCountPlan(countColumn);
+            return this.finalOperator.execute();
+        }
 
-        if (indexColumn != null) {
+        List<String> compositeIndex = this.checkCompositeIndexEligible();
+        String indexColumn = compositeIndex == null ? this.checkIndexEligible() : null;
+        List<Integer> bitmapSelects = compositeIndex == null ? this.checkBitmapIndexEligible() : null;
+        boolean indexOrder = this.checkIndexOrderEligible();
+
+        if (indexOrder && (this.limit != -1
+                           || (compositeIndex == null && bitmapSelects == null && indexColumn == null))) {
+            // reading the index in order beats sorting, above all when a limit stops the scan early
+            this.generateIndexOrderPlan();
+        } else if (compositeIndex != null) {
+            this.generateCompositeIndexPlan(compositeIndex);
+        } else if (bitmapSelects != null && this.isBitmapIndexCheapest(bitmapSelects, indexColumn)) {
+            this.generateBitmapIndexPlan(bitmapSelects);
+        } else if (indexColumn != null) {
             this.generateIndexPlan(indexColumn);
         } else {
             // start off with the start table scan as the source
@@ -188,8 +314,15 @@ public class QueryPlan {
 
             this.addJoins();
             this.addSelects();
-            this.addGroupBy();
-            this.addProjects();
+            this.addOrderByAndProjects();
+
+            if (this.compilePipelines) {
+                this.finalOperator = PipelineOperator.compile(this.finalOperator);
+            }
+            if (!this.finalOperator.isSequentialScan()) {
+                // run the selects, projects, aggregates, and hash joins on batches of records
+                return RecordBatch.records(this.finalOperator.batchIterator());
+            }
         }
 
         return this.finalOperator.execute();
@@ -219,8 +352,7 @@ public class QueryPlan {
         for (int i = 0; i < this.selectColumnNames.size(); i++) {
             String column = this.selectColumnNames.get(i);
 
-            if (this.transaction.indexExists(table, column) &&
-                    this.selectOperators.get(i) != PredicateOperator.NOT_EQUALS) {
+            if (this.indexSupports(table, column, this.selectOperators.get(i))) {
                 selectIndices.add(i);
             }
         }
@@ -303,8 +435,21 @@ public class QueryPlan {
 
         // Find the cost of a sequential scan of the table
         minOp = new SequentialScanOperator(this.transaction, table);
+        int minCost = minOp.getIOCost();
+
+        // Find the cost of an index scan for every predicate that an index can answer
+        int except = -1;
+        for (int i : this.getEligibleIndexColumns(table)) {
+            QueryOperator indexScan = new IndexScanOperator(this.transaction, table,
+                    this.selectColumnNames.get(i), this.selectOperators.get(i), this.selectDataBoxes.get(i));
+            if (indexScan.getIOCost() < minCost) {
+                minOp = indexScan;
+                minCost = indexScan.getIOCost();
+                except = i;
+            }
+        }
 
-        return minOp;
+        return this.addEligibleSelections(minOp, except);
     }
 
     /**
@@ -326,6 +471,7 @@ public class QueryPlan {
         List<QueryOperator> allJoins = new ArrayList<QueryOperator>();
         allJoins.add(new SNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
         allJoins.add(new BNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+        allJoins.add(new GraceHashOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
 
         for (QueryOperator join : allJoins) {
             int joinCost = join.estimateIOCost();
@@ -390,10 +536,8 @@ public class QueryPlan {
                 && this.joinTableNames.size() == 0) {
             int index = 0;
             for (String column : selectColumnNames) {
-                if (this.transaction.indexExists(this.startTableName, column)) {
-                    if (this.selectOperators.get(index) != PredicateOperator.NOT_EQUALS) {
-                        return column;
-                    }
+                if (this.indexSupports(this.startTableName, column, this.selectOperators.get(index))) {
+                    return column;
                 }
 
                 index++;
@@ -403,74 +547,460 @@ public class QueryPlan {
         return null;
     }
 
+    /**
+     * Returns the column of an ordered index that can count the records of a count(*) query on its
+     * own, or null if there is none. Every select predicate of the query must be a comparison on
+     * that column, and the query may not have anything else besides the count.
+     */
+    private String checkIndexCountEligible() {
+        if (!this.aggregateFunctions.equals(Collections.singletonList(AggregateFunction.COUNT))
+                || this.orderByColumn != null
+                || this.limit != -1
+                || this.selectColumnNames.isEmpty()
+                || !this.projectColumns.isEmpty()
+                || this.groupByColumn != null
+                || this.joinTableNames.size() > 0) {
+            return null;
+        }
+
+        String column = this.selectColumnNames.get(0);
+        for (int i = 0; i < this.selectColumnNames.size(); i++) {
+            if (!unqualifiedColumnName(this.selectColumnNames.get(i)).equals(unqualifiedColumnName(column))
+                    || this.selectOperators.get(i) == PredicateOperator.NOT_EQUALS) {
+                return null;
+            }
+        }
+        try {
+            if (!this.transaction.indexExists(this.startTableName, column)
+                    || this.transaction.getIndexType(this.startTableName, column) == IndexType.HASH
+                    || !this.indexCoversQuery(this.startTableName, column)) {
+                return null;
+            }
+        } catch (DatabaseException e) {
+            return null;
+        }
+        return column;
+    }
+
+    /**
+     * Returns true if the records of the query can be read in the order of its order by column
+     * from an ordered index on that column of the start table. The query may not have joins or
+     * aggregates, and a partial index must hold every record the query may return.
+     */
+    private boolean checkIndexOrderEligible() {
+        if (this.orderByColumn == null
+                || this.groupByColumn != null
+                || !this.aggregateFunctions.isEmpty()
+                || this.joinTableNames.size() > 0) {
+            return false;
+        }
+        String column = unqualifiedColumnName(this.orderByColumn);
+        if (!this.transaction.indexExists(this.startTableName, column)) {
+            return false;
+        }
+        try {
+            IndexType type = this.transaction.getIndexType(this.startTableName, column);
+            return type != IndexType.HASH && type != IndexType.BITMAP
+                   && this.indexCoversQuery(this.startTableName, column);
+        } catch (DatabaseException e) {
+            return false;
+        }
+    }
+
+    private void generateIndexOrderPlan() throws QueryPlanException, DatabaseException {
+        this.finalOperator = new IndexScanOperator(this.transaction, this.startTableName,
+                unqualifiedColumnName(this.orderByColumn), !this.orderByAscending);
+
+        this.addSelects();
+        if (this.limit != -1) {
+            this.finalOperator = new LimitOperator(this.finalOperator, this.limit);
+        }
+        this.addProjects();
+    }
+
+    private void generateIndexCountPlan(String column) throws QueryPlanException, DatabaseException {
+        // intersect all the predicates into a single range, keeping the tighter of any two bounds
+        DataBox lo = null;
+        boolean loInclusive = false;
+        DataBox hi = null;
+        boolean hiInclusive = false;
+        for (int i = 0; i < this.selectColumnNames.size(); i++) {
+            PredicateOperator op = this.selectOperators.get(i);
+            DataBox value = this.selectDataBoxes.get(i);
+            if (op != PredicateOperator.LESS_THAN && op != PredicateOperator.LESS_THAN_EQUALS) {
+                boolean inclusive = op != PredicateOperator.GREATER_THAN;
+                int cmp = lo == null ? 1 : value.compareTo(lo);
+                if (cmp > 0 || (cmp == 0 && !inclusive)) {
+                    lo = value;
+                    loInclusive = inclusive;
+                }
+            }
+            if (op != PredicateOperator.GREATER_THAN && op != PredicateOperator.GREATER_THAN_EQUALS) {
+                boolean inclusive = op != PredicateOperator.LESS_THAN;
+                int cmp = hi == null ? -1 : value.compareTo(hi);
+                if (cmp < 0 || (cmp == 0 && !inclusive)) {
+                    hi = value;
+                    hiInclusive = inclusive;
+                }
+            }
+        }
+
+        this.finalOperator = new IndexCountOperator(this.transaction, this.startTableName, column,
+                lo, loInclusive, hi, hiInclusive);
+    }
+
+    /**
+     * Returns the columns of the composite index with the longest prefix of columns that all have an
+     * equality predicate, or null if no composite index has equality predicates on at least two of
+     * its leading columns.
+     */
+    private List<String> checkCompositeIndexEligible() {
+        if (this.selectColumnNames.size() < 2
+                || this.groupByColumn != null
+                || this.joinTableNames.size() > 0) {
+            return null;
+        }
+
+        List<String> best = null;
+        int bestPrefix = 1;
+        for (List<String> indexColumns : this.transaction.getCompositeIndices(this.startTableName)) {
+            int prefix = 0;
+            while (prefix < indexColumns.size()
+                    && this.findEqualsSelect(indexColumns.get(prefix)) != -1) {
+                prefix++;
+            }
+            if (prefix > bestPrefix) {
+                best = indexColumns;
+                bestPrefix = prefix;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the positions in the select lists of the equality predicates on bitmap-indexed columns
+     * (the first such predicate of each column), or null if there are none.
+     */
+    private List<Integer> checkBitmapIndexEligible() {
+        if (this.selectColumnNames.isEmpty()
+                || this.groupByColumn != null
+                || this.joinTableNames.size() > 0) {
+            return null;
+        }
+
+        List<Integer> selects = new ArrayList<Integer>();
+        Set<String> columns = new HashSet<String>();
+        for (int i = 0; i < this.selectColumnNames.size(); i++) {
+            String column = this.selectColumnNames.get(i);
+            if (this.selectOperators.get(i) == PredicateOperator.EQUALS
+                    && !columns.contains(unqualifiedColumnName(column))
+                    && this.transaction.bitmapIndexExists(this.startTableName, column)) {
+                selects.add(i);
+                columns.add(unqualifiedColumnName(column));
+            }
+        }
+        return selects.isEmpty() ? null : selects;
+    }
+
+    /**
+     * Returns the predicates of a BitmapIndexScanOperator for the equality predicates at the
+     * positions selects in the select lists.
+     */
+    private Map<String, List<DataBox>> bitmapPredicates(List<Integer> selects) {
+        Map<String, List<DataBox>> predicates = new LinkedHashMap<String, List<DataBox>>();
+        for (int i : selects) {
+            predicates.put(this.selectColumnNames.get(i),
+                           Collections.singletonList(this.selectDataBoxes.get(i)));
+        }
+        return predicates;
+    }
+
+    /**
+     * Returns true if a bitmap index scan for the equality predicates at the positions selects
+     * in the select lists costs no more than a sequential scan of the table, and less than an
+     * index scan on indexColumn (if it is not null).
+     */
+    private boolean isBitmapIndexCheapest(List<Integer> selects, String indexColumn)
+    throws QueryPlanException, DatabaseException {
+        int bitmapCost = new BitmapIndexScanOperator(this.transaction, this.startTableName,
+                this.bitmapPredicates(selects)).estimateIOCost();
+        if (bitmapCost > new SequentialScanOperator(this.transaction, this.startTableName).estimateIOCost()) {
+            return false;
+        }
+        if (indexColumn == null) {
+            return true;
+        }
+        int selectIndex = this.selectColumnNames.indexOf(indexColumn);
+        IndexScanOperator indexScan = new IndexScanOperator(this.transaction, this.startTableName,
+                indexColumn, this.selectOperators.get(selectIndex), this.selectDataBoxes.get(selectIndex));
+        return bitmapCost < indexScan.estimateIOCost();
+    }
+
+    private void generateBitmapIndexPlan(List<Integer> selects) throws QueryPlanException,
+        DatabaseException {
+        Map<String, List<DataBox>> predicates = this.bitmapPredicates(selects);
+
+        // remove the consumed selects from the back so the earlier positions stay valid
+        for (int j = selects.size() - 1; j >= 0; j--) {
+            int i = selects.get(j);
+            this.selectColumnNames.remove(i);
+            this.selectOperators.remove(i);
+            this.selectDataBoxes.remove(i);
+        }
+
+        this.finalOperator = new BitmapIndexScanOperator(this.transaction, this.startTableName,
+                predicates);
+
+        this.addSelects();
+        this.addOrderByAndProjects();
+    }
+
+    /**
+     * Returns the position in the select lists of an equality predicate on column, or -1 if there
+     * is none.
+     */
+    private int findEqualsSelect(String column) {
+        for (int i = 0; i < this.selectColumnNames.size(); i++) {
+            if (unqualifiedColumnName(this.selectColumnNames.get(i)).equals(column)
+                    && this.selectOperators.get(i) == PredicateOperator.EQUALS) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void generateCompositeIndexPlan(List<String> indexColumns) throws QueryPlanException,
+        DatabaseException {
+        List<DataBox> values = new ArrayList<DataBox>();
+        for (String column : indexColumns) {
+            int selectIndex = this.findEqualsSelect(column);
+            if (selectIndex == -1) {
+                break;
+            }
+            values.add(this.selectDataBoxes.get(selectIndex));
+            this.selectColumnNames.remove(selectIndex);
+            this.selectOperators.remove(selectIndex);
+            this.selectDataBoxes.remove(selectIndex);
+        }
+
+        this.finalOperator = new CompositeIndexScanOperator(this.transaction, this.startTableName,
+                indexColumns, values);
+
+        this.addSelects();
+        this.addOrderByAndProjects();
+    }
+
+    /**
+     * Returns true if there is an index on column that can answer a predicate with operator op:
+     * a B+ tree index can answer anything but NOT_EQUALS, and a hash index only EQUALS. A partial
+     * index can only answer the query if it holds every record the query may return.
+     */
+    private boolean indexSupports(String table, String column, PredicateOperator op) {
+        if (!this.transaction.indexExists(table, column) || op == PredicateOperator.NOT_EQUALS) {
+            return false;
+        }
+        try {
+            if (!this.indexCoversQuery(table, column)) {
+                return false;
+            }
+            return op == PredicateOperator.EQUALS
+                   || this.transaction.getIndexType(table, column) != IndexType.HASH;
+        } catch (DatabaseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns true if the index on table.column holds every record of table that satisfies the
+     * select predicates of the query: either it is a full index, or one of the select predicates
+     * implies the predicate of the partial index.
+     */
+    private boolean indexCoversQuery(String table, String column) throws DatabaseException {
+        Optional<IndexPredicate> predicate = this.transaction.getIndexPredicate(table, column);
+        if (!predicate.isPresent()) {
+            return true;
+        }
+        for (int i = 0; i < this.selectColumnNames.size(); i++) {
+            String selectColumn = this.selectColumnNames.get(i);
+            if (selectColumn.contains(".") && !selectColumn.split("\\.")[0].equals(table)) {
+                continue;
+            }
+            if (unqualifiedColumnName(selectColumn).equals(predicate.get().getColumnName())
+                    && predicate.get().impliedBy(this.selectOperators.get(i), this.selectDataBoxes.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void generateIndexPlan(String indexColumn) throws QueryPlanException, DatabaseException {
         int selectIndex = this.selectColumnNames.indexOf(indexColumn);
         PredicateOperator operator = this.selectOperators.get(selectIndex);
         DataBox value = this.selectDataBoxes.get(selectIndex);
 
-        this.finalOperator = new IndexScanOperator(this.transaction, this.startTableName, indexColumn,
-                operator,
-                value);
+        // a lower and an upper bound on the same column become a single bounded range scan
+        int lowerIndex = -1;
+        int upperIndex = -1;
+        for (int i = 0; i < this.selectColumnNames.size(); i++) {
+            if (!this.selectColumnNames.get(i).equals(indexColumn)) {
+                continue;
+            }
+            PredicateOperator op = this.selectOperators.get(i);
+            if (lowerIndex == -1 && (op == PredicateOperator.GREATER_THAN ||
+                                     op == PredicateOperator.GREATER_THAN_EQUALS)) {
+                lowerIndex = i;
+            } else if (upperIndex == -1 && (op == PredicateOperator.LESS_THAN ||
+                                            op == PredicateOperator.LESS_THAN_EQUALS)) {
+                upperIndex = i;
+            }
+        }
 
-        this.selectColumnNames.remove(selectIndex);
-        this.selectOperators.remove(selectIndex);
-        this.selectDataBoxes.remove(selectIndex);
+        PredicateOperator upperOperator = null;
+        DataBox upperValue = null;
+        if (operator != PredicateOperator.EQUALS && lowerIndex != -1 && upperIndex != -1) {
+            operator = this.selectOperators.get(lowerIndex);
+            value = this.selectDataBoxes.get(lowerIndex);
+            upperOperator = this.selectOperators.get(upperIndex);
+            upperValue = this.selectDataBoxes.get(upperIndex);
+
+            // remove the higher position first so the lower one stays valid
+            for (int i : new int[] {Math.max(lowerIndex, upperIndex), Math.min(lowerIndex, upperIndex)}) {
+                this.selectColumnNames.remove(i);
+                this.selectOperators.remove(i);
+                this.selectDataBoxes.remove(i);
+            }
+        } else {
+            this.selectColumnNames.remove(selectIndex);
+            this.selectOperators.remove(selectIndex);
+            this.selectDataBoxes.remove(selectIndex);
+        }
+
+        if (this.isCoveredByIndex(indexColumn)) {
+            this.finalOperator = new IndexOnlyScanOperator(this.transaction, this.startTableName, indexColumn,
+                    operator, value, upperOperator, upperValue);
+        } else {
+            this.finalOperator = new IndexScanOperator(this.transaction, this.startTableName, indexColumn,
+                    operator, value, upperOperator, upperValue);
+        }
 
         this.addSelects();
-        this.addProjects();
+        this.addOrderByAndProjects();
     }
 
-    private void addJoins() throws QueryPlanException, DatabaseException {
-        int index = 0;
+    /**
+     * Returns true if the index on indexColumn is a covering index that includes every column the
+     * rest of this query reads (its remaining selects, projects, and aggregates), so that the query
+     * can be answered from the index alone without fetching any records.
+     *
+     * @param indexColumn the column the index scan is on
+     * @return true if the query can use an index-only scan
+     * @throws DatabaseException
+     */
+    private boolean isCoveredByIndex(String indexColumn) throws DatabaseException {
+        Schema includedSchema = this.transaction.getIndexIncludedSchema(this.startTableName, indexColumn);
+        if (includedSchema.getFieldNames().isEmpty()) {
+            return false;
+        }
 
-        for (String joinTable : this.joinTableNames) {
-            SequentialScanOperator scanOperator = new SequentialScanOperator(this.transaction, joinTable);
+        Set<String> covered = new HashSet<String>(includedSchema.getFieldNames());
+        covered.add(unqualifiedColumnName(indexColumn));
 
-            SNLJOperator joinOperator = new SNLJOperator(finalOperator, scanOperator,
-                    this.joinLeftColumnNames.get(index), this.joinRightColumnNames.get(index),
-                    this.transaction); //changed from new JoinOperator
+        List<String> needed = new ArrayList<String>(this.selectColumnNames);
+        needed.addAll(this.projectColumns);
+        for (String column : this.aggregateColumnNames) {
+            if (column != null) {
+                needed.add(column);
+            }
+        }
+        if (this.projectColumns.isEmpty() && this.aggregateFunctions.isEmpty()) {
+            // no projection means every column of the table is returned
+            needed.addAll(this.transaction.getSchema(this.startTableName).getFieldNames());
+        }
 
-            this.finalOperator = joinOperator;
-            index++;
+        for (String column : needed) {
+            if (!covered.contains(unqualifiedColumnName(column))) {
+                return false;
+            }
         }
+        return true;
     }
 
-    private void addSelects() throws QueryPlanException, DatabaseException {
+    private static String unqualifiedColumnName(String column) {
+        return column.contains(".") ? column.split("\\.")[1] : column;
+    }
+
+    private void addJoins() throws QueryPlanException, DatabaseException {
         int index = 0;
 
-        for (String selectColumn : this.selectColumnNames) {
-            PredicateOperator operator = this.selectOperators.get(index);
-            DataBox value = this.selectDataBoxes.get(index);
+        for (String joinTable : this.joinTableNames) {
+            SequentialScanOperator scanOperator = new SequentialScanOperator(this.transaction, joinTable);
 
-            SelectOperator selectOperator = new SelectOperator(this.finalOperator, selectColumn,
-                    operator, value);
+            String leftColumn = this.joinLeftColumnNames.get(index);
+            String rightColumn = this.joinRightColumnNames.get(index);
 
-            this.finalOperator = selectOperator;
+            // Only joins whose iterators are implemented are candidates here;
+            // BNLJ stays out until BNLJOperator can actually produce rows.
+            QueryOperator snlj = new SNLJOperator(this.finalOperator, scanOperator, leftColumn, rightColumn,
+                                                  this.transaction);
+            QueryOperator hash = new GraceHashOperator(this.finalOperator, scanOperator, leftColumn,
+                                                       rightColumn, this.transaction);
+            this.finalOperator = hash.estimateIOCost() < snlj.estimateIOCost() ? hash : snlj;
             index++;
         }
     }
 
-    private void addGroupBy() throws QueryPlanException, DatabaseException {
-        if (this.groupByColumn != null) {
-            if (this.projectColumns.size() > 2 || (this.projectColumns.size() == 1 &&
-                                                   !this.projectColumns.get(0).equals(this.groupByColumn))) {
-                throw new QueryPlanException("Can only project columns specified in the GROUP BY clause.");
-            }
+    /**
+     * Adds one SelectOperator that evaluates all of the remaining select predicates together,
+     * instead of a chain of them that each passes every record up to the next.
+     */
+    private void addSelects() throws QueryPlanException, DatabaseException {
+        if (this.selectColumnNames.isEmpty()) {
+            return;
+        }
+        this.finalOperator = new SelectOperator(this.finalOperator, this.selectColumnNames,
+                this.selectOperators, this.selectDataBoxes);
+    }
 
-            GroupByOperator groupByOperator = new GroupByOperator(this.finalOperator, this.transaction,
-                    this.groupByColumn);
+    /**
+     * Adds the order by and limit of the query, and its projections. Without aggregates, the order
+     * by column can be any column, so the records are ordered before they are projected; with them,
+     * the aggregated records are.
+     */
+    private void addOrderByAndProjects() throws QueryPlanException, DatabaseException {
+        if (this.groupByColumn != null || !this.aggregateFunctions.isEmpty()) {
+            this.addProjects();
+            this.addOrderBy();
+        } else {
+            this.addOrderBy();
+            this.addProjects();
+        }
+    }
 
-            this.finalOperator = groupByOperator;
+    /**
+     * Adds a TopNOperator for the order by and limit of the query, or a LimitOperator if it has a
+     * limit but no order by.
+     */
+    private void addOrderBy() throws QueryPlanException, DatabaseException {
+        if (this.orderByColumn != null) {
+            this.finalOperator = new TopNOperator(this.finalOperator, this.transaction, this.orderByColumn,
+                    this.orderByAscending, this.limit);
+        } else if (this.limit != -1) {
+            this.finalOperator = new LimitOperator(this.finalOperator, this.limit);
         }
     }
 
+    /**
+     * Adds the projections of the query, computing its aggregates, per group of the group by
+     * column if there is one, with an AggregateOperator if it has any.
+     */
     private void addProjects() throws QueryPlanException, DatabaseException {
-        if (!this.projectColumns.isEmpty() || this.hasCount || this.sumColumnName != null
-                || this.averageColumnName != null) {
-            ProjectOperator projectOperator = new ProjectOperator(this.finalOperator, this.projectColumns,
-                    this.hasCount, this.averageColumnName, this.sumColumnName);
-
-            this.finalOperator = projectOperator;
+        if (this.groupByColumn != null || !this.aggregateFunctions.isEmpty()) {
+            this.finalOperator = new AggregateOperator(this.finalOperator, this.transaction,
+                    this.groupByColumn, this.projectColumns, this.aggregateFunctions,
+                    this.aggregateColumnNames);
+        } else if (!this.projectColumns.isEmpty()) {
+            this.finalOperator = new ProjectOperator(this.finalOperator, this.projectColumns, false, null,
+                    null);
         }
     }
 
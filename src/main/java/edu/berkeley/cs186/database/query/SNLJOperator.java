@@ -163,6 +163,16 @@ public class SNLJOperator extends JoinOperator {
             return nextRecord;
         }
 
+        /**
+         * Deletes the temporary tables of the inputs. The iterator yields no more records
+         * afterwards.
+         */
+        @Override
+        public void close() {
+            super.close();
+            this.nextRecord = null;
+        }
+
         public void remove() {
             throw new UnsupportedOperationException();
         }
@@ -1,20 +1,27 @@
 package edu.berkeley.cs186.database.query;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.common.CloseableIterator;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.table.MarkerRecord;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 public class SelectOperator extends QueryOperator {
-    private int columnIndex;
-    private String columnName;
-    private QueryPlan.PredicateOperator operator;
-    private DataBox value;
+    private List<Integer> columnIndices;
+    private List<String> columnNames;
+    private List<QueryPlan.PredicateOperator> operators;
+    private List<DataBox> values;
+    // The predicates, compiled to tests specialized to their column types and operators.
+    private CompiledPredicate[] predicates;
 
     /**
      * Creates a new SelectOperator that pulls from source and only returns tuples for which the
@@ -30,12 +37,46 @@ public class SelectOperator extends QueryOperator {
                           String columnName,
                           QueryPlan.PredicateOperator operator,
                           DataBox value) throws QueryPlanException {
-        super(OperatorType.SELECT, source);
-        this.operator = operator;
-        this.value = value;
+        this(source, Collections.singletonList(columnName), Collections.singletonList(operator),
+             Collections.singletonList(value));
+    }
 
-        this.columnName = this.checkSchemaForColumn(source.getOutputSchema(), columnName);
-        this.columnIndex = this.getOutputSchema().getFieldNames().indexOf(this.columnName);
+    /**
+     * Creates a new SelectOperator that pulls from source and only returns tuples for which every
+     * one of the predicates (columnNames[i] operators[i] values[i]) is satisfied. The predicates
+     * are evaluated together, in order, rather than by a chain of SelectOperators.
+     *
+     * @param source the source of this operator
+     * @param columnNames the names of the columns to evaluate the predicates on
+     * @param operators the actual comparators
+     * @param values the values to compare against
+     * @throws QueryPlanException
+     */
+    public SelectOperator(QueryOperator source,
+                          List<String> columnNames,
+                          List<QueryPlan.PredicateOperator> operators,
+                          List<DataBox> values) throws QueryPlanException {
+        super(OperatorType.SELECT, source);
+        if (columnNames.isEmpty() || columnNames.size() != operators.size()
+                || columnNames.size() != values.size()) {
+            throw new QueryPlanException("A select needs a column, an operator, and a value per predicate.");
+        }
+        this.operators = new ArrayList<>(operators);
+        this.values = new ArrayList<>(values);
+
+        Schema schema = this.getOutputSchema();
+        this.columnNames = new ArrayList<>();
+        this.columnIndices = new ArrayList<>();
+        this.predicates = new CompiledPredicate[columnNames.size()];
+        for (int i = 0; i < columnNames.size(); ++i) {
+            String columnName = this.checkSchemaForColumn(source.getOutputSchema(), columnNames.get(i));
+            int columnIndex = schema.getFieldNames().indexOf(columnName);
+            this.columnNames.add(columnName);
+            this.columnIndices.add(columnIndex);
+            this.predicates[i] = CompiledPredicate.compile(columnIndex,
+                                 schema.getFieldTypes().get(columnIndex).getTypeId(),
+                                 this.operators.get(i), this.values.get(i));
+        }
 
         this.stats = this.estimateStats();
         this.cost = this.estimateIOCost();
@@ -46,10 +87,13 @@ public class SelectOperator extends QueryOperator {
     }
 
     public String str() {
-        return "type: " + this.getType() +
-               "\ncolumn: " + this.columnName +
-               "\noperator: " + this.operator +
-               "\nvalue: " + this.value;
+        String r = "type: " + this.getType();
+        for (int i = 0; i < this.columnNames.size(); ++i) {
+            r += "\ncolumn: " + this.columnNames.get(i) +
+                 "\noperator: " + this.operators.get(i) +
+                 "\nvalue: " + this.values.get(i);
+        }
+        return r;
     }
 
     /**
@@ -59,21 +103,76 @@ public class SelectOperator extends QueryOperator {
      */
     public TableStats estimateStats() throws QueryPlanException {
         TableStats stats = this.getSource().getStats();
-        return stats.copyWithPredicate(this.columnIndex,
-                                       this.operator,
-                                       this.value);
+        for (int i = 0; i < this.columnIndices.size(); ++i) {
+            stats = stats.copyWithPredicate(this.columnIndices.get(i),
+                                            this.operators.get(i),
+                                            this.values.get(i));
+        }
+        return stats;
     }
 
     public int estimateIOCost() throws QueryPlanException {
         return this.getSource().getIOCost();
     }
 
+    CompiledPredicate[] getPredicates() {
+        return this.predicates;
+    }
+
     public Iterator<Record> iterator() throws QueryPlanException, DatabaseException { return new SelectIterator(); }
 
+    /**
+     * Filters the batches of the source by narrowing down their selection vectors to the rows
+     * that satisfy the predicates, skipping batches with no such rows.
+     */
+    public Iterator<RecordBatch> batchIterator() throws QueryPlanException, DatabaseException {
+        Iterator<RecordBatch> sourceIterator = this.getSource().batchIterator();
+        return new CloseableIterator<RecordBatch>() {
+            private RecordBatch nextBatch = null;
+            private boolean closed = false;
+
+            public boolean hasNext() {
+                while (!this.closed && this.nextBatch == null && sourceIterator.hasNext()) {
+                    RecordBatch batch = sourceIterator.next();
+                    CompiledPredicate.filter(SelectOperator.this.predicates, batch);
+                    if (!batch.isEmpty()) {
+                        this.nextBatch = batch;
+                    }
+                }
+                return this.nextBatch != null;
+            }
+
+            public RecordBatch next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                RecordBatch batch = this.nextBatch;
+                this.nextBatch = null;
+                return batch;
+            }
+
+            public void close() {
+                this.closed = true;
+                this.nextBatch = null;
+                CloseableIterator.close(sourceIterator);
+            }
+        };
+    }
+
+    private boolean test(Record record) {
+        List<DataBox> values = record.getValues();
+        for (CompiledPredicate predicate : this.predicates) {
+            if (!predicate.test(values)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * An implementation of Iterator that provides an iterator interface for this operator.
      */
-    private class SelectIterator implements Iterator<Record> {
+    private class SelectIterator implements CloseableIterator<Record> {
         private Iterator<Record> sourceIterator;
         private MarkerRecord markerRecord;
         private Record nextRecord;
@@ -95,56 +194,10 @@ public class SelectOperator extends QueryOperator {
             }
             while (this.sourceIterator.hasNext()) {
                 Record r = this.sourceIterator.next();
-                if (r == this.markerRecord) {
+                if (r == this.markerRecord || SelectOperator.this.test(r)) {
                     this.nextRecord = r;
                     return true;
                 }
-                switch (SelectOperator.this.operator) {
-                case EQUALS:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).equals(value)) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case NOT_EQUALS:
-                    if (!r.getValues().get(SelectOperator.this.columnIndex).equals(value)) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case LESS_THAN:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == -1) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case LESS_THAN_EQUALS:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == -1) {
-                        this.nextRecord = r;
-                        return true;
-                    } else if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 0) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case GREATER_THAN:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 1) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case GREATER_THAN_EQUALS:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 1) {
-                        this.nextRecord = r;
-                        return true;
-                    } else if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 0) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                default:
-                    break;
-                }
             }
             return false;
         }
@@ -164,6 +217,15 @@ public class SelectOperator extends QueryOperator {
             throw new NoSuchElementException();
         }
 
+        /**
+         * Closes the source iterator. The iterator yields no more records afterwards.
+         */
+        public void close() {
+            CloseableIterator.close(this.sourceIterator);
+            this.sourceIterator = Collections.emptyIterator();
+            this.nextRecord = null;
+        }
+
         public void remove() {
             throw new UnsupportedOperationException();
         }
@@ -3,19 +3,60 @@ package edu.berkeley.cs186.database.query;
 import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.NormalizedKey;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+import edu.berkeley.cs186.database.common.CloseableIterator;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.io.Page;
 
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
 
+/**
+ * External merge sort of a table using numBuffers pages of memory.
+ *
+ * The sorted runs are generated by replacement selection: records stream
+ * through a heap that holds as many records as fit in memory, and a record is
+ * written to the current run as soon as it is the smallest in the heap that is
+ * not smaller than the last one written. On random input this produces runs of
+ * about twice the memory size, and sorted input ends up in a single run. If
+ * there are enough buffers, the input is read a page at a time and handed
+ * off to up to one worker thread per core, each with its own share of the
+ * buffers and its own heap, so the comparisons of run generation happen in
+ * parallel.
+ *
+ * The runs are then merged numBuffers - 1 at a time with a loser tree, which
+ * finds the next record of a merge with one comparison per level of the tree,
+ * until one run is left. Runs are buffered a page at a time and written with
+ * Transaction.addRecords, one write per page.
+ *
+ * A sort on the values of some columns compares the NormalizedKeys of the
+ * records, each encoded once when the record is read, rather than calling a
+ * Comparator<Record> on every comparison.
+ */
 public class SortOperator {
+    // The fewest buffers a worker thread generating runs gets: one for the page it was handed, one
+    // for the page of the run it is writing, and at least two for its heap.
+    private static final int MIN_WORKER_BUFFERS = 4;
+
     private Database.Transaction transaction;
     private String tableName;
+    // The comparator to sort with, or null when sorting on keyColumns.
     private Comparator<Record> comparator;
+    // The columns to sort on by normalized key, or null to sort with comparator.
+    private int[] keyColumns;
+    private boolean ascending;
     private Schema operatorSchema;
     private int numBuffers;
+    private int numRecordsPerPage;
+    private int maxWorkers = Runtime.getRuntime().availableProcessors();
     private String sortedTableName = null;
 
     public SortOperator(Database.Transaction transaction, String tableName,
@@ -25,6 +66,26 @@ public class SortOperator {
         this.comparator = comparator;
         this.operatorSchema = this.computeSchema();
         this.numBuffers = this.transaction.getNumMemoryPages();
+        this.numRecordsPerPage = Table.computeNumRecordsPerPage(Page.pageSize, this.operatorSchema);
+    }
+
+    /**
+     * Creates a SortOperator that sorts the table on the columns at keyColumns, in turn, by
+     * comparing the NormalizedKeys of the records.
+     */
+    public SortOperator(Database.Transaction transaction, String tableName, int[] keyColumns,
+                        boolean ascending) throws DatabaseException, QueryPlanException {
+        this(transaction, tableName, (Comparator<Record>) null);
+        this.keyColumns = keyColumns;
+        this.ascending = ascending;
+    }
+
+    /**
+     * Caps the number of worker threads that generate runs, which is the number of cores by
+     * default.
+     */
+    void setMaxWorkers(int maxWorkers) {
+        this.maxWorkers = maxWorkers;
     }
 
     public Schema computeSchema() throws QueryPlanException {
@@ -35,16 +96,26 @@ public class SortOperator {
         }
     }
 
+    /**
+     * A sorted run, backed by a temporary table. Records added to a run are buffered until they
+     * fill a page, and the page is then written in one go; iterator and tableName write out the
+     * records still buffered first.
+     */
     public class Run {
         String tempTableName;
+        List<List<DataBox>> page;
 
         public Run() throws DatabaseException {
             this.tempTableName = SortOperator.this.transaction.createTempTable(
                                      SortOperator.this.operatorSchema);
+            this.page = new ArrayList<>();
         }
 
         public void addRecord(List<DataBox> values) throws DatabaseException {
-            SortOperator.this.transaction.addRecord(this.tempTableName, values);
+            this.page.add(values);
+            if (this.page.size() == SortOperator.this.numRecordsPerPage) {
+                this.flush();
+            }
         }
 
         public void addRecords(List<Record> records) throws DatabaseException {
@@ -53,46 +124,84 @@ public class SortOperator {
             }
         }
 
+        /**
+         * Writes the buffered records to the table of this run.
+         */
+        public void flush() throws DatabaseException {
+            if (!this.page.isEmpty()) {
+                SortOperator.this.transaction.addRecords(this.tempTableName, this.page);
+                this.page = new ArrayList<>();
+            }
+        }
+
         public Iterator<Record> iterator() throws DatabaseException {
+            this.flush();
             return SortOperator.this.transaction.getRecordIterator(this.tempTableName);
         }
 
-        public String tableName() {
+        public String tableName() throws DatabaseException {
+            this.flush();
             return this.tempTableName;
         }
     }
 
     /**
-     * Returns a NEW run that is the sorted version of the input run.
-     * Can do an in memory sort over all the records in this run
-     * using one of Java's built-in sorting methods.
-     * Note: Don't worry about modifying the original run.
-     * Returning a new run would bring one extra page in memory beyond the
-     * size of the buffer, but it is done this way for ease.
+     * Returns a NEW run that is the sorted version of the input run, sorted in memory.
+     * Records that compare equal stay in the order of the input run.
      */
     public Run sortRun(Run run) throws DatabaseException {
-        return null;
+        List<Entry> entries = new ArrayList<>();
+        Iterator<Record> iter = run.iterator();
+        while (iter.hasNext()) {
+            entries.add(new Entry(iter.next()));
+        }
+        entries.sort(this::compare);
+
+        Run sortedRun = this.createRun();
+        for (Entry entry : entries) {
+            sortedRun.addRecord(entry.record.getValues());
+        }
+        sortedRun.flush();
+        return sortedRun;
     }
 
     /**
-     * Given a list of sorted runs, returns a new run that is the result
-     * of merging the input runs. You should use a Priority Queue (java.util.PriorityQueue)
-     * to determine which record should be should be added to the output run next.
-     * It is recommended that your Priority Queue hold Pair<Record, Integer> objects
-     * where a Pair (r, i) is the Record r with the smallest value you are
-     * sorting on currently unmerged from run i.
+     * Given a list of sorted runs, returns a new run that is the result of merging the input
+     * runs with a loser tree (see MergeIterator). Records that compare equal are output in
+     * the order of the runs they come from.
      */
     public Run mergeSortedRuns(List<Run> runs) throws DatabaseException {
-        return null;
+        List<Iterator<Record>> iterators = new ArrayList<>();
+        for (Run run : runs) {
+            iterators.add(run.iterator());
+        }
+
+        Run mergedRun = this.createRun();
+        try (MergeIterator merged = new MergeIterator(iterators)) {
+            while (merged.hasNext()) {
+                mergedRun.addRecord(merged.next().getValues());
+            }
+        }
+        mergedRun.flush();
+        return mergedRun;
     }
 
     /**
-     * Given a list of N sorted runs, returns a list of
-     * sorted runs that is the result of merging (numBuffers - 1)
-     * of the input runs at a time.
+     * Given a list of N sorted runs, returns a list of sorted runs that is the result of merging
+     * (numBuffers - 1) of the input runs at a time. The input runs are deleted once they have
+     * been merged.
      */
     public List<Run> mergePass(List<Run> runs) throws DatabaseException {
-        return Collections.emptyList();
+        int fanIn = Math.max(2, this.numBuffers - 1);
+        List<Run> merged = new ArrayList<>();
+        for (int i = 0; i < runs.size(); i += fanIn) {
+            List<Run> group = runs.subList(i, Math.min(i + fanIn, runs.size()));
+            merged.add(this.mergeSortedRuns(group));
+            for (Run run : group) {
+                this.transaction.deleteTempTable(run.tempTableName);
+            }
+        }
+        return merged;
     }
 
     /**
@@ -101,7 +210,14 @@ public class SortOperator {
      * Returns the name of the table that backs the final run.
      */
     public String sort() throws DatabaseException {
-        return tableName;
+        List<Run> runs = this.generateRuns();
+        if (runs.isEmpty()) {
+            return this.createRun().tableName();
+        }
+        while (runs.size() > 1) {
+            runs = this.mergePass(runs);
+        }
+        return runs.get(0).tableName();
     }
 
     public Iterator<Record> iterator() throws DatabaseException {
@@ -111,14 +227,343 @@ public class SortOperator {
         return this.transaction.getRecordIterator(sortedTableName);
     }
 
-    private class RecordPairComparator implements Comparator<Pair<Record, Integer>> {
-        public int compare(Pair<Record, Integer> o1, Pair<Record, Integer> o2) {
-            return SortOperator.this.comparator.compare(o1.getFirst(), o2.getFirst());
+    /**
+     * Generates the sorted runs of the table by replacement selection. With a single worker,
+     * this thread generates the runs as it reads the table. Otherwise, it reads the table a page
+     * at a time and hands the pages off to the workers in turn, and every worker generates runs
+     * out of the pages it is handed. If anything fails, every run generated so far is deleted.
+     */
+    private List<Run> generateRuns() throws DatabaseException {
+        int numWorkers = Math.min(this.maxWorkers, (this.numBuffers - 1) / MIN_WORKER_BUFFERS);
+        if (numWorkers <= 1) {
+            // one buffer for the page of the table being read, one for the page of the current run,
+            // and the rest for the heap
+            int heapCapacity = Math.max(1, this.numBuffers - 2) * this.numRecordsPerPage;
+            return this.replacementSelection(this.transaction.getRecordIterator(this.tableName),
+                                             heapCapacity);
+        }
+        // this thread has one buffer for the page it is reading, and every worker one for the page
+        // it was handed, one for the page of its current run, and the rest for its heap; the queues
+        // hold no pages, since a page is only handed off once a worker takes it
+        int heapCapacity = ((this.numBuffers - 1) / numWorkers - 2) * this.numRecordsPerPage;
 
+        List<Future<List<Run>>> futures = new ArrayList<>();
+        List<Run> runs = new ArrayList<>();
+        Exception failure = null;
+        ExecutorService pool = Executors.newFixedThreadPool(numWorkers);
+        try {
+            List<BlockingQueue<List<Record>>> queues = new ArrayList<>();
+            for (int i = 0; i < numWorkers; ++i) {
+                BlockingQueue<List<Record>> queue = new SynchronousQueue<>();
+                queues.add(queue);
+                futures.add(pool.submit(() -> this.replacementSelection(queue, heapCapacity)));
+            }
+
+            try {
+                Iterator<Record> records = this.transaction.getRecordIterator(this.tableName);
+                for (int i = 0; records.hasNext(); i = (i + 1) % numWorkers) {
+                    List<Record> page = new ArrayList<>(this.numRecordsPerPage);
+                    while (page.size() < this.numRecordsPerPage && records.hasNext()) {
+                        page.add(records.next());
+                    }
+                    queues.get(i).put(page);
+                }
+            } catch (DatabaseException | RuntimeException e) {
+                failure = e;
+            } finally {
+                // an empty page tells a worker that there are no more pages
+                for (BlockingQueue<List<Record>> queue : queues) {
+                    queue.put(Collections.emptyList());
+                }
+            }
+
+            for (Future<List<Run>> future : futures) {
+                try {
+                    runs.addAll(future.get());
+                } catch (ExecutionException e) {
+                    failure = failure == null ? e : failure;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        } finally {
+            pool.shutdownNow();
         }
+
+        if (failure != null) {
+            for (Run run : runs) {
+                this.transaction.deleteTempTable(run.tempTableName);
+            }
+            if (failure instanceof DatabaseException) {
+                throw (DatabaseException) failure;
+            }
+            if (failure instanceof InterruptedException) {
+                throw new DatabaseException("Sort was interrupted.");
+            }
+            Throwable cause = failure instanceof ExecutionException ? failure.getCause() : failure;
+            throw new DatabaseException("Sort failed: " + cause);
+        }
+        return runs;
     }
+
+    /**
+     * Generates sorted runs out of the pages taken from queue until an empty page. If it fails,
+     * it keeps taking pages, so that the reading thread is never blocked on handing a page off.
+     */
+    private List<Run> replacementSelection(BlockingQueue<List<Record>> queue,
+                                           int heapCapacity) throws DatabaseException, InterruptedException {
+        PageQueueIterator records = new PageQueueIterator(queue);
+        try {
+            return this.replacementSelection(records, heapCapacity);
+        } catch (DatabaseException | RuntimeException e) {
+            records.drain();
+            throw e;
+        }
+    }
+
+    /**
+     * Generates sorted runs out of records, keeping up to heapCapacity records in a heap. Every
+     * record in the heap is tagged with the number of the run it goes into: the current run if it
+     * is not smaller than the last record written, and the next one otherwise. If it fails, the
+     * runs it generated are deleted.
+     */
+    private List<Run> replacementSelection(Iterator<Record> records,
+                                           int heapCapacity) throws DatabaseException {
+        PriorityQueue<Pair<Entry, Integer>> heap = new PriorityQueue<>(heapCapacity,
+                new EntryPairComparator());
+        List<Run> runs = new ArrayList<>();
+        try {
+            Run run = null;
+            int runNumber = -1;
+            Entry last = null;
+            while (true) {
+                if (heap.size() < heapCapacity && records.hasNext()) {
+                    Entry next = new Entry(records.next());
+                    boolean fitsRun = last == null || this.compare(next, last) >= 0;
+                    heap.add(new Pair<>(next, fitsRun ? Math.max(0, runNumber) : runNumber + 1));
+                    continue;
+                }
+                if (heap.isEmpty()) {
+                    break;
+                }
+
+                Pair<Entry, Integer> smallest = heap.poll();
+                if (smallest.getSecond() != runNumber) {
+                    if (run != null) {
+                        run.flush();
+                    }
+                    run = this.createRun();
+                    runs.add(run);
+                    runNumber = smallest.getSecond();
+                }
+                last = smallest.getFirst();
+                run.addRecord(last.record.getValues());
+            }
+            if (run != null) {
+                run.flush();
+            }
+            return runs;
+        } catch (DatabaseException | RuntimeException e) {
+            for (Run run : runs) {
+                this.transaction.deleteTempTable(run.tempTableName);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * An iterator over the records of the pages taken from a queue, up to the first empty page.
+     */
+    private static class PageQueueIterator implements Iterator<Record> {
+        private BlockingQueue<List<Record>> queue;
+        private Iterator<Record> page;
+        private boolean exhausted;
+
+        PageQueueIterator(BlockingQueue<List<Record>> queue) {
+            this.queue = queue;
+            this.page = Collections.emptyIterator();
+            this.exhausted = false;
+        }
+
+        public boolean hasNext() {
+            try {
+                while (!this.exhausted && !this.page.hasNext()) {
+                    List<Record> records = this.queue.take();
+                    this.exhausted = records.isEmpty();
+                    this.page = records.iterator();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            return this.page.hasNext();
+        }
+
+        public Record next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return this.page.next();
+        }
+
+        /** Takes and drops the rest of the pages, up to the first empty page. */
+        void drain() throws InterruptedException {
+            while (!this.exhausted) {
+                this.exhausted = this.queue.take().isEmpty();
+            }
+            this.page = Collections.emptyIterator();
+        }
+    }
+
+    /**
+     * A record being sorted, with its normalized key if the sort is on key columns.
+     */
+    private class Entry {
+        private Record record;
+        private NormalizedKey key;
+
+        Entry(Record record) {
+            this.record = record;
+            if (SortOperator.this.keyColumns != null) {
+                this.key = NormalizedKey.of(record.getValues(), SortOperator.this.keyColumns,
+                                            SortOperator.this.ascending);
+            }
+        }
+    }
+
+    private int compare(Entry e1, Entry e2) {
+        if (this.keyColumns != null) {
+            return e1.key.compareTo(e2.key);
+        }
+        return this.comparator.compare(e1.record, e2.record);
+    }
+
+    /**
+     * Orders the records of a replacement selection heap by the number of their run first, and
+     * then by the order of this sort.
+     */
+    private class EntryPairComparator implements Comparator<Pair<Entry, Integer>> {
+        public int compare(Pair<Entry, Integer> o1, Pair<Entry, Integer> o2) {
+            int cmp = Integer.compare(o1.getSecond(), o2.getSecond());
+            return cmp != 0 ? cmp : SortOperator.this.compare(o1.getFirst(), o2.getFirst());
+        }
+    }
+
+    /**
+     * A k-way merge of sorted iterators through a loser tree. The leaves of the tree are the
+     * current records of the k inputs, and every inner node holds the input that lost the match
+     * played there, with the overall winner kept apart at the root. Once the winner is output,
+     * only the matches on the path from its leaf to the root are replayed, so finding the next
+     * record takes one comparison per level of the tree, or log k comparisons, rather than up
+     * to two per level for a binary heap. Every input is closed as soon as it is exhausted, and
+     * closing the merge closes the rest.
+     */
+    private class MergeIterator implements CloseableIterator<Record> {
+        private List<Iterator<Record>> inputs;
+        // The current record of every input, or null once the input is exhausted.
+        private Entry[] heads;
+        // tree[0] is the winner, and tree[1..k) are the losers of the inner nodes, where the
+        // children of node n are nodes 2n and 2n + 1, and the leaf of input i is node k + i.
+        private int[] tree;
+
+        MergeIterator(List<Iterator<Record>> inputs) {
+            int k = inputs.size();
+            this.inputs = inputs;
+            this.heads = new Entry[k];
+            this.tree = new int[Math.max(1, k)];
+            for (int i = 0; i < k; ++i) {
+                this.heads[i] = this.advance(i);
+            }
+            this.tree[0] = k == 0 ? -1 : this.build(1);
+        }
+
+        /** Returns the next record of input i, or null after closing it if it is exhausted. */
+        private Entry advance(int i) {
+            Iterator<Record> input = this.inputs.get(i);
+            if (input.hasNext()) {
+                return new Entry(input.next());
+            }
+            CloseableIterator.close(input);
+            return null;
+        }
+
+        /** Plays the matches of the subtree rooted at node, and returns its winner. */
+        private int build(int node) {
+            int k = this.inputs.size();
+            if (node >= k) {
+                return node - k;
+            }
+            int left = this.build(2 * node);
+            int right = this.build(2 * node + 1);
+            if (this.beats(left, right)) {
+                this.tree[node] = right;
+                return left;
+            }
+            this.tree[node] = left;
+            return right;
+        }
+
+        /** Returns whether the current record of input a comes before that of input b. */
+        private boolean beats(int a, int b) {
+            if (this.heads[a] == null || this.heads[b] == null) {
+                return this.heads[b] == null && (this.heads[a] != null || a < b);
+            }
+            int cmp = SortOperator.this.compare(this.heads[a], this.heads[b]);
+            return cmp < 0 || (cmp == 0 && a < b);
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            return this.tree[0] >= 0 && this.heads[this.tree[0]] != null;
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int winner = this.tree[0];
+            Record r = this.heads[winner].record;
+            this.heads[winner] = this.advance(winner);
+
+            // replay the matches from the leaf of the winner up to the root
+            for (int node = (winner + this.inputs.size()) / 2; node >= 1; node /= 2) {
+                if (this.beats(this.tree[node], winner)) {
+                    int loser = winner;
+                    winner = this.tree[node];
+                    this.tree[node] = loser;
+                }
+            }
+            this.tree[0] = winner;
+            return r;
+        }
+
+        /**
+         * Closes the inputs. The iterator yields no more records afterwards.
+         */
+        public void close() {
+            for (int i = 0; i < this.inputs.size(); ++i) {
+                CloseableIterator.close(this.inputs.get(i));
+                this.heads[i] = null;
+            }
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     public Run createRun() throws DatabaseException {
         return new Run();
     }
 }
-
@@ -0,0 +1,278 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.common.CloseableIterator;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+/**
+ * Outputs the first `limit` records of its source in the order of one column,
+ * for ORDER BY column [DESC] LIMIT limit.
+ *
+ * If the limit fits in memory, the operator reads its source once and keeps
+ * only the best `limit` records it has seen in a bounded heap whose head is
+ * the worst of them, so each record either replaces the head or is dropped
+ * right away, and the source is never sorted as a whole. Records with equal
+ * values are output in the order the source produced them.
+ *
+ * Without a limit, or with one that does not fit in memory, the operator
+ * writes its source to a temporary table, a page at a time, and sorts it with
+ * the external sort of SortOperator instead, which does not keep records with
+ * equal values in order. The temporary tables are deleted as soon as the
+ * iterator is exhausted, reaches the limit, or is closed.
+ *
+ * Either way, the source is not read until the first call to hasNext.
+ */
+public class TopNOperator extends QueryOperator {
+    private Database.Transaction transaction;
+    private String column;
+    private int columnIndex;
+    private boolean ascending;
+    private int limit;
+    private int numBuffers;
+
+    /**
+     * Creates a new TopNOperator that outputs the first limit records of source in the order of
+     * column.
+     *
+     * @param source the source of this operator
+     * @param transaction the transaction containing this operator
+     * @param column the column to order by
+     * @param ascending true to output the smallest values of column first, false for the largest
+     * @param limit the number of records to output, or -1 to output all of them
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public TopNOperator(QueryOperator source,
+                        Database.Transaction transaction,
+                        String column,
+                        boolean ascending,
+                        int limit) throws QueryPlanException, DatabaseException {
+        super(OperatorType.TOPN, source);
+        this.transaction = transaction;
+        this.ascending = ascending;
+        this.limit = limit;
+        this.numBuffers = transaction.getNumMemoryPages();
+        this.column = this.checkSchemaForColumn(source.getOutputSchema(), column);
+        this.columnIndex = this.getOutputSchema().getFieldNames().indexOf(this.column);
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public Schema computeSchema() throws QueryPlanException {
+        return this.getSource().getOutputSchema();
+    }
+
+    public String str() {
+        return "type: " + this.getType() +
+               "\ncolumn: " + this.column +
+               "\norder: " + (this.ascending ? "ASC" : "DESC") +
+               "\nlimit: " + this.limit;
+    }
+
+    /**
+     * Estimates the table statistics for the result of executing this query operator.
+     *
+     * @return estimated TableStats
+     */
+    public TableStats estimateStats() throws QueryPlanException {
+        return this.getSource().getStats();
+    }
+
+    /**
+     * Estimates the IO cost of executing this query operator: reading the source, plus writing it
+     * out and sorting it externally if the limit does not fit in memory.
+     */
+    public int estimateIOCost() throws QueryPlanException {
+        int cost = this.getSource().getIOCost();
+        if (this.fitsInMemory()) {
+            return cost;
+        }
+        int numPages = this.getSource().getStats().getNumPages();
+        int numBuffers = Math.max(3, this.numBuffers);
+        int numRuns = Math.max(1, (int) Math.ceil((double) numPages / numBuffers));
+        int numPasses = 1 + (int) Math.ceil(Math.log(numRuns) / Math.log(numBuffers - 1));
+        return cost + numPages + 2 * numPages * numPasses;
+    }
+
+    private boolean fitsInMemory() {
+        int recordsPerPage = Table.computeNumRecordsPerPage(Page.pageSize, this.getOutputSchema());
+        int capacity = Math.max(1, this.numBuffers) * recordsPerPage;
+        return this.limit >= 0 && this.limit <= capacity;
+    }
+
+    private Comparator<Record> comparator() {
+        int columnIndex = this.columnIndex;
+        Comparator<Record> comparator = (r1, r2) -> r1.getValues().get(columnIndex).compareTo(
+                                            r2.getValues().get(columnIndex));
+        return this.ascending ? comparator : comparator.reversed();
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        if (this.limit == 0) {
+            return Collections.emptyIterator();
+        }
+        return new TopNIterator();
+    }
+
+    /**
+     * Returns the first limit records of the source in order, keeping only limit records in
+     * memory at a time.
+     */
+    private List<Record> heapTopN() throws QueryPlanException, DatabaseException {
+        // records are paired with their position in the source, which breaks ties between them
+        Comparator<Record> order = this.comparator();
+        Comparator<Pair<Record, Integer>> outputOrder = (p1, p2) -> {
+            int cmp = order.compare(p1.getFirst(), p2.getFirst());
+            return cmp != 0 ? cmp : Integer.compare(p1.getSecond(), p2.getSecond());
+        };
+        PriorityQueue<Pair<Record, Integer>> heap = new PriorityQueue<>(this.limit, outputOrder.reversed());
+
+        Iterator<Record> sourceIterator = this.getSource().iterator();
+        int position = 0;
+        while (sourceIterator.hasNext()) {
+            Pair<Record, Integer> entry = new Pair<>(sourceIterator.next(), position++);
+            if (heap.size() < this.limit) {
+                heap.add(entry);
+            } else if (outputOrder.compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+        CloseableIterator.close(sourceIterator);
+
+        List<Record> records = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            records.add(heap.poll().getFirst());
+        }
+        Collections.reverse(records);
+        return records;
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator, over
+     * the first limit records of the source in order.
+     */
+    private class TopNIterator implements CloseableIterator<Record> {
+        private Iterator<Record> sortedIterator;
+        private List<String> tempTableNames;
+        private int numOutput;
+        private boolean closed;
+
+        public TopNIterator() {
+            this.sortedIterator = null;
+            this.tempTableNames = new ArrayList<>();
+            this.numOutput = 0;
+            this.closed = false;
+        }
+
+        /**
+         * Computes the records to output, either in memory or by writing the source to a
+         * temporary table and sorting it externally.
+         */
+        private void start() throws QueryPlanException, DatabaseException {
+            if (TopNOperator.this.fitsInMemory()) {
+                this.sortedIterator = TopNOperator.this.heapTopN().iterator();
+                return;
+            }
+
+            Database.Transaction transaction = TopNOperator.this.transaction;
+            String tempTableName = transaction.createTempTable(TopNOperator.this.getOutputSchema());
+            this.tempTableNames.add(tempTableName);
+            int numRecordsPerPage = Table.computeNumRecordsPerPage(Page.pageSize,
+                                    TopNOperator.this.getOutputSchema());
+            Iterator<Record> sourceIterator = TopNOperator.this.getSource().iterator();
+            while (sourceIterator.hasNext()) {
+                List<List<DataBox>> page = new ArrayList<>(numRecordsPerPage);
+                while (page.size() < numRecordsPerPage && sourceIterator.hasNext()) {
+                    page.add(sourceIterator.next().getValues());
+                }
+                transaction.addRecords(tempTableName, page);
+            }
+            CloseableIterator.close(sourceIterator);
+
+            SortOperator sortOperator = new SortOperator(transaction, tempTableName,
+                    new int[] {TopNOperator.this.columnIndex}, TopNOperator.this.ascending);
+            String sortedTableName = sortOperator.sort();
+            this.tempTableNames.add(sortedTableName);
+            this.sortedIterator = transaction.getRecordIterator(sortedTableName);
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            if (this.closed) {
+                return false;
+            }
+            if (this.sortedIterator == null) {
+                try {
+                    this.start();
+                } catch (QueryPlanException | DatabaseException e) {
+                    this.close();
+                    throw new IllegalStateException(e);
+                }
+            }
+            if ((TopNOperator.this.limit < 0 || this.numOutput < TopNOperator.this.limit)
+                    && this.sortedIterator.hasNext()) {
+                return true;
+            }
+            this.close();
+            return false;
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (this.hasNext()) {
+                this.numOutput++;
+                return this.sortedIterator.next();
+            }
+            throw new NoSuchElementException();
+        }
+
+        /**
+         * Deletes the temporary tables of an external sort. The iterator yields no more records
+         * afterwards.
+         */
+        public void close() {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            if (this.sortedIterator != null) {
+                CloseableIterator.close(this.sortedIterator);
+            }
+            this.sortedIterator = Collections.emptyIterator();
+            for (String tempTableName : this.tempTableNames) {
+                TopNOperator.this.transaction.deleteTempTable(tempTableName);
+            }
+            this.tempTableNames.clear();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
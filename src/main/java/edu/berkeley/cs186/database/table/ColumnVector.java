@@ -0,0 +1,154 @@
+package edu.berkeley.cs186.database.table;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+
+/**
+ * The values of one column of a RecordBatch, stored unboxed: ints, floats, and
+ * bools in primitive arrays, and fixed-length strings back to back in a single
+ * byte slab, `width` bytes per row. Only composite values, which never appear
+ * in a table, are kept as DataBoxes.
+ */
+public class ColumnVector {
+    private Type type;
+    private TypeId typeId;
+    private int[] ints;
+    private float[] floats;
+    private boolean[] bools;
+    private byte[] bytes;
+    private int width;
+    private DataBox[] boxes;
+
+    public ColumnVector(Type type, int capacity) {
+        this.type = type;
+        this.typeId = type.getTypeId();
+        switch (this.typeId) {
+        case INT:
+            this.ints = new int[capacity];
+            break;
+        case FLOAT:
+            this.floats = new float[capacity];
+            break;
+        case BOOL:
+            this.bools = new boolean[capacity];
+            break;
+        case STRING:
+            this.width = type.getSizeInBytes();
+            this.bytes = new byte[capacity * this.width];
+            break;
+        default:
+            this.boxes = new DataBox[capacity];
+        }
+    }
+
+    public Type getType() {
+        return this.type;
+    }
+
+    public TypeId getTypeId() {
+        return this.typeId;
+    }
+
+    public int getInt(int row) {
+        return this.ints[row];
+    }
+
+    public float getFloat(int row) {
+        return this.floats[row];
+    }
+
+    public boolean getBool(int row) {
+        return this.bools[row];
+    }
+
+    public String getString(int row) {
+        return new String(this.bytes, row * this.width, this.width, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns the raw arrays of the vector, for loops that run over a whole
+     * column. Only the array of the type of the column is not null.
+     */
+    public int[] getInts() {
+        return this.ints;
+    }
+
+    public float[] getFloats() {
+        return this.floats;
+    }
+
+    public boolean[] getBools() {
+        return this.bools;
+    }
+
+    public byte[] getBytes() {
+        return this.bytes;
+    }
+
+    /** Returns the value at `row` boxed up in a DataBox. */
+    public DataBox get(int row) {
+        switch (this.typeId) {
+        case INT:
+            return new IntDataBox(this.ints[row]);
+        case FLOAT:
+            return new FloatDataBox(this.floats[row]);
+        case BOOL:
+            return new BoolDataBox(this.bools[row]);
+        case STRING:
+            return new StringDataBox(this.getString(row), this.width);
+        default:
+            return this.boxes[row];
+        }
+    }
+
+    /** Sets the value at `row`, which must be of the type of the column. */
+    public void set(int row, DataBox value) {
+        switch (this.typeId) {
+        case INT:
+            this.ints[row] = value.getInt();
+            break;
+        case FLOAT:
+            this.floats[row] = value.getFloat();
+            break;
+        case BOOL:
+            this.bools[row] = value.getBool();
+            break;
+        case STRING:
+            byte[] s = value.getString().getBytes(StandardCharsets.US_ASCII);
+            int length = Math.min(s.length, this.width);
+            System.arraycopy(s, 0, this.bytes, row * this.width, length);
+            Arrays.fill(this.bytes, row * this.width + length, (row + 1) * this.width, (byte) ' ');
+            break;
+        default:
+            this.boxes[row] = value;
+        }
+    }
+
+    /** Copies the value at row `from` of `other`, a column of the same type, to `row`. */
+    public void copy(int row, ColumnVector other, int from) {
+        switch (this.typeId) {
+        case INT:
+            this.ints[row] = other.ints[from];
+            break;
+        case FLOAT:
+            this.floats[row] = other.floats[from];
+            break;
+        case BOOL:
+            this.bools[row] = other.bools[from];
+            break;
+        case STRING:
+            System.arraycopy(other.bytes, from * this.width, this.bytes, row * this.width, this.width);
+            break;
+        default:
+            this.boxes[row] = other.boxes[from];
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package edu.berkeley.cs186.database.table;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.common.CloseableIterator;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+
+/**
+ * A batch of up to `capacity` records of a schema, stored column by column in
+ * ColumnVectors, which query operators can pass along instead of one Record at
+ * a time (see QueryOperator.batchIterator).
+ *
+ * A batch has a selection vector of the rows that are part of it. A filter
+ * drops rows by narrowing the selection vector instead of moving any values
+ * around, so the i-th row of a batch is the one at position getRow(i) of its
+ * column vectors, for i in [0, size()).
+ */
+public class RecordBatch {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private Schema schema;
+    private ColumnVector[] columns;
+    private int capacity;
+    // The number of rows stored in the column vectors.
+    private int numRows;
+    // The positions of the selected rows, or null if every row is selected.
+    private int[] selection;
+    private int numSelected;
+
+    public RecordBatch(Schema schema) {
+        this(schema, DEFAULT_CAPACITY);
+    }
+
+    public RecordBatch(Schema schema, int capacity) {
+        this.schema = schema;
+        this.capacity = capacity;
+        List<Type> types = schema.getFieldTypes();
+        this.columns = new ColumnVector[types.size()];
+        for (int i = 0; i < types.size(); ++i) {
+            this.columns[i] = new ColumnVector(types.get(i), capacity);
+        }
+        this.numRows = 0;
+        this.selection = null;
+    }
+
+    private RecordBatch(Schema schema, ColumnVector[] columns, int capacity, int numRows, int[] selection,
+                        int numSelected) {
+        this.schema = schema;
+        this.columns = columns;
+        this.capacity = capacity;
+        this.numRows = numRows;
+        this.selection = selection;
+        this.numSelected = numSelected;
+    }
+
+    public Schema getSchema() {
+        return this.schema;
+    }
+
+    public ColumnVector getColumn(int i) {
+        return this.columns[i];
+    }
+
+    /** Returns the number of selected rows of the batch. */
+    public int size() {
+        return this.selection == null ? this.numRows : this.numSelected;
+    }
+
+    public boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+    public boolean isFull() {
+        return this.numRows == this.capacity;
+    }
+
+    /** Returns the position in the column vectors of the i-th selected row. */
+    public int getRow(int i) {
+        return this.selection == null ? i : this.selection[i];
+    }
+
+    /**
+     * Narrows the rows of the batch down to the first `numSelected` positions
+     * of `selection`, which must be positions of selected rows, in order.
+     */
+    public void select(int[] selection, int numSelected) {
+        this.selection = selection;
+        this.numSelected = numSelected;
+    }
+
+    /**
+     * Appends a row to the batch, which must not be full, and must not have a
+     * selection vector.
+     */
+    public void append(List<DataBox> values) {
+        assert(this.selection == null && !this.isFull());
+        for (int i = 0; i < this.columns.length; ++i) {
+            this.columns[i].set(this.numRows, values.get(i));
+        }
+        ++this.numRows;
+    }
+
+    /**
+     * Appends a row made up of the values at position `firstRow` of the columns
+     * of `first`, followed by those at position `secondRow` of `second`. The
+     * columns of the two batches together must be those of this batch.
+     */
+    public void appendConcatenation(RecordBatch first, int firstRow, RecordBatch second, int secondRow) {
+        assert(this.selection == null && !this.isFull());
+        int n = first.columns.length;
+        for (int i = 0; i < n; ++i) {
+            this.columns[i].copy(this.numRows, first.columns[i], firstRow);
+        }
+        for (int i = 0; i < second.columns.length; ++i) {
+            this.columns[n + i].copy(this.numRows, second.columns[i], secondRow);
+        }
+        ++this.numRows;
+    }
+
+    /**
+     * Returns a batch with the columns of this batch at `indices`, in order,
+     * under `schema`. The new batch shares the column vectors and the
+     * selection vector of this one instead of copying them.
+     */
+    public RecordBatch project(int[] indices, Schema schema) {
+        ColumnVector[] projected = new ColumnVector[indices.length];
+        for (int i = 0; i < indices.length; ++i) {
+            projected[i] = this.columns[indices[i]];
+        }
+        return new RecordBatch(schema, projected, this.capacity, this.numRows, this.selection,
+                               this.numSelected);
+    }
+
+    /** Returns the values at position `row` of the column vectors. */
+    public List<DataBox> getValues(int row) {
+        List<DataBox> values = new ArrayList<>(this.columns.length);
+        for (ColumnVector column : this.columns) {
+            values.add(column.get(row));
+        }
+        return values;
+    }
+
+    /** Returns the record at position `row` of the column vectors. */
+    public Record getRecord(int row) {
+        return new Record(this.getValues(row));
+    }
+
+    /**
+     * Returns an iterator over batches of the records of `records`, all of
+     * which have the given schema. Closing it closes `records`.
+     */
+    public static CloseableIterator<RecordBatch> batches(Iterator<Record> records, Schema schema) {
+        return new CloseableIterator<RecordBatch>() {
+            private boolean closed = false;
+
+            public boolean hasNext() {
+                return !this.closed && records.hasNext();
+            }
+
+            public RecordBatch next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                RecordBatch batch = new RecordBatch(schema);
+                while (!batch.isFull() && records.hasNext()) {
+                    Record record = records.next();
+                    if (record instanceof MarkerRecord) {
+                        throw new IllegalStateException("group markers cannot be put in a RecordBatch");
+                    }
+                    batch.append(record.getValues());
+                }
+                return batch;
+            }
+
+            public void close() {
+                this.closed = true;
+                CloseableIterator.close(records);
+            }
+        };
+    }
+
+    /**
+     * Returns an iterator over the selected rows of the batches of `batches`.
+     * Closing it closes `batches`.
+     */
+    public static CloseableIterator<Record> records(Iterator<RecordBatch> batches) {
+        return new CloseableIterator<Record>() {
+            private RecordBatch batch = null;
+            private int i = 0;
+            private boolean closed = false;
+
+            public boolean hasNext() {
+                if (this.closed) {
+                    return false;
+                }
+                while ((this.batch == null || this.i == this.batch.size()) && batches.hasNext()) {
+                    this.batch = batches.next();
+                    this.i = 0;
+                }
+                return this.batch != null && this.i < this.batch.size();
+            }
+
+            public Record next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return this.batch.getRecord(this.batch.getRow(this.i++));
+            }
+
+            public void close() {
+                this.closed = true;
+                CloseableIterator.close(batches);
+            }
+        };
+    }
+}
@@ -318,6 +318,48 @@ public class Table implements Closeable {
         return new RecordId(page.getPageNum(), (short) entryNum);
     }
 
+    /**
+     * addRecords adds records to newly allocated pages at the end of this table,
+     * in order, and returns their record ids. Unlike addRecord, which looks for
+     * a free slot and writes every record and its bit of the bitmap separately,
+     * every page is filled with one write of its bitmap and all of its records.
+     * Pages that are not filled up are left for addRecord to fill.
+     */
+    public synchronized List<RecordId> addRecords(BaseTransaction transaction,
+            List<List<DataBox>> values) throws DatabaseException {
+        List<Record> records = new ArrayList<>(values.size());
+        for (List<DataBox> recordValues : values) {
+            records.add(schema.verify(recordValues));
+        }
+
+        int recordSize = schema.getSizeInBytes();
+        List<RecordId> rids = new ArrayList<>(records.size());
+        for (int start = 0; start < records.size(); start += numRecordsPerPage) {
+            int numPageRecords = Math.min(numRecordsPerPage, records.size() - start);
+            int pageNum = allocator.allocPage(transaction);
+            Page page = allocator.fetchPage(transaction, pageNum);
+            LockContext childLC = this.lockContext.childContext(pageNum);
+            LockUtil.ensureSufficientLockHeld(transaction, childLC, LockType.X);
+
+            byte[] bytes = new byte[bitmapSizeInBytes + numPageRecords * recordSize];
+            for (int entryNum = 0; entryNum < numPageRecords; ++entryNum) {
+                Record record = records.get(start + entryNum);
+                bytes[entryNum / 8] = Bits.setBit(bytes[entryNum / 8], entryNum % 8, Bits.Bit.ONE);
+                System.arraycopy(record.toBytes(schema), 0, bytes, bitmapSizeInBytes + entryNum * recordSize,
+                                 recordSize);
+                stats.addRecord(record);
+                rids.add(new RecordId(pageNum, (short) entryNum));
+            }
+            page.getBuffer(transaction).put(bytes);
+
+            if (numPageRecords < numRecordsPerPage) {
+                freePageNums.add(pageNum);
+            }
+            numRecords += numPageRecords;
+        }
+        return rids;
+    }
+
     /**
      * Retrieves a record from the table, throwing an exception if no such record
      * exists.
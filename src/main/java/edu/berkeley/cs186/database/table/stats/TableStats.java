@@ -177,6 +177,23 @@ public class TableStats {
         return new TableStats(this.tableSchema, numRecords, copyHistograms);
     }
 
+    /**
+     * Estimates the table statistics for the table that would be produced by
+     * keeping only the columns `columns` (in that order) of this table. The
+     * number of records and the histograms of the kept columns are unchanged.
+     */
+    public TableStats copyWithProjection(List<Integer> columns) {
+        List<String> fieldNames = new ArrayList<>();
+        List<Type> fieldTypes = new ArrayList<>();
+        List<Histogram> copyHistograms = new ArrayList<>();
+        for (int i : columns) {
+            fieldNames.add(tableSchema.getFieldNames().get(i));
+            fieldTypes.add(tableSchema.getFieldTypes().get(i));
+            copyHistograms.add(histograms.get(i));
+        }
+        return new TableStats(new Schema(fieldNames, fieldTypes), numRecords, copyHistograms);
+    }
+
     /**
      * Creates a new TableStats which is the statistics for the table
      * that results from this TableStats joined with the given TableStats.
@@ -1,6 +1,20 @@
 package edu.berkeley.cs186.database;
 
 import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.index.IndexPredicate;
+import edu.berkeley.cs186.database.index.IndexType;
+import edu.berkeley.cs186.database.query.BitmapIndexScanOperator;
+import edu.berkeley.cs186.database.query.IndexCountOperator;
+import edu.berkeley.cs186.database.query.IndexOnlyScanOperator;
+import edu.berkeley.cs186.database.query.IndexScanOperator;
+import edu.berkeley.cs186.database.query.QueryOperator;
+import edu.berkeley.cs186.database.query.QueryPlan;
+import edu.berkeley.cs186.database.query.QueryPlanException;
 import edu.berkeley.cs186.database.table.*;
 
 import org.junit.After;
@@ -13,6 +27,14 @@ import org.junit.rules.TemporaryFolder;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Category({HW99Tests.class, SystemTests.class})
 public class TestDatabase {
@@ -134,4 +156,337 @@ public class TestDatabase {
         t1.end();
     }
 
+    @Test
+    public void testHashIndex() throws DatabaseException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTableWithIndices(s, tableName, Arrays.asList("int"), new HashMap<>(),
+                                  Collections.singletonMap("int", IndexType.HASH));
+        assertEquals(IndexType.HASH, t1.getIndexType(tableName, "int"));
+        for (int i = 0; i < 100; ++i) {
+            t1.addRecord(tableName, TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+        }
+        t1.end();
+
+        db.close();
+
+        db = new Database(this.filename);
+        t1 = db.beginTransaction();
+        assertEquals(IndexType.HASH, t1.getIndexType(tableName, "int"));
+        for (int i = 0; i < 100; ++i) {
+            Iterator<Record> records = t1.lookupKey(tableName, "int", new IntDataBox(i));
+            assertEquals(TestUtils.createRecordWithAllTypesWithValue(i), records.next());
+            assertFalse(records.hasNext());
+        }
+        assertFalse(t1.contains(tableName, "int", new IntDataBox(100)));
+        t1.end();
+    }
+
+    @Test
+    public void testLSMIndex() throws DatabaseException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTableWithIndices(s, tableName, Arrays.asList("int"), new HashMap<>(),
+                                  Collections.singletonMap("int", IndexType.LSM));
+        assertEquals(IndexType.LSM, t1.getIndexType(tableName, "int"));
+        for (int i = 99; i >= 0; --i) {
+            t1.addRecord(tableName, TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+        }
+        t1.end();
+
+        db.close();
+
+        db = new Database(this.filename);
+        t1 = db.beginTransaction();
+        assertEquals(IndexType.LSM, t1.getIndexType(tableName, "int"));
+        Iterator<Record> records = t1.sortedScanFrom(tableName, "int", new IntDataBox(50));
+        for (int i = 50; i < 100; ++i) {
+            assertEquals(TestUtils.createRecordWithAllTypesWithValue(i), records.next());
+        }
+        assertFalse(records.hasNext());
+        assertFalse(t1.contains(tableName, "int", new IntDataBox(100)));
+        t1.end();
+    }
+
+    @Test
+    public void testLearnedIndex() throws DatabaseException, QueryPlanException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTable(s, tableName);
+        for (int i = 0; i < 100; ++i) {
+            t1.addRecord(tableName, TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+        }
+        t1.createIndex(tableName, "int", IndexType.LEARNED);
+        assertEquals(IndexType.LEARNED, t1.getIndexType(tableName, "int"));
+        t1.addRecord(tableName, TestUtils.createRecordWithAllTypesWithValue(100).getValues());
+
+        QueryPlan query = t1.query(tableName);
+        query.select("int", QueryPlan.PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(50));
+        Iterator<Record> records = query.execute();
+        assertTrue(query.getFinalOperator() instanceof IndexScanOperator);
+        for (int i = 50; i <= 100; ++i) {
+            assertEquals(TestUtils.createRecordWithAllTypesWithValue(i), records.next());
+        }
+        assertFalse(records.hasNext());
+        t1.end();
+
+        db.close();
+        db = new Database(this.filename);
+        t1 = db.beginTransaction();
+        assertEquals(IndexType.LEARNED, t1.getIndexType(tableName, "int"));
+        records = t1.sortedScanFrom(tableName, "int", new IntDataBox(98));
+        for (int i = 98; i <= 100; ++i) {
+            assertEquals(TestUtils.createRecordWithAllTypesWithValue(i), records.next());
+        }
+        assertFalse(records.hasNext());
+        t1.end();
+    }
+
+    @Test
+    public void testIndexCount() throws DatabaseException, QueryPlanException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTableWithIndices(s, tableName, Arrays.asList("int"), new HashMap<>(),
+                                  Collections.singletonMap("int", IndexType.LSM));
+        for (int i = 0; i < 100; ++i) {
+            t1.addRecord(tableName, TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+        }
+
+        // 10 <= int < 30 AND int <= 20
+        QueryPlan query = t1.query(tableName);
+        query.select("int", QueryPlan.PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(10));
+        query.select("int", QueryPlan.PredicateOperator.LESS_THAN, new IntDataBox(30));
+        query.select("int", QueryPlan.PredicateOperator.LESS_THAN_EQUALS, new IntDataBox(20));
+        query.count();
+        Iterator<Record> records = query.execute();
+        assertTrue(query.getFinalOperator() instanceof IndexCountOperator);
+        assertEquals(11, records.next().getValues().get(0).getInt());
+        assertFalse(records.hasNext());
+
+        assertEquals(100, t1.countRange(tableName, "int", null, false, null, false));
+        t1.end();
+    }
+
+    @Test
+    public void testBitmapIndex() throws DatabaseException, QueryPlanException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+
+        Map<String, IndexType> indexTypes = new HashMap<>();
+        indexTypes.put("bool", IndexType.BITMAP);
+        indexTypes.put("string", IndexType.BITMAP);
+
+        // Record i has bool i % 2 == 0 and string i % 3.
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTableWithIndices(s, tableName, Arrays.asList("bool", "string"), new HashMap<>(),
+                                  indexTypes);
+        for (int i = 0; i < 300; ++i) {
+            t1.addRecord(tableName, Arrays.asList(new BoolDataBox(i % 2 == 0), new IntDataBox(i),
+                                                  new StringDataBox(Integer.toString(i % 3), 5),
+                                                  new FloatDataBox(i)));
+        }
+        t1.end();
+
+        db.close();
+        db = new Database(this.filename);
+
+        t1 = db.beginTransaction();
+        assertTrue(t1.bitmapIndexExists(tableName, "bool"));
+        QueryPlan query = t1.query(tableName);
+        query.select("bool", QueryPlan.PredicateOperator.EQUALS, new BoolDataBox(true));
+        query.select("string", QueryPlan.PredicateOperator.EQUALS, new StringDataBox("1", 5));
+        Iterator<Record> records = query.execute();
+        assertTrue(query.getFinalOperator() instanceof BitmapIndexScanOperator);
+        int count = 0;
+        while (records.hasNext()) {
+            int i = records.next().getValues().get(1).getInt();
+            assertEquals(4, i % 6);
+            count++;
+        }
+        assertEquals(50, count);
+
+        Map<String, List<DataBox>> predicates = new LinkedHashMap<>();
+        predicates.put("string", Arrays.asList(new StringDataBox("0", 5), new StringDataBox("2", 5)));
+        records = t1.bitmapScan(tableName, predicates);
+        count = 0;
+        while (records.hasNext()) {
+            assertNotEquals(1, records.next().getValues().get(1).getInt() % 3);
+            count++;
+        }
+        assertEquals(200, count);
+        t1.end();
+    }
+
+    @Test
+    public void testBitmapIndexCost() throws DatabaseException, QueryPlanException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+
+        Map<String, IndexType> indexTypes = new HashMap<>();
+        indexTypes.put("bool", IndexType.BITMAP);
+        indexTypes.put("string", IndexType.BITMAP);
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTableWithIndices(s, tableName, Arrays.asList("int", "bool", "string"), new HashMap<>(),
+                                  indexTypes);
+        for (int i = 0; i < 300; ++i) {
+            t1.addRecord(tableName, Arrays.asList(new BoolDataBox(i % 2 == 0), new IntDataBox(i),
+                                                  new StringDataBox(Integer.toString(i % 3), 5),
+                                                  new FloatDataBox(i)));
+        }
+
+        // the bitmaps match 50 records spread over every page of the table, while the B+ tree
+        // finds the one record with int = 6
+        QueryPlan query = t1.query(tableName);
+        query.select("bool", QueryPlan.PredicateOperator.EQUALS, new BoolDataBox(true));
+        query.select("string", QueryPlan.PredicateOperator.EQUALS, new StringDataBox("0", 5));
+        query.select("int", QueryPlan.PredicateOperator.EQUALS, new IntDataBox(6));
+        query.execute();
+        assertFalse(query.getFinalOperator() instanceof BitmapIndexScanOperator);
+        QueryOperator source = query.getFinalOperator();
+        while (source.getSource() != null) {
+            source = source.getSource();
+        }
+        assertTrue(source instanceof IndexScanOperator);
+        t1.end();
+    }
+
+    @Test
+    public void testCoveringIndexColumnOrder() throws DatabaseException, QueryPlanException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+
+        Database.Transaction t1 = db.beginTransaction();
+        Map<String, List<String>> included = new HashMap<>();
+        included.put("int", Arrays.asList("float", "bool", "string"));
+        t1.createTableWithIndices(s, tableName, Collections.singletonList("int"), included);
+
+        // without a projection, an index-only scan returns the columns in table order
+        QueryPlan query = t1.query(tableName);
+        query.select("int", QueryPlan.PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(0));
+        query.execute();
+        assertTrue(query.getFinalOperator() instanceof IndexOnlyScanOperator);
+        assertEquals(t1.getFullyQualifiedSchema(tableName).getFieldNames(),
+                     query.getFinalOperator().getOutputSchema().getFieldNames());
+        t1.end();
+    }
+
+    @Test
+    public void testPartialIndex() throws DatabaseException, QueryPlanException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTable(s, tableName);
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            rids.add(t1.addRecord(tableName, TestUtils.createRecordWithAllTypesWithValue(i).getValues()));
+        }
+
+        // only records with int >= 50 are indexed
+        t1.createPartialIndex(tableName, "int", IndexType.LSM, "int",
+                              QueryPlan.PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(50));
+        assertTrue(t1.getIndexPredicate(tableName, "int").isPresent());
+        assertTrue(t1.contains(tableName, "int", new IntDataBox(50)));
+        assertFalse(t1.contains(tableName, "int", new IntDataBox(49)));
+
+        t1.addRecord(tableName, TestUtils.createRecordWithAllTypesWithValue(150).getValues());
+        t1.addRecord(tableName, TestUtils.createRecordWithAllTypesWithValue(45).getValues());
+        t1.deleteRecord(tableName, rids.get(60));
+        t1.updateRecord(tableName, TestUtils.createRecordWithAllTypesWithValue(200).getValues(), rids.get(10));
+        t1.updateRecord(tableName, TestUtils.createRecordWithAllTypesWithValue(5).getValues(), rids.get(70));
+        assertTrue(t1.contains(tableName, "int", new IntDataBox(150)));
+        assertFalse(t1.contains(tableName, "int", new IntDataBox(45)));
+        assertFalse(t1.contains(tableName, "int", new IntDataBox(60)));
+        assertTrue(t1.contains(tableName, "int", new IntDataBox(200)));
+        assertFalse(t1.contains(tableName, "int", new IntDataBox(70)));
+        assertFalse(t1.contains(tableName, "int", new IntDataBox(5)));
+
+        // int > 60 implies int >= 50, so the index holds every record of the query
+        QueryPlan query = t1.query(tableName);
+        query.select("int", QueryPlan.PredicateOperator.GREATER_THAN, new IntDataBox(60));
+        Iterator<Record> records = query.execute();
+        assertTrue(query.getFinalOperator() instanceof IndexScanOperator);
+        int count = 0;
+        while (records.hasNext()) {
+            assertTrue(records.next().getValues().get(1).getInt() > 60);
+            count++;
+        }
+        assertEquals(40, count);
+
+        query = t1.query(tableName);
+        query.select("int", QueryPlan.PredicateOperator.GREATER_THAN, new IntDataBox(60));
+        query.count();
+        records = query.execute();
+        assertTrue(query.getFinalOperator() instanceof IndexCountOperator);
+        assertEquals(40, records.next().getValues().get(0).getInt());
+
+        // int >= 10 does not, so the query cannot use the index
+        query = t1.query(tableName);
+        query.select("int", QueryPlan.PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(10));
+        query.execute();
+        assertFalse(query.getFinalOperator() instanceof IndexScanOperator);
+        t1.end();
+
+        db.close();
+        db = new Database(this.filename);
+        t1 = db.beginTransaction();
+        assertEquals(new IndexPredicate("int", QueryPlan.PredicateOperator.GREATER_THAN_EQUALS,
+                                        new IntDataBox(50)),
+                     t1.getIndexPredicate(tableName, "int").get());
+        assertTrue(t1.contains(tableName, "int", new IntDataBox(200)));
+        assertFalse(t1.contains(tableName, "int", new IntDataBox(45)));
+        t1.end();
+    }
+
+    @Test
+    public void testCreateIndex() throws DatabaseException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTable(s, tableName);
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            rids.add(t1.addRecord(tableName, TestUtils.createRecordWithAllTypesWithValue(i).getValues()));
+        }
+        assertFalse(t1.indexExists(tableName, "int"));
+
+        t1.createIndex(tableName, "int", IndexType.HASH);
+        assertTrue(t1.indexExists(tableName, "int"));
+        assertEquals(IndexType.HASH, t1.getIndexType(tableName, "int"));
+        for (int i = 0; i < 100; ++i) {
+            Iterator<Record> records = t1.lookupKey(tableName, "int", new IntDataBox(i));
+            assertEquals(TestUtils.createRecordWithAllTypesWithValue(i), records.next());
+            assertFalse(records.hasNext());
+        }
+
+        // the new index is maintained like any other
+        t1.deleteRecord(tableName, rids.get(0));
+        t1.addRecord(tableName, TestUtils.createRecordWithAllTypesWithValue(100).getValues());
+        assertFalse(t1.contains(tableName, "int", new IntDataBox(0)));
+        assertTrue(t1.contains(tableName, "int", new IntDataBox(100)));
+        t1.end();
+
+        db.close();
+        db = new Database(this.filename);
+        t1 = db.beginTransaction();
+        assertEquals(IndexType.HASH, t1.getIndexType(tableName, "int"));
+        assertTrue(t1.contains(tableName, "int", new IntDataBox(50)));
+        try {
+            t1.createIndex(tableName, "int");
+            fail();
+        } catch (DatabaseException e) {
+            // the index already exists
+        }
+        t1.end();
+    }
 }
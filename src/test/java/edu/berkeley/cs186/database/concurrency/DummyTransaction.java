@@ -2,12 +2,17 @@ package edu.berkeley.cs186.database.concurrency;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 import edu.berkeley.cs186.database.BaseTransaction;
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.LoggingLockManager;
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.index.IndexPredicate;
+import edu.berkeley.cs186.database.index.IndexStats;
+import edu.berkeley.cs186.database.index.IndexType;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator.PageIterator;
 import edu.berkeley.cs186.database.query.QueryPlan;
@@ -56,6 +61,26 @@ public class DummyTransaction extends BaseTransaction {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    public void createTableWithIndices(Schema s, String tableName, List<String> indexColumns,
+                                       Map<String, List<String>> includedColumns) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public void createTableWithIndices(Schema s, String tableName, List<String> indexColumns,
+                                       Map<String, List<String>> includedColumns,
+                                       Map<String, IndexType> indexTypes) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public void createIndex(String tableName, String columnName) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public void createIndex(String tableName, String columnName,
+                            IndexType indexType) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     public boolean deleteTable(String tableName) {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
@@ -84,6 +109,19 @@ public class DummyTransaction extends BaseTransaction {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    public boolean bitmapIndexExists(String tableName, String columnName) {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public Iterator<Record> bitmapScan(String tableName,
+                                       Map<String, List<DataBox>> predicates) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public List<List<String>> getCompositeIndices(String tableName) {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     public Iterator<Record> sortedScan(String tableName, String columnName) throws DatabaseException {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
@@ -93,6 +131,39 @@ public class DummyTransaction extends BaseTransaction {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    public Iterator<Record> sortedScanDescending(String tableName,
+                                                 String columnName) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public Iterator<Record> sortedScanDescendingFrom(String tableName, String columnName,
+                                                     DataBox startValue) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public Iterator<Record> sortedScanRange(String tableName, String columnName,
+                                            DataBox lo, boolean loInclusive,
+                                            DataBox hi, boolean hiInclusive) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public int countRange(String tableName, String columnName,
+                          DataBox lo, boolean loInclusive,
+                          DataBox hi, boolean hiInclusive) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public Schema getIndexIncludedSchema(String tableName,
+                                         String columnName) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public Iterator<Record> coveringScanRange(String tableName, String columnName,
+            DataBox lo, boolean loInclusive,
+            DataBox hi, boolean hiInclusive) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     public Iterator<Record> lookupKey(String tableName, String columnName,
                                       DataBox key) throws DatabaseException {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
@@ -179,10 +250,23 @@ public class DummyTransaction extends BaseTransaction {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    public IndexType getIndexType(String tableName, String columnName) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     public int getNumIndexPages(String tableName, String columnName) throws DatabaseException {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    public IndexStats getIndexStats(String tableName, String columnName) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public Optional<IndexPredicate> getIndexPredicate(String tableName,
+            String columnName) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     public Schema getSchema(String tableName) throws DatabaseException {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
@@ -0,0 +1,85 @@
+package edu.berkeley.cs186.database.databox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({HW99Tests.class, SystemTests.class})
+public class TestCompositeDataBox {
+    private static CompositeDataBox key(int a, int b) {
+        return new CompositeDataBox(Arrays.asList(new IntDataBox(a), new IntDataBox(b)));
+    }
+
+    @Test
+    public void testType() {
+        assertEquals(Type.compositeType(Arrays.asList(Type.intType(), Type.intType())),
+                     key(0, 0).type());
+    }
+
+    @Test(expected = DataBoxException.class)
+    public void testEmpty() {
+        new CompositeDataBox(Collections.emptyList());
+    }
+
+    @Test(expected = DataBoxException.class)
+    public void testGetInt() {
+        key(0, 0).getInt();
+    }
+
+    @Test
+    public void testToAndFromBytes() {
+        for (int i = -3; i < 3; ++i) {
+            CompositeDataBox d = new CompositeDataBox(Arrays.asList(
+                                     new IntDataBox(i), new StringDataBox("foo", 5), new BoolDataBox(i > 0)));
+            byte[] bytes = d.toBytes();
+            assertEquals(d, DataBox.fromBytes(ByteBuffer.wrap(bytes), d.type()));
+        }
+    }
+
+    @Test
+    public void testEquals() {
+        assertEquals(key(0, 1), key(0, 1));
+        assertNotEquals(key(0, 1), key(1, 0));
+        assertNotEquals(key(0, 1), new IntDataBox(0));
+    }
+
+    @Test
+    public void testCompareTo() {
+        assertTrue(key(0, 0).compareTo(key(0, 0)) == 0);
+        assertTrue(key(0, 1).compareTo(key(1, 0)) < 0);
+        assertTrue(key(1, 0).compareTo(key(0, 1)) > 0);
+        assertTrue(key(1, 0).compareTo(key(1, 1)) < 0);
+    }
+
+    @Test
+    public void testPrefixBounds() {
+        CompositeDataBox lo = CompositeDataBox.prefixLowerBound(Arrays.asList(new IntDataBox(1)));
+        CompositeDataBox hi = CompositeDataBox.prefixUpperBound(Arrays.asList(new IntDataBox(1)));
+        assertTrue(lo.isPrefix());
+        assertTrue(hi.isPrefix());
+        assertFalse(key(1, 1).isPrefix());
+        assertTrue(lo.isPrefixOf(key(1, 1).type()));
+        assertFalse(lo.isPrefixOf(Type.intType()));
+
+        for (int b = -3; b < 3; ++b) {
+            assertTrue(lo.compareTo(key(1, b)) < 0);
+            assertTrue(hi.compareTo(key(1, b)) > 0);
+            assertTrue(key(1, b).compareTo(lo) > 0);
+            assertTrue(key(1, b).compareTo(hi) < 0);
+            assertTrue(lo.compareTo(key(0, b)) > 0);
+            assertTrue(hi.compareTo(key(2, b)) < 0);
+        }
+        assertTrue(lo.compareTo(hi) < 0);
+        assertTrue(lo.compareTo(lo) == 0);
+    }
+}
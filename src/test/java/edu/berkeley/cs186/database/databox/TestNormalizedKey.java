@@ -0,0 +1,86 @@
+package edu.berkeley.cs186.database.databox;
+
+import static org.junit.Assert.assertEquals;
+
+import edu.berkeley.cs186.database.categories.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({HW99Tests.class, SystemTests.class})
+public class TestNormalizedKey {
+    private static NormalizedKey key(DataBox d, boolean ascending) {
+        return NormalizedKey.of(Collections.singletonList(d), new int[] {0}, ascending);
+    }
+
+    // checks that the keys of every pair of values compare as the values do, in both orders
+    private static void checkOrder(List<DataBox> values) {
+        for (DataBox d1 : values) {
+            for (DataBox d2 : values) {
+                int expected = Integer.signum(d1.compareTo(d2));
+                assertEquals(d1 + " vs " + d2, expected,
+                             Integer.signum(key(d1, true).compareTo(key(d2, true))));
+                assertEquals(d1 + " vs " + d2, -expected,
+                             Integer.signum(key(d1, false).compareTo(key(d2, false))));
+            }
+        }
+    }
+
+    @Test
+    public void testInt() {
+        List<DataBox> values = new ArrayList<>();
+        for (int i : new int[] {Integer.MIN_VALUE, -256, -1, 0, 1, 255, 256, Integer.MAX_VALUE}) {
+            values.add(new IntDataBox(i));
+        }
+        checkOrder(values);
+    }
+
+    @Test
+    public void testFloat() {
+        List<DataBox> values = new ArrayList<>();
+        for (float f : new float[] {Float.NEGATIVE_INFINITY, -Float.MAX_VALUE, -1.5f, -Float.MIN_VALUE, -0.0f,
+                                    0.0f, Float.MIN_VALUE, 1.5f, Float.MAX_VALUE, Float.POSITIVE_INFINITY,
+                                    Float.NaN
+                                   }) {
+            values.add(new FloatDataBox(f));
+        }
+        checkOrder(values);
+    }
+
+    @Test
+    public void testString() {
+        List<DataBox> values = new ArrayList<>();
+        for (String s : new String[] {"", "a", "ab", "abc", "b", "Z", "0", " a", "abcdefghij", "abcdefghik"}) {
+            values.add(new StringDataBox(s, 10));
+        }
+        checkOrder(values);
+    }
+
+    @Test
+    public void testComposite() {
+        List<DataBox> values = new ArrayList<>();
+        for (int i = -1; i <= 1; ++i) {
+            for (String s : new String[] {"a", "b"}) {
+                values.add(new CompositeDataBox(Arrays.asList(new IntDataBox(i), new StringDataBox(s, 3),
+                                                new BoolDataBox(i == 0))));
+            }
+        }
+        checkOrder(values);
+    }
+
+    @Test
+    public void testColumns() {
+        // the key of several columns orders on them in turn
+        List<DataBox> r1 = Arrays.asList(new IntDataBox(1), new FloatDataBox(2f), new IntDataBox(3));
+        List<DataBox> r2 = Arrays.asList(new IntDataBox(1), new FloatDataBox(1f), new IntDataBox(4));
+        int[] columns = new int[] {0, 2, 1};
+        assertEquals(-1, Integer.signum(NormalizedKey.of(r1, columns, true).compareTo(
+                                            NormalizedKey.of(r2, columns, true))));
+        assertEquals(NormalizedKey.of(r1, new int[] {0}, true), NormalizedKey.of(r2, new int[] {0}, true));
+    }
+}
@@ -7,6 +7,8 @@ import edu.berkeley.cs186.database.categories.*;
 import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.common.ByteBuffer;
 
+import java.util.Arrays;
+
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
@@ -111,4 +113,22 @@ public class TestType {
         assertNotEquals(stringType, Type.stringType(1));
         assertEquals(stringType, Type.stringType(2));
     }
+
+    @Test
+    public void testCompositeType() {
+        // Check type id and size.
+        Type compositeType = Type.compositeType(Arrays.asList(Type.intType(), Type.stringType(3)));
+        assertEquals(compositeType.getTypeId(), TypeId.COMPOSITE);
+        assertEquals(compositeType.getSizeInBytes(), 7);
+
+        // Check toBytes and fromBytes.
+        Buffer buf = ByteBuffer.wrap(compositeType.toBytes());
+        assertEquals(compositeType, Type.fromBytes(buf));
+
+        // Check equality.
+        assertNotEquals(compositeType, Type.intType());
+        assertNotEquals(compositeType, Type.compositeType(Arrays.asList(Type.intType(), Type.stringType(2))));
+        assertNotEquals(compositeType, Type.compositeType(Arrays.asList(Type.stringType(3), Type.intType())));
+        assertEquals(compositeType, Type.compositeType(Arrays.asList(Type.intType(), Type.stringType(3))));
+    }
 }
@@ -1,10 +1,12 @@
 package edu.berkeley.cs186.database.index;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
@@ -22,6 +24,7 @@ import edu.berkeley.cs186.database.databox.IntDataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.PageAllocator;
 import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
 
 @Category(HW2Tests.class)
 public class TestBPlusNode {
@@ -72,4 +75,69 @@ public class TestBPlusNode {
         assertEquals(leaf, BPlusNode.fromBytes(null, meta, leafPageNum));
         assertEquals(inner, BPlusNode.fromBytes(null, meta, innerPageNum));
     }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testWriteBackSharedPage() throws IOException {
+        File file = tempFolder.newFile(testFile);
+        PageAllocator allocator = new PageAllocator(file.getAbsolutePath(), false, null);
+        BPlusTreeMetadata meta = new BPlusTreeMetadata(allocator, Type.intType(), 2,
+                new Schema(new ArrayList<>(), new ArrayList<>()), true);
+        // Two empty leaves, whose counts start out wrong.
+        List<Integer> children = new ArrayList<>();
+        for (int i = 0; i < 2; ++i) {
+            LeafNode leaf = new LeafNode(meta, new ArrayList<>(), new ArrayList<>(), Optional.empty(), null);
+            children.add(leaf.getPage().getPageNum());
+        }
+        List<DataBox> keys = new ArrayList<>(Arrays.asList(new IntDataBox(10)));
+        InnerNode inner = new InnerNode(meta, keys, children, new ArrayList<>(Arrays.asList(5, 7)), null);
+        int pageNum = inner.getPage().getPageNum();
+
+        // Two node objects for the same page each write only the count they
+        // changed, so neither overwrites the other's change with stale bytes.
+        InnerNode n0 = InnerNode.fromBytes(null, meta, pageNum);
+        InnerNode n1 = InnerNode.fromBytes(null, meta, pageNum);
+        n0.refreshCounts(null, new IntDataBox(0));
+        n1.refreshCounts(null, new IntDataBox(20));
+        assertEquals(Arrays.asList(0, 0), InnerNode.fromBytes(null, meta, pageNum).getCounts());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSyncWritesMutatedLists() throws IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.intType(), 2);
+        List<DataBox> keys = new ArrayList<>(Arrays.asList(new IntDataBox(1)));
+        List<RecordId> rids = new ArrayList<>(Arrays.asList(new RecordId(1, (short) 1)));
+        LeafNode leaf = new LeafNode(meta, keys, rids, Optional.empty(), null);
+
+        // put, remove, and bulkLoad change the lists of a node and then sync it.
+        leaf.getKeys().add(new IntDataBox(2));
+        leaf.getRids().add(new RecordId(2, (short) 2));
+        leaf.sync(null);
+        byte[] bytes = leaf.toBytes();
+        assertArrayEquals(bytes, Arrays.copyOf(leaf.getPage().readBytes(null), bytes.length));
+
+        List<DataBox> innerKeys = new ArrayList<>(Arrays.asList(new IntDataBox(10)));
+        List<Integer> children = new ArrayList<>(Arrays.asList(1, 2));
+        InnerNode inner = new InnerNode(meta, innerKeys, children, null);
+        inner.getKeys().add(new IntDataBox(20));
+        inner.getChildren().add(3);
+        inner.sync(null);
+        bytes = inner.toBytes();
+        assertArrayEquals(bytes, Arrays.copyOf(inner.getPage().readBytes(null), bytes.length));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSiblingWriteBack() throws IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.intType(), 2);
+        List<DataBox> keys = new ArrayList<>(Arrays.asList(new IntDataBox(1), new IntDataBox(2)));
+        List<RecordId> rids = new ArrayList<>(Arrays.asList(new RecordId(1, (short) 1),
+                                                            new RecordId(2, (short) 2)));
+        LeafNode leaf = new LeafNode(meta, keys, rids, Optional.of(42), null);
+
+        leaf.setLeftSibling(null, Optional.of(7));
+        byte[] bytes = leaf.toBytes();
+        assertArrayEquals(bytes, Arrays.copyOf(leaf.getPage().readBytes(null), bytes.length));
+    }
 }
@@ -1,10 +1,14 @@
 package edu.berkeley.cs186.database.index;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
@@ -24,7 +28,9 @@ import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
 import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
 
 @Category(HW2Tests.class)
 public class TestBPlusTree {
@@ -84,6 +90,159 @@ public class TestBPlusTree {
         assertEquals(sexp, tree.toSexp(null));
     }
 
+    @Test
+    @Category(PublicTests.class)
+    public void testPartitionedBulkLoad() throws BPlusTreeException, IOException {
+        BPlusTree tree = getBPlusTree(Type.intType(), 2);
+
+        // Partitions [1, 6], [], [7, 12], and [13, 18].
+        List<List<Pair<DataBox, RecordId>>> partitions = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        for (int p = 0; p < 4; ++p) {
+            partitions.add(new ArrayList<>());
+        }
+        for (int i = 1; i <= 18; ++i) {
+            RecordId rid = new RecordId(i, (short) i);
+            partitions.get(i <= 6 ? 0 : (i <= 12 ? 2 : 3)).add(new Pair<>(new IntDataBox(i), rid));
+            rids.add(rid);
+        }
+        List<Iterator<Pair<DataBox, RecordId>>> iterators = new ArrayList<>();
+        for (List<Pair<DataBox, RecordId>> partition : partitions) {
+            iterators.add(partition.iterator());
+        }
+
+        // Every partition fills two leaves of three keys, and the empty
+        // partition is skipped. The inner nodes are filled up to full, except
+        // that the last one is not left with a single child.
+        //
+        //                             (        13         )
+        //                            /                             //        (    4       7       10      )             (    16     )
+        //        /       |        |        \                /                 // (1 2 3) (4 5 6) (7 8 9) (10 11 12)          (13 14 15) (16 17 18)
+        tree.bulkLoad(null, iterators, 0.75f);
+        String[] leaves = new String[6];
+        for (int l = 0; l < 6; ++l) {
+            StringBuilder sb = new StringBuilder("(");
+            for (int i = 3 * l + 1; i <= 3 * l + 3; ++i) {
+                sb.append(sb.length() > 1 ? " " : "").append(String.format("(%d (%d %d))", i, i, i));
+            }
+            leaves[l] = sb.append(")").toString();
+        }
+        String inner0 = String.format("(%s 4 %s 7 %s 10 %s)", leaves[0], leaves[1], leaves[2], leaves[3]);
+        String inner1 = String.format("(%s 16 %s)", leaves[4], leaves[5]);
+        assertEquals(String.format("(%s 13 %s)", inner0, inner1), tree.toSexp(null));
+
+        // The leaves of consecutive partitions are linked up as siblings, both
+        // ways: an unbounded scanRange follows right siblings, and
+        // scanAllDescending follows left siblings.
+        assertEquals(rids, iteratorToList(tree.scanRange(null, null, false, null, false)));
+        Collections.reverse(rids);
+        assertEquals(rids, iteratorToList(tree.scanAllDescending(null)));
+
+        try {
+            tree.bulkLoad(null, Collections.singletonList(partitions.get(0).iterator()), 1.0f);
+            fail();
+        } catch (BPlusTreeException e) {
+            // the tree is not empty
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGetAll() throws BPlusTreeException, IOException {
+        // Keys 2, 4, ..., 40 fill five leaves of four keys.
+        BPlusTree tree = getBPlusTree(Type.intType(), 2);
+        List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+        for (int i = 1; i <= 20; ++i) {
+            data.add(new Pair<>(new IntDataBox(2 * i), new RecordId(i, (short) i)));
+        }
+        tree.bulkLoad(null, Collections.singletonList(data.iterator()), 1.0f);
+
+        // Probes in every leaf, repeated, missing, and outside the keys of the tree.
+        int[] probes = new int[] {40, 3, 2, 18, 40, 41, 0, 10, 26};
+        List<DataBox> keys = new ArrayList<>();
+        List<Pair<DataBox, Optional<RecordId>>> expected = new ArrayList<>();
+        for (int k : probes) {
+            keys.add(new IntDataBox(k));
+            Optional<RecordId> rid = k % 2 == 0 && k >= 2 && k <= 40
+                                     ? Optional.of(new RecordId(k / 2, (short) (k / 2)))
+                                     : Optional.empty();
+            expected.add(new Pair<>(new IntDataBox(k), rid));
+        }
+        assertEquals(expected, iteratorToList(tree.getAll(null, keys.iterator(), false)));
+
+        expected.sort(Comparator.comparing(Pair::getFirst));
+        assertEquals(expected, iteratorToList(tree.getAll(null, keys.iterator(), true)));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testOrderStatistics() throws BPlusTreeException, IOException {
+        Schema noIncluded = new Schema(new ArrayList<>(), new ArrayList<>());
+        BPlusTree tree = new BPlusTree(file.getAbsolutePath(), Type.intType(), noIncluded, 2, true,
+                                       new DummyLockContext(), null);
+        List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+        for (int i = 1; i <= 4; ++i) {
+            data.add(new Pair<>(new IntDataBox(2 * i), new RecordId(i, (short) i)));
+        }
+        tree.bulkLoad(null, Collections.singletonList(data.iterator()), 1.0f);
+
+        assertTrue(tree.isCounted());
+        assertEquals(4, tree.count(null));
+        assertEquals(3, tree.count(null, new IntDataBox(3), false, new IntDataBox(8), true));
+        assertEquals(1, tree.count(null, new IntDataBox(4), false, new IntDataBox(8), false));
+        assertEquals(0, tree.count(null, new IntDataBox(7), true, new IntDataBox(5), true));
+        assertEquals(2, tree.rank(null, new IntDataBox(6)));
+        assertEquals(Optional.of(data.get(1)), tree.select(null, 1));
+        assertEquals(Optional.empty(), tree.select(null, 4));
+
+        // The counts of a tree with inner nodes are read back from disk.
+        String filename = tempFolder.newFile().getAbsolutePath();
+        tree = new BPlusTree(filename, Type.intType(), noIncluded, 2, true, new DummyLockContext(), null);
+        data.clear();
+        for (int i = 0; i < 100; ++i) {
+            data.add(new Pair<>(new IntDataBox(i), new RecordId(i, (short) i)));
+        }
+        tree.bulkLoad(null, Arrays.asList(data.subList(0, 50).iterator(), data.subList(50, 100).iterator()),
+                      1.0f);
+        assertEquals(100, tree.count(null));
+        tree.close();
+
+        BPlusTree fromDisk = new BPlusTree(filename, new DummyLockContext(), null);
+        assertTrue(fromDisk.isCounted());
+        assertEquals(100, fromDisk.count(null));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testIndexStats() throws BPlusTreeException, IOException {
+        BPlusTree tree = getBPlusTree(Type.intType(), 2);
+        assertEquals(IndexStats.empty(), tree.getStats());
+
+        // Ten records per page, in key order.
+        List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            data.add(new Pair<>(new IntDataBox(i), new RecordId(i / 10, (short) (i % 10))));
+        }
+        tree.bulkLoad(null, Arrays.asList(data.subList(0, 50).iterator(), data.subList(50, 100).iterator()),
+                      1.0f);
+        // 13 leaves per partition, under 6 inner nodes, under 2 inner nodes, under the root.
+        assertEquals(new IndexStats(4, 26, 100, 10), tree.getStats());
+        tree.close();
+
+        BPlusTree fromDisk = new BPlusTree(file.getAbsolutePath(), new DummyLockContext(), null);
+        assertEquals(new IndexStats(4, 26, 100, 10), fromDisk.getStats());
+
+        // Consecutive keys on different pages make for an unclustered index.
+        String filename = tempFolder.newFile().getAbsolutePath();
+        tree = new BPlusTree(filename, Type.intType(), 2, new DummyLockContext(), null);
+        data.clear();
+        for (int i = 0; i < 100; ++i) {
+            data.add(new Pair<>(new IntDataBox(i), new RecordId(i % 10, (short) (i / 10))));
+        }
+        tree.bulkLoad(null, Collections.singletonList(data.iterator()), 1.0f);
+        assertEquals(new IndexStats(3, 25, 100, 100), tree.getStats());
+    }
+
     @Test
     @Category(PublicTests.class)
     public void testWhiteBoxTest() throws BPlusTreeException, IOException {
@@ -409,4 +568,25 @@ public class TestBPlusTree {
         assertEquals(5, InnerNode.maxOrder(pageSizeInBytes, keySchema));
         assertEquals(4, BPlusTree.maxOrder(pageSizeInBytes, keySchema));
     }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testIncludedSchemaFromDisk() throws BPlusTreeException, IOException {
+        Schema includedSchema = new Schema(Arrays.asList("a", "b"),
+                                           Arrays.asList(Type.boolType(), Type.stringType(8)));
+        int order = BPlusTree.maxOrder(Page.pageSize, Type.intType(), includedSchema);
+        assertTrue(order < BPlusTree.maxOrder(Page.pageSize, Type.intType()));
+
+        BPlusTree tree = new BPlusTree(file.getAbsolutePath(), Type.intType(), includedSchema, order,
+                                       new DummyLockContext(), null);
+        assertEquals(includedSchema, tree.getIncludedSchema());
+        tree.close();
+
+        BPlusTree fromDisk = new BPlusTree(file.getAbsolutePath(), new DummyLockContext(), null);
+        assertEquals(includedSchema, fromDisk.getIncludedSchema());
+
+        // Trees without included columns have an empty included schema.
+        BPlusTree plain = getBPlusTree(Type.intType(), 2);
+        assertTrue(plain.getIncludedSchema().getFieldNames().isEmpty());
+    }
 }
@@ -0,0 +1,172 @@
+package edu.berkeley.cs186.database.index;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.RecordId;
+
+@Category(HW2Tests.class)
+public class TestBitmapIndex {
+    public static final String filename = "TestBitmapIndex";
+    private static final int recordsPerPage = 100;
+    private File file;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 40 seconds max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (
+                40000 * TimeoutScaling.factor)));
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    @Before
+    public void initFile() throws IOException {
+        this.file = tempFolder.newFile(filename);
+    }
+
+    private BitmapIndex getBitmapIndex() {
+        return new BitmapIndex(file.getAbsolutePath(), Type.intType(), recordsPerPage,
+                               new DummyLockContext(), null);
+    }
+
+    private static RecordId rid(int i) {
+        return new RecordId(i / recordsPerPage, (short) (i % recordsPerPage));
+    }
+
+    private static <T> List<T> iteratorToList(Iterator<T> iter) {
+        List<T> xs = new ArrayList<>();
+        while (iter.hasNext()) {
+            xs.add(iter.next());
+        }
+        return xs;
+    }
+
+    // Record i has key i % 5.
+    private static List<RecordId> ridsWithKey(int key, int n) {
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = key; i < n; i += 5) {
+            rids.add(rid(i));
+        }
+        return rids;
+    }
+
+    // Tests ///////////////////////////////////////////////////////////////////
+    @Test
+    @Category(PublicTests.class)
+    public void testAddRemoveLookup() throws IndexException {
+        BitmapIndex index = getBitmapIndex();
+        int n = 10000;
+        for (int i = 0; i < n; ++i) {
+            index.add(null, new IntDataBox(i % 5), rid(i));
+        }
+        for (int k = 0; k < 5; ++k) {
+            RoaringBitmap positions = index.lookup(null, new IntDataBox(k));
+            assertEquals(ridsWithKey(k, n), iteratorToList(index.toRecordIds(positions)));
+        }
+        assertTrue(index.lookup(null, new IntDataBox(5)).isEmpty());
+
+        for (int i = 0; i < n; i += 5) {
+            index.remove(null, new IntDataBox(0), rid(i));
+        }
+        assertTrue(index.lookup(null, new IntDataBox(0)).isEmpty());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testAndOr() throws IndexException {
+        BitmapIndex index = getBitmapIndex();
+        for (int i = 0; i < 20; ++i) {
+            index.add(null, new IntDataBox(i % 5), rid(i));
+        }
+        RoaringBitmap zeroOrOne = RoaringBitmap.or(index.lookup(null, new IntDataBox(0)),
+                                  index.lookup(null, new IntDataBox(1)));
+        List<RecordId> expected = new ArrayList<>();
+        for (int i : new int[] {0, 1, 5, 6, 10, 11, 15, 16}) {
+            expected.add(rid(i));
+        }
+        assertEquals(expected, iteratorToList(index.toRecordIds(zeroOrOne)));
+
+        RoaringBitmap none = RoaringBitmap.and(index.lookup(null, new IntDataBox(0)),
+                                               index.lookup(null, new IntDataBox(1)));
+        assertTrue(none.isEmpty());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testFromDisk() throws IndexException {
+        // Enough records for the bitmaps to span several pages.
+        BitmapIndex index = getBitmapIndex();
+        int n = 20000;
+        for (int i = 0; i < n; ++i) {
+            index.add(null, new IntDataBox(i % 5), rid(i));
+        }
+        for (int i = 0; i < n; i += 10) {
+            index.remove(null, new IntDataBox(i % 5), rid(i));
+        }
+        index.close();
+
+        BitmapIndex fromDisk = new BitmapIndex(file.getAbsolutePath(), new DummyLockContext(), null);
+        for (int k = 0; k < 5; ++k) {
+            List<RecordId> expected = new ArrayList<>();
+            for (int i = k; i < n; i += 5) {
+                if (i % 10 != 0) {
+                    expected.add(rid(i));
+                }
+            }
+            RoaringBitmap positions = fromDisk.lookup(null, new IntDataBox(k));
+            assertEquals(expected, iteratorToList(fromDisk.toRecordIds(positions)));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testFromDiskContainerChanges() throws IndexException {
+        // Records [0, 5000) turn the first container into a bitmap container, removing
+        // [2000, 3000) turns it back into an array container, and records [70000, 70010)
+        // start a second container which is then emptied again.
+        BitmapIndex index = getBitmapIndex();
+        IntDataBox key = new IntDataBox(0);
+        for (int i = 0; i < 5000; ++i) {
+            index.add(null, key, rid(i));
+        }
+        for (int i = 70000; i < 70010; ++i) {
+            index.add(null, key, rid(i));
+        }
+        for (int i = 2000; i < 3000; ++i) {
+            index.remove(null, key, rid(i));
+        }
+        for (int i = 70000; i < 70010; ++i) {
+            index.remove(null, key, rid(i));
+        }
+        index.add(null, key, rid(70005));
+        index.close();
+
+        BitmapIndex fromDisk = new BitmapIndex(file.getAbsolutePath(), new DummyLockContext(), null);
+        List<RecordId> expected = new ArrayList<>();
+        for (int i = 0; i < 5000; ++i) {
+            if (i < 2000 || i >= 3000) {
+                expected.add(rid(i));
+            }
+        }
+        expected.add(rid(70005));
+        assertEquals(expected, iteratorToList(fromDisk.toRecordIds(fromDisk.lookup(null, key))));
+    }
+}
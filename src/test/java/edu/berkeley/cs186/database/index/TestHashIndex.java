@@ -0,0 +1,145 @@
+package edu.berkeley.cs186.database.index;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.RecordId;
+
+@Category(HW2Tests.class)
+public class TestHashIndex {
+    public static final String filename = "TestHashIndex";
+    private File file;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 40 seconds max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (
+                40000 * TimeoutScaling.factor)));
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    @Before
+    public void initFile() throws IOException {
+        this.file = tempFolder.newFile(filename);
+    }
+
+    private HashIndex getHashIndex(Type keySchema) throws IndexException {
+        return new HashIndex(file.getAbsolutePath(), keySchema, new DummyLockContext(), null);
+    }
+
+    private static <T> List<T> iteratorToList(Iterator<T> iter) {
+        List<T> xs = new ArrayList<>();
+        while (iter.hasNext()) {
+            xs.add(iter.next());
+        }
+        return xs;
+    }
+
+    // Tests ///////////////////////////////////////////////////////////////////
+    @Test
+    @Category(PublicTests.class)
+    public void testSimplePutGetRemove() throws IndexException {
+        HashIndex index = getHashIndex(Type.intType());
+        RecordId rid = new RecordId(1, (short) 1);
+        assertEquals(Optional.empty(), index.get(null, new IntDataBox(1)));
+
+        index.put(null, new IntDataBox(1), rid);
+        assertEquals(Optional.of(rid), index.get(null, new IntDataBox(1)));
+        assertEquals(Collections.singletonList(rid),
+                     iteratorToList(index.scanEqual(null, new IntDataBox(1))));
+        assertEquals(Optional.empty(), index.get(null, new IntDataBox(2)));
+
+        index.remove(null, new IntDataBox(1));
+        assertEquals(Optional.empty(), index.get(null, new IntDataBox(1)));
+        assertFalse(index.scanEqual(null, new IntDataBox(1)).hasNext());
+    }
+
+    @Test(expected = IndexException.class)
+    @Category(PublicTests.class)
+    public void testDuplicatePut() throws IndexException {
+        HashIndex index = getHashIndex(Type.intType());
+        index.put(null, new IntDataBox(4), new RecordId(4, (short) 4));
+        index.put(null, new IntDataBox(4), new RecordId(5, (short) 5));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSplits() throws IndexException {
+        // Enough keys to split the first bucket several times over.
+        HashIndex index = getHashIndex(Type.intType());
+        int n = 8 * HashIndex.bucketCapacity(Type.intType());
+        for (int i = 0; i < n; ++i) {
+            index.put(null, new IntDataBox(i), new RecordId(i, (short) i));
+        }
+        assertTrue(index.getGlobalDepth() >= 3);
+
+        for (int i = 0; i < n; ++i) {
+            assertEquals(Optional.of(new RecordId(i, (short) i)), index.get(null, new IntDataBox(i)));
+        }
+        for (int i = 0; i < n; i += 2) {
+            index.remove(null, new IntDataBox(i));
+        }
+        for (int i = 0; i < n; ++i) {
+            Optional<RecordId> expected = i % 2 == 0 ? Optional.empty()
+                                          : Optional.of(new RecordId(i, (short) i));
+            assertEquals(expected, index.get(null, new IntDataBox(i)));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testOverflow() throws IndexException {
+        // With 1000-byte keys, the directory stops growing long before the
+        // buckets stop filling up, so buckets overflow onto more pages.
+        HashIndex index = getHashIndex(Type.stringType(1000));
+        int n = 4 * 1024;
+        for (int i = 0; i < n; ++i) {
+            index.put(null, new StringDataBox(Integer.toString(i), 1000), new RecordId(i, (short) 0));
+        }
+        for (int i = 0; i < n; ++i) {
+            assertEquals(Optional.of(new RecordId(i, (short) 0)),
+                         index.get(null, new StringDataBox(Integer.toString(i), 1000)));
+        }
+        assertEquals(Optional.empty(), index.get(null, new StringDataBox("foo", 1000)));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testFromDisk() throws IndexException {
+        HashIndex index = getHashIndex(Type.intType());
+        int n = 4 * HashIndex.bucketCapacity(Type.intType());
+        for (int i = 0; i < n; ++i) {
+            index.put(null, new IntDataBox(i), new RecordId(i, (short) i));
+        }
+        index.close();
+
+        HashIndex fromDisk = new HashIndex(file.getAbsolutePath(), new DummyLockContext(), null);
+        assertEquals(index.getGlobalDepth(), fromDisk.getGlobalDepth());
+        assertEquals(IndexType.HASH, fromDisk.getIndexType());
+        for (int i = 0; i < n; ++i) {
+            assertEquals(Optional.of(new RecordId(i, (short) i)), fromDisk.get(null, new IntDataBox(i)));
+        }
+    }
+}
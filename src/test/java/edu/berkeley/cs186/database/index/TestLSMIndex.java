@@ -0,0 +1,171 @@
+package edu.berkeley.cs186.database.index;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.RecordId;
+
+@Category(HW2Tests.class)
+public class TestLSMIndex {
+    public static final String filename = "TestLSMIndex";
+    private File file;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 40 seconds max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (
+                40000 * TimeoutScaling.factor)));
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    @Before
+    public void initFile() throws IOException {
+        this.file = tempFolder.newFile(filename);
+    }
+
+    private LSMIndex getLSMIndex(int memtableCapacity) {
+        return new LSMIndex(file.getAbsolutePath(), Type.intType(), memtableCapacity,
+                            new DummyLockContext(), null);
+    }
+
+    private static RecordId rid(int i) {
+        return new RecordId(i, (short) i);
+    }
+
+    private static List<RecordId> rids(int lo, int hi, int step) {
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = lo; step > 0 ? i < hi : i > hi; i += step) {
+            rids.add(rid(i));
+        }
+        return rids;
+    }
+
+    private static <T> List<T> iteratorToList(Iterator<T> iter) {
+        List<T> xs = new ArrayList<>();
+        while (iter.hasNext()) {
+            xs.add(iter.next());
+        }
+        return xs;
+    }
+
+    // Tests ///////////////////////////////////////////////////////////////////
+    @Test
+    @Category(PublicTests.class)
+    public void testSimplePutGetRemove() throws IndexException {
+        LSMIndex index = getLSMIndex(LSMIndex.DEFAULT_MEMTABLE_CAPACITY);
+        assertEquals(Optional.empty(), index.get(null, new IntDataBox(1)));
+
+        index.put(null, new IntDataBox(1), rid(1));
+        assertEquals(Optional.of(rid(1)), index.get(null, new IntDataBox(1)));
+        assertEquals(Collections.singletonList(rid(1)),
+                     iteratorToList(index.scanEqual(null, new IntDataBox(1))));
+        assertEquals(Optional.empty(), index.get(null, new IntDataBox(2)));
+
+        index.remove(null, new IntDataBox(1));
+        assertEquals(Optional.empty(), index.get(null, new IntDataBox(1)));
+        assertFalse(index.scanAll(null).hasNext());
+    }
+
+    @Test(expected = IndexException.class)
+    @Category(PublicTests.class)
+    public void testDuplicatePut() throws IndexException {
+        // The first key is written out to a run before the duplicate arrives.
+        LSMIndex index = getLSMIndex(1);
+        index.put(null, new IntDataBox(4), rid(4));
+        index.put(null, new IntDataBox(4), rid(5));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testFlushAndCompact() throws IndexException {
+        LSMIndex index = getLSMIndex(8);
+        int n = 2 * LSMIndex.runPageCapacity(Type.intType());
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(186));
+        for (int key : keys) {
+            index.put(null, new IntDataBox(key), rid(key));
+        }
+
+        // Compaction keeps the number of runs logarithmic in the number of flushes.
+        assertTrue(index.getNumRuns() <= 32 - Integer.numberOfLeadingZeros(n / 8));
+        for (int i = 0; i < n; ++i) {
+            assertEquals(Optional.of(rid(i)), index.get(null, new IntDataBox(i)));
+        }
+        assertEquals(rids(0, n, 1), iteratorToList(index.scanAll(null)));
+
+        // Tombstones shadow the entries in older runs, and a removed key can be put again.
+        for (int i = 0; i < n; i += 2) {
+            index.remove(null, new IntDataBox(i));
+        }
+        index.put(null, new IntDataBox(0), rid(0));
+        List<RecordId> expected = rids(1, n, 2);
+        expected.add(0, rid(0));
+        assertEquals(expected, iteratorToList(index.scanAll(null)));
+        assertEquals(Optional.empty(), index.get(null, new IntDataBox(2)));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testScans() throws IndexException {
+        LSMIndex index = getLSMIndex(16);
+        int n = LSMIndex.runPageCapacity(Type.intType()) + 100;
+        for (int i = n - 1; i >= 0; --i) {
+            index.put(null, new IntDataBox(i), rid(i));
+        }
+
+        assertEquals(rids(0, n, 1), iteratorToList(index.scanAll(null)));
+        assertEquals(rids(n - 1, -1, -1), iteratorToList(index.scanAllDescending(null)));
+        assertEquals(rids(300, n, 1), iteratorToList(index.scanGreaterEqual(null, new IntDataBox(300))));
+        assertEquals(rids(300, -1, -1), iteratorToList(index.scanLessEqual(null, new IntDataBox(300))));
+        assertEquals(rids(101, 400, 1), iteratorToList(index.scanRange(null,
+                     new IntDataBox(100), false, new IntDataBox(400), false)));
+        assertEquals(rids(100, 401, 1), iteratorToList(index.scanRange(null,
+                     new IntDataBox(100), true, new IntDataBox(400), true)));
+        assertFalse(index.scanGreaterEqual(null, new IntDataBox(n)).hasNext());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testFromDisk() throws IndexException {
+        LSMIndex index = getLSMIndex(16);
+        int n = 1000;
+        for (int i = 0; i < n; ++i) {
+            index.put(null, new IntDataBox(i), rid(i));
+        }
+        index.remove(null, new IntDataBox(7));
+        index.close();
+
+        LSMIndex fromDisk = new LSMIndex(file.getAbsolutePath(), new DummyLockContext(), null);
+        assertEquals(IndexType.LSM, fromDisk.getIndexType());
+        for (int i = 0; i < n; ++i) {
+            Optional<RecordId> expected = i == 7 ? Optional.empty() : Optional.of(rid(i));
+            assertEquals(expected, fromDisk.get(null, new IntDataBox(i)));
+        }
+        assertEquals(n - 1, iteratorToList(fromDisk.scanAll(null)).size());
+    }
+}
@@ -30,6 +30,7 @@ import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator;
 import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
 
 @Category(HW2Tests.class)
 public class TestLeafNode {
@@ -241,6 +242,127 @@ public class TestLeafNode {
         assertFalse(iter.hasNext());
     }
 
+    @Test
+    @Category(PublicTests.class)
+    public void testScanDescending() throws IOException {
+        int d = 5;
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.intType(), d);
+
+        List<DataBox> keys = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 2 * d; ++i) {
+            keys.add(new IntDataBox(i));
+            rids.add(new RecordId(i, (short) i));
+        }
+        LeafNode leaf = new LeafNode(meta, keys, rids, Optional.of(7), Optional.empty(), null);
+        assertEquals(leaf, leaf.getRightmostLeaf(null));
+
+        Iterator<RecordId> iter = leaf.scanAllDescending();
+        for (int i = 2 * d - 1; i >= 0; --i) {
+            assertTrue(iter.hasNext());
+            assertEquals(new RecordId(i, (short) i), iter.next());
+        }
+        assertFalse(iter.hasNext());
+
+        iter = leaf.scanLessEqual(d4);
+        for (int i = 4; i >= 0; --i) {
+            assertTrue(iter.hasNext());
+            assertEquals(new RecordId(i, (short) i), iter.next());
+        }
+        assertFalse(iter.hasNext());
+
+        assertFalse(leaf.scanLessEqual(new IntDataBox(-1)).hasNext());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testScanRange() throws IOException {
+        int d = 5;
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.intType(), d);
+
+        List<DataBox> keys = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 2 * d; ++i) {
+            keys.add(new IntDataBox(i));
+            rids.add(new RecordId(i, (short) i));
+        }
+        LeafNode leaf = new LeafNode(meta, keys, rids, Optional.empty(), null);
+
+        // [3, 6]
+        Iterator<RecordId> iter = leaf.scanRange(d3, true, new IntDataBox(6), true);
+        for (int i = 3; i <= 6; ++i) {
+            assertTrue(iter.hasNext());
+            assertEquals(new RecordId(i, (short) i), iter.next());
+        }
+        assertFalse(iter.hasNext());
+
+        // (3, 6)
+        iter = leaf.scanRange(d3, false, new IntDataBox(6), false);
+        for (int i = 4; i < 6; ++i) {
+            assertTrue(iter.hasNext());
+            assertEquals(new RecordId(i, (short) i), iter.next());
+        }
+        assertFalse(iter.hasNext());
+
+        // (-inf, 2] and [8, +inf)
+        iter = leaf.scanRange(null, false, d2, true);
+        for (int i = 0; i <= 2; ++i) {
+            assertEquals(new RecordId(i, (short) i), iter.next());
+        }
+        assertFalse(iter.hasNext());
+        iter = leaf.scanRange(new IntDataBox(8), true, null, false);
+        for (int i = 8; i < 2 * d; ++i) {
+            assertEquals(new RecordId(i, (short) i), iter.next());
+        }
+        assertFalse(iter.hasNext());
+
+        // Empty ranges.
+        assertFalse(leaf.scanRange(d4, false, d4, true).hasNext());
+        assertFalse(leaf.scanRange(new IntDataBox(6), true, d3, true).hasNext());
+
+        assertTrue(leaf.exceedsUpperBound(new IntDataBox(8), true));
+        assertTrue(leaf.exceedsUpperBound(new IntDataBox(9), false));
+        assertFalse(leaf.exceedsUpperBound(new IntDataBox(9), true));
+        assertFalse(leaf.exceedsUpperBound(null, true));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testScanRangeCovering() throws IOException {
+        File file = tempFolder.newFile(testFile);
+        PageAllocator allocator = new PageAllocator(file.getAbsolutePath(), false, null);
+        Schema includedSchema = new Schema(Arrays.asList("b"), Arrays.asList(Type.intType()));
+        BPlusTreeMetadata meta = new BPlusTreeMetadata(allocator, Type.intType(), 5, includedSchema);
+
+        List<DataBox> keys = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        List<List<DataBox>> included = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            keys.add(new IntDataBox(i));
+            rids.add(new RecordId(i, (short) i));
+            included.add(Arrays.asList(new IntDataBox(10 * i)));
+        }
+        LeafNode leaf = new LeafNode(meta, keys, rids, included, Optional.empty(), Optional.empty(), null);
+
+        Iterator<List<DataBox>> iter = leaf.scanRangeCovering(d2, true, d4, false);
+        assertEquals(Arrays.asList(d2, new IntDataBox(20)), iter.next());
+        assertEquals(Arrays.asList(d3, new IntDataBox(30)), iter.next());
+        assertFalse(iter.hasNext());
+
+        // Every entry is serialized with its included values.
+        int entrySize = Type.intType().getSizeInBytes() + RecordId.getSizeInBytes() +
+                        includedSchema.getSizeInBytes();
+        assertEquals(13 + 10 * entrySize, leaf.toBytes().length);
+
+        leaf.setIncluded(null, d3, Arrays.asList(new IntDataBox(-1)));
+        iter = leaf.scanRangeCovering(d3, true, d3, true);
+        assertEquals(Arrays.asList(d3, new IntDataBox(-1)), iter.next());
+        assertFalse(iter.hasNext());
+
+        assertEquals(LeafNode.maxOrder(Page.pageSize, Type.intType(), 4),
+                     (Page.pageSize - 13) / entrySize / 2);
+    }
+
     @Test
     @Category(SystemTests.class)
     public void testMaxOrder() {
@@ -251,7 +373,7 @@ public class TestLeafNode {
         assertEquals(6, RecordId.getSizeInBytes());
         for (int d = 0; d < 10; ++d) {
             int dd = d + 1;
-            for (int i = 9 + (2 * d) * (4 + 6); i < 9 + (2 * dd) * (4 + 6); ++i) {
+            for (int i = 13 + (2 * d) * (4 + 6); i < 13 + (2 * dd) * (4 + 6); ++i) {
                 assertEquals(d, LeafNode.maxOrder(i, Type.intType()));
             }
         }
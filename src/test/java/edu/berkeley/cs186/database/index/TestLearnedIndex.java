@@ -0,0 +1,212 @@
+package edu.berkeley.cs186.database.index;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.RecordId;
+
+@Category(HW2Tests.class)
+public class TestLearnedIndex {
+    public static final String filename = "TestLearnedIndex";
+    private File file;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 40 seconds max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (
+                40000 * TimeoutScaling.factor)));
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    @Before
+    public void initFile() throws IOException {
+        this.file = tempFolder.newFile(filename);
+    }
+
+    private LearnedIndex getLearnedIndex() {
+        return new LearnedIndex(file.getAbsolutePath(), Type.intType(), new DummyLockContext(), null);
+    }
+
+    private static RecordId rid(int i) {
+        return new RecordId(i, (short) i);
+    }
+
+    private static List<Pair<DataBox, RecordId>> entries(List<Integer> keys) {
+        List<Pair<DataBox, RecordId>> entries = new ArrayList<>();
+        for (int key : keys) {
+            entries.add(new Pair<>(new IntDataBox(key), rid(key)));
+        }
+        return entries;
+    }
+
+    private static List<RecordId> rids(List<Integer> keys) {
+        List<RecordId> rids = new ArrayList<>();
+        for (int key : keys) {
+            rids.add(rid(key));
+        }
+        return rids;
+    }
+
+    private static <T> List<T> iteratorToList(Iterator<T> iter) {
+        List<T> xs = new ArrayList<>();
+        while (iter.hasNext()) {
+            xs.add(iter.next());
+        }
+        return xs;
+    }
+
+    // Tests ///////////////////////////////////////////////////////////////////
+    @Test
+    @Category(PublicTests.class)
+    public void testBulkLoadLinearKeys() throws IndexException {
+        // Evenly spaced keys fit a single line.
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < 10000; ++i) {
+            keys.add(3 * i);
+        }
+        LearnedIndex index = getLearnedIndex();
+        index.bulkLoad(null, entries(keys).iterator());
+        assertEquals(1, index.getNumSegments());
+
+        for (int i = 0; i < 30000; ++i) {
+            Optional<RecordId> expected = i % 3 == 0 ? Optional.of(rid(i)) : Optional.empty();
+            assertEquals(expected, index.get(null, new IntDataBox(i)));
+        }
+        assertEquals(Optional.empty(), index.get(null, new IntDataBox(-1)));
+        assertEquals(Optional.empty(), index.get(null, new IntDataBox(30000)));
+        assertEquals(rids(keys), iteratorToList(index.scanAll(null)));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testBulkLoadIrregularKeys() throws IndexException {
+        // Keys with gaps of very different sizes need several segments.
+        Random random = new Random(186);
+        List<Integer> keys = new ArrayList<>();
+        int key = 0;
+        for (int i = 0; i < 20000; ++i) {
+            key += random.nextInt(10) == 0 ? 1 + random.nextInt(5000) : 1 + random.nextInt(3);
+            keys.add(key);
+        }
+        LearnedIndex index = getLearnedIndex();
+        index.bulkLoad(null, entries(keys).iterator());
+        assertTrue(index.getNumSegments() > 1);
+        assertTrue(index.getNumSegments() < keys.size() / LearnedIndex.DEFAULT_MAX_ERROR);
+
+        Set<Integer> keySet = new HashSet<>(keys);
+        for (int k : keys) {
+            assertEquals(Optional.of(rid(k)), index.get(null, new IntDataBox(k)));
+            if (!keySet.contains(k + 1)) {
+                assertEquals(Optional.empty(), index.get(null, new IntDataBox(k + 1)));
+            }
+        }
+
+        int lo = keys.get(5000);
+        int hi = keys.get(15000);
+        assertEquals(rids(keys.subList(5001, 15000)), iteratorToList(index.scanRange(null,
+                     new IntDataBox(lo), false, new IntDataBox(hi), false)));
+        assertEquals(rids(keys.subList(5000, 15001)), iteratorToList(index.scanRange(null,
+                     new IntDataBox(lo - 1), true, new IntDataBox(hi + 1), false)));
+        assertEquals(10001, index.count(null, new IntDataBox(lo), true, new IntDataBox(hi), true));
+
+        List<RecordId> descending = rids(keys.subList(0, 5001));
+        Collections.reverse(descending);
+        assertEquals(descending, iteratorToList(index.scanLessEqual(null, new IntDataBox(lo))));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testAppendAndRemove() throws IndexException {
+        LearnedIndex index = getLearnedIndex();
+        int n = 2 * LearnedIndex.DATA_PAGE_CAPACITY + 10;
+        for (int i = 0; i < n; ++i) {
+            index.put(null, new IntDataBox(2 * i), rid(i));
+        }
+        assertTrue(index.getNumSegments() < 10);
+        for (int i = 0; i < n; ++i) {
+            assertEquals(Optional.of(rid(i)), index.get(null, new IntDataBox(2 * i)));
+        }
+
+        // only keys larger than every other key can be added
+        try {
+            index.put(null, new IntDataBox(3), rid(3));
+            fail();
+        } catch (IndexException e) {
+            // expected
+        }
+        try {
+            index.put(null, new IntDataBox(4), rid(4));
+            fail();
+        } catch (IndexException e) {
+            // duplicate key
+        }
+
+        // a removed key leaves a tombstone behind, which can be replaced
+        index.remove(null, new IntDataBox(4));
+        assertEquals(Optional.empty(), index.get(null, new IntDataBox(4)));
+        assertEquals(n - 1, iteratorToList(index.scanAll(null)).size());
+        index.put(null, new IntDataBox(4), rid(100));
+        assertEquals(Optional.of(rid(100)), index.get(null, new IntDataBox(4)));
+        assertEquals(n, index.count(null, null, true, null, true));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testFromDisk() throws IndexException {
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < 5000; ++i) {
+            keys.add(i * i);
+        }
+        LearnedIndex index = getLearnedIndex();
+        index.bulkLoad(null, entries(keys).iterator());
+        index.remove(null, new IntDataBox(49));
+        index.put(null, new IntDataBox(Integer.MAX_VALUE), rid(0));
+        int numSegments = index.getNumSegments();
+        index.close();
+
+        LearnedIndex fromDisk = new LearnedIndex(file.getAbsolutePath(), new DummyLockContext(), null);
+        assertEquals(IndexType.LEARNED, fromDisk.getIndexType());
+        assertEquals(numSegments, fromDisk.getNumSegments());
+        for (int k : keys) {
+            Optional<RecordId> expected = k == 49 ? Optional.empty() : Optional.of(rid(k));
+            assertEquals(expected, fromDisk.get(null, new IntDataBox(k)));
+        }
+        assertEquals(Optional.of(rid(0)), fromDisk.get(null, new IntDataBox(Integer.MAX_VALUE)));
+        assertEquals(keys.size(), iteratorToList(fromDisk.scanAll(null)).size());
+        assertEquals(new IndexStats(1, 1 + keys.size() / LearnedIndex.DATA_PAGE_CAPACITY, keys.size(),
+                                    keys.size()), fromDisk.getStats());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @Category(PublicTests.class)
+    public void testNonIntKeys() {
+        new LearnedIndex(file.getAbsolutePath(), Type.floatType(), new DummyLockContext(), null);
+    }
+}
@@ -0,0 +1,111 @@
+package edu.berkeley.cs186.database.index;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.function.IntPredicate;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+
+@Category(HW2Tests.class)
+public class TestRoaringBitmap {
+    // The multiples of k below n, spread over several chunks.
+    private static RoaringBitmap multiples(int k, int n) {
+        RoaringBitmap b = new RoaringBitmap();
+        for (int i = 0; i < n; i += k) {
+            b.add(i);
+        }
+        return b;
+    }
+
+    // Checks that b holds exactly the integers below n that satisfy p, in order.
+    private static void assertHolds(RoaringBitmap b, int n, IntPredicate p) {
+        Iterator<Integer> iter = b.iterator();
+        for (int i = 0; i < n; ++i) {
+            if (p.test(i)) {
+                assertTrue(iter.hasNext());
+                assertEquals(i, (int) iter.next());
+            }
+        }
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testAddRemoveContains() {
+        RoaringBitmap b = new RoaringBitmap();
+        assertTrue(b.isEmpty());
+        b.add(3);
+        b.add(70000);
+        b.add(3);
+        assertEquals(2, b.getCardinality());
+        assertTrue(b.contains(3));
+        assertTrue(b.contains(70000));
+        assertFalse(b.contains(4));
+        assertFalse(b.contains(-1));
+
+        b.remove(3);
+        b.remove(5);
+        assertFalse(b.contains(3));
+        assertEquals(1, b.getCardinality());
+        b.remove(70000);
+        assertTrue(b.isEmpty());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testDenseChunks() {
+        // Chunks with more than ARRAY_MAX integers switch to bitmap containers
+        // and back again.
+        int n = 3 << 16;
+        RoaringBitmap b = multiples(2, n);
+        assertEquals(n / 2, b.getCardinality());
+        assertHolds(b, n, i -> i % 2 == 0);
+
+        for (int i = 0; i < n; i += 4) {
+            b.remove(i);
+        }
+        assertHolds(b, n, i -> i % 4 == 2);
+        for (int i = 0; i < n; i += 8) {
+            b.remove(i + 2);
+        }
+        assertHolds(b, n, i -> i % 8 == 6);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testAndOr() {
+        int n = 5 << 16;
+        for (int[] ks : new int[][] {{2, 3}, {7, 100}, {1, 5}, {1000, 1001}}) {
+            int ka = ks[0];
+            int kb = ks[1];
+            RoaringBitmap a = multiples(ka, n);
+            RoaringBitmap b = multiples(kb, n);
+
+            assertHolds(RoaringBitmap.and(a, b), n, i -> i % ka == 0 && i % kb == 0);
+            assertHolds(RoaringBitmap.or(a, b), n, i -> i % ka == 0 || i % kb == 0);
+
+            // The operands are unchanged.
+            assertHolds(a, n, i -> i % ka == 0);
+            assertHolds(b, n, i -> i % kb == 0);
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testToAndFromBytes() {
+        RoaringBitmap b = multiples(3, 4 << 16);
+        b.add(1 << 24);
+        RoaringBitmap fromBytes = RoaringBitmap.fromBytes(ByteBuffer.wrap(b.toBytes()));
+        assertEquals(b, fromBytes);
+        assertHolds(fromBytes, (1 << 24) + 1, i -> (i < (4 << 16) && i % 3 == 0) || i == (1 << 24));
+
+        RoaringBitmap empty = new RoaringBitmap();
+        assertEquals(empty, RoaringBitmap.fromBytes(ByteBuffer.wrap(empty.toBytes())));
+    }
+}
@@ -0,0 +1,226 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseWithTableStub;
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.categories.*;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.query.QueryPlan.AggregateFunction;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+@Category(HW3Tests.class)
+public class TestAggregateOperator {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 10 second max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (
+                10000 * TimeoutScaling.factor)));
+
+    private static Schema schema() {
+        return new Schema(Arrays.asList("g", "v", "f", "s"),
+                          Arrays.asList(Type.intType(), Type.intType(), Type.floatType(), Type.stringType(1)));
+    }
+
+    // records with g = i % 3, v = i, f = i / 2, and s = one of "a" to "e", for i in [0, n)
+    private static TestSourceOperator source(int n) throws QueryPlanException {
+        List<Record> records = new ArrayList<Record>();
+        for (int i = 0; i < n; i++) {
+            String s = String.valueOf((char) ('a' + i % 5));
+            records.add(new Record(Arrays.<DataBox>asList(new IntDataBox(i % 3), new IntDataBox(i),
+                                   new FloatDataBox(i / 2.0f), new StringDataBox(s, 1))));
+        }
+        return new TestSourceOperator(records, schema());
+    }
+
+    private Database.Transaction beginTransaction() throws IOException, DatabaseException {
+        File tempDir = tempFolder.newFolder("aggregateTest");
+        return new Database(tempDir.getAbsolutePath()).beginTransaction();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGroupedAggregates() throws QueryPlanException, DatabaseException, IOException {
+        List<AggregateFunction> functions = Arrays.asList(AggregateFunction.COUNT, AggregateFunction.SUM,
+                                            AggregateFunction.SUM, AggregateFunction.AVERAGE, AggregateFunction.MIN,
+                                            AggregateFunction.MAX, AggregateFunction.MAX, AggregateFunction.COUNT_DISTINCT);
+        List<String> columns = Arrays.asList(null, "v", "f", "v", "v", "f", "s", "s");
+        AggregateOperator aggregateOperator = new AggregateOperator(source(30), beginTransaction(), "g",
+                Collections.singletonList("g"), functions, columns);
+
+        assertEquals(Arrays.asList("g", "countAgg", "sumAgg", "sumAgg2", "averageAgg", "minAgg", "maxAgg",
+                                   "maxAgg2", "countDistinctAgg"),
+                     aggregateOperator.getOutputSchema().getFieldNames());
+
+        Map<Integer, List<DataBox>> groups = new HashMap<Integer, List<DataBox>>();
+        Iterator<Record> outputIterator = aggregateOperator.iterator();
+        while (outputIterator.hasNext()) {
+            List<DataBox> values = outputIterator.next().getValues();
+            assertNull(groups.put(values.get(0).getInt(), values));
+        }
+        assertEquals(3, groups.size());
+
+        for (int g = 0; g < 3; g++) {
+            int sum = 0;
+            for (int i = g; i < 30; i += 3) {
+                sum += i;
+            }
+            List<DataBox> values = groups.get(g);
+            assertEquals(new IntDataBox(10), values.get(1));
+            assertEquals(new IntDataBox(sum), values.get(2));
+            assertEquals(sum / 2.0f, values.get(3).getFloat(), 1e-4);
+            assertEquals(sum / 10.0f, values.get(4).getFloat(), 1e-4);
+            assertEquals(new IntDataBox(g), values.get(5));
+            assertEquals((27 + g) / 2.0f, values.get(6).getFloat(), 1e-4);
+            assertEquals(new StringDataBox("e", 1), values.get(7));
+            assertEquals(new IntDataBox(5), values.get(8));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testAggregatePartitions() throws QueryPlanException, DatabaseException, IOException {
+        // 600 groups, of 4 records each, do not fit in 3 pages
+        List<Record> records = new ArrayList<Record>();
+        for (int i = 0; i < 2400; i++) {
+            String s = String.valueOf((char) ('a' + i / 600 % 3));
+            records.add(new Record(Arrays.<DataBox>asList(new IntDataBox(i % 600), new IntDataBox(i),
+                                   new FloatDataBox(i / 600), new StringDataBox(s, 1))));
+        }
+        Collections.shuffle(records, new Random(186));
+        File tempDir = tempFolder.newFolder("aggregateTest");
+        Database d = new DatabaseWithTableStub(tempDir.getAbsolutePath(), 3);
+        Database.Transaction transaction = d.beginTransaction();
+        List<AggregateFunction> functions = Arrays.asList(AggregateFunction.COUNT, AggregateFunction.SUM,
+                                            AggregateFunction.MIN, AggregateFunction.MAX,
+                                            AggregateFunction.COUNT_DISTINCT,
+                                            AggregateFunction.COUNT_DISTINCT);
+        List<String> columns = Arrays.asList(null, "v", "v", "v", "f", "s");
+        AggregateOperator aggregateOperator = new AggregateOperator(new TestSourceOperator(records, schema()),
+                transaction, "g", Collections.singletonList("g"), functions, columns);
+
+        Set<Integer> seen = new HashSet<Integer>();
+        Iterator<Record> outputIterator = aggregateOperator.iterator();
+        while (outputIterator.hasNext()) {
+            List<DataBox> values = outputIterator.next().getValues();
+            int g = values.get(0).getInt();
+            assertTrue(seen.add(g));
+            assertEquals(Arrays.<DataBox>asList(new IntDataBox(g), new IntDataBox(4),
+                                                new IntDataBox(4 * g + 3600), new IntDataBox(g),
+                                                new IntDataBox(g + 1800), new IntDataBox(4),
+                                                new IntDataBox(3)),
+                         values);
+        }
+        assertEquals(600, seen.size());
+        transaction.end();
+        d.close();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testCountDistinctPartitions() throws QueryPlanException, DatabaseException, IOException {
+        // 10 groups of 400 distinct values each, one group after the other: the distinct values of
+        // the first few groups fill up 3 pages, so the rest of the groups are partitioned
+        List<Record> records = new ArrayList<Record>();
+        for (int i = 0; i < 4000; i++) {
+            records.add(new Record(Arrays.<DataBox>asList(new IntDataBox(i / 400), new IntDataBox(i),
+                                   new FloatDataBox(i % 2), new StringDataBox("a", 1))));
+        }
+        File tempDir = tempFolder.newFolder("aggregateTest");
+        Database d = new DatabaseWithTableStub(tempDir.getAbsolutePath(), 3);
+        Database.Transaction transaction = d.beginTransaction();
+        AggregateOperator aggregateOperator = new AggregateOperator(new TestSourceOperator(records, schema()),
+                transaction, "g", Collections.singletonList("g"),
+                Arrays.asList(AggregateFunction.COUNT_DISTINCT, AggregateFunction.COUNT_DISTINCT),
+                Arrays.asList("v", "f"));
+
+        Set<Integer> seen = new HashSet<Integer>();
+        Iterator<Record> outputIterator = aggregateOperator.iterator();
+        while (outputIterator.hasNext()) {
+            List<DataBox> values = outputIterator.next().getValues();
+            assertTrue(seen.add(values.get(0).getInt()));
+            assertEquals(Arrays.<DataBox>asList(values.get(0), new IntDataBox(400), new IntDataBox(2)),
+                         values);
+        }
+        assertEquals(10, seen.size());
+        transaction.end();
+        d.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    @Category(PublicTests.class)
+    public void testSumOverflow() throws QueryPlanException, DatabaseException, IOException {
+        List<Record> records = new ArrayList<Record>();
+        for (int i = 0; i < 2; i++) {
+            records.add(new Record(Arrays.<DataBox>asList(new IntDataBox(0),
+                                   new IntDataBox(Integer.MAX_VALUE), new FloatDataBox(0),
+                                   new StringDataBox("a", 1))));
+        }
+        AggregateOperator aggregateOperator = new AggregateOperator(new TestSourceOperator(records, schema()),
+                beginTransaction(), null, new ArrayList<String>(),
+                Collections.singletonList(AggregateFunction.SUM), Collections.singletonList("v"));
+        aggregateOperator.iterator().next();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testUngroupedAggregates() throws QueryPlanException, DatabaseException, IOException {
+        Database.Transaction transaction = beginTransaction();
+        AggregateOperator aggregateOperator = new AggregateOperator(source(30), transaction, null,
+                new ArrayList<String>(), Arrays.asList(AggregateFunction.COUNT, AggregateFunction.MIN),
+                Arrays.asList(null, "s"));
+        Iterator<Record> outputIterator = aggregateOperator.iterator();
+        assertTrue(outputIterator.hasNext());
+        assertEquals(Arrays.asList(new IntDataBox(30), new StringDataBox("a", 1)),
+                     outputIterator.next().getValues());
+        assertFalse(outputIterator.hasNext());
+
+        // an empty input still has a count, but no minimum
+        aggregateOperator = new AggregateOperator(source(0), transaction, null, new ArrayList<String>(),
+                Arrays.asList(AggregateFunction.COUNT, AggregateFunction.SUM), Arrays.asList(null, "v"));
+        outputIterator = aggregateOperator.iterator();
+        assertEquals(Arrays.asList(new IntDataBox(0), new IntDataBox(0)), outputIterator.next().getValues());
+        assertFalse(outputIterator.hasNext());
+
+        aggregateOperator = new AggregateOperator(source(0), transaction, null, new ArrayList<String>(),
+                Collections.singletonList(AggregateFunction.MIN), Collections.singletonList("v"));
+        assertFalse(aggregateOperator.iterator().hasNext());
+    }
+
+    @Test(expected = QueryPlanException.class)
+    @Category(PublicTests.class)
+    public void testSumOverString() throws QueryPlanException, DatabaseException, IOException {
+        new AggregateOperator(source(10), beginTransaction(), "g", new ArrayList<String>(),
+                              Collections.singletonList(AggregateFunction.SUM), Collections.singletonList("s"));
+    }
+
+    @Test(expected = QueryPlanException.class)
+    @Category(PublicTests.class)
+    public void testProjectNonGroupColumn() throws QueryPlanException, DatabaseException, IOException {
+        new AggregateOperator(source(10), beginTransaction(), "g", Collections.singletonList("v"),
+                              Collections.singletonList(AggregateFunction.COUNT),
+                              Collections.<String>singletonList(null));
+    }
+}
@@ -0,0 +1,144 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseWithTableStub;
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.categories.*;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.MarkerRecord;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+@Category(HW3Tests.class)
+public class TestGroupByOperator {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 10 second max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (
+                10000 * TimeoutScaling.factor)));
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGroupsSeparatedByMarkers() throws QueryPlanException, DatabaseException,
+        IOException {
+        List<Integer> values = new ArrayList<Integer>();
+        for (int i = 0; i < 100; i++) {
+            values.add((i * 7) % 10);
+        }
+        TestSourceOperator sourceOperator = TestUtils.createTestSourceOperatorWithInts(values);
+        File tempDir = tempFolder.newFolder("groupByTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        GroupByOperator groupByOperator = new GroupByOperator(sourceOperator, transaction, "int");
+
+        Set<Integer> seen = new HashSet<Integer>();
+        Iterator<Record> outputIterator = groupByOperator.iterator();
+        Integer current = null;
+        int groupSize = 0;
+        while (outputIterator.hasNext()) {
+            Record record = outputIterator.next();
+            if (record == MarkerRecord.getMarker()) {
+                assertEquals(10, groupSize);
+                current = null;
+                groupSize = 0;
+                continue;
+            }
+            int value = record.getValues().get(0).getInt();
+            if (current == null) {
+                // every group is output exactly once
+                assertTrue(seen.add(value));
+                current = value;
+            }
+            assertEquals((int) current, value);
+            groupSize++;
+        }
+        assertEquals(10, groupSize);
+        assertEquals(10, seen.size());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGroupByPartitions() throws QueryPlanException, DatabaseException, IOException {
+        // 4000 records in 500 groups of 8 do not fit in the 3 pages of a hash table, so they
+        // are partitioned, and the partitions partitioned again
+        Schema schema = new Schema(Arrays.asList("key", "value"),
+                                   Arrays.asList(Type.intType(), Type.intType()));
+        List<Record> records = new ArrayList<Record>();
+        for (int i = 0; i < 4000; i++) {
+            records.add(new Record(Arrays.asList(new IntDataBox(i % 500), new IntDataBox(i))));
+        }
+        Collections.shuffle(records, new Random(42));
+        TestSourceOperator sourceOperator = new TestSourceOperator(records, schema);
+        File tempDir = tempFolder.newFolder("groupByTest");
+        Database d = new DatabaseWithTableStub(tempDir.getAbsolutePath(), 3);
+        Database.Transaction transaction = d.beginTransaction();
+        GroupByOperator groupByOperator = new GroupByOperator(sourceOperator, transaction, "key");
+
+        // every group is output exactly once, with all of its records
+        Map<Integer, Set<Integer>> groups = new HashMap<Integer, Set<Integer>>();
+        Set<Integer> group = new HashSet<Integer>();
+        Integer key = null;
+        Iterator<Record> outputIterator = groupByOperator.iterator();
+        while (true) {
+            Record record = outputIterator.hasNext() ? outputIterator.next() : MarkerRecord.getMarker();
+            if (record == MarkerRecord.getMarker()) {
+                assertNull(groups.put(key, group));
+                group = new HashSet<Integer>();
+                key = null;
+                if (!outputIterator.hasNext()) {
+                    break;
+                }
+                continue;
+            }
+            List<DataBox> values = record.getValues();
+            if (key == null) {
+                key = values.get(0).getInt();
+            }
+            assertEquals((int) key, values.get(0).getInt());
+            group.add(values.get(1).getInt());
+        }
+
+        assertEquals(500, groups.size());
+        for (int k = 0; k < 500; k++) {
+            Set<Integer> expected = new HashSet<Integer>();
+            for (int i = k; i < 4000; i += 500) {
+                expected.add(i);
+            }
+            assertEquals(expected, groups.get(k));
+        }
+        transaction.end();
+        d.close();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testEmptyGroupBy() throws QueryPlanException, DatabaseException, IOException {
+        TestSourceOperator sourceOperator = TestUtils.createTestSourceOperatorWithInts(
+                                                new ArrayList<Integer>());
+        File tempDir = tempFolder.newFolder("groupByTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        GroupByOperator groupByOperator = new GroupByOperator(sourceOperator, transaction, "int");
+
+        assertFalse(groupByOperator.iterator().hasNext());
+    }
+}
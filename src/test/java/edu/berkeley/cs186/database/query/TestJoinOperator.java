@@ -1,6 +1,7 @@
 package edu.berkeley.cs186.database.query;
 
 import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseWithTableStub;
 import edu.berkeley.cs186.database.TimeoutScaling;
 import edu.berkeley.cs186.database.categories.*;
 import org.junit.Rule;
@@ -19,6 +20,7 @@ import edu.berkeley.cs186.database.databox.IntDataBox;
 import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 
 import org.junit.experimental.categories.Category;
@@ -261,6 +263,175 @@ public class TestJoinOperator {
         assertTrue(count == 165888);
     }
 
+    @Test
+    @Category(PublicTests.class)
+    public void testSimpleJoinGraceHash() throws QueryPlanException, DatabaseException, IOException {
+        TestSourceOperator sourceOperator = new TestSourceOperator();
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        JoinOperator joinOperator = new GraceHashOperator(sourceOperator, sourceOperator, "int", "int",
+                transaction);
+
+        Iterator<Record> outputIterator = joinOperator.iterator();
+        int numRecords = 0;
+
+        List<DataBox> expectedRecordValues = new ArrayList<DataBox>();
+        expectedRecordValues.add(new BoolDataBox(true));
+        expectedRecordValues.add(new IntDataBox(1));
+        expectedRecordValues.add(new StringDataBox("abcde", 5));
+        expectedRecordValues.add(new FloatDataBox(1.2f));
+        expectedRecordValues.add(new BoolDataBox(true));
+        expectedRecordValues.add(new IntDataBox(1));
+        expectedRecordValues.add(new StringDataBox("abcde", 5));
+        expectedRecordValues.add(new FloatDataBox(1.2f));
+        Record expectedRecord = new Record(expectedRecordValues);
+
+        while (outputIterator.hasNext()) {
+            assertEquals(expectedRecord, outputIterator.next());
+            numRecords++;
+        }
+
+        assertEquals(100 * 100, numRecords);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGraceHashJoinMatchesOnly() throws QueryPlanException, DatabaseException,
+        IOException {
+        List<Integer> leftValues = new ArrayList<Integer>();
+        for (int i = 0; i < 100; i++) {
+            leftValues.add(i);
+        }
+        // every even value in [50, 150) twice, in descending order
+        List<Integer> rightValues = new ArrayList<Integer>();
+        for (int i = 148; i >= 50; i -= 2) {
+            rightValues.add(i);
+            rightValues.add(i);
+        }
+        TestSourceOperator leftSourceOperator = TestUtils.createTestSourceOperatorWithInts(leftValues);
+        TestSourceOperator rightSourceOperator = TestUtils.createTestSourceOperatorWithInts(rightValues);
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        JoinOperator joinOperator = new GraceHashOperator(leftSourceOperator, rightSourceOperator, "int",
+                "int", transaction);
+
+        Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+        Iterator<Record> outputIterator = joinOperator.iterator();
+        while (outputIterator.hasNext()) {
+            List<DataBox> values = outputIterator.next().getValues();
+            assertEquals(2, values.size());
+            assertEquals(values.get(0), values.get(1));
+            counts.merge(values.get(0).getInt(), 1, Integer::sum);
+        }
+
+        assertEquals(25, counts.size());
+        for (int i = 50; i < 100; i += 2) {
+            assertEquals(Integer.valueOf(2), counts.get(i));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGraceHashJoinBatches() throws QueryPlanException, DatabaseException, IOException {
+        List<Integer> leftValues = new ArrayList<Integer>();
+        for (int i = 0; i < 3000; i++) {
+            leftValues.add(i % 1000);
+        }
+        List<Integer> rightValues = new ArrayList<Integer>();
+        for (int i = 0; i < 1000; i += 2) {
+            rightValues.add(i);
+        }
+        TestSourceOperator leftSourceOperator = TestUtils.createTestSourceOperatorWithInts(leftValues);
+        TestSourceOperator rightSourceOperator = TestUtils.createTestSourceOperatorWithInts(rightValues);
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        JoinOperator joinOperator = new GraceHashOperator(leftSourceOperator, rightSourceOperator, "int",
+                "int", transaction);
+
+        // the joined records fill up whole batches before the last one
+        int numRecords = 0;
+        Iterator<RecordBatch> batchIterator = joinOperator.batchIterator();
+        while (batchIterator.hasNext()) {
+            RecordBatch batch = batchIterator.next();
+            if (batchIterator.hasNext()) {
+                assertEquals(RecordBatch.DEFAULT_CAPACITY, batch.size());
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                int row = batch.getRow(i);
+                assertEquals(batch.getColumn(0).getInt(row), batch.getColumn(1).getInt(row));
+                assertEquals(0, batch.getColumn(0).getInt(row) % 2);
+            }
+            numRecords += batch.size();
+        }
+        assertEquals(1500, numRecords);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGraceHashJoinPartitions() throws QueryPlanException, DatabaseException,
+        IOException {
+        // 2500 records of ints take about three pages, but 3 buffers hold a single page of build
+        // records, so both inputs are partitioned and the partitions partitioned again
+        List<Integer> leftValues = new ArrayList<Integer>();
+        List<Integer> rightValues = new ArrayList<Integer>();
+        for (int i = 0; i < 2500; i++) {
+            leftValues.add(i);
+            rightValues.add(2499 - i);
+        }
+        TestSourceOperator leftSourceOperator = TestUtils.createTestSourceOperatorWithInts(leftValues);
+        TestSourceOperator rightSourceOperator = TestUtils.createTestSourceOperatorWithInts(rightValues);
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database d = new DatabaseWithTableStub(tempDir.getAbsolutePath(), 3);
+        Database.Transaction transaction = d.beginTransaction();
+        JoinOperator joinOperator = new GraceHashOperator(leftSourceOperator, rightSourceOperator, "int",
+                "int", transaction);
+
+        Set<Integer> keys = new HashSet<Integer>();
+        Iterator<Record> outputIterator = joinOperator.iterator();
+        while (outputIterator.hasNext()) {
+            List<DataBox> values = outputIterator.next().getValues();
+            assertEquals(values.get(0), values.get(1));
+            assertTrue(keys.add(values.get(0).getInt()));
+        }
+        assertEquals(2500, keys.size());
+        transaction.end();
+        d.close();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGraceHashJoinSkew() throws QueryPlanException, DatabaseException, IOException {
+        // every build record has the same key, so partitioning never splits the build input up,
+        // and it is joined one memory-sized chunk at a time instead
+        List<Integer> leftValues = new ArrayList<Integer>(Collections.nCopies(1200, 7));
+        List<Integer> rightValues = new ArrayList<Integer>(Collections.nCopies(1000, 7));
+        for (int i = 0; i < 100; i++) {
+            rightValues.add(i + 8);
+        }
+        TestSourceOperator leftSourceOperator = TestUtils.createTestSourceOperatorWithInts(leftValues);
+        TestSourceOperator rightSourceOperator = TestUtils.createTestSourceOperatorWithInts(rightValues);
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database d = new DatabaseWithTableStub(tempDir.getAbsolutePath(), 3);
+        Database.Transaction transaction = d.beginTransaction();
+        JoinOperator joinOperator = new GraceHashOperator(leftSourceOperator, rightSourceOperator, "int",
+                "int", transaction);
+
+        long numRecords = 0;
+        Iterator<RecordBatch> batchIterator = joinOperator.batchIterator();
+        while (batchIterator.hasNext()) {
+            RecordBatch batch = batchIterator.next();
+            for (int i = 0; i < batch.size(); i++) {
+                int row = batch.getRow(i);
+                assertEquals(7, batch.getColumn(0).getInt(row));
+                assertEquals(7, batch.getColumn(1).getInt(row));
+            }
+            numRecords += batch.size();
+        }
+        assertEquals(1200L * 1000L, numRecords);
+        transaction.end();
+        d.close();
+    }
+
     @Test
     @Category(PublicTests.class)
     public void testSimpleSortMergeJoin() throws QueryPlanException, DatabaseException, IOException {
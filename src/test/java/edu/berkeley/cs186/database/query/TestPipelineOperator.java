@@ -0,0 +1,99 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.categories.*;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.*;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.query.QueryPlan.PredicateOperator;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
+import edu.berkeley.cs186.database.table.Schema;
+
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+@Category(HW3Tests.class)
+public class TestPipelineOperator {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // records with i = i, f = i / 2, and s = one of "a" to "e", for i in [0, n)
+    private static TestSourceOperator source(int n) throws QueryPlanException {
+        Schema schema = new Schema(Arrays.asList("i", "f", "s"),
+                                   Arrays.asList(Type.intType(), Type.floatType(), Type.stringType(1)));
+        List<Record> records = new ArrayList<Record>();
+        for (int i = 0; i < n; i++) {
+            String s = String.valueOf((char) ('a' + i % 5));
+            records.add(new Record(Arrays.<DataBox>asList(new IntDataBox(i), new FloatDataBox(i / 2.0f),
+                                   new StringDataBox(s, 1))));
+        }
+        return new TestSourceOperator(records, schema);
+    }
+
+    private static <T> List<T> iteratorToList(Iterator<T> iter) {
+        List<T> xs = new ArrayList<T>();
+        while (iter.hasNext()) {
+            xs.add(iter.next());
+        }
+        return xs;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testPipelineMatchesInterpreter() throws QueryPlanException, DatabaseException {
+        QueryOperator operator = new SelectOperator(source(3000), "i", PredicateOperator.GREATER_THAN_EQUALS,
+                new IntDataBox(1000));
+        operator = new SelectOperator(operator, Arrays.asList("s", "f"),
+                Arrays.asList(PredicateOperator.NOT_EQUALS, PredicateOperator.LESS_THAN),
+                Arrays.<DataBox>asList(new StringDataBox("a", 1), new FloatDataBox(1000.0f)));
+        operator = new ProjectOperator(operator, new ArrayList<String>(Arrays.asList("s", "i")), false, null, null);
+
+        QueryOperator pipeline = PipelineOperator.compile(operator);
+        assertEquals(QueryOperator.OperatorType.PIPELINE, pipeline.getType());
+        assertEquals(operator.getOutputSchema(), pipeline.getOutputSchema());
+
+        List<Record> expected = iteratorToList(operator.iterator());
+        assertEquals(800, expected.size());
+        assertEquals(expected, iteratorToList(pipeline.iterator()));
+        assertEquals(expected, iteratorToList(RecordBatch.records(pipeline.batchIterator())));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testCompileUnderAggregate() throws Exception {
+        File tempDir = tempFolder.newFolder("pipelineTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        QueryOperator select = new SelectOperator(source(3000), "i", PredicateOperator.LESS_THAN,
+                new IntDataBox(100));
+        QueryOperator aggregate = new AggregateOperator(select, transaction, "s", new ArrayList<String>(),
+                Collections.singletonList(QueryPlan.AggregateFunction.SUM), Collections.singletonList("i"));
+        List<Record> expected = iteratorToList(aggregate.iterator());
+
+        assertSame(aggregate, PipelineOperator.compile(aggregate));
+        assertEquals(QueryOperator.OperatorType.PIPELINE, aggregate.getSource().getType());
+        assertEquals(expected, iteratorToList(aggregate.iterator()));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testNothingToCompile() throws QueryPlanException, DatabaseException {
+        QueryOperator source = source(10);
+        assertSame(source, PipelineOperator.compile(source));
+
+        QueryOperator operator = new ProjectOperator(source, new ArrayList<String>(Arrays.asList("i")), true,
+                null, null);
+        assertSame(operator, PipelineOperator.compile(operator));
+    }
+}
@@ -0,0 +1,105 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.categories.*;
+import org.junit.Test;
+
+import java.util.*;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.query.QueryPlan.PredicateOperator;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
+import edu.berkeley.cs186.database.table.Schema;
+
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.*;
+
+@Category(HW3Tests.class)
+public class TestSelectOperator {
+    // records with i = i, f = i / 2, and s = one of "a" to "e", for i in [0, n)
+    private static TestSourceOperator source(int n) throws QueryPlanException {
+        Schema schema = new Schema(Arrays.asList("i", "f", "s"),
+                                   Arrays.asList(Type.intType(), Type.floatType(), Type.stringType(1)));
+        List<Record> records = new ArrayList<Record>();
+        for (int i = 0; i < n; i++) {
+            String s = String.valueOf((char) ('a' + i % 5));
+            records.add(new Record(Arrays.<DataBox>asList(new IntDataBox(i), new FloatDataBox(i / 2.0f),
+                                   new StringDataBox(s, 1))));
+        }
+        return new TestSourceOperator(records, schema);
+    }
+
+    private static <T> List<T> iteratorToList(Iterator<T> iter) {
+        List<T> xs = new ArrayList<T>();
+        while (iter.hasNext()) {
+            xs.add(iter.next());
+        }
+        return xs;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testBatchesMatchRecords() throws QueryPlanException, DatabaseException {
+        TestSourceOperator source = source(3000);
+        List<QueryOperator> operators = new ArrayList<QueryOperator>();
+        for (PredicateOperator operator : PredicateOperator.values()) {
+            operators.add(new SelectOperator(source, "i", operator, new IntDataBox(1234)));
+            operators.add(new SelectOperator(source, "f", operator, new FloatDataBox(617.0f)));
+            operators.add(new SelectOperator(source, "s", operator, new StringDataBox("c", 1)));
+        }
+        // a value of another type is only ever not equal to the column
+        operators.add(new SelectOperator(source, "i", PredicateOperator.EQUALS, new FloatDataBox(1.0f)));
+        operators.add(new SelectOperator(source, "i", PredicateOperator.NOT_EQUALS, new FloatDataBox(1.0f)));
+
+        for (QueryOperator operator : operators) {
+            assertEquals(operator.str(), iteratorToList(operator.iterator()),
+                         iteratorToList(RecordBatch.records(operator.batchIterator())));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testChainedSelectsAndProject() throws QueryPlanException, DatabaseException {
+        QueryOperator operator = new SelectOperator(source(3000), "i", PredicateOperator.GREATER_THAN_EQUALS,
+                new IntDataBox(1000));
+        operator = new SelectOperator(operator, "s", PredicateOperator.EQUALS, new StringDataBox("a", 1));
+        operator = new SelectOperator(operator, "f", PredicateOperator.LESS_THAN, new FloatDataBox(1000.0f));
+        operator = new ProjectOperator(operator, new ArrayList<String>(Arrays.asList("s", "i")), false, null, null);
+
+        List<Record> expected = new ArrayList<Record>();
+        for (int i = 1000; i < 2000; i += 5) {
+            expected.add(new Record(Arrays.<DataBox>asList(new StringDataBox("a", 1), new IntDataBox(i))));
+        }
+        assertEquals(expected, iteratorToList(RecordBatch.records(operator.batchIterator())));
+        assertEquals(expected, iteratorToList(operator.iterator()));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testFusedSelectMatchesChained() throws QueryPlanException, DatabaseException {
+        TestSourceOperator source = source(3000);
+        List<String> columns = Arrays.asList("i", "s", "f", "i");
+        List<PredicateOperator> operators = Arrays.asList(PredicateOperator.LESS_THAN, PredicateOperator.NOT_EQUALS,
+                PredicateOperator.GREATER_THAN_EQUALS, PredicateOperator.NOT_EQUALS);
+        List<DataBox> values = Arrays.<DataBox>asList(new IntDataBox(2500), new StringDataBox("b", 1),
+                new FloatDataBox(100.0f), new IntDataBox(1234));
+
+        QueryOperator chained = source;
+        for (int i = 0; i < columns.size(); i++) {
+            chained = new SelectOperator(chained, columns.get(i), operators.get(i), values.get(i));
+        }
+        QueryOperator fused = new SelectOperator(source, columns, operators, values);
+
+        List<Record> expected = iteratorToList(chained.iterator());
+        assertEquals(2500 - 200 - 460 - 1, expected.size());
+        assertEquals(expected, iteratorToList(fused.iterator()));
+        assertEquals(expected, iteratorToList(RecordBatch.records(fused.batchIterator())));
+        assertEquals(chained.getStats().getNumRecords(), fused.getStats().getNumRecords());
+    }
+}
@@ -14,6 +14,7 @@ import java.io.IOException;
 import java.util.*;
 
 import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.DatabaseWithTableStub;
 import edu.berkeley.cs186.database.TestUtils;
 import edu.berkeley.cs186.database.table.Record;
 
@@ -248,4 +249,107 @@ public class TestSortOperator {
 
     }
 
+    @Test
+    @Category(PublicTests.class)
+    public void testSortManyRuns() throws QueryPlanException, DatabaseException, IOException {
+        // enough records with repeated keys for several runs and merge passes with 3 buffers
+        File tempDir = tempFolder.newFolder("sortTest");
+        Database d = new DatabaseWithTableStub(tempDir.getAbsolutePath(), 3);
+        Database.Transaction transaction = d.beginTransaction();
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "table");
+        List<Record> records = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 288 * 7 + 5; i++) {
+            Record r = TestUtils.createRecordWithAllTypesWithValue(random.nextInt(500));
+            records.add(r);
+            transaction.addRecord("table", r.getValues());
+        }
+        records.sort(new SortRecordComparator(1));
+        // once with a comparator, and once on the normalized keys of column 1
+        for (SortOperator s : new SortOperator[] {
+                    new SortOperator(transaction, "table", new SortRecordComparator(1)),
+                    new SortOperator(transaction, "table", new int[] {1}, true)
+                }) {
+            Iterator<Record> iter = transaction.getRecordIterator(s.sort());
+            int i = 0;
+            while (iter.hasNext()) {
+                assertEquals(records.get(i), iter.next());
+                i++;
+            }
+            assertEquals(records.size(), i);
+        }
+        transaction.end();
+        d.close();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSortManyWorkers() throws QueryPlanException, DatabaseException, IOException {
+        // 10 buffers are enough for 2 workers, each with a heap of 2 pages, which make a few runs
+        // each out of 10 pages of records
+        File tempDir = tempFolder.newFolder("sortTest");
+        Database d = new DatabaseWithTableStub(tempDir.getAbsolutePath(), 10);
+        Database.Transaction transaction = d.beginTransaction();
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "table");
+        List<Record> records = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 288 * 10; i++) {
+            Record r = TestUtils.createRecordWithAllTypesWithValue(random.nextInt(1000));
+            records.add(r);
+            transaction.addRecord("table", r.getValues());
+        }
+        records.sort(new SortRecordComparator(1));
+        SortOperator s = new SortOperator(transaction, "table", new int[] {1}, true);
+        s.setMaxWorkers(2);
+        Iterator<Record> iter = transaction.getRecordIterator(s.sort());
+        int i = 0;
+        while (iter.hasNext()) {
+            assertEquals(records.get(i), iter.next());
+            i++;
+        }
+        assertEquals(records.size(), i);
+        transaction.end();
+        d.close();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSortFailureDeletesRuns() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("sortTest");
+        Database d = new DatabaseWithTableStub(tempDir.getAbsolutePath(), 10);
+        Database.Transaction transaction = d.beginTransaction();
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "table");
+        Random random = new Random(42);
+        for (int i = 0; i < 288 * 10; i++) {
+            Record r = TestUtils.createRecordWithAllTypesWithValue(random.nextInt(1000));
+            transaction.addRecord("table", r.getValues());
+        }
+        // only the first worker to compare records fails, once it has written some runs, so the
+        // other one finishes its runs
+        Comparator<Record> comparator = new SortRecordComparator(1);
+        Thread[] failingThread = new Thread[1];
+        int[] numCompares = new int[1];
+        SortOperator s = new SortOperator(transaction, "table", (r1, r2) -> {
+            synchronized (failingThread) {
+                if (failingThread[0] == null) {
+                    failingThread[0] = Thread.currentThread();
+                }
+                if (failingThread[0] == Thread.currentThread() && ++numCompares[0] == 8000) {
+                    throw new IllegalStateException("comparison failed");
+                }
+            }
+            return comparator.compare(r1, r2);
+        });
+        s.setMaxWorkers(2);
+        try {
+            s.sort();
+            fail();
+        } catch (DatabaseException e) {
+            // expected
+        }
+        File[] tempTables = new File(tempDir, "temp").listFiles((dir, name) -> name.endsWith(".table"));
+        assertEquals(0, tempTables == null ? 0 : tempTables.length);
+        transaction.end();
+        d.close();
+    }
 }
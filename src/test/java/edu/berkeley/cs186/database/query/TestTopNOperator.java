@@ -0,0 +1,215 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseWithTableStub;
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.categories.*;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.*;
+
+import edu.berkeley.cs186.database.common.CloseableIterator;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+@Category(HW3Tests.class)
+public class TestTopNOperator {
+    private Database.Transaction transaction;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 10 second max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (
+                10000 * TimeoutScaling.factor)));
+
+    @Before
+    public void beforeEach() throws Exception {
+        File tempDir = tempFolder.newFolder("topNTest");
+        this.transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+    }
+
+    // records with k = a shuffled value in [0, n / 2), so every key appears twice, and i = i, for i
+    // in [0, n)
+    private static TestSourceOperator source(int n) throws QueryPlanException {
+        Schema schema = new Schema(Arrays.asList("k", "i"), Arrays.asList(Type.intType(), Type.intType()));
+        List<Record> records = new ArrayList<Record>();
+        for (int i = 0; i < n; i++) {
+            records.add(new Record(Arrays.<DataBox>asList(new IntDataBox((i * 7919) % (n / 2)),
+                                   new IntDataBox(i))));
+        }
+        return new TestSourceOperator(records, schema);
+    }
+
+    private static <T> List<T> iteratorToList(Iterator<T> iter) {
+        List<T> xs = new ArrayList<T>();
+        while (iter.hasNext()) {
+            xs.add(iter.next());
+        }
+        return xs;
+    }
+
+    // the first n records of source, stably sorted on k
+    private static List<Record> expectedTopN(QueryOperator source, boolean ascending, int n)
+    throws Exception {
+        List<Record> records = iteratorToList(source.iterator());
+        Comparator<Record> comparator = Comparator.comparing((Record r) -> r.getValues().get(0));
+        records.sort(ascending ? comparator : comparator.reversed());
+        return records.subList(0, Math.min(n, records.size()));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testTopN() throws Exception {
+        TestSourceOperator source = source(1000);
+        for (boolean ascending : new boolean[] {true, false}) {
+            for (int n : new int[] {1, 10, 999, 1000, 2000}) {
+                QueryOperator topN = new TopNOperator(source, this.transaction, "k", ascending, n);
+                assertEquals(topN.str(), expectedTopN(source, ascending, n), iteratorToList(topN.iterator()));
+            }
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testExternalTopN() throws Exception {
+        // 3 pages hold about 1500 records, so neither all 2000 records nor the first 1800 fit in
+        // memory, and the source is sorted externally
+        File tempDir = tempFolder.newFolder("externalTopNTest");
+        Database d = new DatabaseWithTableStub(tempDir.getAbsolutePath(), 3);
+        Database.Transaction transaction = d.beginTransaction();
+        TestSourceOperator source = source(2000);
+        // all of the records in ascending order, and the first 1800 in descending order
+        for (int n : new int[] {-1, 1800}) {
+            boolean ascending = n < 0;
+            QueryOperator topN = new TopNOperator(source, transaction, "k", ascending, n);
+            List<Record> expected = expectedTopN(source, ascending, ascending ? 2000 : n);
+            List<Record> actual = iteratorToList(topN.iterator());
+            // the external sort does not keep records with equal keys in order
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getValues().get(0), actual.get(i).getValues().get(0));
+            }
+            assertEquals(new HashSet<Record>(expected), new HashSet<Record>(actual));
+        }
+        transaction.end();
+        d.close();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testZeroLimit() throws Exception {
+        QueryOperator topN = new TopNOperator(source(100), this.transaction, "k", true, 0);
+        assertFalse(topN.iterator().hasNext());
+    }
+
+    // a source with the records of source(100) that counts the records pulled from it and whether
+    // its iterator was closed
+    private static class CountingSourceOperator extends TestSourceOperator {
+        private int numPulled = 0;
+        private boolean closed = false;
+
+        CountingSourceOperator() throws QueryPlanException {
+            super(iteratorToList(source(100).iterator()), source(0).getOutputSchema());
+        }
+
+        @Override
+        public Iterator<Record> iterator() {
+            Iterator<Record> iterator = super.iterator();
+            return new CloseableIterator<Record>() {
+                public boolean hasNext() {
+                    return !closed && iterator.hasNext();
+                }
+
+                public Record next() {
+                    numPulled++;
+                    return iterator.next();
+                }
+
+                public void close() {
+                    closed = true;
+                }
+            };
+        }
+    }
+
+    // the number of temporary table files left in the temp directory of the database in dir
+    private static int numTempTables(File dir) {
+        File[] files = new File(dir, "temp").listFiles((d, name) -> name.endsWith(".table"));
+        return files == null ? 0 : files.length;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testCloseDeletesTempTables() throws Exception {
+        // on 3 pages, 2000 records are too many to sort in memory, to aggregate 2000 groups in
+        // memory, or to join in memory, so every operator writes temporary tables
+        File tempDir = tempFolder.newFolder("closeTest");
+        Database d = new DatabaseWithTableStub(tempDir.getAbsolutePath(), 3);
+        Database.Transaction transaction = d.beginTransaction();
+        List<QueryOperator> operators = Arrays.asList(
+                new TopNOperator(source(2000), transaction, "k", true, -1),
+                new AggregateOperator(source(2000), transaction, "i", Collections.singletonList("i"),
+                        Collections.singletonList(QueryPlan.AggregateFunction.COUNT),
+                        Collections.<String>singletonList(null)),
+                new GraceHashOperator(source(2000), source(2000), "i", "i", transaction));
+        for (QueryOperator operator : operators) {
+            Iterator<Record> iterator = operator.iterator();
+            assertTrue(iterator.hasNext());
+            iterator.next();
+            assertTrue(operator.str(), numTempTables(tempDir) > 0);
+
+            CloseableIterator.close(iterator);
+            assertFalse(iterator.hasNext());
+            assertEquals(operator.str(), 0, numTempTables(tempDir));
+        }
+        transaction.end();
+        d.close();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testLimitStopsEarly() throws Exception {
+        CountingSourceOperator source = new CountingSourceOperator();
+        List<Record> records = iteratorToList(source.iterator());
+        source.numPulled = 0;
+        source.closed = false;
+
+        QueryOperator limit = new LimitOperator(source, 10);
+        assertEquals(records.subList(0, 10), iteratorToList(limit.iterator()));
+        assertEquals(10, source.numPulled);
+        assertTrue(source.closed);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testCloseStopsSource() throws Exception {
+        CountingSourceOperator source = new CountingSourceOperator();
+        QueryOperator select = new SelectOperator(source, "k", QueryPlan.PredicateOperator.GREATER_THAN_EQUALS,
+                new IntDataBox(0));
+        Iterator<Record> iterator = new ProjectOperator(select, new ArrayList<String>(Arrays.asList("i")), false,
+                null, null).iterator();
+        assertTrue(iterator.hasNext());
+        iterator.next();
+
+        CloseableIterator.close(iterator);
+        assertTrue(source.closed);
+        assertFalse(iterator.hasNext());
+        assertEquals(1, source.numPulled);
+    }
+}
@@ -0,0 +1,105 @@
+package edu.berkeley.cs186.database.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import edu.berkeley.cs186.database.categories.*;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+
+@Category(HW3Tests.class)
+public class TestRecordBatch {
+    private static Record record(int i) {
+        return new Record(Arrays.<DataBox>asList(new BoolDataBox(i % 2 == 0), new IntDataBox(i),
+                          new StringDataBox("s" + i, 5), new FloatDataBox(i / 4.0f)));
+    }
+
+    private static List<Record> records(int n) {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            records.add(record(i));
+        }
+        return records;
+    }
+
+    private static <T> List<T> iteratorToList(Iterator<T> iter) {
+        List<T> xs = new ArrayList<>();
+        while (iter.hasNext()) {
+            xs.add(iter.next());
+        }
+        return xs;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testRoundTrip() {
+        Schema schema = TestUtils.createSchemaWithAllTypes();
+        List<Record> records = records(2500);
+        List<RecordBatch> batches = iteratorToList(RecordBatch.batches(records.iterator(), schema));
+        assertEquals(3, batches.size());
+        assertEquals(RecordBatch.DEFAULT_CAPACITY, batches.get(0).size());
+        assertEquals(2500 - 2 * RecordBatch.DEFAULT_CAPACITY, batches.get(2).size());
+
+        ColumnVector ints = batches.get(1).getColumn(1);
+        assertEquals(RecordBatch.DEFAULT_CAPACITY + 7, ints.getInt(7));
+        assertEquals("s3   ", batches.get(0).getColumn(2).getString(3));
+        assertEquals(records, iteratorToList(RecordBatch.records(batches.iterator())));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSelectAndProject() {
+        Schema schema = TestUtils.createSchemaWithAllTypes();
+        RecordBatch batch = RecordBatch.batches(records(10).iterator(), schema).next();
+        batch.select(new int[] {1, 4, 8}, 3);
+        assertEquals(3, batch.size());
+        assertEquals(4, batch.getRow(1));
+        assertEquals(Arrays.asList(record(1), record(4), record(8)),
+                     iteratorToList(RecordBatch.records(Arrays.asList(batch).iterator())));
+
+        Schema projectedSchema = new Schema(Arrays.asList("float", "int"),
+                                            Arrays.asList(schema.getFieldTypes().get(3),
+                                                    schema.getFieldTypes().get(1)));
+        RecordBatch projected = batch.project(new int[] {3, 1}, projectedSchema);
+        assertEquals(3, projected.size());
+        assertEquals(Arrays.<DataBox>asList(new FloatDataBox(1.0f), new IntDataBox(4)),
+                     projected.getValues(projected.getRow(1)));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testEmptyAndConcatenation() {
+        Schema schema = TestUtils.createSchemaWithAllTypes();
+        assertFalse(RecordBatch.batches(new ArrayList<Record>().iterator(), schema).hasNext());
+
+        RecordBatch left = RecordBatch.batches(records(3).iterator(), schema).next();
+        List<String> names = new ArrayList<>(schema.getFieldNames());
+        names.addAll(TestUtils.createSchemaWithAllTypes("right").getFieldNames());
+        List<Type> types = new ArrayList<>(schema.getFieldTypes());
+        types.addAll(schema.getFieldTypes());
+        Schema joinedSchema = new Schema(names, types);
+        RecordBatch joined = new RecordBatch(joinedSchema, 2);
+        joined.appendConcatenation(left, 2, left, 0);
+        assertFalse(joined.isFull());
+        joined.appendConcatenation(left, 1, left, 1);
+        assertTrue(joined.isFull());
+
+        List<DataBox> expected = new ArrayList<>(record(2).getValues());
+        expected.addAll(record(0).getValues());
+        assertEquals(expected, joined.getValues(0));
+    }
+}